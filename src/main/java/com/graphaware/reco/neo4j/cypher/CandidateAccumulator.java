@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.cypher;
+
+import com.graphaware.reco.generic.result.PartialScore;
+import com.graphaware.reco.neo4j.util.LongDoubleMap;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Accumulates recommendation candidates identified by node IDs, as returned row by row from a Cypher query.
+ * <p/>
+ * Scores are summed up in a {@link LongDoubleMap}. Reasons (values of extra columns) of each row are kept as plain arrays
+ * in a linked list per candidate, so that no {@link PartialScore}s or {@link Map}s are created until
+ * {@link #partialScore(int, String[])} is called for the candidates that made it through ranking.
+ * <p/>
+ * This class is not thread-safe.
+ */
+public final class CandidateAccumulator {
+
+    private static final int NONE = -1;
+
+    private final LongDoubleMap scores = new LongDoubleMap();
+    private final boolean keepRows;
+
+    //per candidate (dense index of scores)
+    private int[] firstRow = new int[0];
+    private int[] lastRow = new int[0];
+
+    //per row
+    private float[] rowValues = new float[0];
+    private Object[][] rowReasons = new Object[0][];
+    private int[] nextRow = new int[0];
+    private int rows;
+
+    /**
+     * Create a new accumulator.
+     *
+     * @param keepRows <code>true</code> iff individual rows (their values and reasons) should be remembered, so that
+     *                 they can become separate reasons of the produced {@link PartialScore}s. If <code>false</code>,
+     *                 only the sum of the values is remembered for each candidate.
+     */
+    public CandidateAccumulator(boolean keepRows) {
+        this.keepRows = keepRows;
+    }
+
+    /**
+     * Add a row.
+     *
+     * @param id      ID of the recommended node.
+     * @param value   score value from the row.
+     * @param reasons values of the reason columns of the row, can be <code>null</code> if rows are not kept.
+     * @return dense index of the candidate.
+     */
+    public int add(long id, float value, Object[] reasons) {
+        int candidate = scores.add(id, value);
+
+        if (keepRows) {
+            addRow(candidate, value, reasons);
+        }
+
+        return candidate;
+    }
+
+    private void addRow(int candidate, float value, Object[] reasons) {
+        if (candidate >= firstRow.length) {
+            int newLength = Math.max(16, firstRow.length * 2);
+            firstRow = Arrays.copyOf(firstRow, newLength);
+            lastRow = Arrays.copyOf(lastRow, newLength);
+            Arrays.fill(firstRow, candidate, newLength, NONE);
+        }
+
+        if (rows == rowValues.length) {
+            int newLength = Math.max(16, rows * 2);
+            rowValues = Arrays.copyOf(rowValues, newLength);
+            rowReasons = Arrays.copyOf(rowReasons, newLength);
+            nextRow = Arrays.copyOf(nextRow, newLength);
+        }
+
+        rowValues[rows] = value;
+        rowReasons[rows] = reasons;
+        nextRow[rows] = NONE;
+
+        if (firstRow[candidate] == NONE) {
+            firstRow[candidate] = rows;
+        } else {
+            nextRow[lastRow[candidate]] = rows;
+        }
+        lastRow[candidate] = rows;
+
+        rows++;
+    }
+
+    /**
+     * @return number of distinct candidates.
+     */
+    public int size() {
+        return scores.size();
+    }
+
+    /**
+     * Get up to <code>n</code> candidates with the highest total scores.
+     *
+     * @param n maximum number of candidates.
+     * @return dense indices of candidates, ordered by score, descending.
+     */
+    public int[] top(int n) {
+        return scores.topIndices(n);
+    }
+
+    /**
+     * @param candidate dense index of a candidate.
+     * @return ID of the recommended node.
+     */
+    public long id(int candidate) {
+        return scores.keyAt(candidate);
+    }
+
+    /**
+     * @param candidate dense index of a candidate.
+     * @return total score of the candidate.
+     */
+    public float score(int candidate) {
+        return (float) scores.valueAt(candidate);
+    }
+
+    /**
+     * Produce a partial score for a candidate.
+     *
+     * @param candidate   dense index of a candidate.
+     * @param reasonNames names of the reason columns, in the same order as the reasons passed to {@link #add(long, float, Object[])}.
+     * @return partial score with one reason per row if rows are kept, with a single reason otherwise.
+     */
+    public PartialScore partialScore(int candidate, String[] reasonNames) {
+        if (!keepRows) {
+            return new PartialScore(score(candidate), Collections.<String, Object>emptyMap());
+        }
+
+        int row = firstRow[candidate];
+        PartialScore result = new PartialScore(rowValues[row], RowDecoder.reasons(reasonNames, rowReasons[row]));
+
+        for (row = nextRow[row]; row != NONE; row = nextRow[row]) {
+            result.add(rowValues[row], RowDecoder.reasons(reasonNames, rowReasons[row]));
+        }
+
+        return result;
+    }
+}
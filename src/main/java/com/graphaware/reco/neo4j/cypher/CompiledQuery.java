@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.cypher;
+
+/**
+ * A Cypher query that has been validated and planned by {@link CompiledQueryCache}.
+ * <p/>
+ * This is not an execution handle: the embedded Neo4j API has no prepared statements, so the query is still executed
+ * as a string, and parsed and looked up in Neo4j's query plan cache on every execution.
+ */
+public final class CompiledQuery {
+
+    private final String query;
+    private final long planningTime;
+
+    /**
+     * Create a new compiled query.
+     *
+     * @param query        the query. Must not be <code>null</code>.
+     * @param planningTime time in nanoseconds it took to validate and plan the query.
+     */
+    CompiledQuery(String query, long planningTime) {
+        this.query = query;
+        this.planningTime = planningTime;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * @return time in nanoseconds it took to validate and plan the query.
+     */
+    public long getPlanningTime() {
+        return planningTime;
+    }
+}
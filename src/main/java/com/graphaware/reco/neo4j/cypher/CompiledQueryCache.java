@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.cypher;
+
+import com.graphaware.common.log.LoggerFactory;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Result;
+import org.neo4j.logging.Log;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.springframework.util.Assert.hasLength;
+import static org.springframework.util.Assert.notNull;
+
+/**
+ * A per-database registry of queries warmed up by {@link Precompilable} components.
+ * <p/>
+ * The first time a query is compiled, it is validated and planned by running it with EXPLAIN, which does not touch
+ * any data but populates Neo4j's own query plan cache, so that invalid queries are detected at bootstrap and the
+ * first real execution doesn't pay for planning. This is a warm-up only: queries are still executed as strings and
+ * Neo4j may evict and re-plan them at any time, which this class can't observe. Compilations, their planning time, and
+ * requests for queries that had already been compiled (hits) are tracked per owner (typically the name of the engine or
+ * blacklist builder asking for the query) and exposed by {@link #getStatistics()}.
+ */
+public final class CompiledQueryCache {
+
+    private static final Log LOG = LoggerFactory.getLogger(CompiledQueryCache.class);
+
+    private static final Map<GraphDatabaseService, CompiledQueryCache> CACHES = Collections.synchronizedMap(new WeakHashMap<GraphDatabaseService, CompiledQueryCache>());
+
+    private final GraphDatabaseService database;
+    private final ConcurrentMap<String, CompiledQuery> queries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompiledQueryStatistics> statistics = new ConcurrentHashMap<>();
+
+    /**
+     * Get the cache for the given database.
+     *
+     * @param database database. Must not be <code>null</code>.
+     * @return cache, never <code>null</code>.
+     */
+    public static CompiledQueryCache forDatabase(GraphDatabaseService database) {
+        notNull(database);
+
+        synchronized (CACHES) {
+            CompiledQueryCache cache = CACHES.get(database);
+            if (cache == null) {
+                cache = new CompiledQueryCache(database);
+                CACHES.put(database, cache);
+            }
+            return cache;
+        }
+    }
+
+    private CompiledQueryCache(GraphDatabaseService database) {
+        this.database = database;
+    }
+
+    /**
+     * Validate and plan the given query, unless it has already been compiled against this database.
+     *
+     * @param owner name of the component the query belongs to, used for statistics. Must not be <code>null</code> or empty.
+     * @param query to compile. Must not be <code>null</code> or empty.
+     * @return compiled query.
+     * @throws org.neo4j.graphdb.QueryExecutionException in case the query is invalid.
+     */
+    public CompiledQuery compile(String owner, String query) {
+        hasLength(owner);
+        hasLength(query);
+
+        CompiledQuery compiled = queries.get(query);
+        if (compiled != null) {
+            statisticsOf(owner).hit();
+            return compiled;
+        }
+
+        compiled = plan(query);
+        CompiledQuery existing = queries.putIfAbsent(query, compiled);
+
+        if (existing != null) {
+            //compiled concurrently, only the planning that made it into the cache counts
+            statisticsOf(owner).hit();
+            return existing;
+        }
+
+        statisticsOf(owner).compiled(compiled.getPlanningTime());
+        LOG.debug("Compiled query of %s in %s us", owner, compiled.getPlanningTime() / 1000);
+        return compiled;
+    }
+
+    /**
+     * Get compilation statistics of all owners of queries compiled by this cache.
+     *
+     * @return read-only statistics keyed by owner.
+     */
+    public Map<String, CompiledQueryStatistics> getStatistics() {
+        return Collections.<String, CompiledQueryStatistics>unmodifiableMap(statistics);
+    }
+
+    /**
+     * Get compilation statistics of a single owner.
+     *
+     * @param owner name of the component.
+     * @return statistics, never <code>null</code>.
+     */
+    public CompiledQueryStatistics getStatistics(String owner) {
+        return statisticsOf(owner);
+    }
+
+    private CompiledQueryStatistics statisticsOf(String owner) {
+        CompiledQueryStatistics result = statistics.get(owner);
+        if (result == null) {
+            statistics.putIfAbsent(owner, new CompiledQueryStatistics());
+            result = statistics.get(owner);
+        }
+        return result;
+    }
+
+    private CompiledQuery plan(String query) {
+        long start = System.nanoTime();
+
+        try (Result ignored = database.execute("EXPLAIN " + query)) {
+            return new CompiledQuery(query, System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.cypher;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compilation statistics of a single component (engine, blacklist builder) tracked by {@link CompiledQueryCache}.
+ * These say nothing about Neo4j's own query plan cache, which isn't observable through the embedded API.
+ */
+public final class CompiledQueryStatistics {
+
+    private final AtomicLong compilations = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong planningTime = new AtomicLong();
+
+    void compiled(long planningTimeNanos) {
+        compilations.incrementAndGet();
+        planningTime.addAndGet(planningTimeNanos);
+    }
+
+    void hit() {
+        hits.incrementAndGet();
+    }
+
+    /**
+     * @return number of queries validated and planned with EXPLAIN.
+     */
+    public long getCompilations() {
+        return compilations.get();
+    }
+
+    /**
+     * @return number of requests for queries that had already been compiled against the database, by any component.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return total time in nanoseconds spent validating and planning queries.
+     */
+    public long getPlanningTime() {
+        return planningTime.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "compilations=" + getCompilations() + ", hits=" + getHits() + ", planningTime=" + getPlanningTime() / 1000 + "us";
+    }
+}
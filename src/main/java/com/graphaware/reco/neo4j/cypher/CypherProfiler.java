@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.cypher;
+
+import com.graphaware.common.log.LoggerFactory;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Result;
+import org.neo4j.logging.Log;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.springframework.util.Assert.hasLength;
+import static org.springframework.util.Assert.notNull;
+
+/**
+ * A sampling profiler of Cypher queries executed by engines and blacklist builders, which also serves as the registry
+ * of their profiling statistics.
+ * <p/>
+ * Components decide whether to profile an execution by calling {@link #sample(double)} with their sampling rate, run
+ * the sampled queries with PROFILE, and hand the results over to {@link #record(String, Result)} once consumed.
+ * Database hits, rows, and page cache hits and misses are then aggregated per owner (typically the name of the
+ * component) and exposed by {@link #getStatistics()}, along with the last {@link #MAX_RETAINED_PLANS} execution plans.
+ */
+public final class CypherProfiler {
+
+    private static final Log LOG = LoggerFactory.getLogger(CypherProfiler.class);
+
+    public static final int MAX_RETAINED_PLANS = 10;
+
+    private static final CypherProfiler INSTANCE = new CypherProfiler();
+
+    private final ConcurrentMap<String, ProfileStatistics> statistics = new ConcurrentHashMap<>();
+
+    public static CypherProfiler getInstance() {
+        return INSTANCE;
+    }
+
+    private CypherProfiler() {
+    }
+
+    /**
+     * Decide whether an execution should be profiled.
+     *
+     * @param rate fraction of executions to profile, between 0 (none) and 1 (all).
+     * @return <code>true</code> iff the execution should be profiled.
+     */
+    public boolean sample(double rate) {
+        if (rate <= 0) {
+            return false;
+        }
+
+        return rate >= 1 || ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    /**
+     * Execute a query, with PROFILE if requested.
+     *
+     * @param database   to execute the query against.
+     * @param query      to execute.
+     * @param parameters query parameters.
+     * @param profiled   <code>true</code> iff the query should be executed with PROFILE, typically decided by {@link #sample(double)}.
+     * @return query result. The caller is responsible for closing it and, if profiled, for passing it to {@link #record(String, Result)}.
+     */
+    public Result execute(GraphDatabaseService database, String query, Map<String, Object> parameters, boolean profiled) {
+        return database.execute(profiled ? "PROFILE " + query : query, parameters);
+    }
+
+    /**
+     * Record the profile of a query executed with PROFILE. Must be called before the result is closed and only after
+     * it has been consumed in full: getting the profile of a partially consumed result consumes the remaining rows,
+     * defeating any early stop. Profiles of results not consumed in full should not be recorded.
+     *
+     * @param owner  name of the component that executed the query. Must not be <code>null</code> or empty.
+     * @param result of a profiled query. Must not be <code>null</code>.
+     */
+    public void record(String owner, Result result) {
+        hasLength(owner);
+        notNull(result);
+
+        try {
+            statisticsOf(owner).record(result.getExecutionPlanDescription());
+        } catch (RuntimeException e) {
+            LOG.warn("Could not record profile of a query executed by " + owner, e);
+        }
+    }
+
+    /**
+     * Get profiling statistics of all owners of profiled queries.
+     *
+     * @return read-only statistics keyed by owner.
+     */
+    public Map<String, ProfileStatistics> getStatistics() {
+        return Collections.<String, ProfileStatistics>unmodifiableMap(statistics);
+    }
+
+    /**
+     * Get profiling statistics of a single owner.
+     *
+     * @param owner name of the component.
+     * @return statistics, never <code>null</code>.
+     */
+    public ProfileStatistics getStatistics(String owner) {
+        return statisticsOf(owner);
+    }
+
+    /**
+     * Discard all statistics.
+     */
+    public void clear() {
+        statistics.clear();
+    }
+
+    private ProfileStatistics statisticsOf(String owner) {
+        ProfileStatistics result = statistics.get(owner);
+        if (result == null) {
+            statistics.putIfAbsent(owner, new ProfileStatistics(MAX_RETAINED_PLANS));
+            result = statistics.get(owner);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.cypher;
+
+import com.graphaware.reco.generic.context.Context;
+
+import static org.springframework.util.Assert.notNull;
+
+/**
+ * A point in time by which a Cypher-backed component must have finished consuming its query results.
+ */
+public abstract class Deadline {
+
+    private static final ThreadLocal<Long> REQUEST_START = new ThreadLocal<>();
+
+    /**
+     * Deadline that never passes.
+     */
+    public static final Deadline NONE = new Deadline() {
+        @Override
+        public boolean passed() {
+            return false;
+        }
+    };
+
+    /**
+     * Get a deadline that passes when the given context has no time left.
+     *
+     * @param context of the current computation. Must not be <code>null</code>.
+     * @return deadline.
+     */
+    public static Deadline of(final Context<?, ?> context) {
+        notNull(context);
+
+        return new Deadline() {
+            @Override
+            public boolean passed() {
+                return !context.timeLeft();
+            }
+        };
+    }
+
+    /**
+     * Get a deadline that passes the given number of ms from now.
+     *
+     * @param maxTime in ms, typically {@link com.graphaware.reco.generic.config.Config#maxTime()}.
+     * @return deadline.
+     */
+    public static Deadline after(long maxTime) {
+        return at(System.currentTimeMillis(), maxTime);
+    }
+
+    /**
+     * Get a deadline that passes the given number of ms after the current top-level recommendation request (see
+     * {@link #startRequest()}) has started. When called outside of a request, this is equivalent to {@link #after(long)}.
+     *
+     * @param maxTime in ms, typically {@link com.graphaware.reco.generic.config.Config#maxTime()}.
+     * @return deadline.
+     */
+    public static Deadline ofRequest(long maxTime) {
+        Long start = REQUEST_START.get();
+        return at(start != null ? start : System.currentTimeMillis(), maxTime);
+    }
+
+    /**
+     * Mark the start of a top-level recommendation request on the current thread, so that components without access
+     * to the request's {@link Context} can still measure their deadline from it using {@link #ofRequest(long)}.
+     *
+     * @return start of the enclosing request, if any, to be passed to {@link #endRequest(Long)}. Can be <code>null</code>.
+     */
+    public static Long startRequest() {
+        Long enclosing = REQUEST_START.get();
+        REQUEST_START.set(System.currentTimeMillis());
+        return enclosing;
+    }
+
+    /**
+     * Mark the end of a top-level recommendation request on the current thread.
+     *
+     * @param enclosing value returned by the corresponding {@link #startRequest()}.
+     */
+    public static void endRequest(Long enclosing) {
+        if (enclosing == null) {
+            REQUEST_START.remove();
+        } else {
+            REQUEST_START.set(enclosing);
+        }
+    }
+
+    private static Deadline at(long start, long maxTime) {
+        final long deadline = maxTime >= Long.MAX_VALUE - start ? Long.MAX_VALUE : start + maxTime;
+
+        return new Deadline() {
+            @Override
+            public boolean passed() {
+                return System.currentTimeMillis() > deadline;
+            }
+        };
+    }
+
+    /**
+     * @return <code>true</code> iff the deadline has passed.
+     */
+    public abstract boolean passed();
+}
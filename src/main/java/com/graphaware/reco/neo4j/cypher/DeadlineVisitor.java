@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.cypher;
+
+import org.neo4j.graphdb.Result;
+
+/**
+ * {@link Result.ResultVisitor} that stops consuming query results once a {@link Deadline} has passed. Since Cypher
+ * produces rows lazily where it can, this also stops the query from doing any further work.
+ */
+public abstract class DeadlineVisitor implements Result.ResultVisitor<RuntimeException> {
+
+    private final Deadline deadline;
+    private boolean interrupted = false;
+    private boolean stopped = false;
+
+    /**
+     * Create a new visitor.
+     *
+     * @param deadline by which the visiting must stop.
+     */
+    protected DeadlineVisitor(Deadline deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final boolean visit(Result.ResultRow row) {
+        if (deadline.passed()) {
+            interrupted = true;
+            stopped = true;
+            return false;
+        }
+
+        if (!visitRow(row)) {
+            stopped = true;
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Visit a row of results.
+     *
+     * @param row of results.
+     * @return <code>true</code> to continue visiting, <code>false</code> to stop.
+     */
+    protected abstract boolean visitRow(Result.ResultRow row);
+
+    /**
+     * @return <code>true</code> iff the visiting was stopped because the deadline has passed, i.e. not all rows have
+     * been visited.
+     */
+    public boolean interrupted() {
+        return interrupted;
+    }
+
+    /**
+     * @return <code>true</code> iff the visiting was stopped before all rows have been visited, because the deadline
+     * has passed or {@link #visitRow(Result.ResultRow)} returned <code>false</code>.
+     */
+    public boolean stopped() {
+        return stopped;
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.cypher;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+
+/**
+ * A component backed by one or more Cypher queries that can be validated and planned upfront, before the first
+ * recommendation is computed.
+ */
+public interface Precompilable {
+
+    /**
+     * Validate and plan all Cypher queries of this component against the given database through
+     * {@link CompiledQueryCache}, so that invalid queries fail early and Neo4j's query plan cache is warm.
+     *
+     * @param database to compile the queries against. Must not be <code>null</code>.
+     */
+    void precompile(GraphDatabaseService database);
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.cypher;
+
+import org.neo4j.graphdb.ExecutionPlanDescription;
+
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Profiling statistics of a single component (engine, blacklist builder) collected by {@link CypherProfiler}.
+ * <p/>
+ * Totals are summed up over all profiled executions. The last few execution plans are retained as well.
+ */
+public final class ProfileStatistics {
+
+    private final int maxRetainedPlans;
+
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong dbHits = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong pageCacheHits = new AtomicLong();
+    private final AtomicLong pageCacheMisses = new AtomicLong();
+    private final Deque<ExecutionPlanDescription> plans = new ArrayDeque<>();
+
+    ProfileStatistics(int maxRetainedPlans) {
+        this.maxRetainedPlans = maxRetainedPlans;
+    }
+
+    void record(ExecutionPlanDescription plan) {
+        executions.incrementAndGet();
+
+        if (plan.hasProfilerStatistics()) {
+            rows.addAndGet(plan.getProfilerStatistics().getRows());
+        }
+
+        recordOperator(plan);
+
+        synchronized (plans) {
+            plans.addLast(plan);
+            while (plans.size() > maxRetainedPlans) {
+                plans.removeFirst();
+            }
+        }
+    }
+
+    private void recordOperator(ExecutionPlanDescription operator) {
+        if (operator.hasProfilerStatistics()) {
+            ExecutionPlanDescription.ProfilerStatistics statistics = operator.getProfilerStatistics();
+            dbHits.addAndGet(statistics.getDbHits());
+            pageCacheHits.addAndGet(statistics.getPageCacheHits());
+            pageCacheMisses.addAndGet(statistics.getPageCacheMisses());
+        }
+
+        for (ExecutionPlanDescription child : operator.getChildren()) {
+            recordOperator(child);
+        }
+    }
+
+    /**
+     * @return number of profiled executions.
+     */
+    public long getExecutions() {
+        return executions.get();
+    }
+
+    /**
+     * @return total number of database hits of all operators in all profiled executions.
+     */
+    public long getDbHits() {
+        return dbHits.get();
+    }
+
+    /**
+     * @return total number of rows returned by profiled executions.
+     */
+    public long getRows() {
+        return rows.get();
+    }
+
+    /**
+     * @return total number of page cache hits of all operators in all profiled executions.
+     */
+    public long getPageCacheHits() {
+        return pageCacheHits.get();
+    }
+
+    /**
+     * @return total number of page cache misses (page faults) of all operators in all profiled executions.
+     */
+    public long getPageCacheMisses() {
+        return pageCacheMisses.get();
+    }
+
+    /**
+     * @return execution plans of the most recent profiled executions, oldest first.
+     */
+    public List<ExecutionPlanDescription> getRecentPlans() {
+        synchronized (plans) {
+            return new ArrayList<>(plans);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "executions=" + getExecutions() + ", dbHits=" + getDbHits() + ", rows=" + getRows() + ", pageCacheHits=" + getPageCacheHits() + ", pageCacheMisses=" + getPageCacheMisses();
+    }
+}
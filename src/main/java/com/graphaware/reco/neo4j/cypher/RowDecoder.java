@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.cypher;
+
+import org.neo4j.graphdb.Result;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decoder of rows returned by a recommendation query, which works out the role of each column (recommendation, score,
+ * or reason) once per query rather than once per row.
+ * <p/>
+ * Scores are read as primitive floats straight from the numeric values Cypher produced. Reasons are captured as plain
+ * arrays of column values by {@link #reasonValues(Result.ResultRow)}, which are only turned into {@link Map}s by
+ * {@link #reasons(Object[])} for recommendations that are actually returned.
+ */
+public final class RowDecoder {
+
+    private final String recoColumn;
+    private final String scoreColumn;
+    private final float defaultScore;
+    private final String[] reasonColumns;
+
+    /**
+     * Create a decoder for a query result.
+     *
+     * @param columns      columns of the query result.
+     * @param recoColumn   name of the column holding recommendations.
+     * @param scoreColumn  name of the column holding scores.
+     * @param defaultScore score to use if the result has no score column.
+     * @param otherColumns names of other columns that are not reasons (e.g. the input column of a batch query).
+     */
+    public RowDecoder(List<String> columns, String recoColumn, String scoreColumn, float defaultScore, String... otherColumns) {
+        List<String> reasons = new ArrayList<>();
+        List<String> others = Arrays.asList(otherColumns);
+        boolean hasScore = false;
+
+        for (String column : columns) {
+            if (column.equals(scoreColumn)) {
+                hasScore = true;
+            } else if (!column.equals(recoColumn) && !others.contains(column)) {
+                reasons.add(column);
+            }
+        }
+
+        this.recoColumn = recoColumn;
+        this.scoreColumn = hasScore ? scoreColumn : null;
+        this.defaultScore = defaultScore;
+        this.reasonColumns = reasons.toArray(new String[reasons.size()]);
+    }
+
+    /**
+     * @param row of results.
+     * @return value of the recommendation column, can be <code>null</code>.
+     */
+    public Object reco(Result.ResultRow row) {
+        return row.get(recoColumn);
+    }
+
+    /**
+     * @param row of results.
+     * @return score of the row, or the default score if the result has no score column.
+     */
+    public float score(Result.ResultRow row) {
+        if (scoreColumn == null) {
+            return defaultScore;
+        }
+
+        return toFloat(row.get(scoreColumn));
+    }
+
+    /**
+     * @return <code>true</code> iff the result has at least one reason column.
+     */
+    public boolean hasReasons() {
+        return reasonColumns.length > 0;
+    }
+
+    /**
+     * @return names of reason columns, in the order in which {@link #reasonValues(Result.ResultRow)} returns their values.
+     */
+    public String[] reasonColumns() {
+        return reasonColumns;
+    }
+
+    /**
+     * Capture the values of reason columns of a row.
+     *
+     * @param row of results.
+     * @return values of reason columns, <code>null</code> if there are none.
+     */
+    public Object[] reasonValues(Result.ResultRow row) {
+        if (reasonColumns.length == 0) {
+            return null;
+        }
+
+        Object[] result = new Object[reasonColumns.length];
+        for (int i = 0; i < reasonColumns.length; i++) {
+            result[i] = row.get(reasonColumns[i]);
+        }
+
+        return result;
+    }
+
+    /**
+     * Materialize reasons captured by {@link #reasonValues(Result.ResultRow)}.
+     *
+     * @param values captured values, can be <code>null</code>.
+     * @return reasons keyed by column name, never <code>null</code>.
+     */
+    public Map<String, Object> reasons(Object[] values) {
+        return reasons(reasonColumns, values);
+    }
+
+    static Map<String, Object> reasons(String[] names, Object[] values) {
+        if (values == null) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, Object> result = new HashMap<>(names.length * 2);
+        for (int i = 0; i < names.length; i++) {
+            result.put(names[i], values[i]);
+        }
+
+        return result;
+    }
+
+    private static float toFloat(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).floatValue();
+        }
+
+        return Float.valueOf(String.valueOf(value));
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.engine;
+
+import com.graphaware.reco.generic.engine.SingleScoreRecommendationEngine;
+import com.graphaware.reco.generic.result.PartialScore;
+import com.graphaware.reco.neo4j.cypher.CompiledQueryCache;
+import com.graphaware.reco.neo4j.cypher.CypherProfiler;
+import com.graphaware.reco.neo4j.cypher.Precompilable;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Result;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Base class for {@link SingleScoreRecommendationEngine}s finding recommendations by executing a Cypher query, holding
+ * the query plumbing shared by {@link BaseCypherEngine} and {@link BaseBatchCypherEngine}: pre-compilation, profiling,
+ * and names of common parameters and result columns.
+ */
+public abstract class AbstractCypherEngine extends SingleScoreRecommendationEngine<Node, Node> implements Precompilable {
+
+    /**
+     * Name of the reason detail that flags recommendations computed from partial query results, because the deadline
+     * of the computation has passed while the results were being consumed.
+     */
+    public static final String PARTIAL = "partial";
+
+    /**
+     * @return the Cypher query that returns recommendations. Must not be <code>null</code> or empty.
+     */
+    protected abstract String query();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void precompile(GraphDatabaseService database) {
+        if (precompiled()) {
+            CompiledQueryCache.forDatabase(database).compile(name(), query());
+        }
+    }
+
+    /**
+     * Execute the query.
+     *
+     * @param database to execute the query against.
+     * @param params   query parameters.
+     * @param profiled <code>true</code> iff the query should be executed with PROFILE.
+     * @return query result. The caller is responsible for closing it.
+     */
+    protected final Result execute(GraphDatabaseService database, Map<String, Object> params, boolean profiled) {
+        return CypherProfiler.getInstance().execute(database, query(), params, profiled);
+    }
+
+    /**
+     * Flag recommendations computed from partial query results with a zero-valued reason with {@link #PARTIAL} detail.
+     *
+     * @param recommendations to flag.
+     */
+    protected final void markPartial(Map<Node, PartialScore> recommendations) {
+        for (PartialScore score : recommendations.values()) {
+            score.add(0, Collections.<String, Object>singletonMap(PARTIAL, true));
+        }
+    }
+
+    /**
+     * Get the fraction of query executions that should be run with PROFILE and recorded by {@link CypherProfiler}
+     * under the engine's {@link #name()}. Intended to be overridden.
+     *
+     * @return fraction between 0 (no profiling) and 1 (profile every execution), 0 by default.
+     */
+    protected double profilingRate() {
+        return 0;
+    }
+
+    /**
+     * Should the query be validated and planned through {@link CompiledQueryCache} when {@link #precompile(GraphDatabaseService)}
+     * is called (typically at bootstrap)? This only warms up Neo4j's query plan cache, executions are not affected.
+     * Intended to be overridden.
+     *
+     * @return <code>true</code> iff the query should be pre-compiled, <code>false</code> by default.
+     */
+    protected boolean precompiled() {
+        return false;
+    }
+
+    /**
+     * Get the name of the parameter that represents limit (to the number of results).
+     *
+     * @return limit parameter name, "limit" by default.
+     */
+    protected String limitParamName() {
+        return "limit";
+    }
+
+    /**
+     * Get the name of the result column that contains computed recommendations.
+     *
+     * @return recommended items result name, "reco" by default.
+     */
+    protected String recoResultName() {
+        return "reco";
+    }
+
+    /**
+     * Get the name of the result column that contains scores of computed recommendations.
+     *
+     * @return recommended items score result name, "score" by default.
+     */
+    protected String scoreResultName() {
+        return "score";
+    }
+
+    /**
+     * Get default score value assigned to each recommendation in case the Cypher query result does not contain a score
+     * column.
+     *
+     * @return default score, 1.0 by default.
+     */
+    protected float defaultScore() {
+        return 1;
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.engine;
+
+import com.graphaware.common.log.LoggerFactory;
+import com.graphaware.reco.generic.config.Config;
+import com.graphaware.reco.generic.context.Context;
+import com.graphaware.reco.generic.result.PartialScore;
+import com.graphaware.reco.neo4j.cypher.CypherProfiler;
+import com.graphaware.reco.neo4j.cypher.Deadline;
+import com.graphaware.reco.neo4j.cypher.DeadlineVisitor;
+import com.graphaware.reco.neo4j.cypher.RowDecoder;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Result;
+import org.neo4j.logging.Log;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.util.Assert.notNull;
+
+/**
+ * {@link SingleScoreRecommendationEngine} based on finding recommendations for many input nodes by executing a single
+ * Cypher query.
+ * <p/>
+ * An example query can look like this:
+ * <code>"UNWIND {ids} AS id MATCH (p:Person)-[:FRIEND_OF]-(f)-[:FRIEND_OF]-(reco) WHERE id(p)=id AND NOT (p)-[:FRIEND_OF]-(reco) RETURN p AS input, reco, count(*) as score"</code>
+ * {ids} will be provided as a parameter by the engine, holding IDs of all input nodes of the batch, {limit} will
+ * hold the configured limit per input. "input" must be the input node (or its ID), "reco" and "score" will become the
+ * recommended nodes (or their IDs) and their respective scores. All other values returned by the query must be scalars
+ * and will become reasons for the recommendation. Note that Cypher LIMIT applies to the whole batch, so it should not
+ * be used to limit the number of recommendations per input.
+ * <p/>
+ * When used on its own, the engine executes the query with a single ID. When called within
+ * {@link Neo4jTopLevelDelegatingRecommendationEngine#recommend(List, Config)}, the query is executed once for the
+ * whole batch and recommendations for individual inputs are served from the prefetched results.
+ * <p/>
+ * A query for a single input stops being consumed once the time allowed for the computation runs out, just like in
+ * {@link BaseCypherEngine}. A query for a whole batch is always consumed in full.
+ */
+public abstract class BaseBatchCypherEngine extends AbstractCypherEngine implements BatchingEngine {
+
+    private static final Log LOG = LoggerFactory.getLogger(BaseBatchCypherEngine.class);
+
+    /**
+     * @return the Cypher query that returns recommendations for a batch of inputs. Must use {@link #idsParamName()}
+     * as a placeholder representing the IDs of the input nodes. Must return input nodes named {@link #inputResultName()}
+     * and recommended nodes named {@link #recoResultName()}. Should return a score, i.e. a numerical value for each
+     * recommendation named {@link #scoreResultName()}. Must not be <code>null</code> or empty.
+     */
+    @Override
+    protected abstract String query();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void prefetch(List<Node> inputs, Config config, PrefetchedRecommendations prefetched) {
+        notNull(inputs);
+        notNull(prefetched);
+
+        if (inputs.isEmpty()) {
+            return;
+        }
+
+        //a whole batch is not subject to the time limit of a single computation
+        prefetched.put(name(), execute(inputs.get(0).getGraphDatabase(), inputs, config, Deadline.NONE));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final Map<Node, PartialScore> doRecommendSingle(Node input, Context<Node, Node> context) {
+        PrefetchedRecommendations prefetched = PrefetchedRecommendations.current();
+        Map<Node, PartialScore> result = prefetched == null ? null : prefetched.get(name(), input.getId());
+
+        if (result == null) {
+            result = execute(input.getGraphDatabase(), Collections.singletonList(input), context.config(), Deadline.of(context)).get(input.getId());
+        }
+
+        return result;
+    }
+
+    private Map<Long, Map<Node, PartialScore>> execute(final GraphDatabaseService database, List<Node> inputs, Config config, Deadline deadline) {
+        if (deadline.passed()) {
+            return Collections.singletonMap(inputs.get(0).getId(), (Map<Node, PartialScore>) new HashMap<Node, PartialScore>());
+        }
+
+        boolean profiled = CypherProfiler.getInstance().sample(profilingRate());
+        Result queryResult = execute(database, buildParams(inputs, config), profiled);
+
+        final RowDecoder decoder = new RowDecoder(queryResult.columns(), recoResultName(), scoreResultName(), defaultScore(), inputResultName());
+        final Map<Long, Map<Node, PartialScore>> result = new HashMap<>();
+        for (Node input : inputs) {
+            result.put(input.getId(), new HashMap<Node, PartialScore>());
+        }
+
+        DeadlineVisitor visitor = new DeadlineVisitor(deadline) {
+            @Override
+            protected boolean visitRow(Result.ResultRow row) {
+                Object input = row.get(inputResultName());
+                Object reco = decoder.reco(row);
+                if (input == null || reco == null) {
+                    return true;
+                }
+
+                long inputId = input instanceof Node ? ((Node) input).getId() : ((Number) input).longValue();
+                Node recoNode = reco instanceof Node ? (Node) reco : database.getNodeById(((Number) reco).longValue());
+
+                Map<Node, PartialScore> recommendations = result.get(inputId);
+                if (recommendations == null) {
+                    return true;
+                }
+
+                addToResult(recommendations, recoNode, new PartialScore(decoder.score(row), decoder.reasons(decoder.reasonValues(row))));
+                return true;
+            }
+        };
+
+        try {
+            queryResult.accept(visitor);
+
+            //the profile of a result that hasn't been consumed in full would only be available after consuming the rest
+            if (profiled && !visitor.stopped()) {
+                CypherProfiler.getInstance().record(name(), queryResult);
+            }
+        } finally {
+            queryResult.close();
+        }
+
+        if (visitor.interrupted()) {
+            LOG.warn("%s: deadline passed while consuming query results, returning partial results", name());
+
+            for (Map<Node, PartialScore> recommendations : result.values()) {
+                markPartial(recommendations);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Build parameters that will be passed into the Cypher query.
+     *
+     * @param inputs to the recommendation engine.
+     * @param config of the computation.
+     * @return map of named parameters.
+     */
+    protected Map<String, Object> buildParams(List<Node> inputs, Config config) {
+        long[] ids = new long[inputs.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = inputs.get(i).getId();
+        }
+
+        Map<String, Object> params = new HashMap<>();
+        params.put(idsParamName(), ids);
+        params.put(limitParamName(), config.limit());
+        return params;
+    }
+
+    /**
+     * Get the name of the parameter that represents input node IDs.
+     *
+     * @return input node IDs parameter name, "ids" by default.
+     */
+    protected String idsParamName() {
+        return "ids";
+    }
+
+    /**
+     * Get the name of the result column that contains input nodes.
+     *
+     * @return input result name, "input" by default.
+     */
+    protected String inputResultName() {
+        return "input";
+    }
+}
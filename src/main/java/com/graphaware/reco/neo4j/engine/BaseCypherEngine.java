@@ -16,14 +16,29 @@
 
 package com.graphaware.reco.neo4j.engine;
 
+import com.graphaware.common.log.LoggerFactory;
 import com.graphaware.reco.generic.context.Context;
 import com.graphaware.reco.generic.engine.SingleScoreRecommendationEngine;
 import com.graphaware.reco.generic.result.PartialScore;
+import com.graphaware.reco.neo4j.cypher.CandidateAccumulator;
+import com.graphaware.reco.neo4j.cypher.CompiledQueryCache;
+import com.graphaware.reco.neo4j.cypher.CypherProfiler;
+import com.graphaware.reco.neo4j.cypher.Deadline;
+import com.graphaware.reco.neo4j.cypher.DeadlineVisitor;
+import com.graphaware.reco.neo4j.cypher.RowDecoder;
+import com.graphaware.reco.neo4j.util.BoundedScoreHeap;
+import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Result;
+import org.neo4j.logging.Log;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.springframework.util.Assert.isTrue;
 
 /**
  * {@link SingleScoreRecommendationEngine} based on finding recommendations by executing a Cypher query.
@@ -33,8 +48,35 @@ import java.util.Map;
  * {id} and {limit} will be provided as parameters by the engine. "reco" and "score" will become the recommended nodes
  * and their respective scores. All other values returned by the query (e.g. "name" in this case) must be scalars and
  * will become reasons for the recommendation.
+ * <p/>
+ * When {@link #precompiled()} returns <code>true</code>, the query is validated and planned by {@link CompiledQueryCache}
+ * when {@link #precompile(GraphDatabaseService)} is called at bootstrap, which tracks planning time under the engine's
+ * {@link #name()}.
+ * <p/>
+ * When {@link #idsOnly()} returns <code>true</code>, the query must return node IDs rather than nodes in the
+ * {@link #recoResultName()} column (e.g. <code>RETURN id(reco) AS reco, count(*) AS score</code>). Candidates are then
+ * accumulated in primitive form and {@link Node}s and {@link PartialScore}s are only created for the best
+ * {@link #maxCandidates(Context)} of them.
+ * <p/>
+ * When {@link #streaming()} returns <code>true</code>, rows are fed into a bounded heap of size
+ * {@link #maxCandidates(Context)} as the result is being iterated, so that memory is proportional to the number of
+ * candidates kept rather than to the number of rows. If, moreover, {@link #orderedByScore()} declares that rows arrive
+ * in descending score order, the result is closed as soon as the heap is full.
+ * <p/>
+ * Rows are read through a {@link RowDecoder}, which works out the role of each column once per query, reads scores
+ * without string conversions, and defers building reason maps until a recommendation is actually returned.
+ * <p/>
+ * Unless {@link #deadlineAware()} returns <code>false</code>, the engine stops consuming query results when the time
+ * allowed for the computation runs out and returns the partial results gathered so far, flagged as {@link #PARTIAL}.
+ * <p/>
+ * A fraction of executions given by {@link #profilingRate()} is run with PROFILE, and the profiles are aggregated by
+ * {@link CypherProfiler} under the engine's {@link #name()}.
  */
-public abstract class BaseCypherEngine extends SingleScoreRecommendationEngine<Node, Node> {
+public abstract class BaseCypherEngine extends AbstractCypherEngine {
+
+    private static final Log LOG = LoggerFactory.getLogger(BaseCypherEngine.class);
+
+    private volatile Boolean overridesRowMethods;
 
     /**
      * @return the Cypher query that returns recommendations. Can have {@link #idParamName()} as a placeholder
@@ -42,6 +84,7 @@ public abstract class BaseCypherEngine extends SingleScoreRecommendationEngine<N
      * Should return a score, i.e. a numerical value for each recommendation named {@link #scoreResultName()}.
      * Can use {@link #limitParamName()} as a placeholder for Cypher LIMIT value. Must not be <code>null</code> or empty.
      */
+    @Override
     protected abstract String query();
 
     /**
@@ -49,11 +92,88 @@ public abstract class BaseCypherEngine extends SingleScoreRecommendationEngine<N
      */
     @Override
     protected final Map<Node, PartialScore> doRecommendSingle(Node input, Context<Node, Node> context) {
+        //rows aren't read as maps when ranked by the engine itself, so overrides of buildScore and reasons would be ignored
+        isTrue(!(streaming() || idsOnly()) || !mapsRows(), name() + ": mapsRows() can't be combined with idsOnly() or streaming()");
+
+        Deadline deadline = deadlineAware() ? Deadline.of(context) : Deadline.NONE;
+
+        if (deadline.passed()) {
+            LOG.debug("%s: no time left, not executing query", name());
+            return new HashMap<>();
+        }
+
+        boolean profiled = CypherProfiler.getInstance().sample(profilingRate());
+        Result queryResult = execute(input.getGraphDatabase(), buildParams(input, context), profiled);
+
+        try {
+            AtomicBoolean consumed = new AtomicBoolean(true);
+            Map<Node, PartialScore> result = recommend(input.getGraphDatabase(), queryResult, context, deadline, consumed);
+
+            //the profile of a result that hasn't been consumed in full would only be available after consuming the rest
+            if (profiled && consumed.get()) {
+                CypherProfiler.getInstance().record(name(), queryResult);
+            }
+
+            return result;
+        } finally {
+            queryResult.close();
+        }
+    }
+
+    private Map<Node, PartialScore> recommend(GraphDatabaseService database, Result queryResult, Context<Node, Node> context, Deadline deadline, AtomicBoolean consumed) {
+        if (streaming()) {
+            return recommendStreaming(database, queryResult, context, deadline, consumed);
+        }
+
+        if (idsOnly()) {
+            return recommendByIds(database, queryResult, context, deadline, consumed);
+        }
+
+        if (mapsRows()) {
+            return recommendFromMaps(queryResult, deadline, consumed);
+        }
+
+        return recommendFromRows(queryResult, deadline, consumed);
+    }
+
+    private Map<Node, PartialScore> recommendFromRows(Result queryResult, Deadline deadline, AtomicBoolean consumed) {
+        final RowDecoder decoder = decoder(queryResult);
+        //every row becomes a reason, as before, but rows only capture their values until all rows have been consumed
+        final CandidateAccumulator candidates = new CandidateAccumulator(true);
+        final List<Node> nodes = new ArrayList<>();
+
+        DeadlineVisitor visitor = new DeadlineVisitor(deadline) {
+            @Override
+            protected boolean visitRow(Result.ResultRow row) {
+                Node reco = (Node) decoder.reco(row);
+                if (reco != null && candidates.add(reco.getId(), decoder.score(row), decoder.reasonValues(row)) == nodes.size()) {
+                    nodes.add(reco);
+                }
+                return true;
+            }
+        };
+
+        queryResult.accept(visitor);
+        consumed.set(!visitor.stopped());
+
         Map<Node, PartialScore> result = new HashMap<>();
 
-        Result queryResult = input.getGraphDatabase().execute(query(), buildParams(input, context));
+        for (int candidate = 0; candidate < candidates.size(); candidate++) {
+            addToResult(result, nodes.get(candidate), candidates.partialScore(candidate, decoder.reasonColumns()));
+        }
+
+        return markPartialIf(visitor.interrupted(), result);
+    }
+
+    private Map<Node, PartialScore> recommendFromMaps(Result queryResult, Deadline deadline, AtomicBoolean consumed) {
+        Map<Node, PartialScore> result = new HashMap<>();
 
         while (queryResult.hasNext()) {
+            if (deadline.passed()) {
+                consumed.set(false);
+                return markPartialIf(true, result);
+            }
+
             Map<String, Object> row = queryResult.next();
 
             addToResult(result, (Node) row.get(recoResultName()), buildScore(row));
@@ -62,6 +182,193 @@ public abstract class BaseCypherEngine extends SingleScoreRecommendationEngine<N
         return result;
     }
 
+    private Map<Node, PartialScore> recommendByIds(GraphDatabaseService database, Result queryResult, Context<Node, Node> context, Deadline deadline, AtomicBoolean consumed) {
+        final RowDecoder decoder = decoder(queryResult);
+        final CandidateAccumulator candidates = new CandidateAccumulator(decoder.hasReasons());
+
+        DeadlineVisitor visitor = new DeadlineVisitor(deadline) {
+            @Override
+            protected boolean visitRow(Result.ResultRow row) {
+                Object id = decoder.reco(row);
+                if (id != null) {
+                    candidates.add(((Number) id).longValue(), decoder.score(row), decoder.reasonValues(row));
+                }
+                return true;
+            }
+        };
+
+        queryResult.accept(visitor);
+        consumed.set(!visitor.stopped());
+
+        Map<Node, PartialScore> result = new HashMap<>();
+
+        for (int candidate : candidates.top(maxCandidates(context))) {
+            result.put(database.getNodeById(candidates.id(candidate)), candidates.partialScore(candidate, decoder.reasonColumns()));
+        }
+
+        return markPartialIf(visitor.interrupted(), result);
+    }
+
+    private Map<Node, PartialScore> recommendStreaming(GraphDatabaseService database, Result queryResult, Context<Node, Node> context, Deadline deadline, AtomicBoolean consumed) {
+        final RowDecoder decoder = decoder(queryResult);
+        final BoundedScoreHeap heap = new BoundedScoreHeap(maxCandidates(context));
+        final boolean ordered = orderedByScore();
+
+        DeadlineVisitor visitor = new DeadlineVisitor(deadline) {
+            @Override
+            protected boolean visitRow(Result.ResultRow row) {
+                if (ordered && heap.isFull()) {
+                    return false;
+                }
+
+                Object reco = decoder.reco(row);
+                float score = decoder.score(row);
+                if (reco == null || !heap.accepts(score)) {
+                    return true;
+                }
+
+                if (reco instanceof Node) {
+                    heap.offer(((Node) reco).getId(), score, reco, decoder.reasonValues(row));
+                } else {
+                    heap.offer(((Number) reco).longValue(), score, null, decoder.reasonValues(row));
+                }
+
+                return true;
+            }
+        };
+
+        queryResult.accept(visitor);
+        consumed.set(!visitor.stopped());
+
+        heap.sortDescending();
+
+        Map<Node, PartialScore> result = new HashMap<>();
+
+        for (int i = 0; i < heap.size(); i++) {
+            Node node = heap.item(i) != null ? (Node) heap.item(i) : database.getNodeById(heap.id(i));
+            addToResult(result, node, new PartialScore(heap.score(i), decoder.reasons((Object[]) heap.data(i))));
+        }
+
+        return markPartialIf(visitor.interrupted(), result);
+    }
+
+    private Map<Node, PartialScore> markPartialIf(boolean partial, Map<Node, PartialScore> result) {
+        if (partial) {
+            LOG.warn("%s: deadline passed while consuming query results, returning %s partial results", name(), result.size());
+
+            markPartial(result);
+        }
+
+        return result;
+    }
+
+    private RowDecoder decoder(Result queryResult) {
+        return new RowDecoder(queryResult.columns(), recoResultName(), scoreResultName(), defaultScore());
+    }
+
+    /**
+     * Should the engine stop consuming query results once the time allowed for the computation (see
+     * {@link com.graphaware.reco.generic.config.Config#maxTime()}) has run out? If so, recommendations gathered so far
+     * are returned, each flagged with a zero-valued reason with {@link #PARTIAL} detail. Note that Cypher can only stop
+     * early if the query produces rows lazily, i.e. it does not aggregate or sort. Intended to be overridden.
+     *
+     * @return <code>true</code> iff the deadline should be enforced, <code>true</code> by default.
+     */
+    protected boolean deadlineAware() {
+        return true;
+    }
+
+    /**
+     * Should rows be read as maps and passed to {@link #buildScore(Map)}, as was the case before rows were decoded by
+     * {@link RowDecoder}? Can't be combined with {@link #idsOnly()} or {@link #streaming()}. Intended to be overridden.
+     *
+     * @return <code>true</code> iff rows should be read as maps, by default iff this engine overrides
+     * {@link #buildScore(Map)} or {@link #reasons(Map)}.
+     * @deprecated only for engines that still override {@link #buildScore(Map)} or {@link #reasons(Map)}.
+     */
+    @Deprecated
+    protected boolean mapsRows() {
+        Boolean result = overridesRowMethods;
+        if (result == null) {
+            result = overrides("buildScore") || overrides("reasons");
+            overridesRowMethods = result;
+        }
+        return result;
+    }
+
+    private boolean overrides(String methodName) {
+        for (Class<?> c = getClass(); c != BaseCypherEngine.class; c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod(methodName, Map.class);
+                return true;
+            } catch (NoSuchMethodException e) {
+                //continue with superclass
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Does the query return node IDs rather than nodes in the {@link #recoResultName()} column? Intended to be overridden.
+     * <p/>
+     * Candidates are then ranked by the engine and only the best {@link #maxCandidates(Context)} of them are returned,
+     * i.e. the result is truncated before blacklists and filters run. If many candidates are likely to be blacklisted or
+     * filtered out, {@link #oversampling()} should be raised, otherwise fewer than the configured limit of
+     * recommendations may be produced. Can't be combined with {@link #mapsRows()}.
+     *
+     * @return <code>true</code> iff the query returns IDs, <code>false</code> by default.
+     */
+    protected boolean idsOnly() {
+        return false;
+    }
+
+    /**
+     * Should the query result be streamed into a bounded heap of {@link #maxCandidates(Context)} best candidates?
+     * Intended to be overridden.
+     * <p/>
+     * Rows are not aggregated by recommendation before being offered to the heap, so the query should return each
+     * recommendation at most once (e.g. by aggregating with <code>count(*) AS score</code>). Rows of the same
+     * recommendation are only summed up if all of them make it into the heap.
+     *
+     * @return <code>true</code> iff results should be streamed, <code>false</code> by default.
+     */
+    protected boolean streaming() {
+        return false;
+    }
+
+    /**
+     * Does the query return rows in descending order of {@link #scoreResultName()}? When <code>true</code> and
+     * {@link #streaming()} is enabled, the result is closed as soon as {@link #maxCandidates(Context)} rows have been
+     * consumed. Intended to be overridden.
+     *
+     * @return <code>true</code> iff rows are ordered by score, descending. <code>false</code> by default.
+     */
+    protected boolean orderedByScore() {
+        return false;
+    }
+
+    /**
+     * Get the maximum number of best-scoring candidates that are turned into recommendations when {@link #idsOnly()}
+     * or {@link #streaming()} is <code>true</code>. Candidates may still be blacklisted or filtered out later, so this should be higher than
+     * {@link Context#config()} {@link com.graphaware.reco.generic.config.Config#limit()}.
+     *
+     * @param context of the current computation.
+     * @return maximum number of candidates. By default {@link #oversampling()} times the configured limit.
+     */
+    protected int maxCandidates(Context<Node, Node> context) {
+        return (int) Math.min(Integer.MAX_VALUE, (long) context.config().limit() * oversampling());
+    }
+
+    /**
+     * Get the factor by which the configured limit is multiplied to get the maximum number of candidates this engine
+     * keeps when it is able to rank candidates itself.
+     *
+     * @return oversampling factor, 2 by default.
+     */
+    protected int oversampling() {
+        return 2;
+    }
+
     /**
      * Build parameters that will be passed into the Cypher query.
      *
@@ -81,7 +388,10 @@ public abstract class BaseCypherEngine extends SingleScoreRecommendationEngine<N
      *
      * @param row of results from Cypher query.
      * @return score.
+     * @deprecated rows are now decoded by {@link RowDecoder} without being turned into maps. This method is only
+     * called for engines whose {@link #mapsRows()} returns <code>true</code>, at the cost of a map per row.
      */
+    @Deprecated
     protected PartialScore buildScore(Map<String, Object> row) {
         if (row.containsKey(scoreResultName())) {
             return new PartialScore(Float.valueOf(String.valueOf(row.get(scoreResultName()))), reasons(row));
@@ -95,7 +405,9 @@ public abstract class BaseCypherEngine extends SingleScoreRecommendationEngine<N
      *
      * @param row of results from Cypher query.
      * @return reasons. Cna be en empty map, but will never be <code>null</code>.
+     * @deprecated see {@link #buildScore(Map)}.
      */
+    @Deprecated
     protected Map<String, Object> reasons(Map<String, Object> row) {
         Map<String, Object> result = new HashMap<>();
 
@@ -117,43 +429,6 @@ public abstract class BaseCypherEngine extends SingleScoreRecommendationEngine<N
         return "id";
     }
 
-    /**
-     * Get the name of the parameter that represents limit (to the number of results).
-     *
-     * @return limit parameter name, "limit" by default.
-     */
-    protected String limitParamName() {
-        return "limit";
-    }
-
-    /**
-     * Get the name of the result column that contains computed recommendations.
-     *
-     * @return recommended items result name, "reco" by default.
-     */
-    protected String recoResultName() {
-        return "reco";
-    }
-
-    /**
-     * Get the name of the result column that contains scores of computed recommendations.
-     *
-     * @return recommended items score result name, "score" by default.
-     */
-    protected String scoreResultName() {
-        return "score";
-    }
-
-    /**
-     * Get default score value assigned to each recommendation in case the Cypher query result does not contain a score
-     * column.
-     *
-     * @return default score, 1.0 by default.
-     */
-    protected float defaultScore() {
-        return 1;
-    }
-
     /**
      * {@inheritDoc}
      */
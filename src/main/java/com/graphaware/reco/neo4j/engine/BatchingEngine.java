@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.engine;
+
+import com.graphaware.reco.generic.config.Config;
+import org.neo4j.graphdb.Node;
+
+import java.util.List;
+
+/**
+ * A recommendation engine that can compute recommendations for a whole batch of input nodes at once, e.g. by executing
+ * a single query, rather than one input at a time.
+ * <p/>
+ * {@link Neo4jTopLevelDelegatingRecommendationEngine#recommend(List, Config)} calls
+ * {@link #prefetch(List, Config, PrefetchedRecommendations)} before computing recommendations for the individual inputs
+ * of the batch. In between, the engine serves recommendations for the inputs of the batch from
+ * {@link PrefetchedRecommendations#current()}.
+ */
+public interface BatchingEngine {
+
+    /**
+     * Compute recommendations for a batch of inputs.
+     *
+     * @param inputs     input nodes. Must not be <code>null</code>.
+     * @param config     configuration of the computation.
+     * @param prefetched to put the computed recommendations into, under the engine's name.
+     */
+    void prefetch(List<Node> inputs, Config config, PrefetchedRecommendations prefetched);
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics of a {@link CachingRecommendationEngine}.
+ */
+public final class CacheStatistics {
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bypasses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    void hit() {
+        hits.incrementAndGet();
+    }
+
+    void miss() {
+        misses.incrementAndGet();
+    }
+
+    void bypass() {
+        bypasses.incrementAndGet();
+    }
+
+    void eviction() {
+        evictions.incrementAndGet();
+    }
+
+    void expiration() {
+        expirations.incrementAndGet();
+    }
+
+    void invalidation() {
+        invalidations.incrementAndGet();
+    }
+
+    /**
+     * @return number of times recommendations were served from the cache.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of times recommendations had to be computed.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of times recommendations were computed without using the cache, because the configuration could
+     * not be fingerprinted.
+     */
+    public long getBypasses() {
+        return bypasses.get();
+    }
+
+    /**
+     * @return number of entries evicted because the cache was full.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return number of entries evicted because they were older than the time-to-live.
+     */
+    public long getExpirations() {
+        return expirations.get();
+    }
+
+    /**
+     * @return number of entries invalidated by changes in the graph.
+     */
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "hits=" + getHits() + ", misses=" + getMisses() + ", bypasses=" + getBypasses() + ", evictions=" + getEvictions() + ", expirations=" + getExpirations() + ", invalidations=" + getInvalidations();
+    }
+}
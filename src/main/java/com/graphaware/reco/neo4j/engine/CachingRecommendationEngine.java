@@ -0,0 +1,469 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.engine;
+
+import com.graphaware.reco.generic.config.Config;
+import com.graphaware.reco.generic.config.KeyValueConfig;
+import com.graphaware.reco.generic.config.SimpleConfig;
+import com.graphaware.reco.generic.engine.TopLevelRecommendationEngine;
+import com.graphaware.reco.generic.result.PartialScore;
+import com.graphaware.reco.generic.result.Reason;
+import com.graphaware.reco.generic.result.Recommendation;
+import com.graphaware.reco.neo4j.cypher.Precompilable;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.springframework.util.Assert.isTrue;
+import static org.springframework.util.Assert.notNull;
+
+/**
+ * A {@link TopLevelRecommendationEngine} that caches final recommendation lists produced by another top-level engine,
+ * keyed by the input node and a fingerprint of the {@link Config}. Configurations that can't be fingerprinted (see
+ * {@link #fingerprint(Config)}) bypass the cache.
+ * <p/>
+ * The cache holds at most a given number of entries, evicting the least recently used ones, and entries expire after
+ * a given time-to-live. Once {@link #install(GraphDatabaseService) installed}, entries of a node are also invalidated
+ * by committed transactions that create or delete relationships of the configured types touching the node, or
+ * optionally touching any of its first-hop neighbours (over relationships of the same types). Neighbours of a node with
+ * more than {@link #maxInvalidatedNeighbours()} such relationships aren't iterated, the whole cache is invalidated
+ * instead. Other changes, such as changes of properties, are only reflected once entries expire.
+ * <p/>
+ * Recommendations flagged as computed from partial results (see {@link AbstractCypherEngine#PARTIAL}) aren't cached.
+ * <p/>
+ * Hits, misses, bypasses, evictions, expirations, and invalidations are exposed by {@link #getStatistics()}.
+ */
+public class CachingRecommendationEngine implements TopLevelRecommendationEngine<Node, Node>, Precompilable {
+
+    private static final Set<Long> ALL_NODES = Collections.unmodifiableSet(new HashSet<Long>());
+
+    private final TopLevelRecommendationEngine<Node, Node> delegate;
+    private final int maxSize;
+    private final long timeToLive;
+    private final boolean invalidateNeighbours;
+    private final RelationshipType[] types;
+
+    private final CacheStatistics statistics = new CacheStatistics();
+    private final Map<Long, Set<Key>> keysByNode = new HashMap<>();
+    private final LinkedHashMap<Key, Entry> entries;
+    private final TransactionEventHandler<Set<Long>> handler = new InvalidatingHandler();
+    private GraphDatabaseService database;
+
+    /**
+     * Create a new caching engine.
+     *
+     * @param delegate             engine computing recommendations on cache misses. Must not be <code>null</code>.
+     * @param maxSize              maximum number of cached recommendation lists. Must be positive.
+     * @param timeToLive           time in ms after which a cached list expires. Must be positive.
+     * @param invalidateNeighbours <code>true</code> iff a change of relationships of a node's first-hop neighbours
+     *                             should invalidate the node's cached lists, not just a change of its own relationships.
+     * @param types                of relationships whose changes invalidate cached lists. All types if none are given.
+     */
+    public CachingRecommendationEngine(TopLevelRecommendationEngine<Node, Node> delegate, int maxSize, long timeToLive, boolean invalidateNeighbours, RelationshipType... types) {
+        notNull(delegate);
+        isTrue(maxSize > 0, "Maximum size must be positive");
+        isTrue(timeToLive > 0, "Time to live must be positive");
+        notNull(types);
+
+        this.delegate = delegate;
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+        this.invalidateNeighbours = invalidateNeighbours;
+        this.types = types;
+
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > CachingRecommendationEngine.this.maxSize) {
+                    unindex(eldest.getKey());
+                    statistics.eviction();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Start invalidating cached lists on changes in the given database.
+     *
+     * @param database to watch. Must not be <code>null</code>.
+     */
+    public synchronized void install(GraphDatabaseService database) {
+        notNull(database);
+        isTrue(this.database == null, "Cache is already installed");
+
+        this.database = database;
+        database.registerTransactionEventHandler(handler);
+    }
+
+    /**
+     * Stop invalidating cached lists on changes and clear the cache.
+     */
+    public synchronized void uninstall() {
+        if (database != null) {
+            database.unregisterTransactionEventHandler(handler);
+            database = null;
+        }
+        clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Served from the cache if possible, computed by the delegate and cached otherwise.
+     */
+    @Override
+    public List<Recommendation<Node>> recommend(Node input, Config config) {
+        String fingerprint = fingerprint(config);
+        if (fingerprint == null) {
+            statistics.bypass();
+            return delegate.recommend(input, config);
+        }
+
+        Key key = new Key(input.getId(), fingerprint);
+        Entry pending = new Entry(null, System.currentTimeMillis());
+
+        synchronized (this) {
+            Entry entry = entries.get(key);
+
+            if (entry != null && entry.recommendations != null) {
+                if (System.currentTimeMillis() - entry.createdAt <= timeToLive) {
+                    statistics.hit();
+                    return new ArrayList<>(entry.recommendations);
+                }
+                statistics.expiration();
+            }
+
+            statistics.miss();
+            //invalidation removes the pending entry, so that a result computed from stale data isn't cached
+            put(key, pending);
+        }
+
+        List<Recommendation<Node>> result = delegate.recommend(input, config);
+
+        synchronized (this) {
+            if (entries.get(key) == pending) {
+                if (isPartial(result)) {
+                    //computed with the time budget run out, don't serve it to requests that might have more time
+                    entries.remove(key);
+                    unindex(key);
+                } else {
+                    put(key, new Entry(new ArrayList<>(result), pending.createdAt));
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Invalidate all cached lists of a node.
+     *
+     * @param nodeId ID of the node.
+     */
+    public synchronized void invalidate(long nodeId) {
+        Set<Key> keys = keysByNode.remove(nodeId);
+        if (keys == null) {
+            return;
+        }
+
+        for (Key key : keys) {
+            Entry removed = entries.remove(key);
+            if (removed != null && removed.recommendations != null) {
+                statistics.invalidation();
+            }
+        }
+    }
+
+    /**
+     * Invalidate all cached lists.
+     */
+    public synchronized void invalidateAll() {
+        for (Entry entry : entries.values()) {
+            if (entry.recommendations != null) {
+                statistics.invalidation();
+            }
+        }
+        clear();
+    }
+
+    /**
+     * Remove all cached lists.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        keysByNode.clear();
+    }
+
+    /**
+     * @return number of cached lists, including ones being computed.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return statistics of the cache.
+     */
+    public CacheStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void precompile(GraphDatabaseService database) {
+        if (delegate instanceof Precompilable) {
+            ((Precompilable) delegate).precompile(database);
+        }
+    }
+
+    /**
+     * Produce a fingerprint of a configuration. Configurations with equal fingerprints must produce equal
+     * recommendations. Intended to be overridden, e.g. for custom configuration classes.
+     *
+     * @param config configuration.
+     * @return fingerprint, <code>null</code> if the configuration can't be fingerprinted and recommendations computed
+     * with it must not be cached. By default composed of the configuration's class, limit, and maximum time for
+     * {@link SimpleConfig}s, extended with the values of {@link #fingerprintKeys()} for {@link KeyValueConfig}s, and
+     * <code>null</code> for any other configuration class, including subclasses of these two.
+     */
+    protected String fingerprint(Config config) {
+        String fingerprint = config.getClass().getName() + ":" + config.limit() + ":" + config.maxTime();
+
+        if (config.getClass() == SimpleConfig.class) {
+            return fingerprint;
+        }
+
+        String[] keys = fingerprintKeys();
+        if (config.getClass() != KeyValueConfig.class || keys == null) {
+            return null;
+        }
+
+        StringBuilder result = new StringBuilder(fingerprint);
+        for (String key : keys) {
+            result.append(':').append(key).append('=').append(((KeyValueConfig) config).get(key, null, Object.class));
+        }
+        return result.toString();
+    }
+
+    /**
+     * Get the keys of all {@link KeyValueConfig} parameters that the recommendations depend on, such as parameters read
+     * by engines, filters, and post-processors. Intended to be overridden.
+     *
+     * @return keys, <code>null</code> by default, meaning that recommendations computed with {@link KeyValueConfig}s
+     * are not cached, since any parameter might change them.
+     */
+    protected String[] fingerprintKeys() {
+        return null;
+    }
+
+    /**
+     * Get the maximum number of watched relationships of a node whose neighbours' cached lists are invalidated one by
+     * one when the node's relationships change, if neighbours are invalidated at all. Changes of relationships of nodes
+     * with more relationships invalidate the whole cache, so that committing transactions don't iterate supernodes.
+     * Intended to be overridden.
+     *
+     * @return maximum degree, 1000 by default.
+     */
+    protected int maxInvalidatedNeighbours() {
+        return 1000;
+    }
+
+    private boolean isPartial(List<Recommendation<Node>> recommendations) {
+        for (Recommendation<Node> recommendation : recommendations) {
+            for (PartialScore partialScore : recommendation.getScore().getScoreParts().values()) {
+                for (Reason reason : partialScore.getReasons()) {
+                    if (reason.getDetails() != null && reason.getDetails().containsKey(AbstractCypherEngine.PARTIAL)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private void put(Key key, Entry entry) {
+        entries.put(key, entry);
+
+        Set<Key> keys = keysByNode.get(key.nodeId);
+        if (keys == null) {
+            keys = new HashSet<>();
+            keysByNode.put(key.nodeId, keys);
+        }
+        keys.add(key);
+    }
+
+    private void unindex(Key key) {
+        Set<Key> keys = keysByNode.get(key.nodeId);
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                keysByNode.remove(key.nodeId);
+            }
+        }
+    }
+
+    private boolean isWatched(Relationship relationship) {
+        if (types.length == 0) {
+            return true;
+        }
+
+        for (RelationshipType type : types) {
+            if (relationship.isType(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Iterable<Relationship> watchedRelationships(Node node) {
+        return types.length == 0 ? node.getRelationships(Direction.BOTH) : node.getRelationships(Direction.BOTH, types);
+    }
+
+    private int watchedDegree(Node node) {
+        if (types.length == 0) {
+            return node.getDegree();
+        }
+
+        int result = 0;
+        for (RelationshipType type : types) {
+            result += node.getDegree(type);
+        }
+        return result;
+    }
+
+    /**
+     * Determines the nodes whose lists must be invalidated before commit, while the graph can still be read, and
+     * invalidates them after commit.
+     */
+    private class InvalidatingHandler extends TransactionEventHandler.Adapter<Set<Long>> {
+
+        @Override
+        public Set<Long> beforeCommit(TransactionData data) {
+            Set<Long> result = new HashSet<>();
+            if (!collect(data, data.createdRelationships(), result) || !collect(data, data.deletedRelationships(), result)) {
+                return ALL_NODES;
+            }
+            return result;
+        }
+
+        @Override
+        public void afterCommit(TransactionData data, Set<Long> nodeIds) {
+            if (nodeIds == null) {
+                return;
+            }
+
+            if (nodeIds == ALL_NODES) {
+                invalidateAll();
+                return;
+            }
+
+            for (Long nodeId : nodeIds) {
+                invalidate(nodeId);
+            }
+        }
+
+        /**
+         * @return <code>false</code> iff a node has too many neighbours to invalidate them one by one.
+         */
+        private boolean collect(TransactionData data, Iterable<Relationship> relationships, Collection<Long> result) {
+            for (Relationship relationship : relationships) {
+                if (!isWatched(relationship)) {
+                    continue;
+                }
+
+                for (Node node : relationship.getNodes()) {
+                    if (!result.add(node.getId()) || !invalidateNeighbours || data.isDeleted(node)) {
+                        continue;
+                    }
+
+                    if (watchedDegree(node) > maxInvalidatedNeighbours()) {
+                        return false;
+                    }
+
+                    for (Relationship neighbourRelationship : watchedRelationships(node)) {
+                        result.add(neighbourRelationship.getOtherNode(node).getId());
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Cache key.
+     */
+    private static final class Key {
+
+        private final long nodeId;
+        private final String fingerprint;
+
+        private Key(long nodeId, String fingerprint) {
+            this.nodeId = nodeId;
+            this.fingerprint = fingerprint;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            Key key = (Key) o;
+            return nodeId == key.nodeId && fingerprint.equals(key.fingerprint);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(nodeId) + fingerprint.hashCode();
+        }
+    }
+
+    /**
+     * Cached list, or a placeholder (with <code>null</code> recommendations) for a list being computed.
+     */
+    private static final class Entry {
+
+        private final List<Recommendation<Node>> recommendations;
+        private final long createdAt;
+
+        private Entry(List<Recommendation<Node>> recommendations, long createdAt) {
+            this.recommendations = recommendations;
+            this.createdAt = createdAt;
+        }
+    }
+}
@@ -19,15 +19,29 @@ package com.graphaware.reco.neo4j.engine;
 import com.graphaware.reco.generic.context.Context;
 import com.graphaware.reco.generic.engine.SingleScoreRecommendationEngine;
 import com.graphaware.reco.generic.result.PartialScore;
+import com.graphaware.reco.neo4j.util.LongDoubleMap;
+import com.graphaware.reco.neo4j.util.SimilarityMeasure;
+import com.graphaware.reco.neo4j.util.SupernodeGuard;
+import com.graphaware.reco.neo4j.util.SupernodeGuard.Expansion;
+import com.graphaware.reco.neo4j.util.SupernodeStrategy;
 import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import static com.graphaware.reco.neo4j.util.DirectionUtils.reverse;
+import static com.graphaware.reco.neo4j.util.SupernodeGuard.expand;
+import static com.graphaware.reco.neo4j.util.SupernodeGuard.sampledDetails;
 
 /**
  * {@link SingleScoreRecommendationEngine} that recommends {@link Node}s based on a collaborative filtering approach.
@@ -37,6 +51,19 @@ import static com.graphaware.reco.neo4j.util.DirectionUtils.reverse;
  * of the relationship traversed is determined by {@link #getType()}.
  * <p/>
  * Every time a recommendation is found, it's score is incremented by {@link #scoreNode(Node, Node, Node, Relationship, Relationship, Relationship)}.
+ * <p/>
+ * For input nodes with at least {@link #parallelismThreshold()} first-hop relationships, the traversal is partitioned
+ * by first-hop relationship across a {@link ForkJoinPool}, and the partial results are merged at the end.
+ * <p/>
+ * "Through nodes" and "similar nodes" with more than {@link #maxFanOut()} relationships are skipped, sampled, or
+ * down-weighted, depending on {@link #supernodeStrategy()}. Reasons of paths through sampled nodes carry the
+ * {@link SupernodeGuard#SAMPLED} detail.
+ * <p/>
+ * Engines with constant or multiplicative scores can switch from path enumeration to path weight propagation using
+ * {@link #propagatePathWeights()}, which costs the sum rather than the product of the degrees involved.
+ * <p/>
+ * Setting {@link #maxSimilarNodes()} turns the engine into a k-nearest-neighbour one: similar nodes are first scored
+ * by {@link #similarityMeasure()} and only the most similar ones are expanded to find recommendations.
  */
 public abstract class CollaborativeEngine extends SingleScoreRecommendationEngine<Node, Node> {
 
@@ -45,17 +72,50 @@ public abstract class CollaborativeEngine extends SingleScoreRecommendationEngin
      */
     @Override
     protected final Map<Node, PartialScore> doRecommendSingle(Node input, Context<Node, Node> context) {
+        if (propagatePathWeights()) {
+            return recommendByPropagation(input);
+        }
+
+        if (maxSimilarNodes() < Integer.MAX_VALUE) {
+            return recommendFromNearestNeighbours(input);
+        }
+
+        if (input.getDegree(getType(), getDirection()) >= parallelismThreshold()) {
+            return doRecommendInParallel(input);
+        }
+
         Map<Node, PartialScore> result = new HashMap<>();
+        Map<Long, Expansion> similarExpansions = new HashMap<>();
 
         for (Relationship r1 : input.getRelationships(getType(), getDirection())) {
-            Node throughNode = r1.getOtherNode(input);
-            if (acceptableThroughNode(throughNode)) {
-                for (Relationship r2 : throughNode.getRelationships(getType(), reverse(getDirection()))) {
-                    Node similar = r2.getOtherNode(throughNode);
-                    if (similar.getId() != input.getId() && acceptableSimilarNode(similar)) {
-                        for (Relationship r3 : similar.getRelationships(getType(), getDirection())) {
-                            Node recommendation = r3.getOtherNode(similar);
-                            if (recommendation.getId() != throughNode.getId()) {
+            traverse(input, r1, result, similarExpansions);
+        }
+
+        return result;
+    }
+
+    private void traverse(Node input, Relationship r1, Map<Node, PartialScore> result, Map<Long, Expansion> similarExpansions) {
+        Node throughNode = r1.getOtherNode(input);
+        if (acceptableThroughNode(throughNode)) {
+            Expansion throughExpansion = expand(throughNode, getType(), reverse(getDirection()), maxFanOut(), supernodeStrategy());
+            for (Relationship r2 : throughExpansion.getRelationships()) {
+                Node similar = r2.getOtherNode(throughNode);
+                if (similar.getId() != input.getId() && acceptableSimilarNode(similar)) {
+                    Expansion similarExpansion = similarExpansions.get(similar.getId());
+                    if (similarExpansion == null) {
+                        similarExpansion = expand(similar, getType(), getDirection(), maxFanOut(), supernodeStrategy());
+                        similarExpansions.put(similar.getId(), similarExpansion);
+                    }
+                    boolean sampled = throughExpansion.isSampled() || similarExpansion.isSampled();
+                    float weight = throughExpansion.getWeight() * similarExpansion.getWeight();
+                    for (Relationship r3 : similarExpansion.getRelationships()) {
+                        Node recommendation = r3.getOtherNode(similar);
+                        if (recommendation.getId() != throughNode.getId()) {
+                            if (sampled) {
+                                addToResult(result, recommendation, new PartialScore(
+                                        scoreNode(recommendation, throughNode, similar, r1, r2, r3) * weight,
+                                        sampledDetails(details(throughNode, similar, r1, r2, r3), weight)));
+                            } else {
                                 addToResult(result, recommendation, new PartialScore(
                                         scoreNode(recommendation, throughNode, similar, r1, r2, r3),
                                         details(throughNode, similar, r1, r2, r3)));
@@ -64,12 +124,312 @@ public abstract class CollaborativeEngine extends SingleScoreRecommendationEngin
                     }
                 }
             }
+        }
+    }
+
+    private Map<Node, PartialScore> recommendByPropagation(Node input) {
+        GraphDatabaseService database = input.getGraphDatabase();
+        boolean sampled = false;
+
+        //frontier 1: through nodes, with the total weight of paths from the input to them
+        LongDoubleMap throughWeights = new LongDoubleMap();
+        for (Relationship r1 : input.getRelationships(getType(), getDirection())) {
+            Node throughNode = r1.getOtherNode(input);
+            if (acceptableThroughNode(throughNode)) {
+                throughWeights.add(throughNode.getId(), relationshipWeight(r1, 1));
+            }
+        }
+
+        //frontier 2: similar nodes, with the total weight of paths to them broken down by through node
+        LongDoubleMap similarWeights = new LongDoubleMap();
+        LongDoubleMap overlaps = new LongDoubleMap();
+        Map<Long, LongDoubleMap> similarWeightsByThroughNode = new HashMap<>();
+        for (int t = 0; t < throughWeights.size(); t++) {
+            Node throughNode = database.getNodeById(throughWeights.keyAt(t));
+            Expansion expansion = expand(throughNode, getType(), reverse(getDirection()), maxFanOut(), supernodeStrategy());
+            sampled |= expansion.isSampled();
+            double weight = throughWeights.valueAt(t) * expansion.getWeight();
+
+            for (Relationship r2 : expansion.getRelationships()) {
+                Node similar = r2.getOtherNode(throughNode);
+                if (similar.getId() != input.getId() && acceptableSimilarNode(similar)) {
+                    double pathWeight = weight * relationshipWeight(r2, 2);
+                    similarWeights.add(similar.getId(), pathWeight);
+                    overlaps.add(similar.getId(), 1);
+
+                    LongDoubleMap byThroughNode = similarWeightsByThroughNode.get(similar.getId());
+                    if (byThroughNode == null) {
+                        byThroughNode = new LongDoubleMap(4);
+                        similarWeightsByThroughNode.put(similar.getId(), byThroughNode);
+                    }
+                    byThroughNode.add(throughNode.getId(), pathWeight);
+                }
+            }
+        }
+
+        LongDoubleMap nearest = maxSimilarNodes() < Integer.MAX_VALUE ? nearestNeighbours(input, overlaps) : null;
+
+        //frontier 3: recommendations, excluding paths that lead back to the through node they went through
+        LongDoubleMap recommendationWeights = new LongDoubleMap();
+        for (int s = 0; s < similarWeights.size(); s++) {
+            if (nearest != null && !nearest.containsKey(similarWeights.keyAt(s))) {
+                continue;
+            }
+
+            Node similar = database.getNodeById(similarWeights.keyAt(s));
+            Expansion expansion = expand(similar, getType(), getDirection(), maxFanOut(), supernodeStrategy());
+            sampled |= expansion.isSampled();
+            LongDoubleMap byThroughNode = similarWeightsByThroughNode.get(similar.getId());
+
+            for (Relationship r3 : expansion.getRelationships()) {
+                long recommendation = r3.getOtherNode(similar).getId();
+
+                if (byThroughNode.size() == 1 && byThroughNode.containsKey(recommendation)) {
+                    continue;
+                }
+
+                double weight = similarWeights.valueAt(s) - byThroughNode.get(recommendation, 0);
+                recommendationWeights.add(recommendation, weight * expansion.getWeight() * relationshipWeight(r3, 3));
+            }
+        }
+
+        Map<String, Object> details = sampled ? sampledDetails(null, 1) : Collections.<String, Object>emptyMap();
+        Map<Node, PartialScore> result = new HashMap<>();
+        for (int r = 0; r < recommendationWeights.size(); r++) {
+            result.put(database.getNodeById(recommendationWeights.keyAt(r)), new PartialScore((float) recommendationWeights.valueAt(r), details));
+        }
+
+        return result;
+    }
+
+    private Map<Node, PartialScore> recommendFromNearestNeighbours(Node input) {
+        GraphDatabaseService database = input.getGraphDatabase();
+
+        //phase 1: similar nodes, with their overlap with the input and the paths leading to them
+        LongDoubleMap overlaps = new LongDoubleMap();
+        Map<Long, List<Path>> paths = new HashMap<>();
+        for (Relationship r1 : input.getRelationships(getType(), getDirection())) {
+            Node throughNode = r1.getOtherNode(input);
+            if (acceptableThroughNode(throughNode)) {
+                Expansion expansion = expand(throughNode, getType(), reverse(getDirection()), maxFanOut(), supernodeStrategy());
+                for (Relationship r2 : expansion.getRelationships()) {
+                    Node similar = r2.getOtherNode(throughNode);
+                    if (similar.getId() != input.getId() && acceptableSimilarNode(similar)) {
+                        overlaps.add(similar.getId(), 1);
+
+                        List<Path> toSimilar = paths.get(similar.getId());
+                        if (toSimilar == null) {
+                            toSimilar = new ArrayList<>();
+                            paths.put(similar.getId(), toSimilar);
+                        }
+                        toSimilar.add(new Path(throughNode, r1, r2, expansion));
+                    }
+                }
+            }
+        }
+
+        //phase 2: recommendations through the most similar nodes only
+        LongDoubleMap nearest = nearestNeighbours(input, overlaps);
+        Map<Node, PartialScore> result = new HashMap<>();
+        for (int n = 0; n < nearest.size(); n++) {
+            Node similar = database.getNodeById(nearest.keyAt(n));
+            Expansion similarExpansion = expand(similar, getType(), getDirection(), maxFanOut(), supernodeStrategy());
+            for (Relationship r3 : similarExpansion.getRelationships()) {
+                Node recommendation = r3.getOtherNode(similar);
+                for (Path path : paths.get(similar.getId())) {
+                    if (recommendation.getId() == path.throughNode.getId()) {
+                        continue;
+                    }
+
+                    float score = scoreNode(recommendation, path.throughNode, similar, path.r1, path.r2, r3);
+                    Map<String, Object> details = details(path.throughNode, similar, path.r1, path.r2, r3);
+                    if (path.expansion.isSampled() || similarExpansion.isSampled()) {
+                        float weight = path.expansion.getWeight() * similarExpansion.getWeight();
+                        addToResult(result, recommendation, new PartialScore(score * weight, sampledDetails(details, weight)));
+                    } else {
+                        addToResult(result, recommendation, new PartialScore(score, details));
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Select up to {@link #maxSimilarNodes()} similar nodes most similar to the input.
+     *
+     * @param input    input node.
+     * @param overlaps number of paths from the input to each similar node.
+     * @return IDs of the selected similar nodes mapped to their similarity.
+     */
+    private LongDoubleMap nearestNeighbours(Node input, LongDoubleMap overlaps) {
+        GraphDatabaseService database = input.getGraphDatabase();
+        SimilarityMeasure measure = similarityMeasure();
+        int inputDegree = input.getDegree(getType(), getDirection());
+
+        LongDoubleMap similarities = new LongDoubleMap(overlaps.size());
+        for (int i = 0; i < overlaps.size(); i++) {
+            int similarDegree = measure == SimilarityMeasure.OVERLAP ? 0 : database.getNodeById(overlaps.keyAt(i)).getDegree(getType(), getDirection());
+            similarities.put(overlaps.keyAt(i), measure.similarity((int) overlaps.valueAt(i), inputDegree, similarDegree));
+        }
 
+        LongDoubleMap result = new LongDoubleMap(Math.min(overlaps.size(), maxSimilarNodes()));
+        for (int index : similarities.topIndices(maxSimilarNodes())) {
+            result.put(similarities.keyAt(index), similarities.valueAt(index));
         }
 
         return result;
     }
 
+    /**
+     * The first two hops of a path from the input to a similar node.
+     */
+    private static final class Path {
+
+        private final Node throughNode;
+        private final Relationship r1;
+        private final Relationship r2;
+        private final Expansion expansion;
+
+        private Path(Node throughNode, Relationship r1, Relationship r2, Expansion expansion) {
+            this.throughNode = throughNode;
+            this.r1 = r1;
+            this.r2 = r2;
+            this.expansion = expansion;
+        }
+    }
+
+    private Map<Node, PartialScore> doRecommendInParallel(Node input) {
+        List<Relationship> firstHop = new ArrayList<>();
+        for (Relationship r1 : input.getRelationships(getType(), getDirection())) {
+            firstHop.add(r1);
+        }
+
+        ForkJoinPool pool = forkJoinPool();
+        int leafSize = Math.max(1, firstHop.size() / (pool.getParallelism() * 4));
+
+        return pool.invoke(new TraversalTask(input, firstHop, 0, firstHop.size(), leafSize));
+    }
+
+    /**
+     * {@link RecursiveTask} that splits a range of first-hop relationships in halves until they are small enough to be
+     * traversed by a single worker in its own transaction.
+     */
+    private class TraversalTask extends RecursiveTask<Map<Node, PartialScore>> {
+
+        private final Node input;
+        private final List<Relationship> firstHop;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+
+        private TraversalTask(Node input, List<Relationship> firstHop, int from, int to, int leafSize) {
+            this.input = input;
+            this.firstHop = firstHop;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected Map<Node, PartialScore> compute() {
+            if (to - from <= leafSize) {
+                Map<Node, PartialScore> result = new HashMap<>();
+                Map<Long, Expansion> similarExpansions = new HashMap<>();
+
+                try (Transaction tx = input.getGraphDatabase().beginTx()) {
+                    for (int i = from; i < to; i++) {
+                        traverse(input, firstHop.get(i), result, similarExpansions);
+                    }
+                    tx.success();
+                }
+
+                return result;
+            }
+
+            int middle = (from + to) >>> 1;
+            TraversalTask left = new TraversalTask(input, firstHop, from, middle, leafSize);
+            TraversalTask right = new TraversalTask(input, firstHop, middle, to, leafSize);
+
+            right.fork();
+            Map<Node, PartialScore> result = left.compute();
+
+            //merge right into left, so that reasons end up in the same order as when traversing serially
+            for (Map.Entry<Node, PartialScore> entry : right.join().entrySet()) {
+                addToResult(result, entry.getKey(), entry.getValue());
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * Get the number of first-hop relationships of the input node from which the traversal is split across the threads
+     * of {@link #forkJoinPool()}, each running in its own transaction. When overriding this method to enable parallel
+     * traversals, make sure {@link #scoreNode(Node, Node, Node, Relationship, Relationship, Relationship)},
+     * {@link #details(Node, Node, Relationship, Relationship, Relationship)}, {@link #acceptableThroughNode(Node)}, and
+     * {@link #acceptableSimilarNode(Node)} are thread-safe. Note that worker transactions do not see uncommitted
+     * changes of the calling transaction.
+     *
+     * @return degree threshold, {@link Integer#MAX_VALUE} (i.e. never parallel) by default.
+     */
+    protected int parallelismThreshold() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Get the maximum number of relationships expanded from a single "through node" or "similar node". Nodes with a
+     * higher degree are dealt with according to {@link #supernodeStrategy()}. Intended to be overridden.
+     *
+     * @return maximum fan-out, {@link Integer#MAX_VALUE} (i.e. unlimited) by default.
+     */
+    protected int maxFanOut() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Get the strategy of dealing with "through nodes" and "similar nodes" with a degree over {@link #maxFanOut()}.
+     * Intended to be overridden.
+     *
+     * @return strategy, {@link SupernodeStrategy#SAMPLE} by default.
+     */
+    protected SupernodeStrategy supernodeStrategy() {
+        return SupernodeStrategy.SAMPLE;
+    }
+
+    /**
+     * Get the maximum number of similar nodes (second nodes on paths from the input to recommendations) expanded to find
+     * recommendations. If limited, all similar nodes are first scored by {@link #similarityMeasure()} based on the number
+     * of paths from the input leading to them, and only the most similar ones are expanded. This also applies when
+     * {@link #propagatePathWeights()} is <code>true</code>; parallel traversal (see {@link #parallelismThreshold()}) is
+     * not used. Intended to be overridden.
+     *
+     * @return maximum number of similar nodes, {@link Integer#MAX_VALUE} (i.e. all similar nodes) by default.
+     */
+    protected int maxSimilarNodes() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Get the measure of similarity between the input and similar nodes, used when {@link #maxSimilarNodes()} is limited.
+     * Intended to be overridden.
+     *
+     * @return measure, {@link SimilarityMeasure#OVERLAP} by default.
+     */
+    protected SimilarityMeasure similarityMeasure() {
+        return SimilarityMeasure.OVERLAP;
+    }
+
+    /**
+     * Get the pool that parallel traversals run in.
+     *
+     * @return pool, {@link ForkJoinPool#commonPool()} by default.
+     */
+    protected ForkJoinPool forkJoinPool() {
+        return ForkJoinPool.commonPool();
+    }
+
     /**
      * Score the recommended node.
      *
@@ -85,6 +445,35 @@ public abstract class CollaborativeEngine extends SingleScoreRecommendationEngin
         return 1;
     }
 
+    /**
+     * Should recommendations be computed by propagating path weights frontier by frontier, rather than by enumerating
+     * all paths? If so, every through node and every similar node is expanded only once, with the aggregated weight of
+     * all paths leading to it, and the score of a recommendation is the sum of weights of all paths leading to it,
+     * where the weight of a path is the product of {@link #relationshipWeight(Relationship, int)} of its relationships.
+     * <p/>
+     * This is only equivalent to path enumeration for engines whose score is constant (the default) or multiplicative,
+     * i.e. expressible as {@link #relationshipWeight(Relationship, int)}. {@link #scoreNode(Node, Node, Node, Relationship, Relationship, Relationship)}
+     * and {@link #details(Node, Node, Relationship, Relationship, Relationship)} are not called, and each recommendation
+     * gets a single reason. Parallel traversal (see {@link #parallelismThreshold()}) is not used. Intended to be overridden.
+     *
+     * @return <code>true</code> iff path weights should be propagated, <code>false</code> by default.
+     */
+    protected boolean propagatePathWeights() {
+        return false;
+    }
+
+    /**
+     * Get the weight of a relationship on a path from the input to a recommendation, used when {@link #propagatePathWeights()}
+     * is <code>true</code>.
+     *
+     * @param relationship on the path.
+     * @param hop          position of the relationship on the path, 1, 2, or 3.
+     * @return weight, 1 by default.
+     */
+    protected float relationshipWeight(Relationship relationship, int hop) {
+        return 1;
+    }
+
     /**
      * Produce details about the way a recommendation was found to be stored as a {@link com.graphaware.reco.generic.result.Reason} inside a {@link com.graphaware.reco.generic.result.PartialScore}.
      *
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.engine;
+
+import com.graphaware.reco.generic.context.Context;
+import com.graphaware.reco.generic.engine.SingleScoreRecommendationEngine;
+import com.graphaware.reco.generic.result.PartialScore;
+import com.graphaware.reco.neo4j.module.ItemSimilarityJob;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.graphaware.common.util.EntityUtils.getFloat;
+import static org.neo4j.graphdb.Direction.OUTGOING;
+
+/**
+ * {@link SingleScoreRecommendationEngine} that recommends {@link Node}s based on item-based collaborative filtering,
+ * using item-to-item similarities pre-computed by {@link ItemSimilarityJob}. Expressed in pseudo-Cypher, the query
+ * executed when looking for items to recommend would be something like:
+ * <code>MATCH (input)-[:REL_TYPE]->(item)-[:SIMILAR]->(recommendation) RETURN recommendation</code>.
+ * <p/>
+ * It answers the same question as a {@link CollaborativeEngine} with the same {@link #getType()} and {@link #getDirection()},
+ * but only traverses two hops, because the third one has been pre-computed.
+ * <p/>
+ * Every time a recommendation is found, it's score is incremented by {@link #scoreNode(Node, Node, Relationship, Relationship)}.
+ */
+public abstract class ItemBasedEngine extends SingleScoreRecommendationEngine<Node, Node> {
+
+    public static final RelationshipType SIMILAR = DynamicRelationshipType.withName("SIMILAR");
+    public static final String WEIGHT = "weight";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final Map<Node, PartialScore> doRecommendSingle(Node input, Context<Node, Node> context) {
+        Map<Node, PartialScore> result = new HashMap<>();
+
+        for (Relationship withInput : input.getRelationships(getType(), getDirection())) {
+            Node item = withInput.getOtherNode(input);
+            for (Relationship similarity : item.getRelationships(getSimilarityType(), OUTGOING)) {
+                Node recommendation = similarity.getEndNode();
+                if (recommendation.getId() != input.getId()) {
+                    addToResult(result, recommendation, new PartialScore(scoreNode(recommendation, item, withInput, similarity), details(item, withInput, similarity)));
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Score the recommended node.
+     *
+     * @param recommendation to score.
+     * @param item           item the input is related to, which the recommendation is similar to.
+     * @param withInput      relationship of the input with the item.
+     * @param similarity     pre-computed similarity relationship from the item to the recommendation.
+     * @return score, the {@link #WEIGHT} of the similarity relationship by default.
+     */
+    protected float scoreNode(Node recommendation, Node item, Relationship withInput, Relationship similarity) {
+        return getFloat(similarity, WEIGHT, 0);
+    }
+
+    /**
+     * Produce details about the way a recommendation was found to be stored as a {@link com.graphaware.reco.generic.result.Reason} inside a {@link com.graphaware.reco.generic.result.PartialScore}.
+     *
+     * @param item       item the input is related to, which the recommendation is similar to.
+     * @param withInput  relationship of the input with the item.
+     * @param similarity pre-computed similarity relationship from the item to the recommendation.
+     * @return details as a map of arbitrary key-value pairs. <code>null</code> by default.
+     */
+    protected Map<String, Object> details(Node item, Relationship withInput, Relationship similarity) {
+        return null;
+    }
+
+    /**
+     * Get the relationship type of the relationship that links the subject of the recommendation with items.
+     *
+     * @return relationship type.
+     */
+    protected abstract RelationshipType getType();
+
+    /**
+     * Get the direction of the relationship between the subject (input to the engine) and items.
+     *
+     * @return direction.
+     */
+    protected abstract Direction getDirection();
+
+    /**
+     * Get the type of pre-computed relationships that link items with similar items. Intended to be overridden.
+     *
+     * @return relationship type, {@link #SIMILAR} by default.
+     */
+    protected RelationshipType getSimilarityType() {
+        return SIMILAR;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.engine;
+
+import com.graphaware.reco.generic.context.Context;
+import com.graphaware.reco.generic.engine.SingleScoreRecommendationEngine;
+import com.graphaware.reco.generic.result.PartialScore;
+import com.graphaware.reco.neo4j.index.MinHash;
+import com.graphaware.reco.neo4j.index.MinHashIndex;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link SingleScoreRecommendationEngine} that recommends {@link Node}s with which the input has many things in common,
+ * like {@link SomethingInCommon}, but approximately and without traversing the things in common. Candidates are looked
+ * up in a {@link MinHashIndex} and scored by the estimated Jaccard similarity of their neighbours and the input's
+ * neighbours.
+ * <p/>
+ * The cost of a recommendation is proportional to the number of candidates sharing an LSH band with the input, rather
+ * than to the number of paths of length two from the input.
+ */
+public abstract class MinHashEngine extends SingleScoreRecommendationEngine<Node, Node> {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final Map<Node, PartialScore> doRecommendSingle(Node input, Context<Node, Node> context) {
+        MinHashIndex index = index();
+        int[] inputSignature = index.signature(input);
+        if (inputSignature == null) {
+            return Collections.emptyMap();
+        }
+
+        GraphDatabaseService database = input.getGraphDatabase();
+        Map<Node, PartialScore> result = new HashMap<>();
+
+        for (long id : index.candidates(input)) {
+            Node candidate;
+            try {
+                candidate = database.getNodeById(id);
+            } catch (NotFoundException e) {
+                continue;
+            }
+
+            int[] signature = index.signature(candidate);
+            if (signature == null || signature.length != inputSignature.length) {
+                continue;
+            }
+
+            float similarity = MinHash.similarity(inputSignature, signature);
+            if (similarity >= minSimilarity()) {
+                result.put(candidate, new PartialScore(similarity, Collections.<String, Object>emptyMap()));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Get the index to look candidates up in. The index must be installed in the database of the input.
+     *
+     * @return index.
+     */
+    protected abstract MinHashIndex index();
+
+    /**
+     * Get the minimum estimated Jaccard similarity of a candidate to be recommended. Intended to be overridden.
+     *
+     * @return minimum similarity, 0 by default (i.e. all candidates sharing an LSH band with the input).
+     */
+    protected float minSimilarity() {
+        return 0;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.engine;
+
+import com.graphaware.reco.generic.engine.PrecomputedEngine;
+import com.graphaware.reco.generic.result.Recommendations;
+import com.graphaware.reco.generic.result.Score;
+import com.graphaware.reco.neo4j.store.MappedRecommendationStore;
+import com.graphaware.reco.neo4j.store.StoredRecommendations;
+import com.graphaware.reco.neo4j.util.PackedRecommendations;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link PrecomputedEngine} that reads pre-computed recommendations and their scores from a
+ * {@link MappedRecommendationStore}, i.e. outside of the graph. This is the reader matching
+ * {@link com.graphaware.reco.neo4j.module.StorageFormat#MAPPED_FILE}.
+ * <p/>
+ * Each recommendation gets a single partial score named {@link PackedRecommendations#TOTAL}. Recommended nodes that no
+ * longer exist are skipped. The store is {@link MappedRecommendationStore#install(GraphDatabaseService) installed} in the
+ * database of the first input, so that recommendations of deleted input nodes are removed.
+ */
+public abstract class Neo4jMappedPrecomputedEngine extends PrecomputedEngine<Node, Node, PrecomputedRecommendation> {
+
+    private volatile MappedRecommendationStore store;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final Iterable<PrecomputedRecommendation> produce(Node input) {
+        GraphDatabaseService database = input.getGraphDatabase();
+        StoredRecommendations stored = store(database).get(input.getId());
+
+        List<PrecomputedRecommendation> result = new ArrayList<>(stored.size());
+        for (int i = 0; i < stored.size(); i++) {
+            Node node;
+            try {
+                node = database.getNodeById(stored.id(i));
+            } catch (NotFoundException e) {
+                //deleted since the recommendations were computed
+                continue;
+            }
+
+            Score score = new Score();
+            score.add(PackedRecommendations.TOTAL, stored.score(i));
+            result.add(new PrecomputedRecommendation(node, score));
+        }
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final Node extract(PrecomputedRecommendation source) {
+        return source.getNode();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final void addToResult(Recommendations<Node> recommendations, Node recommendation, PrecomputedRecommendation source) {
+        recommendations.add(recommendation, source.getScore());
+    }
+
+    private MappedRecommendationStore store(GraphDatabaseService database) {
+        if (store == null) {
+            MappedRecommendationStore opened = MappedRecommendationStore.forDirectory(getStoreDirectory());
+            opened.install(database);
+            store = opened;
+        }
+        return store;
+    }
+
+    /**
+     * Get the directory of the store the recommendations have been pre-computed into.
+     *
+     * @return directory, must not be <code>null</code>.
+     */
+    protected abstract File getStoreDirectory();
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.engine;
+
+import com.graphaware.reco.generic.engine.PrecomputedEngine;
+import com.graphaware.reco.generic.result.Recommendations;
+import com.graphaware.reco.neo4j.util.PackedRecommendations;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.RelationshipType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link PrecomputedEngine} that reads pre-computed recommendations and their scores stored as
+ * {@link PackedRecommendations} on the subject of the recommendation, i.e. the {@link Node} being recommended to.
+ * <p/>
+ * This is the reader matching {@link com.graphaware.reco.neo4j.module.StorageFormat#PACKED} and
+ * {@link com.graphaware.reco.neo4j.module.StorageFormat#PACKED_WITH_PARTS}, just like {@link Neo4jPrecomputedEngine}
+ * is the reader matching {@link com.graphaware.reco.neo4j.module.StorageFormat#RELATIONSHIPS}. Recommended nodes that
+ * no longer exist are skipped.
+ */
+public class Neo4jPackedPrecomputedEngine extends PrecomputedEngine<Node, Node, PrecomputedRecommendation> {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final Iterable<PrecomputedRecommendation> produce(Node input) {
+        PackedRecommendations packed = PackedRecommendations.read(input, getType());
+        GraphDatabaseService database = input.getGraphDatabase();
+
+        List<PrecomputedRecommendation> result = new ArrayList<>(packed.size());
+        for (int i = 0; i < packed.size(); i++) {
+            try {
+                result.add(new PrecomputedRecommendation(database.getNodeById(packed.id(i)), packed.score(i)));
+            } catch (NotFoundException e) {
+                //deleted since the recommendations were computed
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final Node extract(PrecomputedRecommendation source) {
+        return source.getNode();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final void addToResult(Recommendations<Node> recommendations, Node recommendation, PrecomputedRecommendation source) {
+        recommendations.add(recommendation, source.getScore());
+    }
+
+    /**
+     * Get the relationship type the recommendations have been pre-computed with, which namespaces the properties they
+     * are stored in. Intended to be overridden.
+     *
+     * @return relationship type. {@link Neo4jPrecomputedEngine#RECOMMEND} by default.
+     */
+    protected RelationshipType getType() {
+        return Neo4jPrecomputedEngine.RECOMMEND;
+    }
+}
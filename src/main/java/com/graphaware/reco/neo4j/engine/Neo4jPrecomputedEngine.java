@@ -19,6 +19,7 @@ package com.graphaware.reco.neo4j.engine;
 import com.graphaware.reco.generic.engine.PrecomputedEngine;
 import com.graphaware.reco.generic.result.Recommendations;
 import com.graphaware.reco.generic.result.Score;
+import com.graphaware.reco.neo4j.util.PackedRecommendations;
 import org.neo4j.graphdb.DynamicRelationshipType;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
@@ -34,11 +35,25 @@ import static org.neo4j.graphdb.Direction.OUTGOING;
  * It assumes there is a relationship of type {@link #getType()} from the subject of the recommendation ({@link Node}
  * being recommended to) to the object being recommended. It further assumes that the only properties on this relationship
  * are scores, i.e. reasons why this recommendation has been precomputed.
+ * <p/>
+ * {@link com.graphaware.reco.neo4j.module.RecommendationModule} also stamps the subject with the time its
+ * recommendations were computed at, in a property named by {@link #computedAtProperty(RelationshipType)}.
  */
 public class Neo4jPrecomputedEngine extends PrecomputedEngine<Node, Node, Relationship> {
 
     public static final RelationshipType RECOMMEND = DynamicRelationshipType.withName("RECOMMEND");
 
+    /**
+     * Get the name of the node property holding the time (in ms since the epoch) the recommendations of a node have
+     * been pre-computed at.
+     *
+     * @param type relationship type the recommendations have been pre-computed with.
+     * @return property name.
+     */
+    public static String computedAtProperty(RelationshipType type) {
+        return PackedRecommendations.PROPERTY_PREFIX + type.name() + "_COMPUTED_AT";
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -16,13 +16,96 @@
 
 package com.graphaware.reco.neo4j.engine;
 
+import com.graphaware.reco.generic.config.Config;
+import com.graphaware.reco.generic.engine.RecommendationEngine;
 import com.graphaware.reco.generic.engine.TopLevelDelegatingRecommendationEngine;
+import com.graphaware.reco.generic.filter.BlacklistBuilder;
+import com.graphaware.reco.generic.result.Recommendation;
+import com.graphaware.reco.neo4j.cypher.Deadline;
+import com.graphaware.reco.neo4j.cypher.Precompilable;
+import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
 
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.util.Assert.notNull;
+
 /**
  * A Neo4j {@link TopLevelDelegatingRecommendationEngine} where both the input to the
  * recommendation-computing process and the produced recommendations are {@link org.neo4j.graphdb.Node}s.
+ * <p/>
+ * Pre-compiling this engine pre-compiles all delegate engines and blacklist builders that are {@link Precompilable}.
+ * <p/>
+ * Recommendations for many inputs can be computed at once using {@link #recommend(List, Config)}, which lets delegate
+ * engines that are {@link BatchingEngine}s compute recommendations for the whole batch upfront.
+ * <p/>
+ * Each call to {@link #recommend(Node, Config)} marks the start of a request (see {@link Deadline#startRequest()}), so
+ * that deadline-aware components without access to the request's context measure time from it.
  */
-public class Neo4jTopLevelDelegatingRecommendationEngine extends TopLevelDelegatingRecommendationEngine<Node, Node> {
+public class Neo4jTopLevelDelegatingRecommendationEngine extends TopLevelDelegatingRecommendationEngine<Node, Node> implements Precompilable {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void precompile(GraphDatabaseService database) {
+        for (RecommendationEngine<Node, Node> engine : engines()) {
+            if (engine instanceof Precompilable) {
+                ((Precompilable) engine).precompile(database);
+            }
+        }
+
+        for (BlacklistBuilder<Node, Node> blacklistBuilder : blacklistBuilders()) {
+            if (blacklistBuilder instanceof Precompilable) {
+                ((Precompilable) blacklistBuilder).precompile(database);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Recommendation<Node>> recommend(Node input, Config config) {
+        Long enclosing = Deadline.startRequest();
+        try {
+            return super.recommend(input, config);
+        } finally {
+            Deadline.endRequest(enclosing);
+        }
+    }
+
+    /**
+     * Compute recommendations for a batch of input nodes. Delegate engines that are {@link BatchingEngine}s are asked
+     * to prefetch recommendations for the whole batch first, then recommendations are computed for each input as if
+     * {@link #recommend(Object, Config)} was called for it, with the prefetched recommendations
+     * {@link PrefetchedRecommendations#current() current}.
+     *
+     * @param inputs input nodes. Must not be <code>null</code>.
+     * @param config configuration of the computation.
+     * @return recommendations keyed by input node, in the order of inputs.
+     */
+    public Map<Node, List<Recommendation<Node>>> recommend(List<Node> inputs, Config config) {
+        notNull(inputs);
+
+        PrefetchedRecommendations prefetched = new PrefetchedRecommendations();
+        for (RecommendationEngine<Node, Node> engine : engines()) {
+            if (engine instanceof BatchingEngine) {
+                ((BatchingEngine) engine).prefetch(inputs, config, prefetched);
+            }
+        }
 
+        PrefetchedRecommendations previous = PrefetchedRecommendations.open(prefetched);
+        try {
+            Map<Node, List<Recommendation<Node>>> result = new LinkedHashMap<>();
+            for (Node input : inputs) {
+                result.put(input, recommend(input, config));
+            }
+            return result;
+        } finally {
+            PrefetchedRecommendations.restore(previous);
+        }
+    }
 }
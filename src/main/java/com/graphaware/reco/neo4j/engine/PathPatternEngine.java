@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.engine;
+
+import com.graphaware.reco.generic.context.Context;
+import com.graphaware.reco.generic.engine.SingleScoreRecommendationEngine;
+import com.graphaware.reco.generic.result.PartialScore;
+import com.graphaware.reco.neo4j.util.LongDoubleMap;
+import com.graphaware.reco.neo4j.util.SupernodeGuard;
+import com.graphaware.reco.neo4j.util.SupernodeGuard.Expansion;
+import com.graphaware.reco.neo4j.util.SupernodeStrategy;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.graphaware.reco.neo4j.util.SupernodeGuard.expand;
+import static com.graphaware.reco.neo4j.util.SupernodeGuard.sampledDetails;
+
+/**
+ * {@link SingleScoreRecommendationEngine} that recommends {@link Node}s at the end of paths from the input that follow a
+ * pattern declared as a list of {@link PathStep}s. For example, steps (PURCHASED, OUTGOING), (IN_CATEGORY, OUTGOING),
+ * (IN_CATEGORY, INCOMING) recommend products in the same categories as the products the input has purchased.
+ * <p/>
+ * The traversal proceeds frontier by frontier. All paths reaching the same node in the same frontier are merged, so that
+ * each node is expanded at most once per frontier, regardless of the number of paths leading to it. The score of
+ * a recommendation is the sum of weights of all paths leading to it, where the weight of a path is the product of
+ * {@link #relationshipWeight(Relationship, PathStep, int)} of its relationships. Weights should be positive.
+ * <p/>
+ * Paths never go through or end at the input node and never traverse the same relationship twice in a row (i.e. they
+ * never immediately go back where they came from). Other than that, they can visit the same node more than once.
+ * <p/>
+ * Nodes other than the input with more than {@link #maxFanOut()} relationships are skipped, sampled, or down-weighted,
+ * depending on {@link #supernodeStrategy()}. Recommendations found through sampled nodes carry the
+ * {@link SupernodeGuard#SAMPLED} detail.
+ */
+public abstract class PathPatternEngine extends SingleScoreRecommendationEngine<Node, Node> {
+
+    /**
+     * Get the steps of the path pattern.
+     *
+     * @return steps, at least one. Must not be <code>null</code>.
+     */
+    protected abstract List<PathStep> steps();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final Map<Node, PartialScore> doRecommendSingle(Node input, Context<Node, Node> context) {
+        GraphDatabaseService database = input.getGraphDatabase();
+        List<PathStep> steps = steps();
+        boolean sampled = false;
+
+        //weights of paths reaching each node of the current frontier
+        LongDoubleMap frontier = new LongDoubleMap(1);
+        frontier.add(input.getId(), 1);
+
+        //weights of paths reaching nodes of the current frontier, keyed by the relationship they arrived through
+        LongDoubleMap arrivals = new LongDoubleMap(1);
+
+        for (int hop = 1; hop <= steps.size() && frontier.size() > 0; hop++) {
+            PathStep step = steps.get(hop - 1);
+            LongDoubleMap nextFrontier = new LongDoubleMap(frontier.size() * 2);
+            LongDoubleMap nextArrivals = new LongDoubleMap(frontier.size() * 2);
+
+            for (int i = 0; i < frontier.size(); i++) {
+                Node node = database.getNodeById(frontier.keyAt(i));
+                //the input is always expanded in full, like in the other traversal-based engines
+                Expansion expansion = expand(node, step.getType(), step.getDirection(), hop == 1 ? Integer.MAX_VALUE : maxFanOut(), supernodeStrategy());
+                sampled |= expansion.isSampled();
+
+                for (Relationship relationship : expansion.getRelationships()) {
+                    Node other = relationship.getOtherNode(node);
+                    if (other.getId() == input.getId() || !step.getNodeInclusionPolicy().include(other)) {
+                        continue;
+                    }
+
+                    double weight = frontier.valueAt(i) - arrivals.get(arrivalKey(relationship, node), 0);
+                    if (weight <= 0) {
+                        //all paths to this node arrived through the same relationship
+                        continue;
+                    }
+
+                    weight *= expansion.getWeight() * relationshipWeight(relationship, step, hop);
+                    nextFrontier.add(other.getId(), weight);
+                    nextArrivals.add(arrivalKey(relationship, other), weight);
+                }
+            }
+
+            frontier = nextFrontier;
+            arrivals = nextArrivals;
+        }
+
+        Map<String, Object> details = sampled ? sampledDetails(null, 1) : Collections.<String, Object>emptyMap();
+        Map<Node, PartialScore> result = new HashMap<>();
+        for (int i = 0; i < frontier.size(); i++) {
+            result.put(database.getNodeById(frontier.keyAt(i)), new PartialScore((float) frontier.valueAt(i), details));
+        }
+
+        return result;
+    }
+
+    private static long arrivalKey(Relationship relationship, Node arrivedAt) {
+        return relationship.getId() * 2 + (relationship.getStartNode().getId() == arrivedAt.getId() ? 0 : 1);
+    }
+
+    /**
+     * Get the weight of a relationship on a path from the input to a recommendation.
+     *
+     * @param relationship on the path.
+     * @param step         the relationship has been expanded by.
+     * @param hop          position of the relationship on the path, starting with 1.
+     * @return weight, {@link PathStep#getWeight()} by default. Should be positive.
+     */
+    protected float relationshipWeight(Relationship relationship, PathStep step, int hop) {
+        return step.getWeight();
+    }
+
+    /**
+     * Get the maximum number of relationships expanded from a single node. Nodes with a higher degree are dealt with
+     * according to {@link #supernodeStrategy()}. Intended to be overridden.
+     *
+     * @return maximum fan-out, {@link Integer#MAX_VALUE} (i.e. unlimited) by default.
+     */
+    protected int maxFanOut() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Get the strategy of dealing with nodes with a degree over {@link #maxFanOut()}. Intended to be overridden.
+     *
+     * @return strategy, {@link SupernodeStrategy#SAMPLE} by default.
+     */
+    protected SupernodeStrategy supernodeStrategy() {
+        return SupernodeStrategy.SAMPLE;
+    }
+}
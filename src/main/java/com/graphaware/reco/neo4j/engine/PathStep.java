@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.engine;
+
+import com.graphaware.common.policy.inclusion.NodeInclusionPolicy;
+import com.graphaware.common.policy.inclusion.all.IncludeAllNodes;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.RelationshipType;
+
+import static org.springframework.util.Assert.notNull;
+
+/**
+ * A single step (hop) of a path pattern traversed by {@link PathPatternEngine}, with fluent interface.
+ * <p/>
+ * A step expands relationships of the given type and direction from every node of the current frontier, keeps nodes
+ * at the other end that are included by the step's {@link NodeInclusionPolicy}, and multiplies the weight of paths
+ * by the step's weight.
+ */
+public final class PathStep {
+
+    private final RelationshipType type;
+    private final Direction direction;
+    private final NodeInclusionPolicy nodeInclusionPolicy;
+    private final float weight;
+
+    /**
+     * Construct a new step that includes all nodes and has weight 1.
+     *
+     * @param type      of relationships to expand. Must not be <code>null</code>.
+     * @param direction of relationships to expand. Must not be <code>null</code>.
+     */
+    public PathStep(RelationshipType type, Direction direction) {
+        this(type, direction, IncludeAllNodes.getInstance(), 1);
+    }
+
+    private PathStep(RelationshipType type, Direction direction, NodeInclusionPolicy nodeInclusionPolicy, float weight) {
+        notNull(type);
+        notNull(direction);
+        notNull(nodeInclusionPolicy);
+
+        this.type = type;
+        this.direction = direction;
+        this.nodeInclusionPolicy = nodeInclusionPolicy;
+        this.weight = weight;
+    }
+
+    /**
+     * Construct a new step with the given policy determining which nodes reached by the step are kept.
+     *
+     * @param nodeInclusionPolicy policy. Must not be <code>null</code>.
+     * @return new step.
+     */
+    public PathStep with(NodeInclusionPolicy nodeInclusionPolicy) {
+        return new PathStep(type, direction, nodeInclusionPolicy, weight);
+    }
+
+    /**
+     * Construct a new step with the given weight.
+     *
+     * @param weight of every relationship expanded by the step. Should be positive.
+     * @return new step.
+     */
+    public PathStep withWeight(float weight) {
+        return new PathStep(type, direction, nodeInclusionPolicy, weight);
+    }
+
+    public RelationshipType getType() {
+        return type;
+    }
+
+    public Direction getDirection() {
+        return direction;
+    }
+
+    public NodeInclusionPolicy getNodeInclusionPolicy() {
+        return nodeInclusionPolicy;
+    }
+
+    public float getWeight() {
+        return weight;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "(" + type.name() + ", " + direction + ", " + weight + ")";
+    }
+}
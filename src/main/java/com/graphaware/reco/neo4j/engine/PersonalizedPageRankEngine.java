@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.engine;
+
+import com.graphaware.common.log.LoggerFactory;
+import com.graphaware.reco.generic.context.Context;
+import com.graphaware.reco.generic.engine.SingleScoreRecommendationEngine;
+import com.graphaware.reco.generic.result.PartialScore;
+import com.graphaware.reco.neo4j.util.LongDoubleMap;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.logging.Log;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link SingleScoreRecommendationEngine} that recommends {@link Node}s with the highest personalized PageRank with
+ * respect to the input, traversing relationships of types {@link #getTypes()} in direction {@link #getDirection()}.
+ * <p/>
+ * PageRank is approximated using the forward push algorithm of Andersen, Chung, and Lang. Every node holds an estimate
+ * and a residual, initially 0, except for the input, whose residual is 1. A node whose residual is at least
+ * {@link #epsilon()} times its degree is pushed: {@link #alpha()} of its residual is added to its estimate and the rest
+ * is spread evenly among its neighbours' residuals. Pushing proceeds frontier by frontier until no node has a large
+ * enough residual. Only nodes on the residual frontier are ever touched, and the total work is bounded by
+ * 1 / ({@link #alpha()} * {@link #epsilon()}) regardless of the size of the graph.
+ * <p/>
+ * If the time allowed for the computation runs out, pushing stops and the estimates computed so far are returned, with
+ * the {@link BaseCypherEngine#PARTIAL} detail.
+ */
+public abstract class PersonalizedPageRankEngine extends SingleScoreRecommendationEngine<Node, Node> {
+
+    private static final Log LOG = LoggerFactory.getLogger(PersonalizedPageRankEngine.class);
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final Map<Node, PartialScore> doRecommendSingle(Node input, Context<Node, Node> context) {
+        GraphDatabaseService database = input.getGraphDatabase();
+        double alpha = alpha();
+        double epsilon = epsilon();
+
+        LongDoubleMap estimates = new LongDoubleMap();
+        LongDoubleMap residuals = new LongDoubleMap();
+        LongDoubleMap degrees = new LongDoubleMap();
+
+        residuals.put(input.getId(), 1);
+        LongDoubleMap frontier = new LongDoubleMap(1);
+        if (degree(input, degrees) > 0) {
+            frontier.put(input.getId(), 0);
+        }
+
+        boolean interrupted = false;
+        while (frontier.size() > 0 && !interrupted) {
+            LongDoubleMap nextFrontier = new LongDoubleMap(frontier.size() * 2);
+
+            for (int i = 0; i < frontier.size(); i++) {
+                if (!context.timeLeft()) {
+                    interrupted = true;
+                    break;
+                }
+
+                Node node = database.getNodeById(frontier.keyAt(i));
+                int index = residuals.indexOf(node.getId());
+                double residual = residuals.valueAt(index);
+                double degree = degree(node, degrees);
+
+                if (residual < epsilon * degree) {
+                    //pushed earlier in this round
+                    continue;
+                }
+
+                residuals.setValueAt(index, 0);
+                estimates.add(node.getId(), alpha * residual);
+
+                double share = (1 - alpha) * residual / degree;
+                for (Relationship relationship : node.getRelationships(getDirection(), getTypes())) {
+                    Node other = relationship.getOtherNode(node);
+                    double otherResidual = residuals.valueAt(residuals.add(other.getId(), share));
+                    double otherDegree = degree(other, degrees);
+
+                    if (otherDegree > 0 && otherResidual >= epsilon * otherDegree) {
+                        nextFrontier.put(other.getId(), 0);
+                    }
+                }
+            }
+
+            frontier = nextFrontier;
+        }
+
+        Map<String, Object> details = Collections.emptyMap();
+        if (interrupted) {
+            LOG.warn("%s: ran out of time, returning partial results", name());
+            details = Collections.<String, Object>singletonMap(BaseCypherEngine.PARTIAL, true);
+        }
+
+        LongDoubleMap candidates = new LongDoubleMap(estimates.size());
+        for (int i = 0; i < estimates.size(); i++) {
+            long id = estimates.keyAt(i);
+            if (id != input.getId() && acceptableRecommendation(database.getNodeById(id))) {
+                candidates.put(id, estimates.valueAt(i));
+            }
+        }
+
+        Map<Node, PartialScore> result = new HashMap<>();
+        for (int index : candidates.topIndices(maxResults(context))) {
+            result.put(database.getNodeById(candidates.keyAt(index)), new PartialScore((float) candidates.valueAt(index), details));
+        }
+
+        return result;
+    }
+
+    private double degree(Node node, LongDoubleMap degrees) {
+        int index = degrees.indexOf(node.getId());
+        if (index != -1) {
+            return degrees.valueAt(index);
+        }
+
+        long degree = 0;
+        for (RelationshipType type : getTypes()) {
+            degree += node.getDegree(type, getDirection());
+        }
+        degrees.put(node.getId(), degree);
+
+        return degree;
+    }
+
+    /**
+     * Get the types of relationships PageRank flows through.
+     *
+     * @return relationship types, at least one.
+     */
+    protected abstract RelationshipType[] getTypes();
+
+    /**
+     * Get the direction of relationships PageRank flows through. Intended to be overridden.
+     *
+     * @return direction, {@link Direction#BOTH} by default.
+     */
+    protected Direction getDirection() {
+        return Direction.BOTH;
+    }
+
+    /**
+     * @return <code>true</code> iff a node with a PageRank estimate can be recommended. <code>true</code> by default.
+     */
+    protected boolean acceptableRecommendation(Node node) {
+        return true;
+    }
+
+    /**
+     * Get the teleport probability, i.e. the probability of jumping back to the input at each step of the random surfer.
+     * The higher the probability, the more local the recommendations. Intended to be overridden.
+     *
+     * @return teleport probability, 0.15 by default.
+     */
+    protected double alpha() {
+        return 0.15;
+    }
+
+    /**
+     * Get the precision of the approximation. A node is only pushed when its residual is at least epsilon times its
+     * degree, so the lower the epsilon, the more precise and expensive the computation. Intended to be overridden.
+     *
+     * @return epsilon, 0.0001 by default. Must be positive.
+     */
+    protected double epsilon() {
+        return 0.0001;
+    }
+
+    /**
+     * Get the maximum number of nodes with the highest PageRank to return. Intended to be overridden.
+     *
+     * @param context of the current computation.
+     * @return maximum number of results, twice the configured limit by default, so that there are enough candidates
+     * left after blacklisting and filtering.
+     */
+    protected int maxResults(Context<Node, Node> context) {
+        return (int) Math.min(Integer.MAX_VALUE, context.config().limit() * 2L);
+    }
+}
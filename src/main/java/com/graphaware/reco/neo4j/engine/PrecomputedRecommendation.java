@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.engine;
+
+import com.graphaware.reco.generic.result.Score;
+import org.neo4j.graphdb.Node;
+
+/**
+ * A recommended node and its score, as read from pre-computed recommendations stored outside of relationships.
+ */
+public final class PrecomputedRecommendation {
+
+    private final Node node;
+    private final Score score;
+
+    PrecomputedRecommendation(Node node, Score score) {
+        this.node = node;
+        this.score = score;
+    }
+
+    public Node getNode() {
+        return node;
+    }
+
+    public Score getScore() {
+        return score;
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.graphaware.reco.neo4j.engine;
+
+import com.graphaware.reco.generic.config.Config;
+import com.graphaware.reco.generic.result.PartialScore;
+import org.neo4j.graphdb.Node;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.util.Assert.notNull;
+
+/**
+ * Recommendations prefetched by {@link BatchingEngine}s for a batch of inputs, held for the duration of a single call to
+ * {@link Neo4jTopLevelDelegatingRecommendationEngine#recommend(List, Config)} on the calling thread.
+ * <p/>
+ * Recommendations are keyed by the name of the engine that prefetched them, which is unique among the delegates of an
+ * engine, rather than by the engine instance, since the delegating engine doesn't necessarily compute recommendations
+ * for the individual inputs with the same instances that have been asked to prefetch.
+ */
+public final class PrefetchedRecommendations {
+
+    private static final ThreadLocal<PrefetchedRecommendations> CURRENT = new ThreadLocal<>();
+
+    private final Map<String, Map<Long, Map<Node, PartialScore>>> recommendations = new HashMap<>();
+
+    /**
+     * Keep recommendations prefetched by an engine.
+     *
+     * @param engineName      name of the engine. Must not be <code>null</code>.
+     * @param recommendations keyed by input node ID. Must not be <code>null</code>.
+     */
+    public void put(String engineName, Map<Long, Map<Node, PartialScore>> recommendations) {
+        notNull(engineName);
+        notNull(recommendations);
+
+        this.recommendations.put(engineName, recommendations);
+    }
+
+    /**
+     * Get recommendations prefetched by an engine for an input.
+     *
+     * @param engineName name of the engine.
+     * @param inputId    ID of the input node.
+     * @return recommendations, <code>null</code> if none have been prefetched.
+     */
+    public Map<Node, PartialScore> get(String engineName, long inputId) {
+        Map<Long, Map<Node, PartialScore>> batch = recommendations.get(engineName);
+        return batch == null ? null : batch.get(inputId);
+    }
+
+    /**
+     * @return recommendations prefetched for the batch being computed by the current thread, <code>null</code> if none.
+     */
+    public static PrefetchedRecommendations current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Make recommendations current for the calling thread.
+     *
+     * @param prefetched to make current.
+     * @return previously current recommendations, to be passed to {@link #restore(PrefetchedRecommendations)}.
+     */
+    static PrefetchedRecommendations open(PrefetchedRecommendations prefetched) {
+        PrefetchedRecommendations previous = CURRENT.get();
+        CURRENT.set(prefetched);
+        return previous;
+    }
+
+    /**
+     * Make previously current recommendations current again for the calling thread.
+     *
+     * @param previous as returned by {@link #open(PrefetchedRecommendations)}, can be <code>null</code>.
+     */
+    static void restore(PrefetchedRecommendations previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+}
@@ -20,20 +20,28 @@ import com.graphaware.common.policy.inclusion.NodeInclusionPolicy;
 import com.graphaware.reco.generic.config.Config;
 import com.graphaware.reco.generic.context.Context;
 import com.graphaware.reco.generic.engine.SingleScoreRecommendationEngine;
-import com.graphaware.reco.generic.policy.ParticipationPolicy;
 import com.graphaware.reco.generic.result.PartialScore;
+import com.graphaware.reco.neo4j.index.LabelSampler;
 import com.graphaware.runtime.walk.NodeSelector;
 import com.graphaware.runtime.walk.RandomNodeSelector;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * {@link SingleScoreRecommendationEngine} that randomly recommends {@link org.neo4j.graphdb.Node}s which comply with
  * the provided {@link com.graphaware.common.policy.inclusion.NodeInclusionPolicy}.
+ * <p/>
+ * By default, nodes are selected by rejection sampling over the whole database, which wastes attempts when only a small
+ * fraction of nodes comply with the policy. When all such nodes share a label, returning it from {@link #getLabel()}
+ * makes the engine draw distinct nodes from a {@link LabelSampler} instead, without any wasted attempts.
  */
-public abstract class RandomRecommendations extends SingleScoreRecommendationEngine<Node, Node> {
+public abstract class RandomRecommendations extends AbstractRandomRecommendations {
 
     private final NodeSelector selector;
 
@@ -41,24 +49,22 @@ public abstract class RandomRecommendations extends SingleScoreRecommendationEng
         this.selector = new RandomNodeSelector(getPolicy());
     }
 
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public ParticipationPolicy<Node, Node> participationPolicy(Context context) {
-        //noinspection unchecked
-        return ParticipationPolicy.IF_MORE_RESULTS_NEEDED;
-    }
-
     /**
      * {@inheritDoc}
      * <p/>
      * A maximum of {@link Context#config()} {@link Config#limit()} number of nodes is returned, each with
      * a score determined by {@link #score(org.neo4j.graphdb.Node)}. The total number of attempts made to find a suitable
-     * node is determined by {@link #numberOfAttempts(com.graphaware.reco.generic.context.Context)}.
+     * node is determined by {@link #numberOfAttempts(com.graphaware.reco.generic.context.Context)}, unless
+     * {@link #getLabel()} is provided, in which case distinct nodes with the label are drawn until
+     * {@link #numberOfRecommendations(Context)} of them comply with the policy, or until all of them have been drawn.
      */
     @Override
     protected final Map<Node, PartialScore> doRecommendSingle(Node input, Context<Node, Node> context) {
+        Label label = getLabel();
+        if (label != null) {
+            return recommendFromLabel(input.getGraphDatabase(), label, context);
+        }
+
         Map<Node, PartialScore> result = new HashMap<>();
         int attempts = 0;
 
@@ -75,46 +81,40 @@ public abstract class RandomRecommendations extends SingleScoreRecommendationEng
         return result;
     }
 
-    /**
-     * Score a randomly selected node.
-     *
-     * @param node to score.
-     * @return score, 0 by default.
-     */
-    protected PartialScore score(Node node) {
-        return new PartialScore();
-    }
+    private Map<Node, PartialScore> recommendFromLabel(GraphDatabaseService database, Label label, Context<Node, Node> context) {
+        Map<Node, PartialScore> result = new HashMap<>();
+        NodeInclusionPolicy policy = getPolicy();
+        int numberOfRecommendations = numberOfRecommendations(context);
 
-    /**
-     * Determine the maximum total number of attempts to make when selecting random nodes to recommend.
-     *
-     * @param context of the current computation.
-     * @return maximum number of attempts. By default 10 * {@link Context#config()} {@link Config#limit()}
-     */
-    protected int numberOfAttempts(Context<Node, Node> context) {
-        return context.config().limit() * 10;
-    }
+        LabelSampler.Draw draw = LabelSampler.forLabel(database, label).draw(ThreadLocalRandom.current());
+        while (result.size() < numberOfRecommendations && draw.hasNext()) {
+            long id = draw.next();
+            if (id == -1) {
+                continue;
+            }
 
-    /**
-     * Determine the maximum number of random nodes to recommend.
-     * <p/>
-     * The reason for this setting is the following: usually, this engine will be used as the last one to make up the
-     * desired number of recommendations. If only {@link Context#config()} {@link Config#limit()} recommendations
-     * were produced, there could be a possibility that the produced recommendations are the ones already computed by
-     * previous engines, thus not making up the desired number. The higher the return value of this method, the lower
-     * the chance of the desired number of recommendations not being satisfied.
-     *
-     * @param context of the current computation.
-     * @return maximum number of recommendations. By default 2 * {@link Context#config()} {@link Config#limit()}
-     */
-    protected int numberOfRecommendations(Context<Node, Node> context) {
-        return context.config().limit() * 2;
+            Node node;
+            try {
+                node = database.getNodeById(id);
+            } catch (NotFoundException e) {
+                continue;
+            }
+
+            if (policy.include(node)) {
+                result.put(node, score(node));
+            }
+        }
+
+        return result;
     }
 
     /**
-     * Get the node inclusion policy of the nodes that can be used as recommendations.
+     * Get the label shared by all nodes that comply with {@link #getPolicy()}. If provided, random nodes are drawn from
+     * the nodes with this label only, which are still checked against the policy. Intended to be overridden.
      *
-     * @return policy.
+     * @return label, <code>null</code> by default, meaning that random nodes are selected from the whole database.
      */
-    protected abstract NodeInclusionPolicy getPolicy();
+    protected Label getLabel() {
+        return null;
+    }
 }
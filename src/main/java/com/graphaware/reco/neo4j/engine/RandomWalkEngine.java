@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.engine;
+
+import com.graphaware.reco.generic.context.Context;
+import com.graphaware.reco.generic.engine.SingleScoreRecommendationEngine;
+import com.graphaware.reco.generic.result.PartialScore;
+import com.graphaware.reco.neo4j.util.LongDoubleMap;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * {@link SingleScoreRecommendationEngine} that recommends {@link Node}s most frequently visited by random walks with
+ * restart from the input, traversing relationships of types {@link #getTypes()} in direction {@link #getDirection()}.
+ * <p/>
+ * The walk takes at most {@link #maxSteps()} steps. Before each step, it jumps back to the input with probability
+ * {@link #restartProbability()}, so that nodes close to the input and reachable through many paths get the most visits.
+ * Each step follows a relationship chosen uniformly at random among the first {@link #maxScannedRelationships()}
+ * relationships of the current node, so the cost of a step does not grow with the degree of the node. The score of a
+ * recommendation is the number of times it has been visited.
+ * <p/>
+ * Every {@link #stabilityCheckInterval()} steps, the walk checks whether the set of the most visited nodes (as many as
+ * the configured limit) has changed. It stops early once the set has been the same for {@link #requiredStableChecks()}
+ * consecutive checks, or when the time allowed for the computation runs out.
+ * <p/>
+ * The cost of a computation is therefore bounded by the walk budget rather than by the degrees of nodes, which makes
+ * the engine suitable for graphs with supernodes, where enumerating traversals such as {@link CollaborativeEngine} explode.
+ */
+public abstract class RandomWalkEngine extends SingleScoreRecommendationEngine<Node, Node> {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected final Map<Node, PartialScore> doRecommendSingle(Node input, Context<Node, Node> context) {
+        if (degree(input) == 0) {
+            return Collections.emptyMap();
+        }
+
+        Random random = random();
+        LongDoubleMap visits = new LongDoubleMap();
+        int topK = context.config().limit();
+        long[] lastTop = null;
+        int stableChecks = 0;
+
+        Node current = input;
+        for (int step = 1; step <= maxSteps(); step++) {
+            if (current.getId() != input.getId() && random.nextDouble() < restartProbability()) {
+                current = input;
+            }
+
+            Node next = randomNeighbour(current, random);
+            if (next == null) {
+                //dead end
+                current = input;
+                continue;
+            }
+
+            current = next;
+            if (current.getId() != input.getId() && acceptableRecommendation(current)) {
+                visits.add(current.getId(), 1);
+            }
+
+            if (step % stabilityCheckInterval() == 0) {
+                long[] top = topIds(visits, topK);
+                stableChecks = Arrays.equals(top, lastTop) ? stableChecks + 1 : 0;
+                lastTop = top;
+
+                if (stableChecks >= requiredStableChecks() || !context.timeLeft()) {
+                    break;
+                }
+            }
+        }
+
+        GraphDatabaseService database = input.getGraphDatabase();
+        Map<Node, PartialScore> result = new HashMap<>();
+        for (int index : visits.topIndices(maxResults(context))) {
+            result.put(database.getNodeById(visits.keyAt(index)), new PartialScore((float) visits.valueAt(index), Collections.<String, Object>emptyMap()));
+        }
+
+        return result;
+    }
+
+    private Node randomNeighbour(Node node, Random random) {
+        int degree = (int) Math.min(degree(node), maxScannedRelationships());
+        if (degree == 0) {
+            return null;
+        }
+
+        int chosen = random.nextInt(degree);
+        for (Relationship relationship : node.getRelationships(getDirection(), getTypes())) {
+            if (chosen-- == 0) {
+                return relationship.getOtherNode(node);
+            }
+        }
+
+        return null;
+    }
+
+    private long degree(Node node) {
+        long degree = 0;
+        for (RelationshipType type : getTypes()) {
+            degree += node.getDegree(type, getDirection());
+        }
+        return degree;
+    }
+
+    private static long[] topIds(LongDoubleMap visits, int k) {
+        int[] top = visits.topIndices(k);
+        long[] result = new long[top.length];
+        for (int i = 0; i < top.length; i++) {
+            result[i] = visits.keyAt(top[i]);
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Get the types of relationships the walk traverses.
+     *
+     * @return relationship types, at least one.
+     */
+    protected abstract RelationshipType[] getTypes();
+
+    /**
+     * Get the direction of relationships the walk traverses. Intended to be overridden.
+     *
+     * @return direction, {@link Direction#BOTH} by default.
+     */
+    protected Direction getDirection() {
+        return Direction.BOTH;
+    }
+
+    /**
+     * @return <code>true</code> iff a visited node can be recommended, i.e., its visits should be counted.
+     * <code>true</code> by default.
+     */
+    protected boolean acceptableRecommendation(Node node) {
+        return true;
+    }
+
+    /**
+     * Get the maximum number of steps of the walk. Intended to be overridden.
+     *
+     * @return walk budget, 10,000 by default.
+     */
+    protected int maxSteps() {
+        return 10_000;
+    }
+
+    /**
+     * Get the probability of jumping back to the input before each step. The expected length of a walk before a restart
+     * is the inverse of this probability. Intended to be overridden.
+     *
+     * @return restart probability, 0.3 by default.
+     */
+    protected double restartProbability() {
+        return 0.3;
+    }
+
+    /**
+     * Get the maximum number of relationships of a single node from which the next step is chosen. Nodes with more
+     * relationships only have the first ones considered, which bounds the cost of a step at the expense of a bias
+     * towards relationships that come first. Intended to be overridden.
+     *
+     * @return maximum number of relationships, 1,000 by default.
+     */
+    protected int maxScannedRelationships() {
+        return 1000;
+    }
+
+    /**
+     * Get the number of steps between two checks of whether the most visited nodes have stabilized. Intended to be
+     * overridden.
+     *
+     * @return number of steps, 1,000 by default.
+     */
+    protected int stabilityCheckInterval() {
+        return 1000;
+    }
+
+    /**
+     * Get the number of consecutive checks the set of the most visited nodes must not change in for the walk to stop
+     * early. Intended to be overridden.
+     *
+     * @return number of checks, 2 by default. {@link Integer#MAX_VALUE} means the walk never stops early.
+     */
+    protected int requiredStableChecks() {
+        return 2;
+    }
+
+    /**
+     * Get the maximum number of most visited nodes to return. Intended to be overridden.
+     *
+     * @param context of the current computation.
+     * @return maximum number of results, twice the configured limit by default, so that there are enough candidates
+     * left after blacklisting and filtering.
+     */
+    protected int maxResults(Context<Node, Node> context) {
+        return (int) Math.min(Integer.MAX_VALUE, context.config().limit() * 2L);
+    }
+
+    /**
+     * Get the source of randomness for a single computation. Intended to be overridden.
+     *
+     * @return random, {@link ThreadLocalRandom#current()} by default.
+     */
+    protected Random random() {
+        return ThreadLocalRandom.current();
+    }
+}
@@ -19,6 +19,9 @@ package com.graphaware.reco.neo4j.engine;
 import com.graphaware.reco.generic.context.Context;
 import com.graphaware.reco.generic.engine.SingleScoreRecommendationEngine;
 import com.graphaware.reco.generic.result.PartialScore;
+import com.graphaware.reco.neo4j.util.SupernodeGuard;
+import com.graphaware.reco.neo4j.util.SupernodeGuard.Expansion;
+import com.graphaware.reco.neo4j.util.SupernodeStrategy;
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
@@ -28,6 +31,8 @@ import java.util.HashMap;
 import java.util.Map;
 
 import static com.graphaware.reco.neo4j.util.DirectionUtils.reverse;
+import static com.graphaware.reco.neo4j.util.SupernodeGuard.expand;
+import static com.graphaware.reco.neo4j.util.SupernodeGuard.sampledDetails;
 
 /**
  * {@link SingleScoreRecommendationEngine} that recommends {@link Node}s with which the input has something in common. In other
@@ -38,6 +43,9 @@ import static com.graphaware.reco.neo4j.util.DirectionUtils.reverse;
  * the opposite direction.
  * <p/>
  * Every time a recommendation is found, it's score is incremented by {@link #scoreNode(Node, Node, Relationship, Relationship)}.
+ * <p/>
+ * Things in common with more than {@link #maxFanOut()} relationships are skipped, sampled, or down-weighted, depending
+ * on {@link #supernodeStrategy()}. Reasons of paths through sampled nodes carry the {@link SupernodeGuard#SAMPLED} detail.
  */
 public abstract class SomethingInCommon extends SingleScoreRecommendationEngine<Node, Node> {
 
@@ -50,10 +58,15 @@ public abstract class SomethingInCommon extends SingleScoreRecommendationEngine<
 
         for (Relationship r1 : input.getRelationships(getType(), getDirection())) {
             Node thingInCommon = r1.getOtherNode(input);
-            for (Relationship r2 : thingInCommon.getRelationships(getType(), reverse(getDirection()))) {
+            Expansion expansion = expand(thingInCommon, getType(), reverse(getDirection()), maxFanOut(), supernodeStrategy());
+            for (Relationship r2 : expansion.getRelationships()) {
                 Node recommendation = r2.getOtherNode(thingInCommon);
                 if (recommendation.getId() != input.getId()) {
-                    addToResult(result, recommendation, new PartialScore(scoreNode(recommendation, thingInCommon, r1, r2), details(thingInCommon, r1, r2)));
+                    if (expansion.isSampled()) {
+                        addToResult(result, recommendation, new PartialScore(scoreNode(recommendation, thingInCommon, r1, r2) * expansion.getWeight(), sampledDetails(details(thingInCommon, r1, r2), expansion.getWeight())));
+                    } else {
+                        addToResult(result, recommendation, new PartialScore(scoreNode(recommendation, thingInCommon, r1, r2), details(thingInCommon, r1, r2)));
+                    }
                 }
             }
         }
@@ -86,6 +99,25 @@ public abstract class SomethingInCommon extends SingleScoreRecommendationEngine<
         return null;
     }
 
+    /**
+     * Get the maximum number of relationships expanded from a single thing in common. Things in common with a higher
+     * degree are dealt with according to {@link #supernodeStrategy()}. Intended to be overridden.
+     *
+     * @return maximum fan-out, {@link Integer#MAX_VALUE} (i.e. unlimited) by default.
+     */
+    protected int maxFanOut() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Get the strategy of dealing with things in common with a degree over {@link #maxFanOut()}. Intended to be overridden.
+     *
+     * @return strategy, {@link SupernodeStrategy#SAMPLE} by default.
+     */
+    protected SupernodeStrategy supernodeStrategy() {
+        return SupernodeStrategy.SAMPLE;
+    }
+
     /**
      * Get the relationship type of the relationship that links the subject of the recommendation and the recommended
      * item with the thing in common.
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.engine;
+
+import com.graphaware.reco.generic.context.Context;
+import com.graphaware.reco.generic.engine.BaseRecommendationEngine;
+import com.graphaware.reco.generic.engine.RecommendationEngine;
+import com.graphaware.reco.generic.result.PartialScore;
+import com.graphaware.reco.generic.result.Recommendations;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A recommendation engine that serves pre-computed recommendations, merged with a cheap real-time delta computed only
+ * from the input's interactions that happened after the recommendations were pre-computed. This gives near-real-time
+ * freshness at near-pre-computed cost, since users who interacted heavily since the last pre-computation don't need a
+ * full real-time re-computation.
+ * <p/>
+ * Interactions are relationships of {@link #getInteractionTypes()} and {@link #getInteractionDirection()}, whose
+ * creation time is held in the {@link #timestampProperty()}. The time recommendations were pre-computed at is the
+ * one stamped by {@link com.graphaware.reco.neo4j.module.RecommendationModule}. Pre-computed recommendations older than
+ * {@link #maxStaleness()}, and nodes without pre-computed recommendations, produce no recommendations at all, so that
+ * the next engine can compute them in real-time.
+ * <p/>
+ * Scores of the delta are added to the pre-computed ones as a partial score named by {@link #name()}.
+ * <p/>
+ * Finding the recent interactions reads all interactions of the input, i.e. costs its degree, unless
+ * {@link #interactionsNewestFirst()} allows the scan to stop at the first interaction older than the recommendations.
+ */
+public abstract class StalenessAwarePrecomputedEngine extends BaseRecommendationEngine<Node, Node> {
+
+    private volatile RecommendationEngine<Node, Node> precomputed;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Recommendations<Node> doRecommend(Node input, Context<Node, Node> context) {
+        long computedAt = computedAt(input);
+        if (computedAt < 0 || System.currentTimeMillis() - computedAt > maxStaleness()) {
+            return new Recommendations<>();
+        }
+
+        Recommendations<Node> result = precomputedEngine().recommend(input, context);
+
+        List<Relationship> interactions = interactionsSince(input, computedAt);
+        if (interactions.isEmpty() || !context.timeLeft()) {
+            return result;
+        }
+
+        for (Map.Entry<Node, PartialScore> entry : delta(input, interactions, context).entrySet()) {
+            if (context.allow(entry.getKey(), input, name())) {
+                result.add(entry.getKey(), name(), entry.getValue());
+            }
+        }
+
+        return result;
+    }
+
+    private RecommendationEngine<Node, Node> precomputedEngine() {
+        if (precomputed == null) {
+            precomputed = precomputed();
+        }
+        return precomputed;
+    }
+
+    private List<Relationship> interactionsSince(Node input, long computedAt) {
+        List<Relationship> result = new ArrayList<>();
+
+        if (!interactionsNewestFirst()) {
+            for (Relationship interaction : input.getRelationships(getInteractionDirection(), getInteractionTypes())) {
+                if (timestamp(interaction) >= computedAt) {
+                    result.add(interaction);
+                }
+            }
+            return result;
+        }
+
+        Direction[] directions = getInteractionDirection() == Direction.BOTH ? new Direction[]{Direction.OUTGOING, Direction.INCOMING} : new Direction[]{getInteractionDirection()};
+        for (RelationshipType type : getInteractionTypes()) {
+            for (Direction direction : directions) {
+                for (Relationship interaction : input.getRelationships(type, direction)) {
+                    if (timestamp(interaction) < computedAt) {
+                        break;
+                    }
+                    result.add(interaction);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private long timestamp(Relationship interaction) {
+        Object timestamp = interaction.getProperty(timestampProperty(), null);
+        return timestamp instanceof Number ? ((Number) timestamp).longValue() : Long.MIN_VALUE;
+    }
+
+    /**
+     * Compute recommendations from the input's recent interactions only.
+     *
+     * @param input        node to compute recommendations for.
+     * @param interactions relationships of the input created since its recommendations were pre-computed. Never empty.
+     * @param context      of the computation.
+     * @return recommendations and their scores, which will be added to the pre-computed ones.
+     */
+    protected abstract Map<Node, PartialScore> delta(Node input, List<Relationship> interactions, Context<Node, Node> context);
+
+    /**
+     * @return types of relationships representing interactions of the input, must not be <code>null</code> or empty.
+     */
+    protected abstract RelationshipType[] getInteractionTypes();
+
+    /**
+     * Get the direction of relationships representing interactions of the input. Intended to be overridden.
+     *
+     * @return direction, {@link Direction#OUTGOING} by default.
+     */
+    protected Direction getInteractionDirection() {
+        return Direction.OUTGOING;
+    }
+
+    /**
+     * Get the name of the property of interaction relationships holding their creation time, in ms since the epoch.
+     * Interactions without the property are never considered recent. Intended to be overridden.
+     *
+     * @return property name, "createdAt" by default.
+     */
+    protected String timestampProperty() {
+        return "createdAt";
+    }
+
+    /**
+     * Are relationships of each interaction type and direction returned by Neo4j newest first, i.e. in descending order
+     * of {@link #timestampProperty()}? This is the case when the timestamp is the time the relationship was created at,
+     * as Neo4j returns the most recently created relationships first. If so, finding recent interactions stops at the
+     * first older one, which makes it cost the number of recent interactions rather than the degree of the input.
+     * Intended to be overridden.
+     *
+     * @return <code>true</code> iff interactions are returned newest first, <code>false</code> by default.
+     */
+    protected boolean interactionsNewestFirst() {
+        return false;
+    }
+
+    /**
+     * Get the engine serving pre-computed recommendations. Called once, when this engine is first used. Intended to be
+     * overridden.
+     *
+     * @return engine, {@link Neo4jPrecomputedEngine} reading relationships of {@link #getType()} by default.
+     */
+    protected RecommendationEngine<Node, Node> precomputed() {
+        return new Neo4jPrecomputedEngine() {
+            @Override
+            protected RelationshipType getType() {
+                return StalenessAwarePrecomputedEngine.this.getType();
+            }
+        };
+    }
+
+    /**
+     * Get the time the input's recommendations have been pre-computed at. Intended to be overridden, e.g. to read
+     * {@link com.graphaware.reco.neo4j.store.StoredRecommendations#computedAt()} when recommendations are pre-computed
+     * into a {@link com.graphaware.reco.neo4j.store.MappedRecommendationStore}.
+     *
+     * @param input node.
+     * @return time in ms since the epoch, -1 if there are no pre-computed recommendations. By default, the value of the
+     * node property named by {@link Neo4jPrecomputedEngine#computedAtProperty(RelationshipType)} for {@link #getType()}.
+     */
+    protected long computedAt(Node input) {
+        Object value = input.getProperty(Neo4jPrecomputedEngine.computedAtProperty(getType()), null);
+        return value instanceof Number ? ((Number) value).longValue() : -1;
+    }
+
+    /**
+     * Get the relationship type recommendations have been pre-computed with. Intended to be overridden.
+     *
+     * @return relationship type, {@link Neo4jPrecomputedEngine#RECOMMEND} by default.
+     */
+    protected RelationshipType getType() {
+        return Neo4jPrecomputedEngine.RECOMMEND;
+    }
+
+    /**
+     * Get the maximum age of pre-computed recommendations that are still served. Intended to be overridden.
+     *
+     * @return maximum age in ms, {@link Long#MAX_VALUE} by default.
+     */
+    protected long maxStaleness() {
+        return Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.engine;
+
+import com.graphaware.common.log.LoggerFactory;
+import com.graphaware.common.policy.inclusion.NodeInclusionPolicy;
+import com.graphaware.reco.generic.context.Context;
+import com.graphaware.reco.generic.engine.SingleScoreRecommendationEngine;
+import com.graphaware.reco.generic.result.PartialScore;
+import com.graphaware.reco.neo4j.util.AliasTable;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.logging.Log;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link SingleScoreRecommendationEngine} that randomly recommends {@link Node}s with a given {@link Label}, with
+ * probabilities proportional to their weights, such as their degree (popularity) or a numeric property (e.g. recency).
+ * Useful as a cold-start or fill-up engine favouring popular items, without running a "top popular" query per request.
+ * <p/>
+ * Nodes are sampled from an {@link AliasTable}, so that each sample takes constant time and allocates nothing. The table
+ * is built by {@link #build(GraphDatabaseService)}, which should be called when the application starts. Otherwise, it is
+ * built in the background the first time the engine is used, and the engine recommends nothing until it's ready. It is
+ * rebuilt in the background once it is older than {@link #rebuildInterval()}, while requests keep being served from the
+ * old one.
+ */
+public abstract class WeightedRandomRecommendations extends AbstractRandomRecommendations {
+
+    private static final Log LOG = LoggerFactory.getLogger(WeightedRandomRecommendations.class);
+
+    private static final ExecutorService REBUILDER = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "GraphAware-Reco-AliasTableRebuilder");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+    private volatile Snapshot snapshot;
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * A maximum of {@link #numberOfRecommendations(Context)} distinct nodes is returned, each with a score determined
+     * by {@link #score(Node)}. Since popular nodes are likely to be drawn repeatedly, the total number of draws is
+     * limited by {@link #numberOfAttempts(Context)}.
+     */
+    @Override
+    protected final Map<Node, PartialScore> doRecommendSingle(Node input, Context<Node, Node> context) {
+        GraphDatabaseService database = input.getGraphDatabase();
+        Snapshot current = snapshot(database);
+
+        Map<Node, PartialScore> result = new HashMap<>();
+        if (current == null || current.table.isEmpty()) {
+            return result;
+        }
+
+        NodeInclusionPolicy policy = getPolicy();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        int attempts = 0;
+        int numberOfAttempts = numberOfAttempts(context);
+        int numberOfRecommendations = numberOfRecommendations(context);
+
+        while (attempts++ < numberOfAttempts && result.size() < numberOfRecommendations) {
+            Node node;
+            try {
+                node = database.getNodeById(current.ids[current.table.sample(random)]);
+            } catch (NotFoundException e) {
+                continue;
+            }
+
+            if (!result.containsKey(node) && policy.include(node)) {
+                result.put(node, score(node));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Build the alias table in the calling thread, typically when the application starts, so that the first requests
+     * are served from it.
+     *
+     * @param database to find the nodes to recommend in.
+     */
+    public void build(GraphDatabaseService database) {
+        snapshot = buildSnapshot(database);
+    }
+
+    private Snapshot snapshot(final GraphDatabaseService database) {
+        Snapshot current = snapshot;
+
+        if ((current == null || System.currentTimeMillis() - current.builtAt > rebuildInterval()) && rebuilding.compareAndSet(false, true)) {
+            REBUILDER.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        snapshot = buildSnapshot(database);
+                    } catch (RuntimeException e) {
+                        LOG.warn(name() + ": failed to build alias table", e);
+                    } finally {
+                        rebuilding.set(false);
+                    }
+                }
+            });
+        }
+
+        return current;
+    }
+
+    private Snapshot buildSnapshot(GraphDatabaseService database) {
+        long[] ids = new long[1024];
+        double[] weights = new double[1024];
+        int size = 0;
+
+        try (Transaction tx = database.beginTx()) {
+            try (ResourceIterator<Node> nodes = database.findNodes(getLabel())) {
+                while (nodes.hasNext()) {
+                    Node node = nodes.next();
+                    double weight = weight(node);
+                    if (weight <= 0) {
+                        continue;
+                    }
+
+                    if (size == ids.length) {
+                        ids = Arrays.copyOf(ids, size * 2);
+                        weights = Arrays.copyOf(weights, size * 2);
+                    }
+                    ids[size] = node.getId();
+                    weights[size] = weight;
+                    size++;
+                }
+            }
+            tx.success();
+        }
+
+        LOG.info("%s: built alias table of %s nodes", name(), size);
+
+        return new Snapshot(Arrays.copyOf(ids, size), new AliasTable(Arrays.copyOf(weights, size)), System.currentTimeMillis());
+    }
+
+    /**
+     * Determine the weight of a node, i.e. how likely it is to be recommended compared to other nodes. Called only
+     * when the alias table is being (re-)built. Intended to be overridden.
+     *
+     * @param node with the label.
+     * @return weight. Nodes with zero or negative weight are never recommended. By default, the value of the
+     * {@link #weightProperty()} property (0 if the property is missing or isn't a number), or the number of the node's
+     * relationships of {@link #weightTypes()} and {@link #weightDirection()} if no property is provided.
+     */
+    protected double weight(Node node) {
+        String property = weightProperty();
+        if (property == null) {
+            return degree(node);
+        }
+
+        Object value = node.getProperty(property, null);
+        return value instanceof Number ? ((Number) value).doubleValue() : 0;
+    }
+
+    private int degree(Node node) {
+        Direction direction = weightDirection();
+        RelationshipType[] types = weightTypes();
+
+        int result = 0;
+        if (types.length > 0) {
+            for (RelationshipType type : types) {
+                result += node.getDegree(type, direction);
+            }
+            return result;
+        }
+
+        //recommendations aren't popularity, counting them would make recommended nodes ever more likely to be recommended
+        for (RelationshipType type : node.getRelationshipTypes()) {
+            if (!type.name().equals(Neo4jPrecomputedEngine.RECOMMEND.name())) {
+                result += node.getDegree(type, direction);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the name of a numeric property of nodes used as their weight by {@link #weight(Node)}. Intended to be overridden.
+     *
+     * @return property name, <code>null</code> by default, meaning that nodes are weighted by their degree.
+     */
+    protected String weightProperty() {
+        return null;
+    }
+
+    /**
+     * Get the types of relationships counted by {@link #weight(Node)} when nodes are weighted by their degree. Intended
+     * to be overridden, e.g. to count interactions only, or to exclude recommendations pre-computed with a relationship
+     * type other than {@link Neo4jPrecomputedEngine#RECOMMEND}.
+     *
+     * @return types, empty by default, meaning all types except {@link Neo4jPrecomputedEngine#RECOMMEND}.
+     */
+    protected RelationshipType[] weightTypes() {
+        return new RelationshipType[0];
+    }
+
+    /**
+     * Get the direction of relationships counted by {@link #weight(Node)} when nodes are weighted by their degree.
+     * Intended to be overridden.
+     *
+     * @return direction, {@link Direction#BOTH} by default.
+     */
+    protected Direction weightDirection() {
+        return Direction.BOTH;
+    }
+
+    /**
+     * Get the time after which the alias table is rebuilt in the background, so that changes in the graph are
+     * reflected. Intended to be overridden.
+     *
+     * @return rebuild interval in ms, 10 minutes by default.
+     */
+    protected long rebuildInterval() {
+        return 10 * 60 * 1000;
+    }
+
+    /**
+     * Get the label of nodes that can be recommended.
+     *
+     * @return label, must not be <code>null</code>.
+     */
+    protected abstract Label getLabel();
+
+    /**
+     * Nodes that can be recommended and an alias table of their weights, built at a point in time.
+     */
+    private static final class Snapshot {
+
+        private final long[] ids;
+        private final AliasTable table;
+        private final long builtAt;
+
+        private Snapshot(long[] ids, AliasTable table, long builtAt) {
+            this.ids = ids;
+            this.table = table;
+            this.builtAt = builtAt;
+        }
+    }
+}
@@ -16,21 +16,41 @@
 
 package com.graphaware.reco.neo4j.filter;
 
+import com.graphaware.common.log.LoggerFactory;
 import com.graphaware.reco.generic.config.Config;
 import com.graphaware.reco.generic.filter.BlacklistBuilder;
+import com.graphaware.reco.neo4j.cypher.CompiledQueryCache;
+import com.graphaware.reco.neo4j.cypher.CypherProfiler;
+import com.graphaware.reco.neo4j.cypher.Deadline;
+import com.graphaware.reco.neo4j.cypher.Precompilable;
+import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Result;
+import org.neo4j.logging.Log;
 
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import static org.springframework.util.Assert.notNull;
 
 /**
  * {@link BlacklistBuilder} based on finding blacklisted {@link Node}s by executing a Cypher query.
+ * <p/>
+ * When {@link #precompiled()} returns <code>true</code>, the query is validated and planned by {@link CompiledQueryCache}
+ * when {@link #precompile(GraphDatabaseService)} is called at bootstrap, which tracks planning time under {@link #name()}.
+ * <p/>
+ * The full blacklist is always built, unless {@link #deadlineAware()} is overridden to return <code>true</code>, in which
+ * case the builder stops consuming query results when the current request runs out of {@link Config#maxTime()}.
+ * <p/>
+ * A fraction of executions given by {@link #profilingRate()} is run with PROFILE, and the profiles are aggregated by
+ * {@link CypherProfiler} under {@link #name()}.
  */
-public class CypherBlacklistBuilder implements BlacklistBuilder<Node, Node> {
+public class CypherBlacklistBuilder implements BlacklistBuilder<Node, Node>, Precompilable {
+
+    private static final Log LOG = LoggerFactory.getLogger(CypherBlacklistBuilder.class);
 
     private final String query;
 
@@ -51,17 +71,91 @@ public class CypherBlacklistBuilder implements BlacklistBuilder<Node, Node> {
     public final Set<Node> buildBlacklist(Node input, Config config) {
         notNull(input);
 
+        Deadline deadline = deadlineAware() ? Deadline.ofRequest(config.maxTime()) : Deadline.NONE;
+
         Set<Node> excluded = new HashSet<>();
 
-        ResourceIterator<Node> it = input.getGraphDatabase().execute(query, Collections.singletonMap(idParamName(), (Object) input.getId())).columnAs(blacklistResultName());
+        boolean profiled = CypherProfiler.getInstance().sample(profilingRate());
+
+        try (Result result = execute(input.getGraphDatabase(), Collections.singletonMap(idParamName(), (Object) input.getId()), profiled)) {
+            ResourceIterator<Node> it = result.columnAs(blacklistResultName());
+            boolean consumed = true;
+
+            while (it.hasNext()) {
+                if (deadline.passed()) {
+                    LOG.warn("%s: deadline passed while consuming query results, blacklist of %s items is partial", name(), excluded.size());
+                    consumed = false;
+                    break;
+                }
+
+                excluded.add(it.next());
+            }
 
-        while (it.hasNext()) {
-            excluded.add(it.next());
+            //the profile of a result that hasn't been consumed in full would only be available after consuming the rest
+            if (profiled && consumed) {
+                CypherProfiler.getInstance().record(name(), result);
+            }
         }
 
         return excluded;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void precompile(GraphDatabaseService database) {
+        if (precompiled()) {
+            CompiledQueryCache.forDatabase(database).compile(name(), query);
+        }
+    }
+
+    private Result execute(GraphDatabaseService database, Map<String, Object> params, boolean profiled) {
+        return CypherProfiler.getInstance().execute(database, query, params, profiled);
+    }
+
+    /**
+     * Get the fraction of query executions that should be run with PROFILE and recorded by {@link CypherProfiler}
+     * under {@link #name()}. Intended to be overridden.
+     *
+     * @return fraction between 0 (no profiling) and 1 (profile every execution), 0 by default.
+     */
+    protected double profilingRate() {
+        return 0;
+    }
+
+    /**
+     * Should the blacklist builder stop consuming query results once {@link Config#maxTime()}, measured from the start of
+     * the current top-level recommendation request (see {@link Deadline#ofRequest(long)}), has run out? If so, the items
+     * gathered so far are returned, which means that some items that should have been blacklisted might be recommended.
+     * Only override this for blacklists that are a quality rather than a correctness concern. Intended to be overridden.
+     *
+     * @return <code>true</code> iff the deadline should be enforced, <code>false</code> by default.
+     */
+    protected boolean deadlineAware() {
+        return false;
+    }
+
+    /**
+     * Should the query be validated and planned through {@link CompiledQueryCache} when {@link #precompile(GraphDatabaseService)}
+     * is called (typically at bootstrap)? This only warms up Neo4j's query plan cache, executions are not affected.
+     * Intended to be overridden.
+     *
+     * @return <code>true</code> iff the query should be pre-compiled, <code>false</code> by default.
+     */
+    protected boolean precompiled() {
+        return false;
+    }
+
+    /**
+     * Get the name of this blacklist builder, used for statistics.
+     *
+     * @return name, the query itself by default.
+     */
+    protected String name() {
+        return query;
+    }
+
     /**
      * Get the name of the parameter that represents input node ID.
      *
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.index;
+
+import com.graphaware.common.log.LoggerFactory;
+import com.graphaware.reco.neo4j.util.LongIndexedSet;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.LabelEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+import org.neo4j.logging.Log;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.WeakHashMap;
+
+import static org.springframework.util.Assert.isTrue;
+import static org.springframework.util.Assert.notNull;
+
+/**
+ * An in-memory set of IDs of all nodes with a given label, for uniform random sampling of such nodes without rejected
+ * attempts.
+ * <p/>
+ * The set is built from the label scan store the first time it is requested for a database and a label, and is
+ * maintained incrementally after every committed transaction that assigns or removes the label. IDs are kept in a
+ * {@link LongIndexedSet}, i.e. in a densely packed <code>long[]</code>, so a sample of <code>k</code> distinct nodes
+ * is drawn in O(k) using Floyd's algorithm, regardless of the number of nodes in the database. When the number of nodes
+ * needed isn't known upfront, e.g. because drawn nodes might be rejected, distinct nodes can be {@link #draw(Random) drawn}
+ * one at a time, each in O(1).
+ */
+public final class LabelSampler {
+
+    private static final Log LOG = LoggerFactory.getLogger(LabelSampler.class);
+
+    private static final Map<GraphDatabaseService, Map<String, LabelSampler>> SAMPLERS = Collections.synchronizedMap(new WeakHashMap<GraphDatabaseService, Map<String, LabelSampler>>());
+
+    private final String label;
+    private final LongIndexedSet ids = new LongIndexedSet();
+
+    /**
+     * Get the sampler of nodes with the given label in the given database, building it if this is the first request.
+     *
+     * @param database database. Must not be <code>null</code>.
+     * @param label    label. Must not be <code>null</code>.
+     * @return sampler, never <code>null</code>.
+     */
+    public static LabelSampler forLabel(GraphDatabaseService database, Label label) {
+        notNull(database);
+        notNull(label);
+
+        synchronized (SAMPLERS) {
+            Map<String, LabelSampler> samplers = SAMPLERS.get(database);
+            if (samplers == null) {
+                samplers = new HashMap<>();
+                SAMPLERS.put(database, samplers);
+            }
+
+            LabelSampler sampler = samplers.get(label.name());
+            if (sampler == null) {
+                sampler = new LabelSampler(label.name());
+                //registered before the scan, so that no commit is missed; applying a change twice is harmless
+                database.registerTransactionEventHandler(sampler.new MaintainingHandler());
+                sampler.build(database);
+                samplers.put(label.name(), sampler);
+            }
+            return sampler;
+        }
+    }
+
+    private LabelSampler(String label) {
+        this.label = label;
+    }
+
+    private void build(GraphDatabaseService database) {
+        try (Transaction tx = database.beginTx()) {
+            try (ResourceIterator<Node> nodes = database.findNodes(Label.label(label))) {
+                while (nodes.hasNext()) {
+                    add(nodes.next().getId());
+                }
+            }
+            tx.success();
+        }
+
+        LOG.info("Built sampler of %s nodes labelled %s", size(), label);
+    }
+
+    /**
+     * @return number of nodes with the label.
+     */
+    public synchronized int size() {
+        return ids.size();
+    }
+
+    /**
+     * Draw a uniform random sample of distinct nodes with the label.
+     *
+     * @param k      number of nodes to draw. Must not be negative.
+     * @param random source of randomness. Must not be <code>null</code>.
+     * @return IDs of <code>min(k, size())</code> distinct nodes. Some of them might have been deleted by transactions
+     * that are still being committed.
+     */
+    public synchronized long[] sample(int k, Random random) {
+        isTrue(k >= 0);
+        notNull(random);
+
+        int n = ids.size();
+        k = Math.min(k, n);
+
+        //Floyd's algorithm: exactly k draws, each one producing a new position
+        LongIndexedSet positions = new LongIndexedSet(k);
+        for (int j = n - k; j < n; j++) {
+            int position = random.nextInt(j + 1);
+            if (!positions.add(position)) {
+                positions.add(j);
+            }
+        }
+
+        long[] result = new long[k];
+        for (int i = 0; i < k; i++) {
+            result[i] = ids.get((int) positions.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Start drawing distinct nodes with the label uniformly at random, one at a time.
+     *
+     * @param random source of randomness. Must not be <code>null</code>.
+     * @return draw of nodes with the label at the time of this call.
+     */
+    public synchronized Draw draw(Random random) {
+        notNull(random);
+
+        return new Draw(ids.size(), random);
+    }
+
+    private synchronized void add(long id) {
+        ids.add(id);
+    }
+
+    private synchronized void remove(long id) {
+        ids.remove(id);
+    }
+
+    /**
+     * Distinct nodes drawn one at a time, by a Fisher-Yates shuffle of positions in the set of IDs that is only
+     * materialised for the positions swapped so far.
+     */
+    public final class Draw {
+
+        private final int size;
+        private final Random random;
+        private final Map<Integer, Integer> swapped = new HashMap<>();
+        private int drawn;
+
+        private Draw(int size, Random random) {
+            this.size = size;
+            this.random = random;
+        }
+
+        /**
+         * @return <code>true</code> iff not all nodes have been drawn yet.
+         */
+        public boolean hasNext() {
+            return drawn < size;
+        }
+
+        /**
+         * Draw the next node. Must only be called if {@link #hasNext()}.
+         *
+         * @return ID of a node not drawn before, -1 if the node drawn no longer has the label. The node might have been
+         * deleted by a transaction that is still being committed.
+         */
+        public long next() {
+            isTrue(hasNext());
+
+            int position = drawn + random.nextInt(size - drawn);
+            int drawnPosition = positionAt(position);
+            swapped.put(position, positionAt(drawn));
+            swapped.remove(drawn);
+            drawn++;
+
+            synchronized (LabelSampler.this) {
+                return drawnPosition < ids.size() ? ids.get(drawnPosition) : -1;
+            }
+        }
+
+        private int positionAt(int index) {
+            Integer position = swapped.get(index);
+            return position == null ? index : position;
+        }
+    }
+
+    /**
+     * Applies label assignments and removals after they have been committed.
+     */
+    private class MaintainingHandler extends TransactionEventHandler.Adapter<Void> {
+
+        @Override
+        public void afterCommit(TransactionData data, Void state) {
+            for (LabelEntry entry : data.removedLabels()) {
+                if (label.equals(entry.label().name())) {
+                    remove(entry.node().getId());
+                }
+            }
+
+            for (Node node : data.deletedNodes()) {
+                remove(node.getId());
+            }
+
+            for (LabelEntry entry : data.assignedLabels()) {
+                if (label.equals(entry.label().name())) {
+                    add(entry.node().getId());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.index;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.springframework.util.Assert.isTrue;
+
+/**
+ * MinHash signatures of sets of long IDs (typically neighbour node IDs), and their locality-sensitive hashing (LSH)
+ * bands.
+ * <p/>
+ * The probability that two signatures agree at any given position equals the Jaccard similarity of the two sets.
+ * Signatures are split into bands of equal number of rows; two sets with Jaccard similarity <code>s</code> share at
+ * least one band with probability <code>1 - (1 - s^rows)^bands</code>, so sets similar above roughly
+ * <code>(1 / bands)^(1 / rows)</code> are likely to share a band, and dissimilar ones are not.
+ * <p/>
+ * This class is immutable and thread-safe.
+ */
+public final class MinHash {
+
+    private final long[] seeds;
+    private final int bands;
+    private final int rows;
+
+    /**
+     * Create a new MinHash.
+     *
+     * @param hashes number of hash functions, i.e. length of signatures. Must be positive and divisible by bands.
+     * @param bands  number of LSH bands. Must be positive.
+     * @param seed   seed of the hash functions. Signatures computed with different seeds are not comparable.
+     */
+    public MinHash(int hashes, int bands, long seed) {
+        isTrue(hashes > 0);
+        isTrue(bands > 0);
+        isTrue(hashes % bands == 0, "Number of hashes must be divisible by number of bands");
+
+        Random random = new Random(seed);
+        this.seeds = new long[hashes];
+        for (int i = 0; i < hashes; i++) {
+            seeds[i] = random.nextLong();
+        }
+
+        this.bands = bands;
+        this.rows = hashes / bands;
+    }
+
+    /**
+     * Compute the signature of a set.
+     *
+     * @param ids members of the set. Duplicates are allowed and have no effect.
+     * @param size number of members, i.e. the number of leading elements of <code>ids</code> to consider.
+     * @return signature, <code>null</code> for an empty set.
+     */
+    public int[] signature(long[] ids, int size) {
+        if (size == 0) {
+            return null;
+        }
+
+        int[] signature = new int[seeds.length];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+
+        for (int m = 0; m < size; m++) {
+            long id = ids[m];
+            for (int i = 0; i < seeds.length; i++) {
+                int hash = (int) (mix(id ^ seeds[i]) >>> 32);
+                if (hash < signature[i]) {
+                    signature[i] = hash;
+                }
+            }
+        }
+
+        return signature;
+    }
+
+    /**
+     * Compute the LSH bands of a signature.
+     *
+     * @param signature signature computed by this MinHash.
+     * @return one hash per band, which also depends on the position of the band.
+     */
+    public long[] bands(int[] signature) {
+        long[] result = new long[bands];
+
+        for (int b = 0; b < bands; b++) {
+            long hash = b + 1;
+            for (int r = b * rows; r < (b + 1) * rows; r++) {
+                hash = hash * 0x100000001B3L + signature[r];
+            }
+            result[b] = mix(hash);
+        }
+
+        return result;
+    }
+
+    /**
+     * @return length of signatures.
+     */
+    public int getHashes() {
+        return seeds.length;
+    }
+
+    /**
+     * @return number of LSH bands.
+     */
+    public int getBands() {
+        return bands;
+    }
+
+    /**
+     * Estimate the Jaccard similarity of two sets from their signatures.
+     *
+     * @param signature1 signature of the first set.
+     * @param signature2 signature of the second set, of the same length.
+     * @return estimated similarity between 0 and 1.
+     */
+    public static float similarity(int[] signature1, int[] signature2) {
+        int equal = 0;
+        for (int i = 0; i < signature1.length; i++) {
+            if (signature1[i] == signature2[i]) {
+                equal++;
+            }
+        }
+        return (float) equal / signature1.length;
+    }
+
+    /**
+     * Encode a signature compactly, to be stored as a node property.
+     *
+     * @param signature to encode.
+     * @return 4 bytes per hash, big-endian.
+     */
+    public static byte[] toBytes(int[] signature) {
+        byte[] result = new byte[signature.length * 4];
+        for (int i = 0; i < signature.length; i++) {
+            result[i * 4] = (byte) (signature[i] >>> 24);
+            result[i * 4 + 1] = (byte) (signature[i] >>> 16);
+            result[i * 4 + 2] = (byte) (signature[i] >>> 8);
+            result[i * 4 + 3] = (byte) signature[i];
+        }
+        return result;
+    }
+
+    /**
+     * Decode a signature encoded by {@link #toBytes(int[])}.
+     *
+     * @param bytes to decode.
+     * @return signature.
+     */
+    public static int[] fromBytes(byte[] bytes) {
+        int[] result = new int[bytes.length / 4];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (bytes[i * 4] & 0xFF) << 24
+                    | (bytes[i * 4 + 1] & 0xFF) << 16
+                    | (bytes[i * 4 + 2] & 0xFF) << 8
+                    | (bytes[i * 4 + 3] & 0xFF);
+        }
+        return result;
+    }
+
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
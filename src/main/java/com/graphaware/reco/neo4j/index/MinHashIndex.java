@@ -0,0 +1,478 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.index;
+
+import com.graphaware.common.log.LoggerFactory;
+import com.graphaware.reco.neo4j.util.LongDoubleMap;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.PropertyEntry;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+import org.neo4j.logging.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.springframework.util.Assert.hasLength;
+import static org.springframework.util.Assert.isTrue;
+import static org.springframework.util.Assert.notNull;
+
+/**
+ * Index of {@link MinHash} signatures of nodes' neighbour sets, for finding nodes with similar neighbours (i.e. many
+ * things in common) without traversing the neighbours' neighbours.
+ * <p/>
+ * The neighbours of a node are the nodes at the other end of its relationships of the given type and direction.
+ * The signature of each node with at least one neighbour is stored as a <code>byte[]</code> property of the node.
+ * LSH buckets, mapping each band of a signature to the IDs of nodes whose signatures have the same band, are kept in
+ * memory. When the index is {@link #install(GraphDatabaseService) installed}, they are loaded from the stored signatures,
+ * which only reads a property of each node. Signatures are only computed by traversal when none are stored yet, or
+ * when {@link #rebuild()} is called explicitly, e.g. after the graph was changed while the index wasn't installed.
+ * <p/>
+ * Once installed, the index is maintained incrementally: signatures of nodes whose relationships of the indexed type
+ * change are re-computed and stored before the transaction commits, and buckets are updated after it commits.
+ */
+public final class MinHashIndex {
+
+    private static final Log LOG = LoggerFactory.getLogger(MinHashIndex.class);
+
+    public static final String PROPERTY_PREFIX = "_GA_MINHASH_";
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final RelationshipType type;
+    private final Direction direction;
+    private final MinHash minHash;
+    private final String propertyKey;
+
+    private final int maxBucketSize;
+
+    private final ConcurrentMap<Long, Bucket> buckets = new ConcurrentHashMap<>();
+    private final TransactionEventHandler<List<Change>> handler = new MaintainingHandler();
+    private GraphDatabaseService database;
+
+    /**
+     * Create a new index with signatures of 128 hashes and 32 bands of 4 rows, so that nodes with Jaccard similarity
+     * over roughly 0.42 are likely to be found.
+     *
+     * @param name      of the index, unique per database. Must not be <code>null</code> or empty.
+     * @param type      of relationships linking nodes with their neighbours. Must not be <code>null</code>.
+     * @param direction of relationships linking nodes with their neighbours. Must not be <code>null</code>.
+     */
+    public MinHashIndex(String name, RelationshipType type, Direction direction) {
+        this(name, type, direction, new MinHash(128, 32, 0));
+    }
+
+    /**
+     * Create a new index.
+     *
+     * @param name      of the index, unique per database. Must not be <code>null</code> or empty.
+     * @param type      of relationships linking nodes with their neighbours. Must not be <code>null</code>.
+     * @param direction of relationships linking nodes with their neighbours. Must not be <code>null</code>.
+     * @param minHash   computing signatures and bands. Must not be <code>null</code>.
+     */
+    public MinHashIndex(String name, RelationshipType type, Direction direction, MinHash minHash) {
+        this(name, type, direction, minHash, 1000);
+    }
+
+    /**
+     * Create a new index.
+     *
+     * @param name          of the index, unique per database. Must not be <code>null</code> or empty.
+     * @param type          of relationships linking nodes with their neighbours. Must not be <code>null</code>.
+     * @param direction     of relationships linking nodes with their neighbours. Must not be <code>null</code>.
+     * @param minHash       computing signatures and bands. Must not be <code>null</code>.
+     * @param maxBucketSize maximum number of members of a single bucket returned as {@link #candidates(Node)}, so that
+     *                      bands shared by very many nodes don't make every lookup expensive. Must be positive.
+     */
+    public MinHashIndex(String name, RelationshipType type, Direction direction, MinHash minHash, int maxBucketSize) {
+        hasLength(name);
+        notNull(type);
+        notNull(direction);
+        notNull(minHash);
+        isTrue(maxBucketSize > 0);
+
+        this.type = type;
+        this.direction = direction;
+        this.minHash = minHash;
+        this.propertyKey = PROPERTY_PREFIX + name;
+        this.maxBucketSize = maxBucketSize;
+    }
+
+    /**
+     * Start maintaining the index in the given database and load the LSH buckets from the stored signatures. If no
+     * signatures are stored yet, the index is {@link #rebuild() built} from scratch.
+     *
+     * @param database to index. Must not be <code>null</code>.
+     */
+    public synchronized void install(GraphDatabaseService database) {
+        notNull(database);
+        isTrue(this.database == null, "Index is already installed");
+
+        this.database = database;
+        database.registerTransactionEventHandler(handler);
+        if (load() == 0) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Stop maintaining the index. Signatures stored in the graph are kept, but the index can't be queried until
+     * installed again.
+     */
+    public synchronized void uninstall() {
+        if (database != null) {
+            database.unregisterTransactionEventHandler(handler);
+            database = null;
+            buckets.clear();
+        }
+    }
+
+    /**
+     * Load the LSH buckets from stored signatures, in transactions of {@value #BATCH_SIZE} nodes. Signatures computed
+     * with a different number of hashes are re-computed.
+     *
+     * @return number of indexed nodes.
+     */
+    private long load() {
+        buckets.clear();
+        long[] ids = allNodeIds();
+        long indexed = 0;
+
+        for (int from = 0; from < ids.length; from += BATCH_SIZE) {
+            try (Transaction tx = database.beginTx()) {
+                for (int i = from; i < Math.min(ids.length, from + BATCH_SIZE); i++) {
+                    Node node;
+                    try {
+                        node = database.getNodeById(ids[i]);
+                    } catch (NotFoundException e) {
+                        continue;
+                    }
+
+                    int[] signature = signature(node);
+                    if (signature == null) {
+                        continue;
+                    }
+                    if (signature.length != minHash.getHashes()) {
+                        signature = computeSignature(node);
+                        store(node, signature);
+                    }
+                    if (signature != null) {
+                        addToBuckets(node.getId(), signature);
+                        indexed++;
+                    }
+                }
+                tx.success();
+            }
+        }
+
+        LOG.info("Loaded MinHash index %s of %s nodes", propertyKey, indexed);
+
+        return indexed;
+    }
+
+    /**
+     * Re-compute signatures of all nodes and rebuild the LSH buckets, in transactions of {@value #BATCH_SIZE} nodes.
+     *
+     * @return number of indexed nodes, i.e. nodes with at least one neighbour.
+     */
+    public synchronized long rebuild() {
+        isTrue(database != null, "Index is not installed");
+
+        buckets.clear();
+        long[] ids = allNodeIds();
+        long indexed = 0;
+
+        for (int from = 0; from < ids.length; from += BATCH_SIZE) {
+            try (Transaction tx = database.beginTx()) {
+                for (int i = from; i < Math.min(ids.length, from + BATCH_SIZE); i++) {
+                    Node node;
+                    try {
+                        node = database.getNodeById(ids[i]);
+                    } catch (NotFoundException e) {
+                        continue;
+                    }
+
+                    int[] signature = computeSignature(node);
+                    if (!Arrays.equals(signature(node), signature)) {
+                        store(node, signature);
+                    }
+                    if (signature != null) {
+                        addToBuckets(node.getId(), signature);
+                        indexed++;
+                    }
+                }
+                tx.success();
+            }
+        }
+
+        LOG.info("Built MinHash index %s of %s nodes", propertyKey, indexed);
+
+        return indexed;
+    }
+
+    /**
+     * Get the stored signature of a node.
+     *
+     * @param node to get the signature of. Must not be <code>null</code>.
+     * @return signature, <code>null</code> if the node has no neighbours.
+     */
+    public int[] signature(Node node) {
+        Object bytes = node.getProperty(propertyKey, null);
+        return bytes instanceof byte[] ? MinHash.fromBytes((byte[]) bytes) : null;
+    }
+
+    /**
+     * Find candidate similar nodes, i.e. nodes whose signatures share at least one band with the signature of the given
+     * node. At most <code>maxBucketSize</code> members of each bucket, the ones indexed first, are considered. Runs in time
+     * proportional to the number of candidates, regardless of the number of neighbours and their degrees.
+     *
+     * @param node to find similar nodes for. Must not be <code>null</code>.
+     * @return IDs of candidates, not including the node itself. Some of them might have been deleted.
+     */
+    public long[] candidates(Node node) {
+        int[] signature = signature(node);
+        if (signature == null) {
+            return new long[0];
+        }
+
+        LongDoubleMap candidates = new LongDoubleMap();
+        for (long band : minHash.bands(signature)) {
+            Bucket bucket = buckets.get(band);
+            if (bucket != null) {
+                bucket.addTo(candidates, node.getId(), maxBucketSize);
+            }
+        }
+
+        long[] result = new long[candidates.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = candidates.keyAt(i);
+        }
+        return result;
+    }
+
+    /**
+     * Estimate the Jaccard similarity of two nodes' neighbour sets.
+     *
+     * @param node1 first node.
+     * @param node2 second node.
+     * @return estimated similarity, 0 if any of the nodes has no neighbours.
+     */
+    public float similarity(Node node1, Node node2) {
+        int[] signature1 = signature(node1);
+        int[] signature2 = signature(node2);
+        if (signature1 == null || signature2 == null || signature1.length != signature2.length) {
+            return 0;
+        }
+        return MinHash.similarity(signature1, signature2);
+    }
+
+    private int[] computeSignature(Node node) {
+        long[] neighbours = new long[16];
+        int size = 0;
+
+        for (Relationship relationship : node.getRelationships(type, direction)) {
+            if (size == neighbours.length) {
+                neighbours = Arrays.copyOf(neighbours, size * 2);
+            }
+            neighbours[size++] = relationship.getOtherNode(node).getId();
+        }
+
+        return minHash.signature(neighbours, size);
+    }
+
+    private void store(Node node, int[] signature) {
+        if (signature == null) {
+            node.removeProperty(propertyKey);
+        } else {
+            node.setProperty(propertyKey, MinHash.toBytes(signature));
+        }
+    }
+
+    private long[] allNodeIds() {
+        long[] result = new long[1024];
+        int size = 0;
+
+        try (Transaction tx = database.beginTx()) {
+            for (Node node : database.getAllNodes()) {
+                if (size == result.length) {
+                    result = Arrays.copyOf(result, size * 2);
+                }
+                result[size++] = node.getId();
+            }
+            tx.success();
+        }
+
+        return Arrays.copyOf(result, size);
+    }
+
+    private void addToBuckets(long id, int[] signature) {
+        synchronized (buckets) {
+            for (long band : minHash.bands(signature)) {
+                Bucket bucket = buckets.get(band);
+                if (bucket == null) {
+                    bucket = new Bucket();
+                    buckets.put(band, bucket);
+                }
+                bucket.add(id);
+            }
+        }
+    }
+
+    private void removeFromBuckets(long id, int[] signature) {
+        synchronized (buckets) {
+            for (long band : minHash.bands(signature)) {
+                Bucket bucket = buckets.get(band);
+                if (bucket != null && bucket.remove(id)) {
+                    buckets.remove(band);
+                }
+            }
+        }
+    }
+
+    /**
+     * Re-computes signatures of nodes whose relationships of the indexed type change before commit, and updates
+     * buckets after commit.
+     */
+    private class MaintainingHandler extends TransactionEventHandler.Adapter<List<Change>> {
+
+        @Override
+        public List<Change> beforeCommit(TransactionData data) {
+            Map<Long, Node> affected = new LinkedHashMap<>();
+            collectAffected(data.createdRelationships(), affected);
+            collectAffected(data.deletedRelationships(), affected);
+
+            List<Change> changes = new ArrayList<>();
+            for (Node node : affected.values()) {
+                if (data.isDeleted(node)) {
+                    continue;
+                }
+
+                int[] before = signature(node);
+                int[] after = computeSignature(node);
+                if (!Arrays.equals(before, after)) {
+                    store(node, after);
+                    changes.add(new Change(node.getId(), before, after));
+                }
+            }
+
+            for (PropertyEntry<Node> entry : data.removedNodeProperties()) {
+                if (propertyKey.equals(entry.key()) && data.isDeleted(entry.entity()) && entry.previouslyCommitedValue() instanceof byte[]) {
+                    changes.add(new Change(entry.entity().getId(), MinHash.fromBytes((byte[]) entry.previouslyCommitedValue()), null));
+                }
+            }
+
+            return changes;
+        }
+
+        @Override
+        public void afterCommit(TransactionData data, List<Change> changes) {
+            if (changes == null) {
+                return;
+            }
+
+            for (Change change : changes) {
+                if (change.before != null) {
+                    removeFromBuckets(change.nodeId, change.before);
+                }
+                if (change.after != null) {
+                    addToBuckets(change.nodeId, change.after);
+                }
+            }
+        }
+
+        private void collectAffected(Iterable<Relationship> relationships, Map<Long, Node> affected) {
+            for (Relationship relationship : relationships) {
+                if (!relationship.isType(type)) {
+                    continue;
+                }
+
+                if (direction != Direction.INCOMING) {
+                    affected.put(relationship.getStartNode().getId(), relationship.getStartNode());
+                }
+                if (direction != Direction.OUTGOING) {
+                    affected.put(relationship.getEndNode().getId(), relationship.getEndNode());
+                }
+            }
+        }
+    }
+
+    /**
+     * IDs of nodes with the same band, in the order they were indexed. Backed by a growable array, so that appends are
+     * amortised O(1). Modified only while holding the lock of all buckets, read while holding the lock of the bucket.
+     */
+    private static final class Bucket {
+
+        private long[] members = new long[4];
+        private int size;
+
+        private synchronized void add(long id) {
+            if (size == members.length) {
+                members = Arrays.copyOf(members, size * 2);
+            }
+            members[size++] = id;
+        }
+
+        /**
+         * @return <code>true</code> iff the bucket is empty after removal.
+         */
+        private synchronized boolean remove(long id) {
+            for (int i = 0; i < size; i++) {
+                if (members[i] == id) {
+                    System.arraycopy(members, i + 1, members, i, size - i - 1);
+                    size--;
+                    break;
+                }
+            }
+            return size == 0;
+        }
+
+        private synchronized void addTo(LongDoubleMap candidates, long excluded, int max) {
+            for (int i = 0; i < Math.min(size, max); i++) {
+                if (members[i] != excluded) {
+                    candidates.put(members[i], 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Change of a node's signature in a transaction.
+     */
+    private static final class Change {
+
+        private final long nodeId;
+        private final int[] before;
+        private final int[] after;
+
+        private Change(long nodeId, int[] before, int[] after) {
+            this.nodeId = nodeId;
+            this.before = before;
+            this.after = after;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.module;
+
+/**
+ * What compute workers of a {@link RecommendationModule} do when the queue of computed recommendations waiting to be
+ * persisted is full.
+ */
+public enum Backpressure {
+
+    /**
+     * Wait until the writer catches up. Computation runs no faster than persistence.
+     */
+    BLOCK,
+
+    /**
+     * Discard the computed recommendations. They will be computed again in the next pass over the graph.
+     */
+    DROP
+}
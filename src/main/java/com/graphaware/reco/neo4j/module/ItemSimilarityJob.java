@@ -0,0 +1,391 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.module;
+
+import com.graphaware.common.log.LoggerFactory;
+import com.graphaware.common.policy.inclusion.NodeInclusionPolicy;
+import com.graphaware.common.policy.inclusion.all.IncludeAllNodes;
+import com.graphaware.reco.neo4j.engine.CollaborativeEngine;
+import com.graphaware.reco.neo4j.engine.ItemBasedEngine;
+import com.graphaware.reco.neo4j.util.LongDoubleMap;
+import com.graphaware.reco.neo4j.util.SimilarityMeasure;
+import com.graphaware.reco.neo4j.util.SupernodeGuard.Expansion;
+import com.graphaware.reco.neo4j.util.SupernodeStrategy;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.logging.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.graphaware.reco.neo4j.util.DirectionUtils.reverse;
+import static com.graphaware.reco.neo4j.util.SupernodeGuard.expand;
+import static org.springframework.util.Assert.isTrue;
+import static org.springframework.util.Assert.notNull;
+
+/**
+ * Job that pre-computes item-to-item similarities for {@link ItemBasedEngine}, with fluent interface.
+ * <p/>
+ * Items are nodes included by the job's {@link NodeInclusionPolicy}. Two items co-occur when a node (e.g. a user) is
+ * related to both of them by a relationship of the given type and direction, i.e., when there is a path
+ * <code>(item)&lt;-[:REL_TYPE]-(user)-[:REL_TYPE]-&gt;(similar)</code>, just like the last two hops of a
+ * {@link CollaborativeEngine}. For every item, the top-K co-occurring items by {@link SimilarityMeasure} are
+ * connected with the item by a relationship of type {@link ItemBasedEngine#SIMILAR} (by default), with the similarity
+ * stored as its {@link ItemBasedEngine#WEIGHT} property. Existing similarity relationships of each item are replaced.
+ * <p/>
+ * Items are split into ranges of consecutive IDs, which are computed in parallel, each in its own read transaction.
+ * Results are written by the thread that runs the job, in transactions of a configurable number of items, so that
+ * writes never contend with each other.
+ */
+public final class ItemSimilarityJob {
+
+    private static final Log LOG = LoggerFactory.getLogger(ItemSimilarityJob.class);
+
+    private final RelationshipType type;
+    private final Direction direction;
+    private final NodeInclusionPolicy itemInclusionPolicy;
+    private final RelationshipType similarityType;
+    private final SimilarityMeasure measure;
+    private final int topK;
+    private final int maxFanOut;
+    private final int parallelism;
+    private final int rangeSize;
+    private final int batchSize;
+
+    /**
+     * Construct a new job, which treats all nodes as items, keeps 10 most co-occurring items per item, and runs with as
+     * many threads as there are processors.
+     *
+     * @param type      type of relationships linking users with items. Must not be <code>null</code>.
+     * @param direction direction of relationships linking users with items, from the user's point of view.
+     *                  Must not be <code>null</code>.
+     */
+    public ItemSimilarityJob(RelationshipType type, Direction direction) {
+        this(type, direction, IncludeAllNodes.getInstance(), ItemBasedEngine.SIMILAR, SimilarityMeasure.OVERLAP, 10, Integer.MAX_VALUE, Runtime.getRuntime().availableProcessors(), 1000, 1000);
+    }
+
+    private ItemSimilarityJob(RelationshipType type, Direction direction, NodeInclusionPolicy itemInclusionPolicy, RelationshipType similarityType, SimilarityMeasure measure, int topK, int maxFanOut, int parallelism, int rangeSize, int batchSize) {
+        notNull(type);
+        notNull(direction);
+        notNull(itemInclusionPolicy);
+        notNull(similarityType);
+        notNull(measure);
+        isTrue(topK > 0);
+        isTrue(maxFanOut > 0);
+        isTrue(parallelism > 0);
+        isTrue(rangeSize > 0);
+        isTrue(batchSize > 0);
+
+        this.type = type;
+        this.direction = direction;
+        this.itemInclusionPolicy = itemInclusionPolicy;
+        this.similarityType = similarityType;
+        this.measure = measure;
+        this.topK = topK;
+        this.maxFanOut = maxFanOut;
+        this.parallelism = parallelism;
+        this.rangeSize = rangeSize;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Construct a new job with the given policy determining which nodes are items.
+     *
+     * @param itemInclusionPolicy policy. Must not be <code>null</code>.
+     * @return new job.
+     */
+    public ItemSimilarityJob with(NodeInclusionPolicy itemInclusionPolicy) {
+        return new ItemSimilarityJob(type, direction, itemInclusionPolicy, similarityType, measure, topK, maxFanOut, parallelism, rangeSize, batchSize);
+    }
+
+    /**
+     * Construct a new job with the given type of relationships linking items with similar items.
+     *
+     * @param similarityType type. Must not be <code>null</code>.
+     * @return new job.
+     */
+    public ItemSimilarityJob withSimilarityType(RelationshipType similarityType) {
+        return new ItemSimilarityJob(type, direction, itemInclusionPolicy, similarityType, measure, topK, maxFanOut, parallelism, rangeSize, batchSize);
+    }
+
+    /**
+     * Construct a new job with the given measure of similarity of co-occurring items.
+     *
+     * @param measure measure. Must not be <code>null</code>.
+     * @return new job.
+     */
+    public ItemSimilarityJob withMeasure(SimilarityMeasure measure) {
+        return new ItemSimilarityJob(type, direction, itemInclusionPolicy, similarityType, measure, topK, maxFanOut, parallelism, rangeSize, batchSize);
+    }
+
+    /**
+     * Construct a new job with the given maximum number of similar items kept per item.
+     *
+     * @param topK number of similar items. Must be positive.
+     * @return new job.
+     */
+    public ItemSimilarityJob withTopK(int topK) {
+        return new ItemSimilarityJob(type, direction, itemInclusionPolicy, similarityType, measure, topK, maxFanOut, parallelism, rangeSize, batchSize);
+    }
+
+    /**
+     * Construct a new job with the given maximum number of items expanded from a single user. Users with more items
+     * only contribute a sample of them (see {@link SupernodeStrategy#SAMPLE}).
+     *
+     * @param maxFanOut maximum fan-out. Must be positive.
+     * @return new job.
+     */
+    public ItemSimilarityJob withMaxFanOut(int maxFanOut) {
+        return new ItemSimilarityJob(type, direction, itemInclusionPolicy, similarityType, measure, topK, maxFanOut, parallelism, rangeSize, batchSize);
+    }
+
+    /**
+     * Construct a new job with the given number of computing threads.
+     *
+     * @param parallelism number of threads. Must be positive.
+     * @return new job.
+     */
+    public ItemSimilarityJob withParallelism(int parallelism) {
+        return new ItemSimilarityJob(type, direction, itemInclusionPolicy, similarityType, measure, topK, maxFanOut, parallelism, rangeSize, batchSize);
+    }
+
+    /**
+     * Construct a new job with the given number of items computed by a single task in a single transaction.
+     *
+     * @param rangeSize number of items. Must be positive.
+     * @return new job.
+     */
+    public ItemSimilarityJob withRangeSize(int rangeSize) {
+        return new ItemSimilarityJob(type, direction, itemInclusionPolicy, similarityType, measure, topK, maxFanOut, parallelism, rangeSize, batchSize);
+    }
+
+    /**
+     * Construct a new job with the given number of items whose similarities are written in a single transaction.
+     *
+     * @param batchSize number of items. Must be positive.
+     * @return new job.
+     */
+    public ItemSimilarityJob withBatchSize(int batchSize) {
+        return new ItemSimilarityJob(type, direction, itemInclusionPolicy, similarityType, measure, topK, maxFanOut, parallelism, rangeSize, batchSize);
+    }
+
+    /**
+     * Run the job, blocking until all similarities are computed and written.
+     *
+     * @param database to run the job on. Must not be <code>null</code>.
+     * @return number of similarity relationships created.
+     */
+    public long run(GraphDatabaseService database) {
+        notNull(database);
+
+        long[] items = itemIds(database);
+        LOG.info("Computing similarities of %s items", items.length);
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        CompletionService<List<SimilarItems>> completionService = new ExecutorCompletionService<>(executor);
+
+        int tasks = 0;
+        for (int from = 0; from < items.length; from += rangeSize) {
+            completionService.submit(new RangeTask(database, items, from, Math.min(items.length, from + rangeSize)));
+            tasks++;
+        }
+
+        long created = 0;
+        try {
+            List<SimilarItems> batch = new ArrayList<>(batchSize);
+            for (int i = 0; i < tasks; i++) {
+                for (SimilarItems similarItems : completionService.take().get()) {
+                    batch.add(similarItems);
+                    if (batch.size() >= batchSize) {
+                        created += write(database, batch);
+                        batch.clear();
+                    }
+                }
+            }
+            created += write(database, batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while computing item similarities", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to compute item similarities", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        LOG.info("Created %s similarity relationships for %s items", created, items.length);
+
+        return created;
+    }
+
+    private long[] itemIds(GraphDatabaseService database) {
+        long[] result = new long[1024];
+        int size = 0;
+
+        try (Transaction tx = database.beginTx()) {
+            for (Node node : database.getAllNodes()) {
+                if (itemInclusionPolicy.include(node)) {
+                    if (size == result.length) {
+                        result = Arrays.copyOf(result, size * 2);
+                    }
+                    result[size++] = node.getId();
+                }
+            }
+            tx.success();
+        }
+
+        result = Arrays.copyOf(result, size);
+        Arrays.sort(result);
+        return result;
+    }
+
+    private SimilarItems computeSimilarItems(Node item) {
+        LongDoubleMap cooccurrences = new LongDoubleMap();
+
+        for (Relationship withUser : item.getRelationships(type, reverse(direction))) {
+            Node user = withUser.getOtherNode(item);
+            Expansion expansion = expand(user, type, direction, maxFanOut, SupernodeStrategy.SAMPLE);
+            for (Relationship withOther : expansion.getRelationships()) {
+                Node other = withOther.getOtherNode(user);
+                if (other.getId() != item.getId() && itemInclusionPolicy.include(other)) {
+                    cooccurrences.add(other.getId(), 1);
+                }
+            }
+        }
+
+        if (cooccurrences.size() == 0) {
+            return new SimilarItems(item.getId(), new long[0], new float[0]);
+        }
+
+        int itemDegree = item.getDegree(type, reverse(direction));
+        LongDoubleMap similarities = new LongDoubleMap(cooccurrences.size());
+        for (int i = 0; i < cooccurrences.size(); i++) {
+            int otherDegree = measure == SimilarityMeasure.OVERLAP ? 0 : item.getGraphDatabase().getNodeById(cooccurrences.keyAt(i)).getDegree(type, reverse(direction));
+            similarities.put(cooccurrences.keyAt(i), measure.similarity((int) cooccurrences.valueAt(i), itemDegree, otherDegree));
+        }
+
+        int[] top = similarities.topIndices(topK);
+        long[] ids = new long[top.length];
+        float[] weights = new float[top.length];
+        for (int i = 0; i < top.length; i++) {
+            ids[i] = similarities.keyAt(top[i]);
+            weights[i] = (float) similarities.valueAt(top[i]);
+        }
+
+        return new SimilarItems(item.getId(), ids, weights);
+    }
+
+    private long write(GraphDatabaseService database, List<SimilarItems> batch) {
+        long created = 0;
+
+        try (Transaction tx = database.beginTx()) {
+            for (SimilarItems similarItems : batch) {
+                Node item;
+                try {
+                    item = database.getNodeById(similarItems.itemId);
+                } catch (NotFoundException e) {
+                    //deleted since its similarities were computed
+                    continue;
+                }
+
+                for (Relationship existing : item.getRelationships(similarityType, Direction.OUTGOING)) {
+                    existing.delete();
+                }
+
+                for (int i = 0; i < similarItems.ids.length; i++) {
+                    Node similar;
+                    try {
+                        similar = database.getNodeById(similarItems.ids[i]);
+                    } catch (NotFoundException e) {
+                        continue;
+                    }
+
+                    item.createRelationshipTo(similar, similarityType).setProperty(ItemBasedEngine.WEIGHT, similarItems.weights[i]);
+                    created++;
+                }
+            }
+            tx.success();
+        }
+
+        return created;
+    }
+
+    /**
+     * Computes similar items of a range of items in a single read transaction.
+     */
+    private class RangeTask implements Callable<List<SimilarItems>> {
+
+        private final GraphDatabaseService database;
+        private final long[] items;
+        private final int from;
+        private final int to;
+
+        private RangeTask(GraphDatabaseService database, long[] items, int from, int to) {
+            this.database = database;
+            this.items = items;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public List<SimilarItems> call() {
+            List<SimilarItems> result = new ArrayList<>(to - from);
+
+            try (Transaction tx = database.beginTx()) {
+                for (int i = from; i < to; i++) {
+                    Node item;
+                    try {
+                        item = database.getNodeById(items[i]);
+                    } catch (NotFoundException e) {
+                        continue;
+                    }
+                    result.add(computeSimilarItems(item));
+                }
+                tx.success();
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * Similar items of a single item, ordered by similarity, descending.
+     */
+    private static final class SimilarItems {
+
+        private final long itemId;
+        private final long[] ids;
+        private final float[] weights;
+
+        private SimilarItems(long itemId, long[] ids, float[] weights) {
+            this.itemId = itemId;
+            this.ids = ids;
+            this.weights = weights;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.module;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics of persisting pre-computed recommendations by a {@link RecommendationModule}.
+ * <p/>
+ * Counts of recommendation relationships written are kept in total and for the current sweep, i.e. a single pass of
+ * the module over all nodes. The latter are reset when the module starts the next sweep.
+ */
+public final class PersistenceStatistics {
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong nodes = new AtomicLong();
+    private final AtomicLong maxBatchSize = new AtomicLong();
+    private final AtomicLong totalCommitNanos = new AtomicLong();
+    private final AtomicLong maxCommitNanos = new AtomicLong();
+    private final AtomicLong relationshipsCreated = new AtomicLong();
+    private final AtomicLong relationshipsUpdated = new AtomicLong();
+    private final AtomicLong relationshipsDeleted = new AtomicLong();
+    private final AtomicLong relationshipsUnchanged = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong sweeps = new AtomicLong();
+    private final AtomicLong sweepCreated = new AtomicLong();
+    private final AtomicLong sweepUpdated = new AtomicLong();
+    private final AtomicLong sweepDeleted = new AtomicLong();
+    private final AtomicLong sweepUnchanged = new AtomicLong();
+
+    void batchPersisted(int batchSize, long commitNanos) {
+        batches.incrementAndGet();
+        nodes.addAndGet(batchSize);
+        totalCommitNanos.addAndGet(commitNanos);
+        updateMax(maxBatchSize, batchSize);
+        updateMax(maxCommitNanos, commitNanos);
+    }
+
+    void relationshipsWritten(long created, long updated, long deleted, long unchanged) {
+        relationshipsCreated.addAndGet(created);
+        relationshipsUpdated.addAndGet(updated);
+        relationshipsDeleted.addAndGet(deleted);
+        relationshipsUnchanged.addAndGet(unchanged);
+        sweepCreated.addAndGet(created);
+        sweepUpdated.addAndGet(updated);
+        sweepDeleted.addAndGet(deleted);
+        sweepUnchanged.addAndGet(unchanged);
+    }
+
+    /**
+     * Complete the current sweep and reset its counts.
+     *
+     * @return counts of the completed sweep, for logging.
+     */
+    String sweepCompleted() {
+        return "sweep=" + sweeps.incrementAndGet() + ", relationshipsCreated=" + sweepCreated.getAndSet(0) + ", relationshipsUpdated=" + sweepUpdated.getAndSet(0)
+                + ", relationshipsDeleted=" + sweepDeleted.getAndSet(0) + ", relationshipsUnchanged=" + sweepUnchanged.getAndSet(0);
+    }
+
+    void resultDropped() {
+        dropped.incrementAndGet();
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while ((current = max.get()) < value) {
+            if (max.compareAndSet(current, value)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return number of batches persisted, i.e. number of write transactions committed.
+     */
+    public long getBatches() {
+        return batches.get();
+    }
+
+    /**
+     * @return number of nodes whose recommendations have been persisted.
+     */
+    public long getNodes() {
+        return nodes.get();
+    }
+
+    /**
+     * @return largest number of nodes persisted in a single batch.
+     */
+    public long getMaxBatchSize() {
+        return maxBatchSize.get();
+    }
+
+    /**
+     * @return average number of nodes persisted in a single batch, 0 if nothing has been persisted.
+     */
+    public double getAverageBatchSize() {
+        long batches = getBatches();
+        return batches == 0 ? 0 : (double) getNodes() / batches;
+    }
+
+    /**
+     * @return total time in ms spent persisting batches, including commits.
+     */
+    public double getTotalCommitTime() {
+        return totalCommitNanos.get() / 1_000_000d;
+    }
+
+    /**
+     * @return average time in ms spent persisting a batch, including its commit, 0 if nothing has been persisted.
+     */
+    public double getAverageCommitTime() {
+        long batches = getBatches();
+        return batches == 0 ? 0 : getTotalCommitTime() / batches;
+    }
+
+    /**
+     * @return longest time in ms spent persisting a single batch, including its commit.
+     */
+    public double getMaxCommitTime() {
+        return maxCommitNanos.get() / 1_000_000d;
+    }
+
+    /**
+     * @return number of recommendation relationships created, i.e. recommendations that weren't stored before.
+     */
+    public long getRelationshipsCreated() {
+        return relationshipsCreated.get();
+    }
+
+    /**
+     * @return number of existing recommendation relationships whose scores have been updated.
+     */
+    public long getRelationshipsUpdated() {
+        return relationshipsUpdated.get();
+    }
+
+    /**
+     * @return number of recommendation relationships deleted, i.e. recommendations that are no longer valid.
+     */
+    public long getRelationshipsDeleted() {
+        return relationshipsDeleted.get();
+    }
+
+    /**
+     * @return number of existing recommendation relationships left untouched, as their scores haven't moved.
+     */
+    public long getRelationshipsUnchanged() {
+        return relationshipsUnchanged.get();
+    }
+
+    /**
+     * @return number of nodes whose computed recommendations were discarded, because the writer couldn't keep up and
+     * {@link Backpressure#DROP} was configured.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return number of completed sweeps over all nodes.
+     */
+    public long getSweeps() {
+        return sweeps.get();
+    }
+
+    /**
+     * @return number of recommendation relationships created in the current sweep.
+     */
+    public long getSweepRelationshipsCreated() {
+        return sweepCreated.get();
+    }
+
+    /**
+     * @return number of existing recommendation relationships updated in the current sweep.
+     */
+    public long getSweepRelationshipsUpdated() {
+        return sweepUpdated.get();
+    }
+
+    /**
+     * @return number of recommendation relationships deleted in the current sweep.
+     */
+    public long getSweepRelationshipsDeleted() {
+        return sweepDeleted.get();
+    }
+
+    /**
+     * @return number of existing recommendation relationships left untouched in the current sweep.
+     */
+    public long getSweepRelationshipsUnchanged() {
+        return sweepUnchanged.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "batches=" + getBatches() + ", nodes=" + getNodes() + ", averageBatchSize=" + getAverageBatchSize() + ", maxBatchSize=" + getMaxBatchSize() + ", averageCommitTime=" + getAverageCommitTime() + "ms, maxCommitTime=" + getMaxCommitTime() + "ms"
+                + ", relationshipsCreated=" + getRelationshipsCreated() + ", relationshipsUpdated=" + getRelationshipsUpdated() + ", relationshipsDeleted=" + getRelationshipsDeleted() + ", relationshipsUnchanged=" + getRelationshipsUnchanged() + ", dropped=" + getDropped() + ", sweeps=" + getSweeps();
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.module;
+
+import com.graphaware.common.log.LoggerFactory;
+import com.graphaware.reco.neo4j.module.RecommendationModule.ComputedRecommendations;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.logging.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of threads computing recommendations for a {@link RecommendationModule} running with parallelism larger than 1.
+ * <p/>
+ * The module hands IDs of nodes over through a bounded queue to compute threads, each of which computes recommendations
+ * in its own read transaction. Computed recommendations flow through another bounded queue to a single writer thread,
+ * which persists them in batches of up to {@link RecommendationModuleConfiguration#getWriteBatchSize()} nodes, waiting
+ * at most {@link RecommendationModuleConfiguration#getWriteBatchWindow()} for a batch to fill up. When the latter queue
+ * is full, compute threads behave according to the configured {@link Backpressure}.
+ */
+final class PrecomputationWorkers {
+
+    private static final Log LOG = LoggerFactory.getLogger(PrecomputationWorkers.class);
+
+    private static final long POLL_INTERVAL = 100;
+    private static final long SHUTDOWN_TIMEOUT = 10;
+
+    private final RecommendationModule module;
+    private final RecommendationModuleConfiguration config;
+    private final GraphDatabaseService database;
+
+    private final BlockingQueue<long[]> inputs;
+    private final BlockingQueue<ComputedRecommendations> results;
+    private final ExecutorService computeExecutor;
+    private final ExecutorService writeExecutor;
+
+    private volatile boolean computing = true;
+    private volatile boolean writing = true;
+
+    PrecomputationWorkers(RecommendationModule module, RecommendationModuleConfiguration config, GraphDatabaseService database) {
+        this.module = module;
+        this.config = config;
+        this.database = database;
+
+        this.inputs = new ArrayBlockingQueue<>(config.getQueueDepth());
+        this.results = new ArrayBlockingQueue<>(config.getQueueDepth());
+        this.computeExecutor = Executors.newFixedThreadPool(config.getParallelism(), threadFactory("GraphAware-Reco-Compute-"));
+        this.writeExecutor = Executors.newSingleThreadExecutor(threadFactory("GraphAware-Reco-Writer-"));
+
+        for (int i = 0; i < config.getParallelism(); i++) {
+            computeExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    compute();
+                }
+            });
+        }
+
+        writeExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        });
+    }
+
+    /**
+     * @return <code>true</code> iff there is space for more nodes to be handed over.
+     */
+    boolean hasCapacity() {
+        return inputs.remainingCapacity() > 0;
+    }
+
+    /**
+     * Hand over nodes to compute recommendations for, without blocking.
+     *
+     * @param nodeIds IDs of the nodes, computed together.
+     * @return <code>true</code> iff the nodes have been accepted.
+     */
+    boolean offer(long[] nodeIds) {
+        return computing && inputs.offer(nodeIds);
+    }
+
+    /**
+     * Stop computing. Nodes that haven't been picked up by compute threads are discarded. Compute threads finish the
+     * nodes they are working on, and only once they have stopped is the writer thread told to stop, after it has
+     * persisted everything that has been computed.
+     */
+    void shutdown() {
+        computing = false;
+        inputs.clear();
+        awaitTermination(computeExecutor);
+
+        writing = false;
+        awaitTermination(writeExecutor);
+    }
+
+    private void compute() {
+        while (computing) {
+            long[] nodeIds;
+            try {
+                nodeIds = inputs.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            if (nodeIds == null) {
+                continue;
+            }
+
+            List<ComputedRecommendations> computed;
+            try (Transaction tx = database.beginTx()) {
+                List<Node> nodes = findNodes(nodeIds);
+                computed = nodes.isEmpty() ? Collections.<ComputedRecommendations>emptyList() : module.compute(nodes);
+                tx.success();
+            } catch (RuntimeException e) {
+                LOG.warn("Failed to compute recommendations for " + nodeIds.length + " nodes starting with " + nodeIds[0], e);
+                continue;
+            }
+
+            for (ComputedRecommendations result : computed) {
+                if (!enqueue(result)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private List<Node> findNodes(long[] nodeIds) {
+        List<Node> result = new ArrayList<>(nodeIds.length);
+        for (long nodeId : nodeIds) {
+            try {
+                result.add(database.getNodeById(nodeId));
+            } catch (NotFoundException e) {
+                //deleted since it has been selected
+            }
+        }
+        return result;
+    }
+
+    private boolean enqueue(ComputedRecommendations result) {
+        if (config.getBackpressure() == Backpressure.DROP) {
+            if (!results.offer(result)) {
+                module.getPersistenceStatistics().resultDropped();
+            }
+            return true;
+        }
+
+        try {
+            results.put(result);
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+
+    private void write() {
+        List<ComputedRecommendations> batch = new ArrayList<>();
+
+        //compute threads have stopped by the time writing is false, so nothing is added to results after that
+        while (writing || !results.isEmpty()) {
+            try {
+                ComputedRecommendations first = results.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                long deadline = System.currentTimeMillis() + config.getWriteBatchWindow();
+
+                while (batch.size() < config.getWriteBatchSize()) {
+                    ComputedRecommendations next = results.poll(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                results.drainTo(batch);
+                writing = false;
+            }
+
+            if (!batch.isEmpty()) {
+                try {
+                    module.persistRecommendations(batch);
+                } catch (RuntimeException e) {
+                    LOG.warn("Failed to persist recommendations for " + batch.size() + " nodes", e);
+                }
+                batch = new ArrayList<>();
+            }
+        }
+    }
+
+    private void awaitTermination(ExecutorService executor) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ThreadFactory threadFactory(final String prefix) {
+        final AtomicInteger counter = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+}
@@ -19,6 +19,11 @@ package com.graphaware.reco.neo4j.module;
 import com.graphaware.common.log.LoggerFactory;
 import com.graphaware.reco.generic.result.PartialScore;
 import com.graphaware.reco.generic.result.Recommendation;
+import com.graphaware.reco.neo4j.cypher.Precompilable;
+import com.graphaware.reco.neo4j.engine.Neo4jPrecomputedEngine;
+import com.graphaware.reco.neo4j.engine.Neo4jTopLevelDelegatingRecommendationEngine;
+import com.graphaware.reco.neo4j.store.MappedRecommendationStore;
+import com.graphaware.reco.neo4j.util.PackedRecommendations;
 import com.graphaware.runtime.RuntimeRegistry;
 import com.graphaware.runtime.config.TimerDrivenModuleConfiguration;
 import com.graphaware.runtime.metadata.NodeBasedContext;
@@ -30,8 +35,15 @@ import com.graphaware.writer.neo4j.Neo4jWriter;
 import org.neo4j.graphdb.*;
 import org.neo4j.logging.Log;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+
+import static org.springframework.util.Assert.isTrue;
 
 /**
  * {@link TimerDrivenModule} that continuously pre-computes recommendations in the graph.
@@ -42,12 +54,21 @@ public class RecommendationModule extends BaseTimerDrivenModule<NodeBasedContext
 
     private final RecommendationModuleConfiguration config;
     private NodeSelector selector;
+    private boolean precompiled = false;
+    private PrecomputationWorkers workers;
     private final Neo4jWriter writer;
+    private final PersistenceStatistics statistics = new PersistenceStatistics();
+    private long lastSelectedId = -1;
 
     public RecommendationModule(String moduleId, RecommendationModuleConfiguration config, GraphDatabaseService database) {
         super(moduleId);
+        isTrue(config.getStorageFormat() != StorageFormat.MAPPED_FILE || config.getStoreDirectory() != null, "Store directory must be configured for storage format " + StorageFormat.MAPPED_FILE);
         this.config = config;
         this.writer = RuntimeRegistry.getRuntime(database).getDatabaseWriter();
+
+        if (config.getStorageFormat() == StorageFormat.MAPPED_FILE) {
+            MappedRecommendationStore.forDirectory(config.getStoreDirectory()).install(database);
+        }
     }
 
     /**
@@ -65,6 +86,7 @@ public class RecommendationModule extends BaseTimerDrivenModule<NodeBasedContext
     public NodeBasedContext createInitialContext(GraphDatabaseService database) {
         Node node;
         try (Transaction tx = database.beginTx()) {
+            precompileIfNeeded(database);
             initializeSelectorIfNeeded(null, database);
             node = selector.selectNode(database);
             tx.success();
@@ -81,25 +103,137 @@ public class RecommendationModule extends BaseTimerDrivenModule<NodeBasedContext
 
     /**
      * {@inheritDoc}
+     * <p/>
+     * Keeps computing recommendations until there are {@link RecommendationModuleConfiguration#getWriteBatchSize()}
+     * nodes to persist, or until {@link RecommendationModuleConfiguration#getWriteBatchWindow()} elapses, and persists
+     * them all in a single write transaction.
+     * <p/>
+     * With {@link RecommendationModuleConfiguration#getParallelism()} larger than 1, only hands nodes over to
+     * {@link PrecomputationWorkers} until their queue is full.
      */
     @Override
     public NodeBasedContext doSomeWork(NodeBasedContext lastContext, GraphDatabaseService database) {
+        precompileIfNeeded(database);
         initializeSelectorIfNeeded(lastContext, database);
 
-        Node node = determineNextNode(database);
+        if (config.getParallelism() > 1) {
+            return dispatch(lastContext, database);
+        }
+
+        long start = System.currentTimeMillis();
+        List<ComputedRecommendations> batch = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
 
-        if (node == null) {
+        do {
+            if (!computeNext(database, seen, batch)) {
+                break;
+            }
+        } while (batch.size() < config.getWriteBatchSize() && System.currentTimeMillis() - start < config.getWriteBatchWindow());
+
+        if (batch.isEmpty()) {
             LOG.warn("RecommendationModule did not find a node to continue with. There are no nodes matching the configuration.");
             return lastContext;
         }
 
-        LOG.info("Computing for " + node.getId());
+        persistRecommendations(batch);
+
+        return new NodeBasedContext(batch.get(batch.size() - 1).node);
+    }
+
+    private NodeBasedContext dispatch(NodeBasedContext lastContext, GraphDatabaseService database) {
+        if (workers == null) {
+            LOG.info("Starting " + config.getParallelism() + " compute threads");
+            workers = new PrecomputationWorkers(this, config, database);
+        }
+
+        Set<Long> seen = new HashSet<>();
+        Node last = null;
+
+        //only this thread hands nodes over, so the capacity can't be taken by anyone else
+        while (workers.hasCapacity()) {
+            List<Node> nodes = determineNextNodes(database, computeBatchSize(), seen);
+            if (nodes.isEmpty()) {
+                break;
+            }
 
-        List<Recommendation<Node>> recommendations = config.getEngine().recommend(node, config.getConfig());
+            long[] nodeIds = new long[nodes.size()];
+            for (int i = 0; i < nodeIds.length; i++) {
+                nodeIds[i] = nodes.get(i).getId();
+            }
+
+            if (!workers.offer(nodeIds)) {
+                break;
+            }
+
+            last = nodes.get(nodes.size() - 1);
+        }
+
+        if (last == null) {
+            if (seen.isEmpty() && workers.hasCapacity()) {
+                LOG.warn("RecommendationModule did not find a node to continue with. There are no nodes matching the configuration.");
+            }
+            return lastContext;
+        }
+
+        return new NodeBasedContext(last);
+    }
+
+    private boolean computeNext(GraphDatabaseService database, Set<Long> seen, List<ComputedRecommendations> batch) {
+        int size = computeBatchSize();
+        List<Node> nodes = determineNextNodes(database, size, seen);
+
+        if (nodes.isEmpty()) {
+            return false;
+        }
 
-        persistRecommendations(node, recommendations);
+        batch.addAll(compute(nodes));
 
-        return new NodeBasedContext(node);
+        //a batch smaller than requested means the selector has run out of nodes
+        return nodes.size() == size;
+    }
+
+    private int computeBatchSize() {
+        return config.getEngine() instanceof Neo4jTopLevelDelegatingRecommendationEngine ? config.getBatchSize() : 1;
+    }
+
+    /**
+     * Compute recommendations for the given nodes. Must be called within a transaction.
+     *
+     * @param nodes to compute recommendations for. More than one only with a {@link Neo4jTopLevelDelegatingRecommendationEngine}.
+     * @return computed recommendations.
+     */
+    List<ComputedRecommendations> compute(List<Node> nodes) {
+        //taken before computing, so that nothing that happens during the computation is considered to be reflected
+        long computedAt = System.currentTimeMillis();
+
+        if (nodes.size() == 1) {
+            Node node = nodes.get(0);
+            LOG.info("Computing for " + node.getId());
+            return Collections.singletonList(new ComputedRecommendations(node, config.getEngine().recommend(node, config.getConfig()), computedAt));
+        }
+
+        LOG.info("Computing for " + nodes.size() + " nodes starting with " + nodes.get(0).getId());
+
+        Map<Node, List<Recommendation<Node>>> recommendations = ((Neo4jTopLevelDelegatingRecommendationEngine) config.getEngine()).recommend(nodes, config.getConfig());
+
+        List<ComputedRecommendations> result = new ArrayList<>();
+        for (Node node : nodes) {
+            List<Recommendation<Node>> forNode = recommendations.get(node);
+            if (forNode != null) {
+                result.add(new ComputedRecommendations(node, forNode, computedAt));
+            }
+        }
+        return result;
+    }
+
+    private void precompileIfNeeded(GraphDatabaseService database) {
+        if (!precompiled) {
+            if (config.getEngine() instanceof Precompilable) {
+                LOG.info("Pre-compiling Cypher queries of " + config.getEngine());
+                ((Precompilable) config.getEngine()).precompile(database);
+            }
+            precompiled = true;
+        }
     }
 
     private void initializeSelectorIfNeeded(NodeBasedContext lastContext, GraphDatabaseService database) {
@@ -129,25 +263,174 @@ public class RecommendationModule extends BaseTimerDrivenModule<NodeBasedContext
     }
 
     private Node determineNextNode(GraphDatabaseService database) {
-        return selector.selectNode(database);
+        Node node = selector.selectNode(database);
+
+        //the selector goes through nodes in the order of their IDs and wraps around when it reaches the end of the graph
+        if (node != null) {
+            if (lastSelectedId != -1 && node.getId() <= lastSelectedId) {
+                LOG.info("RecommendationModule completed a sweep over all nodes: " + statistics.sweepCompleted());
+            }
+            lastSelectedId = node.getId();
+        }
+
+        return node;
     }
 
-    private void persistRecommendations(final Node node, final List<Recommendation<Node>> recommendations) {
-        writer.write(new Runnable() {
-            @Override
-            public void run() {
-                for (Relationship existing : node.getRelationships(config.getRelationshipType(), Direction.OUTGOING)) {
-                    existing.delete();
+    private List<Node> determineNextNodes(GraphDatabaseService database, int batchSize, Set<Long> seen) {
+        List<Node> result = new ArrayList<>();
+
+        while (result.size() < batchSize) {
+            Node node = determineNextNode(database);
+            //the selector wraps around when it reaches the end of the graph
+            if (node == null || !seen.add(node.getId())) {
+                break;
+            }
+            result.add(node);
+        }
+
+        return result;
+    }
+
+    /**
+     * Persist computed recommendations in a single write transaction. Nodes deleted since their recommendations were
+     * computed are skipped, and so are deleted recommended items.
+     *
+     * @param batch to persist.
+     */
+    void persistRecommendations(final List<ComputedRecommendations> batch) {
+        long start = System.nanoTime();
+        final WriteCounts counts = new WriteCounts();
+
+        if (config.getStorageFormat() == StorageFormat.MAPPED_FILE && !batch.isEmpty()) {
+            MappedRecommendationStore store = MappedRecommendationStore.forDirectory(config.getStoreDirectory());
+            GraphDatabaseService database = batch.get(0).node.getGraphDatabase();
+            try (Transaction tx = database.beginTx()) {
+                for (ComputedRecommendations computed : batch) {
+                    //the store removes recommendations of deleted nodes, don't bring them back
+                    try {
+                        database.getNodeById(computed.node.getId());
+                    } catch (NotFoundException e) {
+                        continue;
+                    }
+                    store.put(computed.node.getId(), computed.recommendations, computed.computedAt);
                 }
+                tx.success();
+            }
+        } else if (config.getStorageFormat() != StorageFormat.MAPPED_FILE) {
+            writer.write(new Runnable() {
+                @Override
+                public void run() {
+                    //check existence before writing anything, a failure half-way through a node would commit partial writes
+                    for (ComputedRecommendations computed : batch) {
+                        if (!exists(computed.node)) {
+                            LOG.warn("Could not persist recommendations for node %s, it has been deleted", computed.node.getId());
+                            continue;
+                        }
 
-                for (Recommendation<Node> recommendation : recommendations) {
-                    Relationship created = node.createRelationshipTo(recommendation.getItem(), config.getRelationshipType());
-                    for (Map.Entry<String, PartialScore> entry : recommendation.getScore().getScoreParts().entrySet()) {
-                        created.setProperty(entry.getKey(), entry.getValue().getValue());
+                        List<Recommendation<Node>> existing = new ArrayList<>(computed.recommendations.size());
+                        for (Recommendation<Node> recommendation : computed.recommendations) {
+                            if (exists(recommendation.getItem())) {
+                                existing.add(recommendation);
+                            }
+                        }
+
+                        persistRecommendations(computed.node, existing, computed.computedAt, counts);
                     }
                 }
+            });
+        }
+
+        long commitNanos = System.nanoTime() - start;
+        statistics.batchPersisted(batch.size(), commitNanos);
+        statistics.relationshipsWritten(counts.created, counts.updated, counts.deleted, counts.unchanged);
+
+        LOG.debug("Persisted recommendations for %s nodes in %s ms", batch.size(), commitNanos / 1_000_000);
+        if (config.getStorageFormat() == StorageFormat.RELATIONSHIPS) {
+            LOG.debug("Relationships created: %s, updated: %s, deleted: %s, unchanged: %s", counts.created, counts.updated, counts.deleted, counts.unchanged);
+        }
+    }
+
+    private static boolean exists(Node node) {
+        try {
+            node.getGraphDatabase().getNodeById(node.getId());
+            return true;
+        } catch (NotFoundException e) {
+            return false;
+        }
+    }
+
+    private void persistRecommendations(Node node, List<Recommendation<Node>> recommendations, long computedAt, WriteCounts counts) {
+        node.setProperty(Neo4jPrecomputedEngine.computedAtProperty(config.getRelationshipType()), computedAt);
+
+        if (config.getStorageFormat() != StorageFormat.RELATIONSHIPS) {
+            PackedRecommendations.write(node, config.getRelationshipType(), recommendations, config.getStorageFormat() == StorageFormat.PACKED_WITH_PARTS);
+            return;
+        }
+
+        //diff against existing relationships by end node, so that unchanged recommendations aren't re-created
+        Map<Long, Relationship> existing = new HashMap<>();
+        for (Relationship relationship : node.getRelationships(config.getRelationshipType(), Direction.OUTGOING)) {
+            Relationship duplicate = existing.put(relationship.getEndNode().getId(), relationship);
+            if (duplicate != null) {
+                duplicate.delete();
+                counts.deleted++;
+            }
+        }
+
+        for (Recommendation<Node> recommendation : recommendations) {
+            Map<String, PartialScore> parts = recommendation.getScore().getScoreParts();
+            Relationship relationship = existing.remove(recommendation.getItem().getId());
+
+            if (relationship == null) {
+                relationship = node.createRelationshipTo(recommendation.getItem(), config.getRelationshipType());
+                for (Map.Entry<String, PartialScore> entry : parts.entrySet()) {
+                    relationship.setProperty(entry.getKey(), entry.getValue().getValue());
+                }
+                counts.created++;
+            } else if (updateScores(relationship, parts)) {
+                counts.updated++;
+            } else {
+                counts.unchanged++;
+            }
+        }
+
+        for (Relationship stale : existing.values()) {
+            stale.delete();
+            counts.deleted++;
+        }
+    }
+
+    private boolean updateScores(Relationship relationship, Map<String, PartialScore> parts) {
+        boolean updated = false;
+
+        for (String key : relationship.getPropertyKeys()) {
+            if (!parts.containsKey(key)) {
+                relationship.removeProperty(key);
+                updated = true;
+            }
+        }
+
+        for (Map.Entry<String, PartialScore> entry : parts.entrySet()) {
+            float value = entry.getValue().getValue();
+            Object current = relationship.getProperty(entry.getKey(), null);
+
+            if (!(current instanceof Number) || Math.abs(((Number) current).floatValue() - value) > config.getScoreEpsilon()) {
+                relationship.setProperty(entry.getKey(), value);
+                updated = true;
             }
-        });
+        }
+
+        return updated;
+    }
+
+    /**
+     * Get statistics of persisting pre-computed recommendations. The time spent persisting a batch is measured around
+     * the call to the database writer, so it includes the commit for writers that write synchronously (the default).
+     *
+     * @return statistics.
+     */
+    public PersistenceStatistics getPersistenceStatistics() {
+        return statistics;
     }
 
     /**
@@ -155,6 +438,40 @@ public class RecommendationModule extends BaseTimerDrivenModule<NodeBasedContext
      */
     @Override
     public void shutdown() {
-        //no need to do anything
+        if (workers != null) {
+            workers.shutdown();
+            workers = null;
+        }
+
+        if (config.getStorageFormat() == StorageFormat.MAPPED_FILE) {
+            MappedRecommendationStore.forDirectory(config.getStoreDirectory()).flush();
+        }
+    }
+
+    /**
+     * Numbers of relationships written (or not) when persisting a batch.
+     */
+    private static final class WriteCounts {
+
+        private long created;
+        private long updated;
+        private long deleted;
+        private long unchanged;
+    }
+
+    /**
+     * Recommendations computed for a node, waiting to be persisted.
+     */
+    static final class ComputedRecommendations {
+
+        private final Node node;
+        private final List<Recommendation<Node>> recommendations;
+        private final long computedAt;
+
+        ComputedRecommendations(Node node, List<Recommendation<Node>> recommendations, long computedAt) {
+            this.node = node;
+            this.recommendations = recommendations;
+            this.computedAt = computedAt;
+        }
     }
 }
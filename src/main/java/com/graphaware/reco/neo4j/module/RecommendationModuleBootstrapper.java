@@ -26,6 +26,7 @@ import org.neo4j.graphdb.DynamicRelationshipType;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.logging.Log;
 
+import java.io.File;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Map;
@@ -43,6 +44,15 @@ public class RecommendationModuleBootstrapper implements RuntimeModuleBootstrapp
     private static final String NODE = "node";
     private static final String MAX_RECOMMENDATIONS = "maxRecommendations";
     private static final String REL_TYPE = "relationshipType";
+    private static final String BATCH_SIZE = "batchSize";
+    private static final String STORAGE_FORMAT = "storageFormat";
+    private static final String STORE_DIRECTORY = "storeDirectory";
+    private static final String WRITE_BATCH_SIZE = "writeBatchSize";
+    private static final String WRITE_BATCH_WINDOW = "writeBatchWindow";
+    private static final String SCORE_EPSILON = "scoreEpsilon";
+    private static final String PARALLELISM = "parallelism";
+    private static final String QUEUE_DEPTH = "queueDepth";
+    private static final String BACKPRESSURE = "backpressure";
 
     /**
      * {@inheritDoc}
@@ -73,6 +83,60 @@ public class RecommendationModuleBootstrapper implements RuntimeModuleBootstrapp
             configuration = configuration.withRelationshipType(DynamicRelationshipType.withName(type));
         }
 
+        if (config.get(BATCH_SIZE) != null) {
+            int batchSize = Integer.valueOf(config.get(BATCH_SIZE));
+            LOG.info("Batch size set to %s", batchSize);
+            configuration = configuration.withBatchSize(batchSize);
+        }
+
+        if (config.get(STORAGE_FORMAT) != null) {
+            StorageFormat storageFormat = StorageFormat.valueOf(config.get(STORAGE_FORMAT).trim().toUpperCase());
+            LOG.info("Storage format set to %s", storageFormat);
+            configuration = configuration.withStorageFormat(storageFormat);
+        }
+
+        if (config.get(STORE_DIRECTORY) != null) {
+            File storeDirectory = new File(config.get(STORE_DIRECTORY));
+            LOG.info("Store directory set to %s", storeDirectory);
+            configuration = configuration.withStoreDirectory(storeDirectory);
+        }
+
+        if (config.get(WRITE_BATCH_SIZE) != null) {
+            int writeBatchSize = Integer.valueOf(config.get(WRITE_BATCH_SIZE));
+            LOG.info("Write batch size set to %s", writeBatchSize);
+            configuration = configuration.withWriteBatchSize(writeBatchSize);
+        }
+
+        if (config.get(WRITE_BATCH_WINDOW) != null) {
+            long writeBatchWindow = Long.valueOf(config.get(WRITE_BATCH_WINDOW));
+            LOG.info("Write batch window set to %s", writeBatchWindow);
+            configuration = configuration.withWriteBatchWindow(writeBatchWindow);
+        }
+
+        if (config.get(SCORE_EPSILON) != null) {
+            float scoreEpsilon = Float.valueOf(config.get(SCORE_EPSILON));
+            LOG.info("Score epsilon set to %s", scoreEpsilon);
+            configuration = configuration.withScoreEpsilon(scoreEpsilon);
+        }
+
+        if (config.get(PARALLELISM) != null) {
+            int parallelism = Integer.valueOf(config.get(PARALLELISM));
+            LOG.info("Parallelism set to %s", parallelism);
+            configuration = configuration.withParallelism(parallelism);
+        }
+
+        if (config.get(QUEUE_DEPTH) != null) {
+            int queueDepth = Integer.valueOf(config.get(QUEUE_DEPTH));
+            LOG.info("Queue depth set to %s", queueDepth);
+            configuration = configuration.withQueueDepth(queueDepth);
+        }
+
+        if (config.get(BACKPRESSURE) != null) {
+            Backpressure backpressure = Backpressure.valueOf(config.get(BACKPRESSURE).trim().toUpperCase());
+            LOG.info("Backpressure set to %s", backpressure);
+            configuration = configuration.withBackpressure(backpressure);
+        }
+
         return new RecommendationModule(moduleId, configuration, database);
     }
 
@@ -28,6 +28,11 @@ import com.graphaware.runtime.policy.all.IncludeAllBusinessNodes;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.RelationshipType;
 
+import java.io.File;
+
+import static org.springframework.util.Assert.isTrue;
+import static org.springframework.util.Assert.notNull;
+
 /**
  * Configuration settings for the {@link RecommendationModule} with fluent interface.
  * //todo null checks in constructor
@@ -40,13 +45,22 @@ public class RecommendationModuleConfiguration extends BaseTimerDrivenModuleConf
     private final Config config;
     private final NodeInclusionPolicy nodeInclusionPolicy;
     private final RelationshipType relationshipType;
+    private final int batchSize;
+    private final StorageFormat storageFormat;
+    private final File storeDirectory;
+    private final int writeBatchSize;
+    private final long writeBatchWindow;
+    private final float scoreEpsilon;
+    private final int parallelism;
+    private final int queueDepth;
+    private final Backpressure backpressure;
 
     /**
      * {@inheritDoc}
      */
     @Override
     protected RecommendationModuleConfiguration newInstance(InstanceRolePolicy instanceRolePolicy) {
-        return new RecommendationModuleConfiguration(instanceRolePolicy, getEngine(), getConfig(), getNodeInclusionPolicy(), getRelationshipType());
+        return new RecommendationModuleConfiguration(instanceRolePolicy, getEngine(), getConfig(), getNodeInclusionPolicy(), getRelationshipType(), getBatchSize(), getStorageFormat(), getStoreDirectory(), getWriteBatchSize(), getWriteBatchWindow(), getScoreEpsilon(), getParallelism(), getQueueDepth(), getBackpressure());
     }
 
     /**
@@ -57,7 +71,7 @@ public class RecommendationModuleConfiguration extends BaseTimerDrivenModuleConf
      * @return The default {@link RecommendationModuleConfiguration}
      */
     public static RecommendationModuleConfiguration defaultConfiguration(TopLevelRecommendationEngine<Node, Node> engine) {
-        return new RecommendationModuleConfiguration(MasterOnly.getInstance(), engine, new SimpleConfig(10), IncludeAllBusinessNodes.getInstance(), DEFAULT_RELATIONSHIP_TYPE);
+        return new RecommendationModuleConfiguration(MasterOnly.getInstance(), engine, new SimpleConfig(10), IncludeAllBusinessNodes.getInstance(), DEFAULT_RELATIONSHIP_TYPE, 1, StorageFormat.RELATIONSHIPS, null, 1, 1000, 0, 1, 1000, Backpressure.BLOCK);
     }
 
     /**
@@ -69,7 +83,7 @@ public class RecommendationModuleConfiguration extends BaseTimerDrivenModuleConf
      * @return new config.
      */
     public RecommendationModuleConfiguration with(NodeInclusionPolicy nodeInclusionPolicy) {
-        return new RecommendationModuleConfiguration(getInstanceRolePolicy(), getEngine(), getConfig(), nodeInclusionPolicy, getRelationshipType());
+        return new RecommendationModuleConfiguration(getInstanceRolePolicy(), getEngine(), getConfig(), nodeInclusionPolicy, getRelationshipType(), getBatchSize(), getStorageFormat(), getStoreDirectory(), getWriteBatchSize(), getWriteBatchWindow(), getScoreEpsilon(), getParallelism(), getQueueDepth(), getBackpressure());
     }
 
     /**
@@ -79,7 +93,7 @@ public class RecommendationModuleConfiguration extends BaseTimerDrivenModuleConf
      * @return new config.
      */
     public RecommendationModuleConfiguration withConfig(Config config) {
-        return new RecommendationModuleConfiguration(getInstanceRolePolicy(), getEngine(), config, getNodeInclusionPolicy(), getRelationshipType());
+        return new RecommendationModuleConfiguration(getInstanceRolePolicy(), getEngine(), config, getNodeInclusionPolicy(), getRelationshipType(), getBatchSize(), getStorageFormat(), getStoreDirectory(), getWriteBatchSize(), getWriteBatchWindow(), getScoreEpsilon(), getParallelism(), getQueueDepth(), getBackpressure());
     }
 
     /**
@@ -89,7 +103,120 @@ public class RecommendationModuleConfiguration extends BaseTimerDrivenModuleConf
      * @return new config.
      */
     public RecommendationModuleConfiguration withRelationshipType(RelationshipType type) {
-        return new RecommendationModuleConfiguration(getInstanceRolePolicy(), getEngine(), getConfig(), getNodeInclusionPolicy(), type);
+        return new RecommendationModuleConfiguration(getInstanceRolePolicy(), getEngine(), getConfig(), getNodeInclusionPolicy(), type, getBatchSize(), getStorageFormat(), getStoreDirectory(), getWriteBatchSize(), getWriteBatchWindow(), getScoreEpsilon(), getParallelism(), getQueueDepth(), getBackpressure());
+    }
+
+    /**
+     * Construct a new configuration with the given number of nodes to compute recommendations for in a single step.
+     * Batches larger than 1 are only used with {@link com.graphaware.reco.neo4j.engine.Neo4jTopLevelDelegatingRecommendationEngine}s,
+     * which let delegate {@link com.graphaware.reco.neo4j.engine.BatchingEngine}s (e.g. {@link com.graphaware.reco.neo4j.engine.BatchCypherEngine})
+     * compute recommendations for the whole batch at once.
+     *
+     * @param batchSize number of nodes per step. Must be positive.
+     * @return new config.
+     */
+    public RecommendationModuleConfiguration withBatchSize(int batchSize) {
+        isTrue(batchSize > 0);
+        return new RecommendationModuleConfiguration(getInstanceRolePolicy(), getEngine(), getConfig(), getNodeInclusionPolicy(), getRelationshipType(), batchSize, getStorageFormat(), getStoreDirectory(), getWriteBatchSize(), getWriteBatchWindow(), getScoreEpsilon(), getParallelism(), getQueueDepth(), getBackpressure());
+    }
+
+    /**
+     * Construct a new configuration with the given format of the stored pre-computed recommendations.
+     *
+     * @param storageFormat how recommendations are stored. Must not be <code>null</code>.
+     * @return new config.
+     */
+    public RecommendationModuleConfiguration withStorageFormat(StorageFormat storageFormat) {
+        notNull(storageFormat);
+        return new RecommendationModuleConfiguration(getInstanceRolePolicy(), getEngine(), getConfig(), getNodeInclusionPolicy(), getRelationshipType(), getBatchSize(), storageFormat, getStoreDirectory(), getWriteBatchSize(), getWriteBatchWindow(), getScoreEpsilon(), getParallelism(), getQueueDepth(), getBackpressure());
+    }
+
+    /**
+     * Construct a new configuration with the given directory of the store of pre-computed recommendations, used with
+     * {@link StorageFormat#MAPPED_FILE}.
+     *
+     * @param storeDirectory directory of the store. Must not be <code>null</code>.
+     * @return new config.
+     */
+    public RecommendationModuleConfiguration withStoreDirectory(File storeDirectory) {
+        notNull(storeDirectory);
+        return new RecommendationModuleConfiguration(getInstanceRolePolicy(), getEngine(), getConfig(), getNodeInclusionPolicy(), getRelationshipType(), getBatchSize(), getStorageFormat(), storeDirectory, getWriteBatchSize(), getWriteBatchWindow(), getScoreEpsilon(), getParallelism(), getQueueDepth(), getBackpressure());
+    }
+
+    /**
+     * Construct a new configuration with the given number of nodes whose pre-computed recommendations are persisted in a
+     * single write transaction. In a single step, the module keeps computing recommendations until it has this many
+     * nodes to persist, or until the write batch window elapses, whichever comes first.
+     *
+     * @param writeBatchSize number of nodes per write transaction. Must be positive.
+     * @return new config.
+     */
+    public RecommendationModuleConfiguration withWriteBatchSize(int writeBatchSize) {
+        isTrue(writeBatchSize > 0);
+        return new RecommendationModuleConfiguration(getInstanceRolePolicy(), getEngine(), getConfig(), getNodeInclusionPolicy(), getRelationshipType(), getBatchSize(), getStorageFormat(), getStoreDirectory(), writeBatchSize, getWriteBatchWindow(), getScoreEpsilon(), getParallelism(), getQueueDepth(), getBackpressure());
+    }
+
+    /**
+     * Construct a new configuration with the given maximum time spent computing recommendations for a single write
+     * transaction. Only relevant when the write batch size is larger than 1.
+     *
+     * @param writeBatchWindow time in ms. Must be positive.
+     * @return new config.
+     */
+    public RecommendationModuleConfiguration withWriteBatchWindow(long writeBatchWindow) {
+        isTrue(writeBatchWindow > 0);
+        return new RecommendationModuleConfiguration(getInstanceRolePolicy(), getEngine(), getConfig(), getNodeInclusionPolicy(), getRelationshipType(), getBatchSize(), getStorageFormat(), getStoreDirectory(), getWriteBatchSize(), writeBatchWindow, getScoreEpsilon(), getParallelism(), getQueueDepth(), getBackpressure());
+    }
+
+    /**
+     * Construct a new configuration with the given score tolerance. When recommendations are stored as relationships,
+     * a recommendation that is already stored only has its scores re-written if one of them has moved by more than the
+     * tolerance.
+     *
+     * @param scoreEpsilon score tolerance. Must not be negative.
+     * @return new config.
+     */
+    public RecommendationModuleConfiguration withScoreEpsilon(float scoreEpsilon) {
+        isTrue(scoreEpsilon >= 0);
+        return new RecommendationModuleConfiguration(getInstanceRolePolicy(), getEngine(), getConfig(), getNodeInclusionPolicy(), getRelationshipType(), getBatchSize(), getStorageFormat(), getStoreDirectory(), getWriteBatchSize(), getWriteBatchWindow(), scoreEpsilon, getParallelism(), getQueueDepth(), getBackpressure());
+    }
+
+    /**
+     * Construct a new configuration with the given number of threads computing recommendations. With more than one
+     * thread, the module only hands nodes over to a pool of compute threads, each computing in its own transaction,
+     * and computed recommendations are persisted in batches by a single writer thread. The engine must then be
+     * thread-safe.
+     *
+     * @param parallelism number of compute threads. Must be positive.
+     * @return new config.
+     */
+    public RecommendationModuleConfiguration withParallelism(int parallelism) {
+        isTrue(parallelism > 0);
+        return new RecommendationModuleConfiguration(getInstanceRolePolicy(), getEngine(), getConfig(), getNodeInclusionPolicy(), getRelationshipType(), getBatchSize(), getStorageFormat(), getStoreDirectory(), getWriteBatchSize(), getWriteBatchWindow(), getScoreEpsilon(), parallelism, getQueueDepth(), getBackpressure());
+    }
+
+    /**
+     * Construct a new configuration with the given capacity of the queues between the module and its compute threads,
+     * and between the compute threads and the writer thread. Only relevant when parallelism is larger than 1.
+     *
+     * @param queueDepth capacity of each queue. Must be positive.
+     * @return new config.
+     */
+    public RecommendationModuleConfiguration withQueueDepth(int queueDepth) {
+        isTrue(queueDepth > 0);
+        return new RecommendationModuleConfiguration(getInstanceRolePolicy(), getEngine(), getConfig(), getNodeInclusionPolicy(), getRelationshipType(), getBatchSize(), getStorageFormat(), getStoreDirectory(), getWriteBatchSize(), getWriteBatchWindow(), getScoreEpsilon(), getParallelism(), queueDepth, getBackpressure());
+    }
+
+    /**
+     * Construct a new configuration with the given behaviour of compute threads when the writer thread can't keep up.
+     * Only relevant when parallelism is larger than 1.
+     *
+     * @param backpressure behaviour. Must not be <code>null</code>.
+     * @return new config.
+     */
+    public RecommendationModuleConfiguration withBackpressure(Backpressure backpressure) {
+        notNull(backpressure);
+        return new RecommendationModuleConfiguration(getInstanceRolePolicy(), getEngine(), getConfig(), getNodeInclusionPolicy(), getRelationshipType(), getBatchSize(), getStorageFormat(), getStoreDirectory(), getWriteBatchSize(), getWriteBatchWindow(), getScoreEpsilon(), getParallelism(), getQueueDepth(), backpressure);
     }
 
     /**
@@ -100,13 +227,31 @@ public class RecommendationModuleConfiguration extends BaseTimerDrivenModuleConf
      * @param config              configuration of the computing process.
      * @param nodeInclusionPolicy The {@link NodeInclusionPolicy} to use for selecting nodes to include in the rank algorithm.
      * @param relationshipType    relationship type of the relationship between the subject and the pre-computed recommendations.
+     * @param batchSize           number of nodes to compute recommendations for in a single step.
+     * @param storageFormat       how pre-computed recommendations are stored.
+     * @param storeDirectory      directory of the store of pre-computed recommendations, can be <code>null</code> unless the storage format is {@link StorageFormat#MAPPED_FILE}.
+     * @param writeBatchSize      number of nodes whose recommendations are persisted in a single write transaction.
+     * @param writeBatchWindow    maximum time in ms spent computing recommendations for a single write transaction.
+     * @param scoreEpsilon        tolerance of score changes below which stored recommendation relationships aren't updated.
+     * @param parallelism         number of threads computing recommendations.
+     * @param queueDepth          capacity of queues between the module, compute threads, and the writer thread.
+     * @param backpressure        behaviour of compute threads when the writer thread can't keep up.
      */
-    private RecommendationModuleConfiguration(InstanceRolePolicy instanceRolePolicy, TopLevelRecommendationEngine<Node, Node> engine, Config config, NodeInclusionPolicy nodeInclusionPolicy, RelationshipType relationshipType) {
+    private RecommendationModuleConfiguration(InstanceRolePolicy instanceRolePolicy, TopLevelRecommendationEngine<Node, Node> engine, Config config, NodeInclusionPolicy nodeInclusionPolicy, RelationshipType relationshipType, int batchSize, StorageFormat storageFormat, File storeDirectory, int writeBatchSize, long writeBatchWindow, float scoreEpsilon, int parallelism, int queueDepth, Backpressure backpressure) {
         super(instanceRolePolicy);
         this.engine = engine;
         this.config = config;
         this.nodeInclusionPolicy = nodeInclusionPolicy;
         this.relationshipType = relationshipType;
+        this.batchSize = batchSize;
+        this.storageFormat = storageFormat;
+        this.storeDirectory = storeDirectory;
+        this.writeBatchSize = writeBatchSize;
+        this.writeBatchWindow = writeBatchWindow;
+        this.scoreEpsilon = scoreEpsilon;
+        this.parallelism = parallelism;
+        this.queueDepth = queueDepth;
+        this.backpressure = backpressure;
     }
 
     public TopLevelRecommendationEngine<Node, Node> getEngine() {
@@ -124,4 +269,40 @@ public class RecommendationModuleConfiguration extends BaseTimerDrivenModuleConf
     public RelationshipType getRelationshipType() {
         return relationshipType;
     }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public StorageFormat getStorageFormat() {
+        return storageFormat;
+    }
+
+    public File getStoreDirectory() {
+        return storeDirectory;
+    }
+
+    public int getWriteBatchSize() {
+        return writeBatchSize;
+    }
+
+    public long getWriteBatchWindow() {
+        return writeBatchWindow;
+    }
+
+    public float getScoreEpsilon() {
+        return scoreEpsilon;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public Backpressure getBackpressure() {
+        return backpressure;
+    }
 }
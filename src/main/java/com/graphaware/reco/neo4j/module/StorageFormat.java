@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.module;
+
+/**
+ * How {@link RecommendationModule} stores pre-computed recommendations in the graph.
+ */
+public enum StorageFormat {
+
+    /**
+     * One relationship from the subject to each recommended node, with one property per partial score. Read by
+     * {@link com.graphaware.reco.neo4j.engine.Neo4jPrecomputedEngine}.
+     */
+    RELATIONSHIPS,
+
+    /**
+     * Packed arrays of IDs of recommended nodes and their total scores, stored as properties of the subject. Read by
+     * {@link com.graphaware.reco.neo4j.engine.Neo4jPackedPrecomputedEngine}.
+     */
+    PACKED,
+
+    /**
+     * Like {@link #PACKED}, with additional arrays holding the values of all partial scores.
+     */
+    PACKED_WITH_PARTS,
+
+    /**
+     * IDs of recommended nodes and their total scores, stored outside of the graph in a
+     * {@link com.graphaware.reco.neo4j.store.MappedRecommendationStore} in the configured directory. Read by
+     * {@link com.graphaware.reco.neo4j.engine.Neo4jMappedPrecomputedEngine}.
+     */
+    MAPPED_FILE
+}
@@ -0,0 +1,685 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.store;
+
+import com.graphaware.common.log.LoggerFactory;
+import com.graphaware.reco.generic.result.Recommendation;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+import org.neo4j.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.StampedLock;
+
+import static org.springframework.util.Assert.isTrue;
+import static org.springframework.util.Assert.notNull;
+
+/**
+ * An off-graph store of pre-computed recommendations keyed by node ID, kept in memory-mapped files, so that serving
+ * pre-computed recommendations doesn't compete with transactional data for Neo4j's page cache.
+ * <p/>
+ * The store consists of an append-only data file and an index file with a fixed-size slot per node ID, holding the
+ * offset of the node's current record in the data file. Each record holds the number of recommendations and the time
+ * they were computed, followed by packed IDs and scores. Replacing the recommendations of a node appends a new record and then swaps the node's index
+ * slot to point to it, so readers see either the old or the new list, never a mix. Files are mapped in segments of
+ * fixed size; a record never spans two segments.
+ * <p/>
+ * Replaced records become garbage, which is reclaimed by compaction: live records are copied into a new generation of
+ * files, which is then atomically made current by renaming a small <code>CURRENT</code> file. Compaction runs in the
+ * background once garbage makes up more than half of the data file and at least one segment.
+ * <p/>
+ * Neo4j reuses IDs of deleted nodes, so a store {@link #install(GraphDatabaseService) installed} in a database removes
+ * the recommendations of nodes deleted from it. The committing thread only records the deleted IDs, which readers skip
+ * from then on; their records are removed in the background, or before the next write.
+ * <p/>
+ * There is a single writer (all writing methods are synchronized) and any number of lock-free readers. Writes are
+ * visible to readers immediately and survive process restarts, as they go to the OS page cache; {@link #flush()}
+ * forces them to disk.
+ */
+public final class MappedRecommendationStore {
+
+    private static final Log LOG = LoggerFactory.getLogger(MappedRecommendationStore.class);
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    //number of recommendations (long), computed at (long)
+    static final int RECORD_HEADER = 16;
+
+    //append position (long), segment size (int), padding
+    private static final int DATA_HEADER = 16;
+    private static final String CURRENT = "CURRENT";
+    private static final String DATA = "data.";
+    private static final String INDEX = "index.";
+
+    private static final Map<File, MappedRecommendationStore> STORES = new HashMap<>();
+
+    private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "GraphAware-Reco-StoreCompactor");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final File directory;
+    private final int segmentSize;
+    private final StampedLock lock = new StampedLock();
+    private final AtomicBoolean compacting = new AtomicBoolean(false);
+    private final AtomicBoolean removing = new AtomicBoolean(false);
+    private final Set<Long> deleted = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+    private final Map<GraphDatabaseService, TransactionEventHandler<Void>> handlers = new HashMap<>();
+    private volatile Generation current;
+    private long garbage;
+    private boolean closed;
+
+    /**
+     * Get the store in the given directory, opening it if it isn't open yet, or creating it with segments of
+     * {@link #DEFAULT_SEGMENT_SIZE} bytes if it doesn't exist.
+     *
+     * @param directory of the store. Must not be <code>null</code>.
+     * @return store, never <code>null</code>.
+     */
+    public static MappedRecommendationStore forDirectory(File directory) {
+        return forDirectory(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Get the store in the given directory, opening it if it isn't open yet, or creating it if it doesn't exist.
+     *
+     * @param directory   of the store. Must not be <code>null</code>.
+     * @param segmentSize size of mapped segments in bytes, used only when the store is created. Must be a positive
+     *                    multiple of 8. Limits the maximum number of recommendations per node.
+     * @return store, never <code>null</code>.
+     */
+    public static MappedRecommendationStore forDirectory(File directory, int segmentSize) {
+        notNull(directory);
+        isTrue(segmentSize > DATA_HEADER && segmentSize % 8 == 0, "Segment size must be a positive multiple of 8");
+
+        File key = directory.getAbsoluteFile();
+        synchronized (STORES) {
+            MappedRecommendationStore store = STORES.get(key);
+            if (store == null) {
+                store = new MappedRecommendationStore(key, segmentSize);
+                STORES.put(key, store);
+            }
+            return store;
+        }
+    }
+
+    private MappedRecommendationStore(File directory, int segmentSize) {
+        this.directory = directory;
+
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Could not create directory " + directory);
+            }
+
+            File currentFile = new File(directory, CURRENT);
+            if (currentFile.exists()) {
+                long number = Long.parseLong(new String(Files.readAllBytes(currentFile.toPath()), StandardCharsets.UTF_8).trim());
+                this.segmentSize = readSegmentSize(new File(directory, DATA + number));
+                current = new Generation(number, false);
+            } else {
+                this.segmentSize = segmentSize;
+                current = new Generation(0, true);
+                writeCurrent(0);
+            }
+
+            deleteOtherGenerations(current.number);
+            garbage = current.appendPosition - DATA_HEADER - current.liveBytes();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not open recommendation store in " + directory, e);
+        }
+
+        LOG.info("Opened recommendation store in %s, generation %s, %s bytes of data, %s bytes of garbage", directory, current.number, current.appendPosition, garbage);
+    }
+
+    /**
+     * Replace the recommendations of a node.
+     *
+     * @param nodeId          ID of the node the recommendations are for.
+     * @param recommendations ordered by score, descending. Must not be <code>null</code>.
+     * @param computedAt      time the recommendations were computed at, in ms since the epoch.
+     */
+    public void put(long nodeId, List<Recommendation<Node>> recommendations, long computedAt) {
+        notNull(recommendations);
+
+        long[] ids = new long[recommendations.size()];
+        float[] scores = new float[recommendations.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = recommendations.get(i).getItem().getId();
+            scores[i] = recommendations.get(i).getScore().getTotalScore();
+        }
+
+        put(nodeId, ids, scores, computedAt);
+    }
+
+    /**
+     * Replace the recommendations of a node.
+     *
+     * @param nodeId     ID of the node the recommendations are for.
+     * @param ids        of recommended nodes. Must not be <code>null</code>.
+     * @param scores     of recommended nodes, parallel to <code>ids</code>. Must not be <code>null</code>.
+     * @param computedAt time the recommendations were computed at, in ms since the epoch.
+     */
+    public void put(long nodeId, long[] ids, float[] scores, long computedAt) {
+        notNull(ids);
+        notNull(scores);
+        isTrue(ids.length == scores.length, "There must be a score for every ID");
+        isTrue(nodeId >= 0);
+
+        synchronized (this) {
+            checkOpen();
+            removeDeleted();
+
+            Generation generation = current;
+            long position = generation.append(ids, scores, computedAt);
+            setSlot(generation, nodeId, position);
+        }
+
+        compactIfNeeded();
+    }
+
+    /**
+     * Remove the recommendations of a node.
+     *
+     * @param nodeId ID of the node.
+     */
+    public synchronized void remove(long nodeId) {
+        checkOpen();
+        removeDeleted();
+        if (current.slot(nodeId) != 0) {
+            setSlot(current, nodeId, 0);
+        }
+    }
+
+    /**
+     * Start removing the recommendations of nodes deleted from the given database, so that they aren't served for
+     * new nodes that get the IDs of the deleted ones. Installing the store in the same database again has no effect.
+     *
+     * @param database holding the nodes the recommendations are for. Must not be <code>null</code>.
+     */
+    public synchronized void install(GraphDatabaseService database) {
+        notNull(database);
+        checkOpen();
+
+        if (!handlers.containsKey(database)) {
+            TransactionEventHandler<Void> handler = new RemovingHandler();
+            database.registerTransactionEventHandler(handler);
+            handlers.put(database, handler);
+        }
+    }
+
+    /**
+     * Stop removing the recommendations of nodes deleted from the given database.
+     *
+     * @param database the store has been {@link #install(GraphDatabaseService) installed} in.
+     */
+    public synchronized void uninstall(GraphDatabaseService database) {
+        TransactionEventHandler<Void> handler = handlers.remove(database);
+        if (handler != null) {
+            database.unregisterTransactionEventHandler(handler);
+        }
+    }
+
+    /**
+     * Get the recommendations of a node. Doesn't take any locks, doesn't copy any data.
+     *
+     * @param nodeId ID of the node.
+     * @return recommendations, empty if there are none.
+     */
+    public StoredRecommendations get(long nodeId) {
+        if (!deleted.isEmpty() && deleted.contains(nodeId)) {
+            return StoredRecommendations.EMPTY;
+        }
+
+        long stamp = lock.tryOptimisticRead();
+        Generation generation = current;
+        long offset = generation.slot(nodeId);
+
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                generation = current;
+                offset = generation.slot(nodeId);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        if (offset == 0) {
+            return StoredRecommendations.EMPTY;
+        }
+
+        ByteBuffer segment = generation.dataSegment(offset);
+        int recordOffset = (int) (offset % segmentSize);
+        return new StoredRecommendations(segment, recordOffset, (int) segment.getLong(recordOffset), segment.getLong(recordOffset + 8));
+    }
+
+    /**
+     * Copy all live records into a new generation of files and atomically make it current. Readers are not blocked;
+     * writers are blocked until compaction finishes.
+     *
+     * @return number of bytes reclaimed.
+     */
+    public synchronized long compact() {
+        checkOpen();
+
+        Generation old = current;
+        Generation fresh;
+
+        try {
+            fresh = new Generation(old.number + 1, true);
+            long slots = old.slotCapacity();
+            for (long nodeId = 0; nodeId < slots; nodeId++) {
+                long offset = old.slot(nodeId);
+                if (offset != 0) {
+                    fresh.setSlot(nodeId, fresh.copy(old, offset));
+                }
+            }
+            fresh.force();
+            writeCurrent(fresh.number);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not compact recommendation store in " + directory, e);
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            current = fresh;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        long reclaimed = old.appendPosition - fresh.appendPosition;
+        garbage = fresh.appendPosition - DATA_HEADER - fresh.liveBytes();
+
+        //nodes deleted during compaction have been copied, readers skip them until they're removed here
+        removeDeleted();
+
+        //readers might still hold views of the old generation; mappings stay valid after the files are closed
+        old.close();
+        deleteOtherGenerations(fresh.number);
+
+        LOG.info("Compacted recommendation store in %s to generation %s, reclaimed %s bytes", directory, fresh.number, reclaimed);
+
+        return reclaimed;
+    }
+
+    /**
+     * @return number of bytes in the data file occupied by replaced or removed records.
+     */
+    public synchronized long garbage() {
+        return garbage;
+    }
+
+    /**
+     * Force all written data to disk.
+     */
+    public synchronized void flush() {
+        if (!closed) {
+            current.force();
+        }
+    }
+
+    /**
+     * Flush and close the store. A subsequent {@link #forDirectory(File)} opens it again.
+     */
+    public void close() {
+        synchronized (STORES) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                for (Map.Entry<GraphDatabaseService, TransactionEventHandler<Void>> entry : handlers.entrySet()) {
+                    entry.getKey().unregisterTransactionEventHandler(entry.getValue());
+                }
+                handlers.clear();
+                current.force();
+                current.close();
+                closed = true;
+                STORES.remove(directory);
+            }
+        }
+    }
+
+    /**
+     * Record nodes deleted by a committed transaction without taking the store's monitor, which might be held by a long
+     * compaction, and remove their recommendations in the background. Readers skip them in the meantime.
+     */
+    private void nodesDeleted(TransactionData data) {
+        for (Node node : data.deletedNodes()) {
+            deleted.add(node.getId());
+        }
+
+        if (!deleted.isEmpty() && removing.compareAndSet(false, true)) {
+            COMPACTOR.submit(new Runnable() {
+                @Override
+                public void run() {
+                    removing.set(false);
+                    try {
+                        synchronized (MappedRecommendationStore.this) {
+                            removeDeleted();
+                        }
+                    } catch (RuntimeException e) {
+                        LOG.warn("Removal of deleted nodes from recommendation store in " + directory + " failed", e);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Remove recommendations of deleted nodes. Must be called while holding the store's monitor, before writing any
+     * recommendations, so that recommendations of a new node with the ID of a deleted one aren't removed.
+     */
+    private void removeDeleted() {
+        if (closed) {
+            deleted.clear();
+            return;
+        }
+
+        for (Long nodeId : deleted) {
+            if (current.slot(nodeId) != 0) {
+                setSlot(current, nodeId, 0);
+            }
+            deleted.remove(nodeId);
+        }
+    }
+
+    private void setSlot(Generation generation, long nodeId, long position) {
+        long previous = generation.slot(nodeId);
+
+        long stamp = lock.writeLock();
+        try {
+            generation.setSlot(nodeId, position);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        if (previous != 0) {
+            garbage += recordSize((int) generation.dataSegment(previous).getLong((int) (previous % segmentSize)));
+        }
+    }
+
+    private void compactIfNeeded() {
+        boolean needed;
+        synchronized (this) {
+            needed = !closed && garbage >= segmentSize && garbage * 2 > current.appendPosition;
+        }
+
+        if (needed && compacting.compareAndSet(false, true)) {
+            COMPACTOR.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        compact();
+                    } catch (RuntimeException e) {
+                        LOG.warn("Compaction of recommendation store in " + directory + " failed", e);
+                    } finally {
+                        compacting.set(false);
+                    }
+                }
+            });
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Recommendation store in " + directory + " has been closed");
+        }
+    }
+
+    private void writeCurrent(long number) throws IOException {
+        File temp = new File(directory, CURRENT + ".tmp");
+        Files.write(temp.toPath(), Long.toString(number).getBytes(StandardCharsets.UTF_8));
+        Files.move(temp.toPath(), new File(directory, CURRENT).toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void deleteOtherGenerations(long number) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            String name = file.getName();
+            if ((name.startsWith(DATA) || name.startsWith(INDEX)) && !name.endsWith("." + number) && !file.delete()) {
+                LOG.warn("Could not delete %s, will retry when the store is opened next time", file);
+            }
+        }
+    }
+
+    private static int readSegmentSize(File dataFile) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(dataFile, "r")) {
+            file.seek(8);
+            return file.readInt();
+        }
+    }
+
+    private static int recordSize(int count) {
+        //header, ids, scores, padded to 8 bytes
+        return (RECORD_HEADER + count * 12 + 7) & ~7;
+    }
+
+    /**
+     * Removes recommendations of deleted nodes after the deleting transaction commits.
+     */
+    private class RemovingHandler extends TransactionEventHandler.Adapter<Void> {
+
+        @Override
+        public void afterCommit(TransactionData data, Void state) {
+            nodesDeleted(data);
+        }
+    }
+
+    /**
+     * A data file and an index file, with their mapped segments.
+     */
+    private final class Generation {
+
+        private final long number;
+        private final RandomAccessFile dataFile;
+        private final RandomAccessFile indexFile;
+        private volatile MappedByteBuffer[] data = new MappedByteBuffer[0];
+        private volatile MappedByteBuffer[] index = new MappedByteBuffer[0];
+        private long appendPosition;
+
+        private Generation(long number, boolean create) throws IOException {
+            this.number = number;
+
+            File dataPath = new File(directory, DATA + number);
+            File indexPath = new File(directory, INDEX + number);
+            if (create) {
+                Files.deleteIfExists(dataPath.toPath());
+                Files.deleteIfExists(indexPath.toPath());
+            }
+
+            dataFile = new RandomAccessFile(dataPath, "rw");
+            indexFile = new RandomAccessFile(indexPath, "rw");
+
+            if (create) {
+                appendPosition = DATA_HEADER;
+                MappedByteBuffer header = mapData(0);
+                header.putLong(0, appendPosition);
+                header.putInt(8, segmentSize);
+            } else {
+                for (int i = 0; (long) i * segmentSize < dataFile.length(); i++) {
+                    mapData(i);
+                }
+                for (int i = 0; (long) i * segmentSize < indexFile.length(); i++) {
+                    mapIndex(i);
+                }
+                appendPosition = data[0].getLong(0);
+            }
+        }
+
+        private long append(long[] ids, float[] scores, long computedAt) {
+            int size = recordSize(ids.length);
+            isTrue(size <= segmentSize - DATA_HEADER, "Too many recommendations for segment size " + segmentSize);
+
+            long position = appendPosition;
+            int offset = (int) (position % segmentSize);
+            if (offset + size > segmentSize) {
+                //skip the rest of the segment, so that the record doesn't span two segments
+                garbage += segmentSize - offset;
+                position += segmentSize - offset;
+                offset = 0;
+            }
+
+            MappedByteBuffer segment = mapData((int) (position / segmentSize));
+            segment.putLong(offset, ids.length);
+            segment.putLong(offset + 8, computedAt);
+            for (int i = 0; i < ids.length; i++) {
+                segment.putLong(offset + RECORD_HEADER + i * 8, ids[i]);
+            }
+            for (int i = 0; i < scores.length; i++) {
+                segment.putFloat(offset + RECORD_HEADER + ids.length * 8 + i * 4, scores[i]);
+            }
+
+            appendPosition = position + size;
+            data[0].putLong(0, appendPosition);
+
+            return position;
+        }
+
+        private long copy(Generation source, long sourcePosition) {
+            ByteBuffer sourceSegment = source.dataSegment(sourcePosition);
+            int sourceOffset = (int) (sourcePosition % segmentSize);
+            int size = recordSize((int) sourceSegment.getLong(sourceOffset));
+
+            long position = appendPosition;
+            int offset = (int) (position % segmentSize);
+            if (offset + size > segmentSize) {
+                position += segmentSize - offset;
+                offset = 0;
+            }
+
+            ByteBuffer from = sourceSegment.duplicate();
+            from.limit(sourceOffset + size).position(sourceOffset);
+            ByteBuffer to = mapData((int) (position / segmentSize)).duplicate();
+            to.position(offset);
+            to.put(from);
+
+            appendPosition = position + size;
+            data[0].putLong(0, appendPosition);
+
+            return position;
+        }
+
+        private long liveBytes() {
+            long result = 0;
+            long slots = slotCapacity();
+            for (long nodeId = 0; nodeId < slots; nodeId++) {
+                long offset = slot(nodeId);
+                if (offset != 0) {
+                    result += recordSize((int) dataSegment(offset).getLong((int) (offset % segmentSize)));
+                }
+            }
+            return result;
+        }
+
+        private long slotCapacity() {
+            return (long) index.length * (segmentSize / 8);
+        }
+
+        private long slot(long nodeId) {
+            long position = nodeId * 8;
+            MappedByteBuffer[] segments = index;
+            int segment = (int) (position / segmentSize);
+            if (segment >= segments.length) {
+                return 0;
+            }
+            return segments[segment].getLong((int) (position % segmentSize));
+        }
+
+        private void setSlot(long nodeId, long offset) {
+            long position = nodeId * 8;
+            mapIndex((int) (position / segmentSize)).putLong((int) (position % segmentSize), offset);
+        }
+
+        private ByteBuffer dataSegment(long position) {
+            return data[(int) (position / segmentSize)];
+        }
+
+        private MappedByteBuffer mapData(int segment) {
+            data = map(dataFile, data, segment);
+            return data[segment];
+        }
+
+        private MappedByteBuffer mapIndex(int segment) {
+            index = map(indexFile, index, segment);
+            return index[segment];
+        }
+
+        //mapping beyond the end of a file extends it; segments are published copy-on-write for lock-free readers
+        private MappedByteBuffer[] map(RandomAccessFile file, MappedByteBuffer[] segments, int segment) {
+            if (segment < segments.length) {
+                return segments;
+            }
+
+            MappedByteBuffer[] result = Arrays.copyOf(segments, segment + 1);
+            try {
+                for (int i = segments.length; i <= segment; i++) {
+                    result[i] = file.getChannel().map(FileChannel.MapMode.READ_WRITE, (long) i * segmentSize, segmentSize);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Could not map segment " + segment + " in " + directory, e);
+            }
+            return result;
+        }
+
+        private void force() {
+            for (MappedByteBuffer segment : data) {
+                segment.force();
+            }
+            for (MappedByteBuffer segment : index) {
+                segment.force();
+            }
+        }
+
+        private void close() {
+            try {
+                dataFile.close();
+                indexFile.close();
+            } catch (IOException e) {
+                LOG.warn("Could not close files of recommendation store in " + directory, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.store;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A read-only, zero-copy view of pre-computed recommendations of a single node, as stored in a
+ * {@link MappedRecommendationStore}. IDs and scores are read directly from the memory-mapped file on every access.
+ * <p/>
+ * The view remains valid after the node's recommendations are replaced or the store is compacted; it then keeps
+ * returning the recommendations as they were when it was obtained.
+ */
+public final class StoredRecommendations {
+
+    static final StoredRecommendations EMPTY = new StoredRecommendations(ByteBuffer.allocate(0), 0, 0, -1);
+
+    private final ByteBuffer buffer;
+    private final int idsOffset;
+    private final int scoresOffset;
+    private final int size;
+    private final long computedAt;
+
+    StoredRecommendations(ByteBuffer buffer, int recordOffset, int size, long computedAt) {
+        this.buffer = buffer;
+        this.idsOffset = recordOffset + MappedRecommendationStore.RECORD_HEADER;
+        this.scoresOffset = idsOffset + size * 8;
+        this.size = size;
+        this.computedAt = computedAt;
+    }
+
+    /**
+     * @return number of stored recommendations.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return time the recommendations were computed at, in ms since the epoch, -1 if there are no stored
+     * recommendations.
+     */
+    public long computedAt() {
+        return computedAt;
+    }
+
+    /**
+     * @param index of a recommendation, must be smaller than {@link #size()}.
+     * @return ID of the recommended node.
+     */
+    public long id(int index) {
+        checkIndex(index);
+        return buffer.getLong(idsOffset + index * 8);
+    }
+
+    /**
+     * @param index of a recommendation, must be smaller than {@link #size()}.
+     * @return total score of the recommendation.
+     */
+    public float score(int index) {
+        checkIndex(index);
+        return buffer.getFloat(scoresOffset + index * 4);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        }
+    }
+}
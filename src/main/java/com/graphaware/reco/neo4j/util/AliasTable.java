@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.util;
+
+import java.util.Random;
+
+import static org.springframework.util.Assert.isTrue;
+import static org.springframework.util.Assert.notNull;
+
+/**
+ * Walker's alias table (built using Vose's method) for sampling indices 0 to <code>n - 1</code> with probabilities
+ * proportional to given weights.
+ * <p/>
+ * Building the table takes O(n) time; each sample then takes O(1) time, two random numbers, and no allocation. Indices
+ * with zero weight are never sampled.
+ * <p/>
+ * This class is immutable and thread-safe, provided the {@link Random} passed to {@link #sample(Random)} is.
+ */
+public final class AliasTable {
+
+    private final double[] probabilities;
+    private final int[] aliases;
+    private final boolean empty;
+
+    /**
+     * Build a new table.
+     *
+     * @param weights non-negative weights of the indices. Must not be <code>null</code>.
+     */
+    public AliasTable(double[] weights) {
+        notNull(weights);
+
+        int n = weights.length;
+        probabilities = new double[n];
+        aliases = new int[n];
+
+        double total = 0;
+        for (double weight : weights) {
+            isTrue(weight >= 0, "Weights must not be negative");
+            total += weight;
+        }
+
+        empty = total == 0;
+        if (empty) {
+            return;
+        }
+
+        //weights scaled so that their average is 1, split into those below (small) and above (large) the average
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallSize = 0;
+        int largeSize = 0;
+
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / total;
+            if (scaled[i] < 1) {
+                small[smallSize++] = i;
+            } else {
+                large[largeSize++] = i;
+            }
+        }
+
+        while (smallSize > 0 && largeSize > 0) {
+            int less = small[--smallSize];
+            int more = large[--largeSize];
+
+            probabilities[less] = scaled[less];
+            aliases[less] = more;
+
+            scaled[more] = (scaled[more] + scaled[less]) - 1;
+            if (scaled[more] < 1) {
+                small[smallSize++] = more;
+            } else {
+                large[largeSize++] = more;
+            }
+        }
+
+        //leftovers are (up to rounding errors) exactly average
+        while (largeSize > 0) {
+            int index = large[--largeSize];
+            probabilities[index] = 1;
+            aliases[index] = index;
+        }
+        while (smallSize > 0) {
+            int index = small[--smallSize];
+            probabilities[index] = 1;
+            aliases[index] = index;
+        }
+    }
+
+    /**
+     * @return number of indices, including those with zero weight.
+     */
+    public int size() {
+        return probabilities.length;
+    }
+
+    /**
+     * @return <code>true</code> iff no index can be sampled, i.e. there are no indices or all weights are zero.
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * Sample an index.
+     *
+     * @param random source of randomness.
+     * @return index with probability proportional to its weight, -1 if the table {@link #isEmpty()}.
+     */
+    public int sample(Random random) {
+        if (empty) {
+            return -1;
+        }
+
+        int column = random.nextInt(probabilities.length);
+        return random.nextDouble() < probabilities[column] ? column : aliases[column];
+    }
+}
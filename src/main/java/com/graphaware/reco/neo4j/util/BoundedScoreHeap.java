@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.util;
+
+import java.util.Arrays;
+
+/**
+ * A bounded min-heap of scored entries that retains the entries with the highest scores offered to it. Each entry
+ * has a long ID (typically node ID), a float score, and two optional objects (the item itself and arbitrary data
+ * associated with it).
+ * <p/>
+ * Entries are not de-duplicated by ID. This class is not thread-safe.
+ */
+public final class BoundedScoreHeap {
+
+    private final int capacity;
+
+    private long[] ids;
+    private float[] scores;
+    private Object[] items;
+    private Object[] data;
+    private int size;
+
+    /**
+     * Create a new heap.
+     *
+     * @param capacity maximum number of entries retained.
+     */
+    public BoundedScoreHeap(int capacity) {
+        this.capacity = Math.max(0, capacity);
+
+        int initial = Math.min(this.capacity, 16);
+        ids = new long[initial];
+        scores = new float[initial];
+        items = new Object[initial];
+        data = new Object[initial];
+    }
+
+    /**
+     * Would an entry with the given score be retained if it was offered now?
+     *
+     * @param score score.
+     * @return <code>true</code> iff the entry would be retained.
+     */
+    public boolean accepts(float score) {
+        return size < capacity || (capacity > 0 && score > scores[0]);
+    }
+
+    /**
+     * Offer an entry to the heap. If the heap is full, the entry replaces the one with the lowest score, provided its
+     * score is higher.
+     *
+     * @param id    ID of the entry.
+     * @param score score of the entry.
+     * @param item  item, can be <code>null</code>.
+     * @param extra extra data, can be <code>null</code>.
+     * @return <code>true</code> iff the entry has been retained.
+     */
+    public boolean offer(long id, float score, Object item, Object extra) {
+        if (!accepts(score)) {
+            return false;
+        }
+
+        if (size < capacity) {
+            ensureCapacity();
+            set(size, id, score, item, extra);
+            siftUp(size++);
+        } else {
+            set(0, id, score, item, extra);
+            siftDown(0);
+        }
+
+        return true;
+    }
+
+    /**
+     * @return <code>true</code> iff the heap holds the maximum number of entries.
+     */
+    public boolean isFull() {
+        return size >= capacity;
+    }
+
+    /**
+     * @return number of entries in the heap.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return lowest score in the heap, or {@link Float#NEGATIVE_INFINITY} if the heap is empty.
+     */
+    public float minScore() {
+        return size == 0 ? Float.NEGATIVE_INFINITY : scores[0];
+    }
+
+    /**
+     * Re-arrange the entries so that they are ordered by score, descending. After calling this method, the heap
+     * must not be offered any more entries, but its entries can be accessed by position using {@link #id(int)},
+     * {@link #score(int)}, {@link #item(int)}, and {@link #data(int)}.
+     */
+    public void sortDescending() {
+        for (int last = size - 1; last > 0; last--) {
+            swap(0, last);
+            siftDown(0, last);
+        }
+    }
+
+    public long id(int position) {
+        return ids[position];
+    }
+
+    public float score(int position) {
+        return scores[position];
+    }
+
+    public Object item(int position) {
+        return items[position];
+    }
+
+    public Object data(int position) {
+        return data[position];
+    }
+
+    private void ensureCapacity() {
+        if (size == ids.length) {
+            int newLength = (int) Math.min(capacity, Math.max(16L, ids.length * 2L));
+            ids = Arrays.copyOf(ids, newLength);
+            scores = Arrays.copyOf(scores, newLength);
+            items = Arrays.copyOf(items, newLength);
+            data = Arrays.copyOf(data, newLength);
+        }
+    }
+
+    private void set(int position, long id, float score, Object item, Object extra) {
+        ids[position] = id;
+        scores[position] = score;
+        items[position] = item;
+        data[position] = extra;
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (scores[parent] <= scores[position]) {
+                return;
+            }
+            swap(parent, position);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        siftDown(position, size);
+    }
+
+    private void siftDown(int position, int heapSize) {
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= heapSize) {
+                return;
+            }
+            if (child + 1 < heapSize && scores[child + 1] < scores[child]) {
+                child++;
+            }
+            if (scores[position] <= scores[child]) {
+                return;
+            }
+            swap(position, child);
+            position = child;
+        }
+    }
+
+    private void swap(int a, int b) {
+        long id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+
+        float score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+
+        Object item = items[a];
+        items[a] = items[b];
+        items[b] = item;
+
+        Object extra = data[a];
+        data[a] = data[b];
+        data[b] = extra;
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.util;
+
+import java.util.Arrays;
+
+/**
+ * A primitive map from long keys (typically node IDs) to double values (typically scores or accumulated path weights),
+ * which does not allocate any objects per entry.
+ * <p/>
+ * Every key is assigned a dense index (0, 1, 2, ...) in the order in which keys were first inserted. The index can be
+ * used to keep additional per-key data in parallel arrays and to iterate over the map without allocating an iterator.
+ * <p/>
+ * This class is not thread-safe.
+ */
+public final class LongDoubleMap {
+
+    private static final int EMPTY = -1;
+
+    private long[] keys;
+    private double[] values;
+    private int[] table;
+    private int mask;
+    private int size;
+
+    /**
+     * Create a new map with default initial capacity.
+     */
+    public LongDoubleMap() {
+        this(16);
+    }
+
+    /**
+     * Create a new map.
+     *
+     * @param expectedSize expected number of keys.
+     */
+    public LongDoubleMap(int expectedSize) {
+        int capacity = Math.max(4, expectedSize);
+        keys = new long[capacity];
+        values = new double[capacity];
+        table = new int[tableSize(capacity)];
+        Arrays.fill(table, EMPTY);
+        mask = table.length - 1;
+    }
+
+    /**
+     * Add a value to the value associated with a key. If the key isn't present, it is inserted with the given value.
+     *
+     * @param key   key.
+     * @param value to add.
+     * @return dense index of the key.
+     */
+    public int add(long key, double value) {
+        int slot = slot(key);
+        int index = table[slot];
+
+        if (index != EMPTY) {
+            values[index] += value;
+            return index;
+        }
+
+        return insert(slot, key, value);
+    }
+
+    /**
+     * Associate a value with a key, replacing any previous value.
+     *
+     * @param key   key.
+     * @param value value.
+     * @return dense index of the key.
+     */
+    public int put(long key, double value) {
+        int slot = slot(key);
+        int index = table[slot];
+
+        if (index != EMPTY) {
+            values[index] = value;
+            return index;
+        }
+
+        return insert(slot, key, value);
+    }
+
+    /**
+     * Get the value associated with a key.
+     *
+     * @param key          key.
+     * @param defaultValue value to return if the key isn't present.
+     * @return value.
+     */
+    public double get(long key, double defaultValue) {
+        int index = indexOf(key);
+        return index == EMPTY ? defaultValue : values[index];
+    }
+
+    /**
+     * Get the dense index of a key.
+     *
+     * @param key key.
+     * @return index, or -1 if the key isn't present.
+     */
+    public int indexOf(long key) {
+        return table[slot(key)];
+    }
+
+    /**
+     * @param key key.
+     * @return <code>true</code> iff the key is present.
+     */
+    public boolean containsKey(long key) {
+        return indexOf(key) != EMPTY;
+    }
+
+    /**
+     * @return number of keys in the map.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index dense index, must be smaller than {@link #size()}.
+     * @return key with the given index.
+     */
+    public long keyAt(int index) {
+        return keys[index];
+    }
+
+    /**
+     * @param index dense index, must be smaller than {@link #size()}.
+     * @return value of the key with the given index.
+     */
+    public double valueAt(int index) {
+        return values[index];
+    }
+
+    /**
+     * @param index dense index, must be smaller than {@link #size()}.
+     * @param value new value of the key with the given index.
+     */
+    public void setValueAt(int index, double value) {
+        values[index] = value;
+    }
+
+    /**
+     * Get the dense indices of up to <code>n</code> keys with the highest values, ordered by value, descending.
+     * Runs in O(size * log(n)).
+     *
+     * @param n maximum number of indices to return.
+     * @return indices.
+     */
+    public int[] topIndices(int n) {
+        int k = Math.min(n, size);
+        if (k <= 0) {
+            return new int[0];
+        }
+
+        //min-heap of indices, ordered by value
+        int[] heap = new int[k];
+        int heapSize = 0;
+
+        for (int i = 0; i < size; i++) {
+            if (heapSize < k) {
+                heap[heapSize] = i;
+                siftUp(heap, heapSize++);
+            } else if (values[i] > values[heap[0]]) {
+                heap[0] = i;
+                siftDown(heap, heapSize, 0);
+            }
+        }
+
+        int[] result = new int[heapSize];
+        for (int i = heapSize - 1; i >= 0; i--) {
+            result[i] = heap[0];
+            heap[0] = heap[--heapSize];
+            siftDown(heap, heapSize, 0);
+        }
+
+        return result;
+    }
+
+    /**
+     * Remove all keys, retaining allocated capacity.
+     */
+    public void clear() {
+        Arrays.fill(table, EMPTY);
+        size = 0;
+    }
+
+    private int insert(int slot, long key, double value) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+
+        keys[size] = key;
+        values[size] = value;
+        table[slot] = size;
+
+        if (++size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+
+        return size - 1;
+    }
+
+    private int slot(long key) {
+        int slot = hash(key) & mask;
+        while (table[slot] != EMPTY && keys[table[slot]] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(int newTableSize) {
+        table = new int[newTableSize];
+        Arrays.fill(table, EMPTY);
+        mask = newTableSize - 1;
+
+        for (int i = 0; i < size; i++) {
+            int slot = hash(keys[i]) & mask;
+            while (table[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = i;
+        }
+    }
+
+    private void siftUp(int[] heap, int position) {
+        int index = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (values[heap[parent]] <= values[index]) {
+                break;
+            }
+            heap[position] = heap[parent];
+            position = parent;
+        }
+        heap[position] = index;
+    }
+
+    private void siftDown(int[] heap, int heapSize, int position) {
+        if (heapSize == 0) {
+            return;
+        }
+
+        int index = heap[position];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && values[heap[child + 1]] < values[heap[child]]) {
+                child++;
+            }
+            if (values[index] <= values[heap[child]]) {
+                break;
+            }
+            heap[position] = heap[child];
+            position = child;
+        }
+        heap[position] = index;
+    }
+
+    private static int tableSize(int capacity) {
+        int result = 1;
+        while (result < capacity * 2) {
+            result <<= 1;
+        }
+        return result;
+    }
+
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.util;
+
+import java.util.Arrays;
+
+/**
+ * A primitive set of long values (typically node IDs), which does not allocate any objects per entry and supports
+ * constant-time insertion, removal, and access by position.
+ * <p/>
+ * Values are kept densely packed in positions 0 to <code>size - 1</code>. Removing a value moves the last value into
+ * its position, so positions are not stable across removals. This makes the set suitable for uniform random sampling
+ * of its values.
+ * <p/>
+ * This class is not thread-safe.
+ */
+public final class LongIndexedSet {
+
+    private static final int EMPTY = -1;
+
+    private long[] values;
+    private int[] table;
+    private int mask;
+    private int size;
+
+    /**
+     * Create a new set with default initial capacity.
+     */
+    public LongIndexedSet() {
+        this(16);
+    }
+
+    /**
+     * Create a new set.
+     *
+     * @param expectedSize expected number of values.
+     */
+    public LongIndexedSet(int expectedSize) {
+        int capacity = Math.max(4, expectedSize);
+        values = new long[capacity];
+        table = new int[tableSize(capacity)];
+        Arrays.fill(table, EMPTY);
+        mask = table.length - 1;
+    }
+
+    /**
+     * Add a value to the set.
+     *
+     * @param value to add.
+     * @return <code>true</code> iff the value wasn't present before.
+     */
+    public boolean add(long value) {
+        int slot = slot(value);
+        if (table[slot] != EMPTY) {
+            return false;
+        }
+
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+
+        values[size] = value;
+        table[slot] = size;
+
+        if (++size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+
+        return true;
+    }
+
+    /**
+     * Remove a value from the set. The last value takes the position of the removed one.
+     *
+     * @param value to remove.
+     * @return <code>true</code> iff the value was present.
+     */
+    public boolean remove(long value) {
+        int slot = slot(value);
+        int position = table[slot];
+        if (position == EMPTY) {
+            return false;
+        }
+
+        int last = size - 1;
+        if (position != last) {
+            long lastValue = values[last];
+            table[slot(lastValue)] = position;
+            values[position] = lastValue;
+        }
+        size--;
+
+        deleteSlot(slot);
+        return true;
+    }
+
+    /**
+     * @param value value.
+     * @return <code>true</code> iff the value is present.
+     */
+    public boolean contains(long value) {
+        return table[slot(value)] != EMPTY;
+    }
+
+    /**
+     * @return number of values in the set.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param position position, must be smaller than {@link #size()}.
+     * @return value at the given position.
+     */
+    public long get(int position) {
+        return values[position];
+    }
+
+    /**
+     * Remove all values, retaining allocated capacity.
+     */
+    public void clear() {
+        Arrays.fill(table, EMPTY);
+        size = 0;
+    }
+
+    private int slot(long value) {
+        int slot = hash(value) & mask;
+        while (table[slot] != EMPTY && values[table[slot]] != value) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    //backward-shift deletion, keeps probe sequences intact without tombstones
+    private void deleteSlot(int hole) {
+        int next = (hole + 1) & mask;
+        while (table[next] != EMPTY) {
+            int home = hash(values[table[next]]) & mask;
+            boolean movable = hole <= next ? (home <= hole || home > next) : (home <= hole && home > next);
+            if (movable) {
+                table[hole] = table[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table[hole] = EMPTY;
+    }
+
+    private void rehash(int newTableSize) {
+        table = new int[newTableSize];
+        Arrays.fill(table, EMPTY);
+        mask = newTableSize - 1;
+
+        for (int i = 0; i < size; i++) {
+            int slot = hash(values[i]) & mask;
+            while (table[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = i;
+        }
+    }
+
+    private static int tableSize(int capacity) {
+        int result = 1;
+        while (result < capacity * 2) {
+            result <<= 1;
+        }
+        return result;
+    }
+
+    private static int hash(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        return (int) value;
+    }
+}
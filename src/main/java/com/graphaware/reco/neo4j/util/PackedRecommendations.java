@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.util;
+
+import com.graphaware.reco.generic.result.PartialScore;
+import com.graphaware.reco.generic.result.Recommendation;
+import com.graphaware.reco.generic.result.Score;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.util.Assert.notNull;
+
+/**
+ * Pre-computed recommendations of a single subject node, stored as packed array properties of the node itself rather
+ * than as one relationship per recommendation.
+ * <p/>
+ * IDs of recommended nodes are stored as a <code>long[]</code>, their total scores as a parallel <code>float[]</code>.
+ * Optionally, names of all partial scores are stored as a <code>String[]</code> and their values as a single
+ * <code>float[]</code> holding one parallel array per partial score, one after another. Reading the recommendations is
+ * therefore a single property fetch and writing them is a single property set per array, regardless of their number.
+ * <p/>
+ * Unlike relationships, stored IDs are not removed when recommended nodes are deleted. Missing nodes must be skipped
+ * when reading and, since Neo4j re-uses IDs of deleted nodes, recommendations should be re-computed regularly.
+ */
+public final class PackedRecommendations {
+
+    public static final String PROPERTY_PREFIX = "_GA_RECO_";
+    public static final String TOTAL = "total";
+
+    private final long[] ids;
+    private final float[] scores;
+    private final String[] partNames;
+    private final float[] partScores;
+
+    private PackedRecommendations(long[] ids, float[] scores, String[] partNames, float[] partScores) {
+        this.ids = ids;
+        this.scores = scores;
+        this.partNames = partNames;
+        this.partScores = partScores;
+    }
+
+    /**
+     * Store recommendations on their subject node, replacing any previously stored ones.
+     *
+     * @param node            subject of the recommendations. Must not be <code>null</code>.
+     * @param type            type of the recommendations, used as a namespace of the properties. Must not be <code>null</code>.
+     * @param recommendations to store, ordered by score, descending. Must not be <code>null</code>.
+     * @param withParts       <code>true</code> iff values of partial scores should be stored as well as total scores.
+     */
+    public static void write(Node node, RelationshipType type, List<Recommendation<Node>> recommendations, boolean withParts) {
+        notNull(node);
+        notNull(type);
+        notNull(recommendations);
+
+        if (recommendations.isEmpty()) {
+            remove(node, type);
+            return;
+        }
+
+        int size = recommendations.size();
+        long[] ids = new long[size];
+        float[] scores = new float[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = recommendations.get(i).getItem().getId();
+            scores[i] = recommendations.get(i).getScore().getTotalScore();
+        }
+
+        node.setProperty(idsKey(type), ids);
+        node.setProperty(scoresKey(type), scores);
+
+        if (!withParts) {
+            node.removeProperty(partNamesKey(type));
+            node.removeProperty(partScoresKey(type));
+            return;
+        }
+
+        Map<String, Integer> parts = new LinkedHashMap<>();
+        for (Recommendation<Node> recommendation : recommendations) {
+            for (String name : recommendation.getScore().getScoreParts().keySet()) {
+                if (!parts.containsKey(name)) {
+                    parts.put(name, parts.size());
+                }
+            }
+        }
+
+        float[] partScores = new float[parts.size() * size];
+        for (int i = 0; i < size; i++) {
+            for (Map.Entry<String, PartialScore> entry : recommendations.get(i).getScore().getScoreParts().entrySet()) {
+                partScores[parts.get(entry.getKey()) * size + i] = entry.getValue().getValue();
+            }
+        }
+
+        node.setProperty(partNamesKey(type), parts.keySet().toArray(new String[parts.size()]));
+        node.setProperty(partScoresKey(type), partScores);
+    }
+
+    /**
+     * Remove stored recommendations from their subject node.
+     *
+     * @param node subject of the recommendations. Must not be <code>null</code>.
+     * @param type type of the recommendations. Must not be <code>null</code>.
+     */
+    public static void remove(Node node, RelationshipType type) {
+        node.removeProperty(idsKey(type));
+        node.removeProperty(scoresKey(type));
+        node.removeProperty(partNamesKey(type));
+        node.removeProperty(partScoresKey(type));
+    }
+
+    /**
+     * Read recommendations stored on their subject node.
+     *
+     * @param node subject of the recommendations. Must not be <code>null</code>.
+     * @param type type of the recommendations. Must not be <code>null</code>.
+     * @return recommendations, empty if none are stored.
+     */
+    public static PackedRecommendations read(Node node, RelationshipType type) {
+        notNull(node);
+        notNull(type);
+
+        Map<String, Object> properties = node.getProperties(idsKey(type), scoresKey(type), partNamesKey(type), partScoresKey(type));
+
+        Object ids = properties.get(idsKey(type));
+        Object scores = properties.get(scoresKey(type));
+        if (!(ids instanceof long[]) || !(scores instanceof float[]) || ((long[]) ids).length != ((float[]) scores).length) {
+            return new PackedRecommendations(new long[0], new float[0], null, null);
+        }
+
+        Object partNames = properties.get(partNamesKey(type));
+        Object partScores = properties.get(partScoresKey(type));
+        if (!(partNames instanceof String[]) || !(partScores instanceof float[]) || ((String[]) partNames).length * ((long[]) ids).length != ((float[]) partScores).length) {
+            return new PackedRecommendations((long[]) ids, (float[]) scores, null, null);
+        }
+
+        return new PackedRecommendations((long[]) ids, (float[]) scores, (String[]) partNames, (float[]) partScores);
+    }
+
+    /**
+     * @return number of stored recommendations.
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * @param index of a recommendation, must be smaller than {@link #size()}.
+     * @return ID of the recommended node.
+     */
+    public long id(int index) {
+        return ids[index];
+    }
+
+    /**
+     * @param index of a recommendation, must be smaller than {@link #size()}.
+     * @return total score of the recommendation.
+     */
+    public float totalScore(int index) {
+        return scores[index];
+    }
+
+    /**
+     * Produce the score of a recommendation.
+     *
+     * @param index of a recommendation, must be smaller than {@link #size()}.
+     * @return score composed of the stored non-zero partial scores, or of a single partial score named {@link #TOTAL}
+     * if partial scores haven't been stored.
+     */
+    public Score score(int index) {
+        Score result = new Score();
+
+        if (partNames == null) {
+            result.add(TOTAL, scores[index]);
+            return result;
+        }
+
+        for (int part = 0; part < partNames.length; part++) {
+            float value = partScores[part * ids.length + index];
+            if (value != 0) {
+                result.add(partNames[part], value);
+            }
+        }
+
+        return result;
+    }
+
+    private static String idsKey(RelationshipType type) {
+        return PROPERTY_PREFIX + type.name() + "_IDS";
+    }
+
+    private static String scoresKey(RelationshipType type) {
+        return PROPERTY_PREFIX + type.name() + "_SCORES";
+    }
+
+    private static String partNamesKey(RelationshipType type) {
+        return PROPERTY_PREFIX + type.name() + "_PART_NAMES";
+    }
+
+    private static String partScoresKey(RelationshipType type) {
+        return PROPERTY_PREFIX + type.name() + "_PART_SCORES";
+    }
+}
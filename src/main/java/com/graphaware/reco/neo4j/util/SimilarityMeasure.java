@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.util;
+
+/**
+ * Measure of similarity of two nodes based on the number of things they have in common (overlap) and the number of
+ * things each of them has (degree).
+ */
+public enum SimilarityMeasure {
+
+    /**
+     * The number of things in common.
+     */
+    OVERLAP {
+        @Override
+        public double similarity(int overlap, int degree1, int degree2) {
+            return overlap;
+        }
+    },
+
+    /**
+     * The number of things in common divided by the number of distinct things the two nodes have.
+     */
+    JACCARD {
+        @Override
+        public double similarity(int overlap, int degree1, int degree2) {
+            int union = degree1 + degree2 - overlap;
+            return union <= 0 ? 0 : (double) overlap / union;
+        }
+    },
+
+    /**
+     * The number of things in common divided by the geometric mean of the numbers of things the two nodes have.
+     */
+    COSINE {
+        @Override
+        public double similarity(int overlap, int degree1, int degree2) {
+            return degree1 <= 0 || degree2 <= 0 ? 0 : overlap / Math.sqrt((double) degree1 * degree2);
+        }
+    };
+
+    /**
+     * Compute similarity.
+     *
+     * @param overlap number of things in common.
+     * @param degree1 number of things the first node has.
+     * @param degree2 number of things the second node has.
+     * @return similarity, the higher the more similar.
+     */
+    public abstract double similarity(int overlap, int degree1, int degree2);
+}
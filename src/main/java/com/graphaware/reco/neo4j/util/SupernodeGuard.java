@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.util;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Utility class that caps the number of relationships expanded from a single node during a traversal, so that popular
+ * nodes ("supernodes") do not drag millions of relationships into a single computation.
+ * <p/>
+ * The degree of a node is checked before any of its relationships are expanded. Nodes with a degree over the maximum
+ * fan-out are dealt with according to a {@link SupernodeStrategy}. Samples are drawn uniformly at random (reservoir
+ * sampling) from no more than {@link #SCAN_FACTOR} times the maximum fan-out relationships, so that their cost doesn't
+ * depend on the degree of the node. For nodes with a degree over that, the sample is drawn from the relationships Neo4j
+ * returns first, typically the most recently created.
+ */
+public final class SupernodeGuard {
+
+    /**
+     * Name of the reason detail recording that a path went through a sampled node.
+     */
+    public static final String SAMPLED = "sampled";
+
+    /**
+     * Name of the reason detail recording the weight applied to the score of a path through down-weighted nodes.
+     */
+    public static final String WEIGHT = "weight";
+
+    /**
+     * Number of relationships read per sampled relationship, at most.
+     */
+    public static final int SCAN_FACTOR = 10;
+
+    private static final Expansion SKIPPED = new Expansion(Collections.<Relationship>emptyList(), 0, true);
+
+    /**
+     * Expand relationships of a node.
+     *
+     * @param node      to expand.
+     * @param type      of relationships to expand.
+     * @param direction of relationships to expand.
+     * @param maxFanOut maximum number of relationships to expand.
+     * @param strategy  of dealing with nodes whose degree is over maxFanOut.
+     * @return expansion.
+     */
+    public static Expansion expand(Node node, RelationshipType type, Direction direction, int maxFanOut, SupernodeStrategy strategy) {
+        if (maxFanOut == Integer.MAX_VALUE) {
+            return new Expansion(node.getRelationships(type, direction), 1, false);
+        }
+
+        int degree = node.getDegree(type, direction);
+        if (degree <= maxFanOut) {
+            return new Expansion(node.getRelationships(type, direction), 1, false);
+        }
+
+        if (strategy == SupernodeStrategy.SKIP) {
+            return SKIPPED;
+        }
+
+        List<Relationship> sample = sample(node.getRelationships(type, direction), maxFanOut);
+
+        if (strategy == SupernodeStrategy.DOWNWEIGHT) {
+            return new Expansion(sample, (float) sample.size() / Math.max(degree, sample.size()), true);
+        }
+
+        return new Expansion(sample, 1, true);
+    }
+
+    private static List<Relationship> sample(Iterable<Relationship> relationships, int size) {
+        List<Relationship> reservoir = new ArrayList<>(size);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long maxScanned = (long) size * SCAN_FACTOR;
+
+        int seen = 0;
+        Iterator<Relationship> iterator = relationships.iterator();
+        while (seen < maxScanned && iterator.hasNext()) {
+            Relationship relationship = iterator.next();
+            if (seen < size) {
+                reservoir.add(relationship);
+            } else {
+                int position = random.nextInt(seen + 1);
+                if (position < size) {
+                    reservoir.set(position, relationship);
+                }
+            }
+            seen++;
+        }
+
+        return reservoir;
+    }
+
+    /**
+     * Add details about sampling to the details of a reason.
+     *
+     * @param details of a reason, can be <code>null</code>.
+     * @param weight  product of weights of all expansions on the path.
+     * @return details, including {@link #SAMPLED} and, if weight isn't 1, {@link #WEIGHT}.
+     */
+    public static Map<String, Object> sampledDetails(Map<String, Object> details, float weight) {
+        Map<String, Object> result = details == null ? new HashMap<String, Object>() : new HashMap<>(details);
+        result.put(SAMPLED, true);
+        if (weight != 1) {
+            result.put(WEIGHT, weight);
+        }
+        return result;
+    }
+
+    /**
+     * Relationships expanded from a single node.
+     */
+    public static final class Expansion {
+
+        private final Iterable<Relationship> relationships;
+        private final float weight;
+        private final boolean sampled;
+
+        private Expansion(Iterable<Relationship> relationships, float weight, boolean sampled) {
+            this.relationships = relationships;
+            this.weight = weight;
+            this.sampled = sampled;
+        }
+
+        /**
+         * @return relationships to traverse.
+         */
+        public Iterable<Relationship> getRelationships() {
+            return relationships;
+        }
+
+        /**
+         * @return weight to multiply scores of paths through the expanded node by.
+         */
+        public float getWeight() {
+            return weight;
+        }
+
+        /**
+         * @return <code>true</code> iff not all relationships of the node are traversed.
+         */
+        public boolean isSampled() {
+            return sampled;
+        }
+    }
+
+    private SupernodeGuard() {
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.util;
+
+/**
+ * Strategy of dealing with a node whose degree exceeds the maximum fan-out allowed when traversing through it.
+ *
+ * @see SupernodeGuard
+ */
+public enum SupernodeStrategy {
+
+    /**
+     * Do not traverse through the node at all.
+     */
+    SKIP,
+
+    /**
+     * Traverse a random sample of as many of the node's relationships as the maximum fan-out. To bound the cost, the
+     * sample is drawn from a limited number of relationships (see {@link SupernodeGuard#SCAN_FACTOR}), the first ones in
+     * the order Neo4j returns them, so for very large nodes it favours the most recently created relationships.
+     */
+    SAMPLE,
+
+    /**
+     * Traverse a sample of the node's relationships like {@link #SAMPLE}, and multiply the score of
+     * each path through the node by the maximum fan-out divided by the node's degree, so that the node contributes no
+     * more in total than a node with maximum fan-out would.
+     */
+    DOWNWEIGHT
+}
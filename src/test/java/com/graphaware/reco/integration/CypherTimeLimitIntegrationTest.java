@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.integration;
+
+import com.graphaware.reco.generic.config.SimpleConfig;
+import com.graphaware.reco.generic.engine.RecommendationEngine;
+import com.graphaware.reco.generic.result.Reason;
+import com.graphaware.reco.generic.result.Recommendation;
+import com.graphaware.reco.neo4j.engine.BaseCypherEngine;
+import com.graphaware.reco.neo4j.engine.CypherEngine;
+import com.graphaware.reco.neo4j.engine.Neo4jTopLevelDelegatingRecommendationEngine;
+import com.graphaware.test.integration.EmbeddedDatabaseIntegrationTest;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Integration test for enforcing the time limit of a computation while Cypher queries are running.
+ */
+public class CypherTimeLimitIntegrationTest extends EmbeddedDatabaseIntegrationTest {
+
+    private static final long BUDGET = 50;
+    //generous, so that GC pauses and noisy CI machines don't fail the test, while a late deadline still does
+    private static final long EPSILON = 150;
+    private static final int RUNS = 100;
+
+    //lazy query that would take forever to consume
+    private static final String SLOW_QUERY = "MATCH (p:Person) WHERE id(p)={id} " +
+            "UNWIND range(1, 100000000) AS i " +
+            "MATCH (reco:Person) WHERE reco <> p " +
+            "RETURN reco, 1 AS score";
+
+    @Override
+    protected void populateDatabase(GraphDatabaseService database) {
+        database.execute("UNWIND range(1, 100) AS i CREATE (:Person {name: 'Person ' + i})");
+    }
+
+    @Test
+    public void p99LatencyShouldStayWithinBudget() {
+        Neo4jTopLevelDelegatingRecommendationEngine engine = new Neo4jTopLevelDelegatingRecommendationEngine() {
+            @Override
+            protected List<RecommendationEngine<Node, Node>> engines() {
+                return Collections.<RecommendationEngine<Node, Node>>singletonList(new CypherEngine("slow", SLOW_QUERY));
+            }
+        };
+
+        long[] latencies = new long[RUNS];
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node input = getDatabase().findNode(Label.label("Person"), "name", "Person 1");
+
+            //warm up, so that query planning isn't measured
+            for (int i = 0; i < 5; i++) {
+                engine.recommend(input, new SimpleConfig(10, BUDGET));
+            }
+
+            for (int i = 0; i < RUNS; i++) {
+                long start = System.nanoTime();
+                List<Recommendation<Node>> result = engine.recommend(input, new SimpleConfig(10, BUDGET));
+                latencies[i] = (System.nanoTime() - start) / 1_000_000;
+
+                assertFalse(result.isEmpty());
+                assertTrue(isPartial(result.get(0)));
+            }
+
+            tx.success();
+        }
+
+        Arrays.sort(latencies);
+        long p99 = latencies[(int) Math.ceil(RUNS * 0.99) - 1];
+
+        assertTrue("p99 latency was " + p99 + " ms", p99 <= BUDGET + EPSILON);
+    }
+
+    private boolean isPartial(Recommendation<Node> recommendation) {
+        for (Reason reason : recommendation.getScore().getScoreParts().get("slow").getReasons()) {
+            if (Boolean.TRUE.equals(reason.getDetails().get(BaseCypherEngine.PARTIAL))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
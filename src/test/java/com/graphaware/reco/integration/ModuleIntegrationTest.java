@@ -36,6 +36,7 @@ import org.neo4j.helpers.collection.MapUtil;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class ModuleIntegrationTest extends GraphAwareIntegrationTest {
 
@@ -198,6 +199,179 @@ public class ModuleIntegrationTest extends GraphAwareIntegrationTest {
         }
     }
 
+    @Test
+    public void shouldRecommendPreComputedWithBatchedWrites() throws InterruptedException {
+        GraphAwareRuntime runtime = GraphAwareRuntimeFactory.createRuntime(
+                getDatabase(),
+                FluentRuntimeConfiguration.defaultConfiguration(getDatabase())
+                        .withTimingStrategy(
+                                FixedDelayTimingStrategy.getInstance()
+                                        .withDelay(100)
+                                        .withInitialDelay(100)
+                        ));
+
+        RecommendationModule module = new RecommendationModule(
+                "RECO",
+                RecommendationModuleConfiguration.defaultConfiguration(new FriendsComputingEngine()).withConfig(new SimpleConfig(2)).withWriteBatchSize(5),
+                getDatabase());
+
+        runtime.registerModule(module);
+
+        runtime.start();
+
+        Thread.sleep(2000);
+
+        assertTrue(module.getPersistenceStatistics().getBatches() > 0);
+        assertTrue(module.getPersistenceStatistics().getMaxBatchSize() > 1);
+        assertTrue(module.getPersistenceStatistics().getMaxBatchSize() <= 5);
+
+        //recommendations that survive between sweeps are not re-created
+        assertTrue(module.getPersistenceStatistics().getRelationshipsUnchanged() > 0);
+        assertTrue(module.getPersistenceStatistics().getSweeps() > 0);
+
+        try (Transaction tx = getDatabase().beginTx()) {
+
+            List<Recommendation<Node>> recoForVince = recommendationEngine.recommend(getPersonByName("Vince"), new SimpleConfig(2));
+
+            assertEquals(2, recoForVince.size());
+            ScoreUtils.assertScoresEqual(recommendedAdamPrecomputed(), recoForVince.get(0));
+            ScoreUtils.assertScoresEqual(recommendedLuannePrecomputed(), recoForVince.get(1));
+
+            List<Recommendation<Node>> recoForAdam = recommendationEngine.recommend(getPersonByName("Adam"), new SimpleConfig(2));
+
+            assertEquals(2, recoForAdam.size());
+            ScoreUtils.assertScoresEqual(recommendedVincePrecomputed(), recoForAdam.get(0));
+            ScoreUtils.assertScoresEqual(recommendedDanielaPrecomputed(), recoForAdam.get(1));
+
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldRewritePreComputedRelationshipsInPlace() throws InterruptedException {
+        GraphAwareRuntime runtime = GraphAwareRuntimeFactory.createRuntime(
+                getDatabase(),
+                FluentRuntimeConfiguration.defaultConfiguration(getDatabase())
+                        .withTimingStrategy(
+                                FixedDelayTimingStrategy.getInstance()
+                                        .withDelay(100)
+                                        .withInitialDelay(100)
+                        ));
+
+        RecommendationModule module = new RecommendationModule(
+                "RECO",
+                RecommendationModuleConfiguration.defaultConfiguration(new FriendsComputingEngine()).withConfig(new SimpleConfig(2)).withWriteBatchSize(5).withScoreEpsilon(1),
+                getDatabase());
+
+        runtime.registerModule(module);
+
+        runtime.start();
+
+        Thread.sleep(2000);
+
+        long adamId;
+        long luanneId;
+        long recommendedAdam;
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node vince = getPersonByName("Vince");
+            adamId = getPersonByName("Adam").getId();
+            luanneId = getPersonByName("Luanne").getId();
+
+            Relationship adam = recommendation(vince, adamId);
+            recommendedAdam = adam.getId();
+
+            //within and over the score tolerance
+            adam.setProperty("sameGender", 10.4f);
+            adam.setProperty("sameLocation", 20.0f);
+
+            //a duplicate and an item that is never recommended
+            vince.createRelationshipTo(getPersonByName("Luanne"), RelationshipType.withName("RECOMMEND"));
+            vince.createRelationshipTo(getDatabase().findNode(Label.label("City"), "name", "London"), RelationshipType.withName("RECOMMEND"));
+
+            tx.success();
+        }
+
+        Thread.sleep(2000);
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node vince = getPersonByName("Vince");
+
+            int count = 0;
+            for (Relationship relationship : vince.getRelationships(RelationshipType.withName("RECOMMEND"), Direction.OUTGOING)) {
+                long endNodeId = relationship.getEndNode().getId();
+                assertTrue(endNodeId == adamId || endNodeId == luanneId);
+                count++;
+            }
+            assertEquals(2, count);
+
+            Relationship adam = recommendation(vince, adamId);
+            assertEquals(recommendedAdam, adam.getId());
+            assertEquals(10.4f, ((Number) adam.getProperty("sameGender")).floatValue(), 0.0001f);
+            assertEquals(10.0f, ((Number) adam.getProperty("sameLocation")).floatValue(), 0.0001f);
+
+            tx.success();
+        }
+
+        assertTrue(module.getPersistenceStatistics().getRelationshipsDeleted() >= 2);
+        assertTrue(module.getPersistenceStatistics().getRelationshipsUpdated() > 0);
+    }
+
+    private Relationship recommendation(Node node, long itemId) {
+        for (Relationship relationship : node.getRelationships(RelationshipType.withName("RECOMMEND"), Direction.OUTGOING)) {
+            if (relationship.getEndNode().getId() == itemId) {
+                return relationship;
+            }
+        }
+        throw new AssertionError("No recommendation of node " + itemId);
+    }
+
+    @Test
+    public void shouldRecommendPreComputedInParallel() throws InterruptedException {
+        GraphAwareRuntime runtime = GraphAwareRuntimeFactory.createRuntime(
+                getDatabase(),
+                FluentRuntimeConfiguration.defaultConfiguration(getDatabase())
+                        .withTimingStrategy(
+                                FixedDelayTimingStrategy.getInstance()
+                                        .withDelay(100)
+                                        .withInitialDelay(100)
+                        ));
+
+        RecommendationModule module = new RecommendationModule(
+                "RECO",
+                RecommendationModuleConfiguration.defaultConfiguration(new FriendsComputingEngine()).withConfig(new SimpleConfig(2))
+                        .withParallelism(4)
+                        .withQueueDepth(3)
+                        .withWriteBatchSize(5)
+                        .withWriteBatchWindow(50),
+                getDatabase());
+
+        runtime.registerModule(module);
+
+        runtime.start();
+
+        Thread.sleep(2000);
+
+        assertTrue(module.getPersistenceStatistics().getNodes() > 0);
+        assertEquals(0, module.getPersistenceStatistics().getDropped());
+
+        try (Transaction tx = getDatabase().beginTx()) {
+
+            List<Recommendation<Node>> recoForVince = recommendationEngine.recommend(getPersonByName("Vince"), new SimpleConfig(2));
+
+            assertEquals(2, recoForVince.size());
+            ScoreUtils.assertScoresEqual(recommendedAdamPrecomputed(), recoForVince.get(0));
+            ScoreUtils.assertScoresEqual(recommendedLuannePrecomputed(), recoForVince.get(1));
+
+            List<Recommendation<Node>> recoForAdam = recommendationEngine.recommend(getPersonByName("Adam"), new SimpleConfig(2));
+
+            assertEquals(2, recoForAdam.size());
+            ScoreUtils.assertScoresEqual(recommendedVincePrecomputed(), recoForAdam.get(0));
+            ScoreUtils.assertScoresEqual(recommendedDanielaPrecomputed(), recoForAdam.get(1));
+
+            tx.success();
+        }
+    }
+
 	private Node getPersonByName(String name) {
 		return getDatabase().findNode(Label.label("Person"), "name", name);
 	}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.engine;
+
+import com.graphaware.reco.generic.config.SimpleConfig;
+import com.graphaware.reco.generic.context.SimpleContext;
+import com.graphaware.reco.generic.engine.RecommendationEngine;
+import com.graphaware.reco.generic.result.Recommendation;
+import com.graphaware.reco.neo4j.cypher.CompiledQueryCache;
+import com.graphaware.reco.neo4j.cypher.CompiledQueryStatistics;
+import com.graphaware.reco.neo4j.cypher.CypherProfiler;
+import com.graphaware.test.integration.EmbeddedDatabaseIntegrationTest;
+import org.junit.Test;
+import org.neo4j.graphdb.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test for {@link BatchCypherEngine}.
+ */
+public class BatchCypherEngineTest extends EmbeddedDatabaseIntegrationTest {
+
+    private static final String QUERY = "UNWIND {ids} AS id MATCH (p:Person)-[:FRIEND_OF]-()-[:FRIEND_OF]-(reco) WHERE id(p)=id AND NOT (p)-[:FRIEND_OF]-(reco) RETURN p AS input, reco, count(*) as score";
+
+    @Override
+    protected void populateDatabase(GraphDatabaseService database) {
+        database.execute(
+                "CREATE " +
+                        "(m:Person:Male {name:'Michal', age:30})," +
+                        "(d:Person:Female {name:'Daniela', age:20})," +
+                        "(v:Person:Male {name:'Vince', age:40})," +
+                        "(a:Person:Male {name:'Adam', age:30})," +
+                        "(l:Person:Female {name:'Luanne', age:25})," +
+                        "(b:Person:Male {name:'Christophe', age:60})," +
+                        "(j:Person:Male {name:'Jim', age:38})," +
+
+                        "(m)-[:FRIEND_OF]->(d)," +
+                        "(m)-[:FRIEND_OF]->(l)," +
+                        "(m)-[:FRIEND_OF]->(a)," +
+                        "(m)-[:FRIEND_OF]->(v)," +
+                        "(d)-[:FRIEND_OF]->(v)," +
+                        "(b)-[:FRIEND_OF]->(v)," +
+                        "(j)-[:FRIEND_OF]->(v)," +
+                        "(j)-[:FRIEND_OF]->(m)," +
+                        "(j)-[:FRIEND_OF]->(a)");
+    }
+
+    @Test
+    public void shouldComputeRecommendationsForSingleInput() {
+        RecommendationEngine<Node, Node> engine = new BatchCypherEngine("batch engine", QUERY);
+
+        List<Recommendation<Node>> result;
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node vince = getDatabase().findNode(Label.label("Person"), "name", "Vince");
+            result = engine.recommend(vince, new SimpleContext<Node, Node>(vince, new SimpleConfig(10))).get(Integer.MAX_VALUE);
+
+            assertEquals(2, result.size());
+            assertEquals("Adam", result.get(0).getItem().getProperty("name"));
+            assertEquals("Luanne", result.get(1).getItem().getProperty("name"));
+            assertEquals(2.0, result.get(0).getScore().getTotalScore(), 0.001);
+            assertEquals(1.0, result.get(1).getScore().getTotalScore(), 0.001);
+
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldComputeRecommendationsForBatchWithSingleQuery() {
+        Neo4jTopLevelDelegatingRecommendationEngine engine = new Neo4jTopLevelDelegatingRecommendationEngine() {
+            //new instances on every call, prefetched recommendations must still be found
+            @Override
+            protected List<RecommendationEngine<Node, Node>> engines() {
+                return Collections.<RecommendationEngine<Node, Node>>singletonList(new BatchCypherEngine("batch engine", QUERY) {
+                    @Override
+                    protected boolean precompiled() {
+                        return true;
+                    }
+
+                    @Override
+                    protected double profilingRate() {
+                        return 1;
+                    }
+                });
+            }
+        };
+
+        engine.precompile(getDatabase());
+        CypherProfiler.getInstance().clear();
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node vince = getDatabase().findNode(Label.label("Person"), "name", "Vince");
+            Node michal = getDatabase().findNode(Label.label("Person"), "name", "Michal");
+            Node luanne = getDatabase().findNode(Label.label("Person"), "name", "Luanne");
+
+            Map<Node, List<Recommendation<Node>>> result = engine.recommend(Arrays.asList(vince, michal, luanne), new SimpleConfig(10));
+
+            assertEquals(3, result.size());
+
+            List<Recommendation<Node>> forVince = result.get(vince);
+            assertEquals(2, forVince.size());
+            assertEquals("Adam", forVince.get(0).getItem().getProperty("name"));
+            assertEquals("Luanne", forVince.get(1).getItem().getProperty("name"));
+            assertEquals(2.0, forVince.get(0).getScore().getTotalScore(), 0.001);
+
+            List<Recommendation<Node>> forMichal = result.get(michal);
+            assertEquals(1, forMichal.size());
+            assertEquals("Christophe", forMichal.get(0).getItem().getProperty("name"));
+
+            List<Recommendation<Node>> forLuanne = result.get(luanne);
+            assertEquals(4, forLuanne.size());
+
+            CompiledQueryStatistics statistics = CompiledQueryCache.forDatabase(getDatabase()).getStatistics("batch engine");
+            assertEquals(1, statistics.getCompilations());
+            assertEquals(1, CypherProfiler.getInstance().getStatistics("batch engine").getExecutions());
+
+            tx.success();
+        }
+    }
+}
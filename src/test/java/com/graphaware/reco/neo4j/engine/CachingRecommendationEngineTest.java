@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.engine;
+
+import com.graphaware.reco.generic.config.Config;
+import com.graphaware.reco.generic.config.KeyValueConfig;
+import com.graphaware.reco.generic.config.SimpleConfig;
+import com.graphaware.reco.generic.engine.TopLevelRecommendationEngine;
+import com.graphaware.reco.generic.result.PartialScore;
+import com.graphaware.reco.generic.result.Recommendation;
+import com.graphaware.test.integration.EmbeddedDatabaseIntegrationTest;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test for {@link CachingRecommendationEngine}.
+ */
+public class CachingRecommendationEngineTest extends EmbeddedDatabaseIntegrationTest {
+
+    private static final RelationshipType FRIEND_OF = RelationshipType.withName("FRIEND_OF");
+
+    private CountingEngine delegate;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        delegate = new CountingEngine();
+    }
+
+    @Override
+    protected void populateDatabase(GraphDatabaseService database) {
+        database.execute(
+                "CREATE " +
+                        "(m:Person {name:'Michal'})," +
+                        "(d:Person {name:'Daniela'})," +
+                        "(v:Person {name:'Vince'})," +
+                        "(a:Person {name:'Adam'})," +
+
+                        "(m)-[:FRIEND_OF]->(d)," +
+                        "(d)-[:FRIEND_OF]->(v)");
+    }
+
+    @Test
+    public void shouldServeRepeatedRequestsFromCache() {
+        CachingRecommendationEngine engine = new CachingRecommendationEngine(delegate, 10, 60000, false, FRIEND_OF);
+
+        recommend(engine, "Michal", new SimpleConfig(10));
+        recommend(engine, "Michal", new SimpleConfig(10));
+        recommend(engine, "Michal", new SimpleConfig(5));
+        recommend(engine, "Vince", new SimpleConfig(10));
+        recommend(engine, "Vince", new SimpleConfig(10));
+
+        assertEquals(3, delegate.calls);
+        assertEquals(2, engine.getStatistics().getHits());
+        assertEquals(3, engine.getStatistics().getMisses());
+    }
+
+    @Test
+    public void shouldBypassCacheForConfigsThatCantBeFingerprinted() {
+        CachingRecommendationEngine engine = new CachingRecommendationEngine(delegate, 10, 60000, false, FRIEND_OF);
+
+        recommend(engine, "Michal", new KeyValueConfig(10));
+        recommend(engine, "Michal", new KeyValueConfig(10));
+        recommend(engine, "Michal", new SimpleConfig(10) {
+        });
+        recommend(engine, "Michal", new SimpleConfig(10) {
+        });
+
+        assertEquals(4, delegate.calls);
+        assertEquals(0, engine.size());
+        assertEquals(4, engine.getStatistics().getBypasses());
+        assertEquals(0, engine.getStatistics().getMisses());
+    }
+
+    @Test
+    public void shouldCacheKeyValueConfigsWhenKeysAreKnown() {
+        CachingRecommendationEngine engine = new CachingRecommendationEngine(delegate, 10, 60000, false, FRIEND_OF) {
+            @Override
+            protected String[] fingerprintKeys() {
+                return new String[]{"legalAge"};
+            }
+        };
+
+        recommend(engine, "Michal", new KeyValueConfig(10));
+        recommend(engine, "Michal", new KeyValueConfig(10));
+
+        assertEquals(1, delegate.calls);
+        assertEquals(1, engine.getStatistics().getHits());
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedEntries() {
+        CachingRecommendationEngine engine = new CachingRecommendationEngine(delegate, 2, 60000, false, FRIEND_OF);
+
+        recommend(engine, "Michal", new SimpleConfig(10));
+        recommend(engine, "Vince", new SimpleConfig(10));
+        recommend(engine, "Michal", new SimpleConfig(10));
+        recommend(engine, "Adam", new SimpleConfig(10));
+        recommend(engine, "Michal", new SimpleConfig(10));
+        recommend(engine, "Vince", new SimpleConfig(10));
+
+        assertEquals(4, delegate.calls);
+        assertEquals(2, engine.size());
+        assertEquals(2, engine.getStatistics().getEvictions());
+    }
+
+    @Test
+    public void shouldExpireEntries() throws InterruptedException {
+        CachingRecommendationEngine engine = new CachingRecommendationEngine(delegate, 10, 50, false, FRIEND_OF);
+
+        recommend(engine, "Michal", new SimpleConfig(10));
+        Thread.sleep(100);
+        recommend(engine, "Michal", new SimpleConfig(10));
+
+        assertEquals(2, delegate.calls);
+        assertEquals(1, engine.getStatistics().getExpirations());
+    }
+
+    @Test
+    public void shouldInvalidateOnRelationshipChangesOfInput() {
+        CachingRecommendationEngine engine = new CachingRecommendationEngine(delegate, 10, 60000, false, FRIEND_OF);
+        engine.install(getDatabase());
+
+        recommend(engine, "Michal", new SimpleConfig(10));
+        recommend(engine, "Vince", new SimpleConfig(10));
+
+        getDatabase().execute("MATCH (m:Person {name:'Michal'}), (a:Person {name:'Adam'}) CREATE (m)-[:LIKES]->(a)");
+        recommend(engine, "Michal", new SimpleConfig(10));
+        assertEquals(2, delegate.calls);
+
+        getDatabase().execute("MATCH (m:Person {name:'Michal'}), (a:Person {name:'Adam'}) CREATE (m)-[:FRIEND_OF]->(a)");
+        recommend(engine, "Michal", new SimpleConfig(10));
+        recommend(engine, "Vince", new SimpleConfig(10));
+        assertEquals(3, delegate.calls);
+        assertEquals(1, engine.getStatistics().getInvalidations());
+
+        engine.uninstall();
+    }
+
+    @Test
+    public void shouldOptionallyInvalidateOnRelationshipChangesOfNeighbours() {
+        CachingRecommendationEngine engine = new CachingRecommendationEngine(delegate, 10, 60000, true, FRIEND_OF);
+        engine.install(getDatabase());
+
+        recommend(engine, "Michal", new SimpleConfig(10));
+        recommend(engine, "Adam", new SimpleConfig(10));
+
+        //Daniela is a neighbour of Michal
+        getDatabase().execute("MATCH (v:Person {name:'Vince'})-[r:FRIEND_OF]-() DELETE r");
+        recommend(engine, "Michal", new SimpleConfig(10));
+        recommend(engine, "Adam", new SimpleConfig(10));
+
+        assertEquals(3, delegate.calls);
+        assertEquals(1, engine.getStatistics().getInvalidations());
+
+        engine.uninstall();
+    }
+
+    @Test
+    public void shouldInvalidateEverythingOnRelationshipChangesOfNodesWithTooManyNeighbours() {
+        CachingRecommendationEngine engine = new CachingRecommendationEngine(delegate, 10, 60000, true, FRIEND_OF) {
+            @Override
+            protected int maxInvalidatedNeighbours() {
+                return 1;
+            }
+        };
+        engine.install(getDatabase());
+
+        recommend(engine, "Michal", new SimpleConfig(10));
+        recommend(engine, "Adam", new SimpleConfig(10));
+
+        //Vince now has two neighbours, Michal isn't one of them
+        getDatabase().execute("MATCH (v:Person {name:'Vince'}), (a:Person {name:'Adam'}) CREATE (v)-[:FRIEND_OF]->(a)");
+        recommend(engine, "Michal", new SimpleConfig(10));
+        recommend(engine, "Adam", new SimpleConfig(10));
+
+        assertEquals(4, delegate.calls);
+        assertEquals(2, engine.getStatistics().getInvalidations());
+
+        engine.uninstall();
+    }
+
+    @Test
+    public void shouldNotCachePartialRecommendations() {
+        CachingRecommendationEngine engine = new CachingRecommendationEngine(delegate, 10, 60000, false, FRIEND_OF);
+        delegate.partial = true;
+
+        recommend(engine, "Michal", new SimpleConfig(10));
+        recommend(engine, "Michal", new SimpleConfig(10));
+
+        assertEquals(2, delegate.calls);
+        assertEquals(0, engine.size());
+        assertEquals(0, engine.getStatistics().getHits());
+    }
+
+    private void recommend(CachingRecommendationEngine engine, String name, Config config) {
+        try (Transaction tx = getDatabase().beginTx()) {
+            engine.recommend(getDatabase().findNode(Label.label("Person"), "name", name), config);
+            tx.success();
+        }
+    }
+
+    private static class CountingEngine implements TopLevelRecommendationEngine<Node, Node> {
+
+        private int calls;
+        private boolean partial;
+
+        @Override
+        public List<Recommendation<Node>> recommend(Node input, Config config) {
+            calls++;
+
+            if (!partial) {
+                return Collections.emptyList();
+            }
+
+            Recommendation<Node> recommendation = new Recommendation<>(input);
+            recommendation.add("test", new PartialScore(0, Collections.<String, Object>singletonMap(AbstractCypherEngine.PARTIAL, true)));
+            return Collections.singletonList(recommendation);
+        }
+    }
+}
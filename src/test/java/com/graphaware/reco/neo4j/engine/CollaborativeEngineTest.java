@@ -20,20 +20,32 @@ import com.graphaware.reco.generic.config.Config;
 import com.graphaware.reco.generic.context.SimpleContext;
 import com.graphaware.reco.generic.engine.RecommendationEngine;
 import com.graphaware.reco.generic.result.PartialScore;
+import com.graphaware.reco.generic.result.Reason;
 import com.graphaware.reco.generic.result.Recommendation;
+import com.graphaware.reco.integration.domain.Relationships;
+import com.graphaware.reco.neo4j.util.SimilarityMeasure;
+import com.graphaware.reco.neo4j.util.SupernodeGuard;
+import com.graphaware.reco.neo4j.util.SupernodeStrategy;
 import com.graphaware.reco.util.ScoreUtils;
 import com.graphaware.test.integration.DatabaseIntegrationTest;
 import com.graphaware.test.integration.EmbeddedDatabaseIntegrationTest;
 import org.junit.Test;
+import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.Label;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
 import org.neo4j.graphdb.Transaction;
 import org.neo4j.helpers.collection.MapUtil;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 public class CollaborativeEngineTest extends EmbeddedDatabaseIntegrationTest {
 
@@ -87,6 +99,205 @@ public class CollaborativeEngineTest extends EmbeddedDatabaseIntegrationTest {
         }
     }
 
+    @Test
+    public void shouldRecommendSkillsInParallel() {
+        RecommendationEngine<Node, Node> parallelEngine = new SkillsToLearn() {
+            @Override
+            protected int parallelismThreshold() {
+                return 1;
+            }
+        };
+
+        try (Transaction tx = getDatabase().beginTx()) {
+
+            Node christophe = getPersonByName("Christophe");
+            List<Recommendation<Node>> skillsForChris = parallelEngine.recommend(christophe, new SimpleContext<Node, Node>(christophe, Config.UNLIMITED)).get(Integer.MAX_VALUE);
+
+            assertEquals(4, skillsForChris.size());
+            ScoreUtils.assertScoresEqual(recommendedJava(), skillsForChris.get(0));
+            ScoreUtils.assertScoresEqual(recommendedNeo4j(), skillsForChris.get(1));
+            ScoreUtils.assertScoresEqual(recommendedCypher(), skillsForChris.get(2));
+            ScoreUtils.assertScoresEqual(recommendedGit(), skillsForChris.get(3));
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldSkipSupernodes() {
+        RecommendationEngine<Node, Node> guardedEngine = new SkillsToLearn() {
+            @Override
+            protected int maxFanOut() {
+                return 1;
+            }
+
+            @Override
+            protected SupernodeStrategy supernodeStrategy() {
+                return SupernodeStrategy.SKIP;
+            }
+        };
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node christophe = getPersonByName("Christophe");
+            assertEquals(0, guardedEngine.recommend(christophe, new SimpleContext<Node, Node>(christophe, Config.UNLIMITED)).size());
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldRecordSamplingOfSupernodes() {
+        RecommendationEngine<Node, Node> guardedEngine = new SkillsToLearn() {
+            @Override
+            protected int maxFanOut() {
+                return 2;
+            }
+        };
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node christophe = getPersonByName("Christophe");
+            List<Recommendation<Node>> skillsForChris = guardedEngine.recommend(christophe, new SimpleContext<Node, Node>(christophe, Config.UNLIMITED)).get(Integer.MAX_VALUE);
+
+            assertFalse(skillsForChris.isEmpty());
+            for (Recommendation<Node> recommendation : skillsForChris) {
+                for (Reason reason : recommendation.getScore().getScoreParts().get("skills").getReasons()) {
+                    assertEquals(true, reason.getDetails().get(SupernodeGuard.SAMPLED));
+                }
+            }
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldRecommendSkillsOfMostSimilarPeopleOnly() {
+        RecommendationEngine<Node, Node> nearestNeighbours = new SkillsToLearn() {
+            @Override
+            protected int maxSimilarNodes() {
+                return 1;
+            }
+
+            @Override
+            protected SimilarityMeasure similarityMeasure() {
+                return SimilarityMeasure.JACCARD;
+            }
+        };
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node christophe = getPersonByName("Christophe");
+            List<Recommendation<Node>> skillsForChris = nearestNeighbours.recommend(christophe, new SimpleContext<Node, Node>(christophe, Config.UNLIMITED)).get(Integer.MAX_VALUE);
+
+            assertEquals(3, skillsForChris.size());
+            assertEquals(getSkillByName("Java"), skillsForChris.get(0).getItem());
+            assertEquals(12.0f, skillsForChris.get(0).getScore().getTotalScore(), 0.0001f);
+            assertEquals(getSkillByName("Neo4j"), skillsForChris.get(1).getItem());
+            assertEquals(8.0f, skillsForChris.get(1).getScore().getTotalScore(), 0.0001f);
+            assertEquals(getSkillByName("Cypher"), skillsForChris.get(2).getItem());
+            assertEquals(7.0f, skillsForChris.get(2).getScore().getTotalScore(), 0.0001f);
+
+            for (Recommendation<Node> recommendation : skillsForChris) {
+                for (Reason reason : recommendation.getScore().getScoreParts().get("skills").getReasons()) {
+                    assertEquals("Michal", reason.getDetails().get("person"));
+                }
+            }
+            tx.success();
+        }
+    }
+
+    @Test
+    public void nearestNeighboursShouldMatchFullTraversalWhenAllSimilarNodesAreSelected() {
+        RecommendationEngine<Node, Node> nearestNeighbours = new SkillsToLearn() {
+            @Override
+            protected int maxSimilarNodes() {
+                return 100;
+            }
+        };
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            for (Node node : getDatabase().getAllNodes()) {
+                assertEquals(totalScores(engine, node), totalScores(nearestNeighbours, node));
+            }
+            tx.success();
+        }
+    }
+
+    @Test
+    public void propagationShouldProduceSameScoresAsEnumeration() {
+        try (Transaction tx = getDatabase().beginTx()) {
+            for (Node node : getDatabase().getAllNodes()) {
+                for (RelationshipType type : Arrays.<RelationshipType>asList(Relationships.KNOWS, Relationships.FRIEND_OF)) {
+                    for (Direction direction : Direction.values()) {
+                        for (boolean multiplicative : new boolean[]{false, true}) {
+                            for (int maxSimilarNodes : new int[]{Integer.MAX_VALUE, 2}) {
+                                assertEquals(
+                                        totalScores(new GenericCollaborativeEngine(type, direction, multiplicative, false, maxSimilarNodes), node),
+                                        totalScores(new GenericCollaborativeEngine(type, direction, multiplicative, true, maxSimilarNodes), node));
+                            }
+                        }
+                    }
+                }
+            }
+            tx.success();
+        }
+    }
+
+    private Map<Long, Float> totalScores(RecommendationEngine<Node, Node> engine, Node input) {
+        Map<Long, Float> result = new HashMap<>();
+        for (Recommendation<Node> recommendation : engine.recommend(input, new SimpleContext<Node, Node>(input, Config.UNLIMITED)).get()) {
+            result.put(recommendation.getItem().getId(), recommendation.getScore().getTotalScore());
+        }
+        return result;
+    }
+
+    private static class GenericCollaborativeEngine extends CollaborativeEngine {
+
+        private final RelationshipType type;
+        private final Direction direction;
+        private final boolean multiplicative;
+        private final boolean propagate;
+        private final int maxSimilarNodes;
+
+        private GenericCollaborativeEngine(RelationshipType type, Direction direction, boolean multiplicative, boolean propagate, int maxSimilarNodes) {
+            this.type = type;
+            this.direction = direction;
+            this.multiplicative = multiplicative;
+            this.propagate = propagate;
+            this.maxSimilarNodes = maxSimilarNodes;
+        }
+
+        @Override
+        public String name() {
+            return "generic";
+        }
+
+        @Override
+        protected RelationshipType getType() {
+            return type;
+        }
+
+        @Override
+        protected Direction getDirection() {
+            return direction;
+        }
+
+        @Override
+        protected int scoreNode(Node recommendation, Node throughNode, Node similarNode, Relationship r1, Relationship r2, Relationship r3) {
+            return (int) (relationshipWeight(r1, 1) * relationshipWeight(r2, 2) * relationshipWeight(r3, 3));
+        }
+
+        @Override
+        protected boolean propagatePathWeights() {
+            return propagate;
+        }
+
+        @Override
+        protected float relationshipWeight(Relationship relationship, int hop) {
+            return multiplicative ? (relationship.getId() + hop) % 3 + 1 : 1;
+        }
+
+        @Override
+        protected int maxSimilarNodes() {
+            return maxSimilarNodes;
+        }
+    }
+
     private Node getPersonByName(String name) {
         return getDatabase().findNode(Label.label("Person"), "name", name);
     }
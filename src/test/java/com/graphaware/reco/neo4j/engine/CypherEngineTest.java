@@ -19,15 +19,22 @@ package com.graphaware.reco.neo4j.engine;
 import com.graphaware.reco.generic.config.SimpleConfig;
 import com.graphaware.reco.generic.context.SimpleContext;
 import com.graphaware.reco.generic.engine.RecommendationEngine;
+import com.graphaware.reco.generic.result.PartialScore;
 import com.graphaware.reco.generic.result.Recommendation;
+import com.graphaware.reco.neo4j.cypher.CompiledQueryCache;
+import com.graphaware.reco.neo4j.cypher.CompiledQueryStatistics;
+import com.graphaware.reco.neo4j.cypher.CypherProfiler;
+import com.graphaware.reco.neo4j.cypher.ProfileStatistics;
 import com.graphaware.test.integration.DatabaseIntegrationTest;
 import com.graphaware.test.integration.EmbeddedDatabaseIntegrationTest;
 import org.junit.Test;
 import org.neo4j.graphdb.*;
 
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Test for {@link CypherEngine}.
@@ -192,6 +199,279 @@ public class CypherEngineTest extends EmbeddedDatabaseIntegrationTest {
         }
     }
 
+    @Test
+    public void shouldExecutePrecompiledQuery() {
+        String query = "MATCH (p:Person)-[:FRIEND_OF]-()-[:FRIEND_OF]-(reco) WHERE NOT (p)-[:FRIEND_OF]-(reco) AND id(p)={id} RETURN reco, count(*) as score";
+        CypherEngine engine = new CypherEngine("precompiled engine", query) {
+            @Override
+            protected boolean precompiled() {
+                return true;
+            }
+        };
+
+        engine.precompile(getDatabase());
+
+        List<Recommendation<Node>> result;
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node vince = getDatabase().findNode(Label.label("Person"), "name", "Vince");
+            result = engine.recommend(vince, new SimpleContext<Node, Node>(vince, new SimpleConfig(10))).get(Integer.MAX_VALUE);
+            engine.recommend(vince, new SimpleContext<Node, Node>(vince, new SimpleConfig(10))).get(Integer.MAX_VALUE);
+
+            assertEquals(2, result.size());
+            assertEquals("Adam", result.get(0).getItem().getProperty("name"));
+            assertEquals(2.0, result.get(0).getScore().getTotalScore(), 0.001);
+
+            tx.success();
+        }
+
+        CompiledQueryStatistics statistics = CompiledQueryCache.forDatabase(getDatabase()).getStatistics("precompiled engine");
+        assertEquals(1, statistics.getCompilations());
+    }
+
+    @Test
+    public void shouldAttributeCompiledQueriesToOwnersAskingForThem() {
+        String query = "MATCH (p:Person)-[:FRIEND_OF]-()-[:FRIEND_OF]-(reco) WHERE NOT (p)-[:FRIEND_OF]-(reco) AND id(p)={id} RETURN reco, count(*) as score";
+
+        for (String name : new String[]{"first engine", "second engine"}) {
+            new CypherEngine(name, query) {
+                @Override
+                protected boolean precompiled() {
+                    return true;
+                }
+            }.precompile(getDatabase());
+        }
+
+        CompiledQueryStatistics first = CompiledQueryCache.forDatabase(getDatabase()).getStatistics("first engine");
+        assertEquals(1, first.getCompilations());
+        assertEquals(0, first.getHits());
+        assertTrue(first.getPlanningTime() > 0);
+
+        CompiledQueryStatistics second = CompiledQueryCache.forDatabase(getDatabase()).getStatistics("second engine");
+        assertEquals(0, second.getCompilations());
+        assertEquals(1, second.getHits());
+        assertEquals(0, second.getPlanningTime());
+    }
+
+    @Test
+    public void shouldComputeRecommendationsFromIds() {
+        String query = "MATCH (p:Person)-[:FRIEND_OF]-()-[:FRIEND_OF]-(reco) WHERE NOT (p)-[:FRIEND_OF]-(reco) AND id(p)={id} RETURN id(reco) as reco, count(*) as score";
+        RecommendationEngine<Node, Node> engine = new CypherEngine("test engine", query) {
+            @Override
+            protected boolean idsOnly() {
+                return true;
+            }
+        };
+
+        List<Recommendation<Node>> result;
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node vince = getDatabase().findNode(Label.label("Person"), "name", "Vince");
+            result = engine.recommend(vince, new SimpleContext<Node, Node>(vince, new SimpleConfig(10))).get(Integer.MAX_VALUE);
+
+            assertEquals(2, result.size());
+            assertEquals("Adam", result.get(0).getItem().getProperty("name"));
+            assertEquals("Luanne", result.get(1).getItem().getProperty("name"));
+            assertEquals(2.0, result.get(0).getScore().getTotalScore(), 0.001);
+            assertEquals(1.0, result.get(1).getScore().getTotalScore(), 0.001);
+
+            tx.success();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectIdsOnlyWithOverriddenScoreBuilding() {
+        String query = "MATCH (p:Person)-[:FRIEND_OF]-()-[:FRIEND_OF]-(reco) WHERE NOT (p)-[:FRIEND_OF]-(reco) AND id(p)={id} RETURN id(reco) as reco, count(*) as score";
+        RecommendationEngine<Node, Node> engine = new CypherEngine("test engine", query) {
+            @Override
+            protected boolean idsOnly() {
+                return true;
+            }
+
+            @Override
+            protected PartialScore buildScore(Map<String, Object> row) {
+                return new PartialScore(1);
+            }
+        };
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node vince = getDatabase().findNode(Label.label("Person"), "name", "Vince");
+            engine.recommend(vince, new SimpleContext<Node, Node>(vince, new SimpleConfig(10)));
+        }
+    }
+
+    @Test
+    public void shouldAccumulateRowsAndReasonsFromIds() {
+        String query = "MATCH (p:Person)-[:FRIEND_OF]-(f)-[:FRIEND_OF]-(reco) WHERE NOT (p)-[:FRIEND_OF]-(reco) AND id(p)={id} RETURN id(reco) as reco, f.name as name";
+        RecommendationEngine<Node, Node> engine = new CypherEngine("test engine", query) {
+            @Override
+            protected boolean idsOnly() {
+                return true;
+            }
+        };
+
+        List<Recommendation<Node>> result;
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node vince = getDatabase().findNode(Label.label("Person"), "name", "Vince");
+            result = engine.recommend(vince, new SimpleContext<Node, Node>(vince, new SimpleConfig(1))).get(Integer.MAX_VALUE);
+
+            assertEquals(2, result.size());
+            assertEquals("Adam", result.get(0).getItem().getProperty("name"));
+            assertEquals(2.0, result.get(0).getScore().getTotalScore(), 0.001);
+            assertEquals(2, result.get(0).getScore().getScoreParts().get("test engine").getReasons().size());
+
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldStreamResultsIntoBoundedHeap() {
+        String query = "MATCH (p:Person)-[:FRIEND_OF]-()-[:FRIEND_OF]-(reco) WHERE NOT (p)-[:FRIEND_OF]-(reco) AND id(p)={id} RETURN reco, count(*) as score";
+        RecommendationEngine<Node, Node> engine = new CypherEngine("test engine", query) {
+            @Override
+            protected boolean streaming() {
+                return true;
+            }
+
+            @Override
+            protected int oversampling() {
+                return 1;
+            }
+        };
+
+        List<Recommendation<Node>> result;
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node vince = getDatabase().findNode(Label.label("Person"), "name", "Vince");
+            result = engine.recommend(vince, new SimpleContext<Node, Node>(vince, new SimpleConfig(1))).get(Integer.MAX_VALUE);
+
+            assertEquals(1, result.size());
+            assertEquals("Adam", result.get(0).getItem().getProperty("name"));
+            assertEquals(2.0, result.get(0).getScore().getTotalScore(), 0.001);
+
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldStopConsumingOrderedResultsWhenHeapIsFull() {
+        String query = "MATCH (p:Person)-[:FRIEND_OF]-()-[:FRIEND_OF]-(reco) WHERE NOT (p)-[:FRIEND_OF]-(reco) AND id(p)={id} RETURN id(reco) as reco, count(*) as score ORDER BY score DESC";
+        RecommendationEngine<Node, Node> engine = new CypherEngine("test engine", query) {
+            @Override
+            protected boolean streaming() {
+                return true;
+            }
+
+            @Override
+            protected boolean orderedByScore() {
+                return true;
+            }
+
+            @Override
+            protected int oversampling() {
+                return 1;
+            }
+        };
+
+        List<Recommendation<Node>> result;
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node vince = getDatabase().findNode(Label.label("Person"), "name", "Vince");
+            result = engine.recommend(vince, new SimpleContext<Node, Node>(vince, new SimpleConfig(1))).get(Integer.MAX_VALUE);
+
+            assertEquals(1, result.size());
+            assertEquals("Adam", result.get(0).getItem().getProperty("name"));
+
+            result = engine.recommend(vince, new SimpleContext<Node, Node>(vince, new SimpleConfig(10))).get(Integer.MAX_VALUE);
+
+            assertEquals(2, result.size());
+            assertEquals("Adam", result.get(0).getItem().getProperty("name"));
+            assertEquals("Luanne", result.get(1).getItem().getProperty("name"));
+
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldProfileSampledExecutions() {
+        String query = "MATCH (p:Person)-[:FRIEND_OF]-()-[:FRIEND_OF]-(reco) WHERE NOT (p)-[:FRIEND_OF]-(reco) AND id(p)={id} RETURN reco, count(*) as score";
+        RecommendationEngine<Node, Node> engine = new CypherEngine("profiled engine", query) {
+            @Override
+            protected double profilingRate() {
+                return 1.0;
+            }
+        };
+
+        CypherProfiler.getInstance().clear();
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node vince = getDatabase().findNode(Label.label("Person"), "name", "Vince");
+            assertEquals(2, engine.recommend(vince, new SimpleContext<Node, Node>(vince, new SimpleConfig(10))).get(Integer.MAX_VALUE).size());
+            assertEquals(2, engine.recommend(vince, new SimpleContext<Node, Node>(vince, new SimpleConfig(10))).get(Integer.MAX_VALUE).size());
+
+            tx.success();
+        }
+
+        ProfileStatistics statistics = CypherProfiler.getInstance().getStatistics("profiled engine");
+        assertEquals(2, statistics.getExecutions());
+        assertEquals(4, statistics.getRows());
+        assertTrue(statistics.getDbHits() > 0);
+        assertEquals(2, statistics.getRecentPlans().size());
+    }
+
+    @Test
+    public void shouldNotRecordProfilesOfResultsNotConsumedInFull() {
+        String query = "MATCH (p:Person)-[:FRIEND_OF]-()-[:FRIEND_OF]-(reco) WHERE NOT (p)-[:FRIEND_OF]-(reco) AND id(p)={id} RETURN id(reco) as reco, count(*) as score ORDER BY score DESC";
+        RecommendationEngine<Node, Node> engine = new CypherEngine("stopping engine", query) {
+            @Override
+            protected boolean streaming() {
+                return true;
+            }
+
+            @Override
+            protected boolean orderedByScore() {
+                return true;
+            }
+
+            @Override
+            protected int oversampling() {
+                return 1;
+            }
+
+            @Override
+            protected double profilingRate() {
+                return 1.0;
+            }
+        };
+
+        CypherProfiler.getInstance().clear();
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node vince = getDatabase().findNode(Label.label("Person"), "name", "Vince");
+            assertEquals(1, engine.recommend(vince, new SimpleContext<Node, Node>(vince, new SimpleConfig(1))).get(Integer.MAX_VALUE).size());
+            assertEquals(0, CypherProfiler.getInstance().getStatistics("stopping engine").getExecutions());
+
+            assertEquals(2, engine.recommend(vince, new SimpleContext<Node, Node>(vince, new SimpleConfig(10))).get(Integer.MAX_VALUE).size());
+            assertEquals(1, CypherProfiler.getInstance().getStatistics("stopping engine").getExecutions());
+
+            tx.success();
+        }
+    }
+
+    @Test(expected = QueryExecutionException.class)
+    public void shouldFailToPrecompileInvalidQuery() {
+        String query = "MATCH (p:Person)-[:FRIEND_OF]-(-[:FRIEND_OF]-(reco) WHERE NOT (p)-[:FRIEND_OF]-(reco) AND id(p)={id} RETURN reco";
+        CypherEngine engine = new CypherEngine("invalid engine", query) {
+            @Override
+            protected boolean precompiled() {
+                return true;
+            }
+        };
+
+        engine.precompile(getDatabase());
+    }
+
     @Test
     public void shouldGracefullyHandleNoResults() {
         String query = "MATCH (p:Person)-[:FRIEND_OF]-()-[:FRIEND_OF]-(reco) WHERE NOT (p)-[:FRIEND_OF]-(reco) AND id(p)=435234523 RETURN reco";
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.engine;
+
+import com.graphaware.reco.generic.config.Config;
+import com.graphaware.reco.generic.context.SimpleContext;
+import com.graphaware.reco.generic.engine.RecommendationEngine;
+import com.graphaware.reco.generic.result.Recommendation;
+import com.graphaware.reco.neo4j.index.MinHash;
+import com.graphaware.reco.neo4j.index.MinHashIndex;
+import com.graphaware.test.integration.EmbeddedDatabaseIntegrationTest;
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for {@link MinHashEngine} and {@link MinHashIndex}.
+ */
+public class MinHashEngineTest extends EmbeddedDatabaseIntegrationTest {
+
+    private static final RelationshipType LIKES = RelationshipType.withName("LIKES");
+    private static final Label PERSON = Label.label("Person");
+
+    private MinHashIndex index;
+    private RecommendationEngine<Node, Node> engine;
+
+    @Override
+    protected void populateDatabase(GraphDatabaseService database) {
+        database.execute("UNWIND range(1, 50) AS i CREATE (:Item {id: i})");
+        database.execute("CREATE (:Person {name:'a'}), (:Person {name:'b'}), (:Person {name:'c'}), (:Person {name:'d'})");
+        like(database, "a", "i.id <= 20");
+        like(database, "b", "i.id <= 20");
+        like(database, "c", "i.id <= 10 OR (i.id > 20 AND i.id <= 30)");
+        like(database, "d", "i.id > 30");
+    }
+
+    private void like(GraphDatabaseService database, String name, String condition) {
+        database.execute("MATCH (p:Person {name:'" + name + "'}), (i:Item) WHERE " + condition + " CREATE (p)-[:LIKES]->(i)");
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+
+        index = new MinHashIndex("likes", LIKES, Direction.OUTGOING);
+        index.install(getDatabase());
+
+        engine = new MinHashEngine() {
+            @Override
+            protected MinHashIndex index() {
+                return index;
+            }
+
+            @Override
+            public String name() {
+                return "minHash";
+            }
+        };
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        index.uninstall();
+        super.tearDown();
+    }
+
+    @Test
+    public void shouldRecommendNodesWithSameNeighbours() {
+        try (Transaction tx = getDatabase().beginTx()) {
+            Map<String, Float> scores = scores("a");
+
+            assertEquals(1.0f, scores.get("b"), 0.0001f);
+            assertFalse(scores.containsKey("d"));
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldEstimateJaccardSimilarity() {
+        try (Transaction tx = getDatabase().beginTx()) {
+            assertEquals(1.0f, index.similarity(person("a"), person("b")), 0.0001f);
+            assertEquals(10.0f / 30, index.similarity(person("a"), person("c")), 0.15f);
+            assertEquals(0.0f, index.similarity(person("a"), person("d")), 0.05f);
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldMaintainIndexIncrementally() {
+        getDatabase().execute("CREATE (:Person {name:'e'})");
+        like(getDatabase(), "e", "i.id <= 20");
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            assertEquals(1.0f, scores("a").get("e"), 0.0001f);
+            tx.success();
+        }
+
+        getDatabase().execute("MATCH (p:Person {name:'b'})-[r:LIKES]->(i) WHERE i.id <= 10 DELETE r");
+        getDatabase().execute("MATCH (p:Person {name:'e'}) DETACH DELETE p");
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Map<String, Float> scores = scores("a");
+
+            assertFalse(scores.containsKey("e"));
+            assertTrue(!scores.containsKey("b") || scores.get("b") < 1.0f);
+            assertEquals(0.5f, index.similarity(person("a"), person("b")), 0.15f);
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldLoadStoredSignaturesWhenInstalled() {
+        index.uninstall();
+
+        //not seen by the index, so the stored signature of 'd' stays as it was
+        like(getDatabase(), "d", "i.id <= 20");
+
+        index.install(getDatabase());
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            assertEquals(1.0f, scores("a").get("b"), 0.0001f);
+            assertEquals(0.0f, index.similarity(person("a"), person("d")), 0.05f);
+            tx.success();
+        }
+
+        index.rebuild();
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            assertEquals(20.0f / 40, index.similarity(person("a"), person("d")), 0.15f);
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldCapNumberOfCandidatesPerBucket() {
+        index.uninstall();
+        index = new MinHashIndex("likes", LIKES, Direction.OUTGOING, new MinHash(128, 32, 0), 1);
+        index.install(getDatabase());
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            //'a' was indexed before 'b', so the buckets 'a' and 'b' share only yield 'a'
+            assertEquals(0, index.candidates(person("a")).length);
+            assertEquals(1, index.candidates(person("b")).length);
+            tx.success();
+        }
+    }
+
+    private Map<String, Float> scores(String name) {
+        Node input = person(name);
+        Map<String, Float> result = new HashMap<>();
+        for (Recommendation<Node> recommendation : engine.recommend(input, new SimpleContext<Node, Node>(input, Config.UNLIMITED)).get(Integer.MAX_VALUE)) {
+            result.put((String) recommendation.getItem().getProperty("name"), recommendation.getScore().getTotalScore());
+        }
+        return result;
+    }
+
+    private Node person(String name) {
+        return getDatabase().findNode(PERSON, "name", name);
+    }
+}
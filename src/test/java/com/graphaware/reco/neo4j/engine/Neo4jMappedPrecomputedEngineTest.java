@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.engine;
+
+import com.graphaware.reco.generic.config.SimpleConfig;
+import com.graphaware.reco.generic.context.SimpleContext;
+import com.graphaware.reco.generic.result.Recommendation;
+import com.graphaware.reco.neo4j.store.MappedRecommendationStore;
+import com.graphaware.reco.neo4j.util.PackedRecommendations;
+import com.graphaware.test.integration.EmbeddedDatabaseIntegrationTest;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test for {@link Neo4jMappedPrecomputedEngine}.
+ */
+public class Neo4jMappedPrecomputedEngineTest extends EmbeddedDatabaseIntegrationTest {
+
+    private File directory;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        directory = Files.createTempDirectory("reco-store").toFile();
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        MappedRecommendationStore.forDirectory(directory).close();
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+        super.tearDown();
+    }
+
+    @Override
+    protected void populateDatabase(GraphDatabaseService database) {
+        database.execute(
+                "CREATE " +
+                        "(:Person {name:'Michal'})," +
+                        "(:Person {name:'Daniela'})," +
+                        "(:Person {name:'Vince'})," +
+                        "(:Person {name:'Adam'})");
+    }
+
+    @Test
+    public void shouldReadRecommendationsFromStore() {
+        try (Transaction tx = getDatabase().beginTx()) {
+            MappedRecommendationStore.forDirectory(directory).put(person("Michal").getId(),
+                    new long[]{person("Vince").getId(), person("Daniela").getId(), person("Adam").getId()},
+                    new float[]{5, 3, 1}, System.currentTimeMillis());
+            tx.success();
+        }
+
+        getDatabase().execute("MATCH (p:Person {name:'Adam'}) DELETE p");
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node michal = person("Michal");
+            List<Recommendation<Node>> result = new Neo4jMappedPrecomputedEngine() {
+                @Override
+                protected File getStoreDirectory() {
+                    return directory;
+                }
+            }.recommend(michal, new SimpleContext<Node, Node>(michal, new SimpleConfig(10))).get(Integer.MAX_VALUE);
+
+            assertEquals(2, result.size());
+            assertEquals("Vince", result.get(0).getItem().getProperty("name"));
+            assertEquals(5, result.get(0).getScore().get(PackedRecommendations.TOTAL), 0.0001);
+            assertEquals("Daniela", result.get(1).getItem().getProperty("name"));
+            assertEquals(3, result.get(1).getScore().getTotalScore(), 0.0001);
+
+            assertEquals(0, MappedRecommendationStore.forDirectory(directory).get(person("Vince").getId()).size());
+
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldRemoveRecommendationsOfDeletedNodes() {
+        MappedRecommendationStore store = MappedRecommendationStore.forDirectory(directory);
+        store.install(getDatabase());
+
+        long michalId;
+        try (Transaction tx = getDatabase().beginTx()) {
+            michalId = person("Michal").getId();
+            store.put(michalId, new long[]{person("Vince").getId()}, new float[]{5}, System.currentTimeMillis());
+            store.put(person("Adam").getId(), new long[]{person("Vince").getId()}, new float[]{5}, System.currentTimeMillis());
+            tx.success();
+        }
+
+        getDatabase().execute("MATCH (p:Person {name:'Michal'}) DELETE p");
+
+        assertEquals(0, store.get(michalId).size());
+        try (Transaction tx = getDatabase().beginTx()) {
+            assertEquals(1, store.get(person("Adam").getId()).size());
+            tx.success();
+        }
+
+        store.uninstall(getDatabase());
+    }
+
+    @Test(timeout = 10000)
+    public void deletingNodesShouldNotWaitForCompaction() throws InterruptedException {
+        final MappedRecommendationStore store = MappedRecommendationStore.forDirectory(directory);
+        store.install(getDatabase());
+
+        long michalId;
+        try (Transaction tx = getDatabase().beginTx()) {
+            michalId = person("Michal").getId();
+            store.put(michalId, new long[]{person("Vince").getId()}, new float[]{5}, System.currentTimeMillis());
+            tx.success();
+        }
+
+        //a compaction holds the store's monitor
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Thread compaction = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (store) {
+                    locked.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        });
+        compaction.start();
+        locked.await();
+
+        getDatabase().execute("MATCH (p:Person {name:'Michal'}) DELETE p");
+        assertEquals(0, store.get(michalId).size());
+
+        release.countDown();
+        compaction.join();
+
+        assertEquals(0, store.get(michalId).size());
+
+        store.uninstall(getDatabase());
+    }
+
+    private Node person(String name) {
+        return getDatabase().findNode(Label.label("Person"), "name", name);
+    }
+}
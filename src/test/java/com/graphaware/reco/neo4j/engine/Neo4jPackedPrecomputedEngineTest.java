@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.engine;
+
+import com.graphaware.reco.generic.config.SimpleConfig;
+import com.graphaware.reco.generic.context.SimpleContext;
+import com.graphaware.reco.generic.result.Recommendation;
+import com.graphaware.reco.neo4j.util.PackedRecommendations;
+import com.graphaware.test.integration.EmbeddedDatabaseIntegrationTest;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for {@link Neo4jPackedPrecomputedEngine}.
+ */
+public class Neo4jPackedPrecomputedEngineTest extends EmbeddedDatabaseIntegrationTest {
+
+    @Override
+    protected void populateDatabase(GraphDatabaseService database) {
+        database.execute(
+                "CREATE " +
+                        "(:Person {name:'Michal'})," +
+                        "(:Person {name:'Daniela'})," +
+                        "(:Person {name:'Vince'})," +
+                        "(:Person {name:'Adam'})");
+    }
+
+    @Test
+    public void shouldReadStoredRecommendationsWithParts() {
+        store(true);
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            List<Recommendation<Node>> result = recommend();
+
+            assertEquals(3, result.size());
+
+            assertEquals("Daniela", result.get(0).getItem().getProperty("name"));
+            assertEquals(5, result.get(0).getScore().getTotalScore(), 0.0001);
+            assertEquals(3, result.get(0).getScore().get("friendsInCommon"), 0.0001);
+            assertEquals(2, result.get(0).getScore().get("sameCity"), 0.0001);
+
+            assertEquals("Vince", result.get(1).getItem().getProperty("name"));
+            assertEquals(4, result.get(1).getScore().getTotalScore(), 0.0001);
+            assertFalse(result.get(1).getScore().getScoreParts().containsKey("friendsInCommon"));
+
+            assertEquals("Adam", result.get(2).getItem().getProperty("name"));
+            assertEquals(1, result.get(2).getScore().getTotalScore(), 0.0001);
+
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldReadStoredRecommendationsWithoutParts() {
+        store(false);
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            List<Recommendation<Node>> result = recommend();
+
+            assertEquals(3, result.size());
+            assertEquals("Daniela", result.get(0).getItem().getProperty("name"));
+            assertEquals(5, result.get(0).getScore().get(PackedRecommendations.TOTAL), 0.0001);
+            assertEquals(1, result.get(0).getScore().getScoreParts().size());
+
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldSkipDeletedNodes() {
+        store(true);
+
+        getDatabase().execute("MATCH (p:Person {name:'Vince'}) DELETE p");
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            List<Recommendation<Node>> result = recommend();
+
+            assertEquals(2, result.size());
+            assertEquals("Daniela", result.get(0).getItem().getProperty("name"));
+            assertEquals("Adam", result.get(1).getItem().getProperty("name"));
+
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldRemoveRecommendationsWhenThereAreNone() {
+        store(true);
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            PackedRecommendations.write(person("Michal"), Neo4jPrecomputedEngine.RECOMMEND, Arrays.<Recommendation<Node>>asList(), true);
+            tx.success();
+        }
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            assertTrue(recommend().isEmpty());
+            assertEquals(Collections.singleton("name"), person("Michal").getAllProperties().keySet());
+            tx.success();
+        }
+    }
+
+    private void store(boolean withParts) {
+        try (Transaction tx = getDatabase().beginTx()) {
+            Recommendation<Node> daniela = new Recommendation<>(person("Daniela"));
+            daniela.add("friendsInCommon", 3);
+            daniela.add("sameCity", 2);
+
+            Recommendation<Node> vince = new Recommendation<>(person("Vince"));
+            vince.add("sameCity", 4);
+
+            Recommendation<Node> adam = new Recommendation<>(person("Adam"));
+            adam.add("friendsInCommon", 1);
+
+            PackedRecommendations.write(person("Michal"), Neo4jPrecomputedEngine.RECOMMEND, Arrays.asList(daniela, vince, adam), withParts);
+            tx.success();
+        }
+    }
+
+    private List<Recommendation<Node>> recommend() {
+        Node michal = person("Michal");
+        return new Neo4jPackedPrecomputedEngine().recommend(michal, new SimpleContext<Node, Node>(michal, new SimpleConfig(10))).get(Integer.MAX_VALUE);
+    }
+
+    private Node person(String name) {
+        return getDatabase().findNode(Label.label("Person"), "name", name);
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.engine;
+
+import com.graphaware.common.policy.inclusion.BaseNodeInclusionPolicy;
+import com.graphaware.common.policy.inclusion.NodeInclusionPolicy;
+import com.graphaware.reco.generic.config.Config;
+import com.graphaware.reco.generic.context.SimpleContext;
+import com.graphaware.reco.generic.engine.RecommendationEngine;
+import com.graphaware.reco.generic.result.Recommendation;
+import com.graphaware.reco.integration.domain.Relationships;
+import com.graphaware.reco.neo4j.util.SupernodeStrategy;
+import com.graphaware.test.integration.EmbeddedDatabaseIntegrationTest;
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.graphaware.common.util.EntityUtils.getInt;
+import static org.junit.Assert.assertEquals;
+import static org.neo4j.helpers.collection.Iterators.asList;
+
+/**
+ * Test for {@link PathPatternEngine}.
+ */
+public class PathPatternEngineTest extends EmbeddedDatabaseIntegrationTest {
+
+    private static final Label PERSON = Label.label("Person");
+    private static final Label SKILL = Label.label("Skill");
+
+    @Override
+    protected void populateDatabase(GraphDatabaseService database) {
+        database.execute(
+                "CREATE " +
+                        "(m:Person:Male {name:'Michal', age:30})," +
+                        "(v:Person:Male {name:'Vince', age:40})," +
+                        "(l:Person:Female {name:'Luanne', age:25})," +
+                        "(c:Person:Male {name:'Christophe', age:60})," +
+
+                        "(php:Skill {name:'PHP'})," +
+                        "(java:Skill {name:'Java'})," +
+                        "(neo:Skill {name:'Neo4j'})," +
+                        "(cypher:Skill {name:'Cypher'})," +
+                        "(maven:Skill {name:'Maven'})," +
+                        "(git:Skill {name:'Git'})," +
+
+                        "(m)-[:FRIEND_OF]->(l)," +
+                        "(m)-[:FRIEND_OF]->(v)," +
+                        "(m)-[:FRIEND_OF]->(c)," +
+                        "(c)-[:KNOWS {level:3}]->(php)," +
+                        "(c)-[:KNOWS {level:2}]->(neo)," +
+                        "(c)-[:KNOWS {level:3}]->(cypher)," +
+                        "(m)-[:KNOWS {level:1}]->(java)," +
+                        "(m)-[:KNOWS {level:3}]->(neo)," +
+                        "(m)-[:KNOWS {level:2}]->(cypher)," +
+                        "(v)-[:KNOWS {level:2}]->(neo)," +
+                        "(v)-[:KNOWS {level:3}]->(cypher)," +
+                        "(v)-[:KNOWS {level:3}]->(java)," +
+                        "(v)-[:KNOWS {level:1}]->(git)," +
+                        "(l)-[:KNOWS {level:3}]->(neo)");
+    }
+
+    @Test
+    public void shouldProduceSameScoresAsCollaborativeEngine() {
+        try (Transaction tx = getDatabase().beginTx()) {
+            for (Node person : asList(getDatabase().findNodes(PERSON))) {
+                for (boolean weighted : new boolean[]{false, true}) {
+                    assertEquals(totalScores(new CountingSkills(weighted), person), totalScores(new PathSkills(weighted), person));
+                }
+            }
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldRecommendFriendsOfFriends() {
+        RecommendationEngine<Node, Node> friendsOfFriends = new PathPatternEngine() {
+            @Override
+            protected List<PathStep> steps() {
+                return Arrays.asList(
+                        new PathStep(Relationships.FRIEND_OF, Direction.BOTH),
+                        new PathStep(Relationships.FRIEND_OF, Direction.BOTH).withWeight(2));
+            }
+
+            @Override
+            public String name() {
+                return "fof";
+            }
+        };
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node luanne = getPersonByName("Luanne");
+            Map<Long, Float> scores = totalScores(friendsOfFriends, luanne);
+
+            assertEquals(2, scores.size());
+            assertEquals(2.0f, scores.get(getPersonByName("Vince").getId()), 0.0001f);
+            assertEquals(2.0f, scores.get(getPersonByName("Christophe").getId()), 0.0001f);
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldFilterNodesOfEachStep() {
+        RecommendationEngine<Node, Node> femaleFriendsOfFriends = new PathPatternEngine() {
+            @Override
+            protected List<PathStep> steps() {
+                return Arrays.asList(
+                        new PathStep(Relationships.FRIEND_OF, Direction.BOTH),
+                        new PathStep(Relationships.FRIEND_OF, Direction.BOTH).with(new BaseNodeInclusionPolicy() {
+                            @Override
+                            public boolean include(Node node) {
+                                return node.hasLabel(Label.label("Female"));
+                            }
+                        }));
+            }
+
+            @Override
+            public String name() {
+                return "ffof";
+            }
+        };
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node vince = getPersonByName("Vince");
+            Map<Long, Float> scores = totalScores(femaleFriendsOfFriends, vince);
+
+            assertEquals(1, scores.size());
+            assertEquals(1.0f, scores.get(getPersonByName("Luanne").getId()), 0.0001f);
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldSkipSupernodes() {
+        RecommendationEngine<Node, Node> guarded = new PathSkills(false) {
+            @Override
+            protected int maxFanOut() {
+                return 1;
+            }
+
+            @Override
+            protected SupernodeStrategy supernodeStrategy() {
+                return SupernodeStrategy.SKIP;
+            }
+        };
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node christophe = getPersonByName("Christophe");
+            assertEquals(0, guarded.recommend(christophe, new SimpleContext<Node, Node>(christophe, Config.UNLIMITED)).size());
+            tx.success();
+        }
+    }
+
+    private Map<Long, Float> totalScores(RecommendationEngine<Node, Node> engine, Node input) {
+        Map<Long, Float> result = new HashMap<>();
+        for (Recommendation<Node> recommendation : engine.recommend(input, new SimpleContext<Node, Node>(input, Config.UNLIMITED)).get()) {
+            result.put(recommendation.getItem().getId(), recommendation.getScore().getTotalScore());
+        }
+        return result;
+    }
+
+    private Node getPersonByName(String name) {
+        return getDatabase().findNode(PERSON, "name", name);
+    }
+
+    private static NodeInclusionPolicy label(final Label label) {
+        return new BaseNodeInclusionPolicy() {
+            @Override
+            public boolean include(Node node) {
+                return node.hasLabel(label);
+            }
+        };
+    }
+
+    private static class PathSkills extends PathPatternEngine {
+
+        private final boolean weighted;
+
+        private PathSkills(boolean weighted) {
+            this.weighted = weighted;
+        }
+
+        @Override
+        public String name() {
+            return "skills";
+        }
+
+        @Override
+        protected List<PathStep> steps() {
+            return Arrays.asList(
+                    new PathStep(Relationships.KNOWS, Direction.OUTGOING).with(label(SKILL)),
+                    new PathStep(Relationships.KNOWS, Direction.INCOMING).with(label(PERSON)),
+                    new PathStep(Relationships.KNOWS, Direction.OUTGOING));
+        }
+
+        @Override
+        protected float relationshipWeight(Relationship relationship, PathStep step, int hop) {
+            return weighted ? getInt(relationship, "level", 0) : 1;
+        }
+    }
+
+    private static class CountingSkills extends SkillsToLearn {
+
+        private final boolean weighted;
+
+        private CountingSkills(boolean weighted) {
+            this.weighted = weighted;
+        }
+
+        @Override
+        protected int scoreNode(Node recommendation, Node throughNode, Node similarNode, Relationship r1, Relationship r2, Relationship r3) {
+            return weighted ? getInt(r1, "level", 0) * getInt(r2, "level", 0) * getInt(r3, "level", 0) : 1;
+        }
+    }
+}
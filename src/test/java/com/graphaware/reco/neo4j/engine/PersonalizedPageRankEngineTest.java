@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.engine;
+
+import com.graphaware.reco.generic.config.Config;
+import com.graphaware.reco.generic.config.SimpleConfig;
+import com.graphaware.reco.generic.context.SimpleContext;
+import com.graphaware.reco.generic.engine.RecommendationEngine;
+import com.graphaware.reco.generic.result.Recommendation;
+import com.graphaware.reco.integration.domain.Relationships;
+import com.graphaware.test.integration.EmbeddedDatabaseIntegrationTest;
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for {@link PersonalizedPageRankEngine}.
+ */
+public class PersonalizedPageRankEngineTest extends EmbeddedDatabaseIntegrationTest {
+
+    private static final RelationshipType[] TYPES = {Relationships.KNOWS, Relationships.FRIEND_OF};
+    private static final double ALPHA = 0.15;
+
+    @Override
+    protected void populateDatabase(GraphDatabaseService database) {
+        database.execute(
+                "CREATE " +
+                        "(m:Person:Male {name:'Michal', age:30})," +
+                        "(v:Person:Male {name:'Vince', age:40})," +
+                        "(l:Person:Female {name:'Luanne', age:25})," +
+                        "(c:Person:Male {name:'Christophe', age:60})," +
+
+                        "(php:Skill {name:'PHP'})," +
+                        "(java:Skill {name:'Java'})," +
+                        "(neo:Skill {name:'Neo4j'})," +
+                        "(cypher:Skill {name:'Cypher'})," +
+                        "(maven:Skill {name:'Maven'})," +
+                        "(git:Skill {name:'Git'})," +
+
+                        "(m)-[:FRIEND_OF]->(l)," +
+                        "(m)-[:FRIEND_OF]->(v)," +
+                        "(m)-[:FRIEND_OF]->(c)," +
+                        "(c)-[:KNOWS {level:3}]->(php)," +
+                        "(c)-[:KNOWS {level:2}]->(neo)," +
+                        "(c)-[:KNOWS {level:3}]->(cypher)," +
+                        "(m)-[:KNOWS {level:1}]->(java)," +
+                        "(m)-[:KNOWS {level:3}]->(neo)," +
+                        "(m)-[:KNOWS {level:2}]->(cypher)," +
+                        "(v)-[:KNOWS {level:2}]->(neo)," +
+                        "(v)-[:KNOWS {level:3}]->(cypher)," +
+                        "(v)-[:KNOWS {level:3}]->(java)," +
+                        "(v)-[:KNOWS {level:1}]->(git)," +
+                        "(l)-[:KNOWS {level:3}]->(neo)");
+    }
+
+    @Test
+    public void estimatesShouldApproximatePageRankByPowerIteration() {
+        RecommendationEngine<Node, Node> engine = new PageRank(1e-7);
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            for (Node input : getDatabase().getAllNodes()) {
+                Map<Long, Double> exact = powerIteration(input);
+                Map<Long, Float> estimates = scores(engine, input, Config.UNLIMITED);
+
+                for (Map.Entry<Long, Double> entry : exact.entrySet()) {
+                    if (entry.getKey() != input.getId()) {
+                        Float estimate = estimates.get(entry.getKey());
+                        assertEquals(entry.getValue(), estimate == null ? 0 : estimate, 0.00001);
+                    }
+                }
+            }
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldOnlyRecommendAcceptableNodes() {
+        RecommendationEngine<Node, Node> engine = new PageRank(0.001) {
+            @Override
+            protected boolean acceptableRecommendation(Node node) {
+                return node.hasLabel(Label.label("Skill"));
+            }
+        };
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node luanne = getDatabase().findNode(Label.label("Person"), "name", "Luanne");
+            Map<Long, Float> scores = scores(engine, luanne, new SimpleConfig(2));
+
+            assertEquals(4, scores.size());
+            for (Long id : scores.keySet()) {
+                assertTrue(getDatabase().getNodeById(id).hasLabel(Label.label("Skill")));
+            }
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldRespectTimeLimit() {
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node luanne = getDatabase().findNode(Label.label("Person"), "name", "Luanne");
+            assertEquals(0, scores(new PageRank(1e-7), luanne, new SimpleConfig(10, 0)).size());
+            tx.success();
+        }
+    }
+
+    private Map<Long, Float> scores(RecommendationEngine<Node, Node> engine, Node input, Config config) {
+        Map<Long, Float> result = new HashMap<>();
+        for (Recommendation<Node> recommendation : engine.recommend(input, new SimpleContext<Node, Node>(input, config)).get(Integer.MAX_VALUE)) {
+            result.put(recommendation.getItem().getId(), recommendation.getScore().getTotalScore());
+        }
+        return result;
+    }
+
+    private Map<Long, Double> powerIteration(Node input) {
+        Map<Long, Double> ranks = new HashMap<>();
+        ranks.put(input.getId(), 1.0);
+
+        for (int iteration = 0; iteration < 500; iteration++) {
+            Map<Long, Double> next = new HashMap<>();
+            next.put(input.getId(), ALPHA);
+
+            for (Map.Entry<Long, Double> entry : ranks.entrySet()) {
+                Node node = getDatabase().getNodeById(entry.getKey());
+                int degree = node.getDegree(Relationships.KNOWS) + node.getDegree(Relationships.FRIEND_OF);
+                for (Relationship relationship : node.getRelationships(Direction.BOTH, TYPES)) {
+                    long other = relationship.getOtherNode(node).getId();
+                    Double rank = next.get(other);
+                    next.put(other, (rank == null ? 0 : rank) + (1 - ALPHA) * entry.getValue() / degree);
+                }
+            }
+
+            ranks = next;
+        }
+
+        return ranks;
+    }
+
+    private static class PageRank extends PersonalizedPageRankEngine {
+
+        private final double epsilon;
+
+        private PageRank(double epsilon) {
+            this.epsilon = epsilon;
+        }
+
+        @Override
+        public String name() {
+            return "pageRank";
+        }
+
+        @Override
+        protected RelationshipType[] getTypes() {
+            return TYPES;
+        }
+
+        @Override
+        protected double epsilon() {
+            return epsilon;
+        }
+    }
+}
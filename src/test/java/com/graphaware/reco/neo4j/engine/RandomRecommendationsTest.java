@@ -16,6 +16,7 @@
 
 package com.graphaware.reco.neo4j.engine;
 
+import com.graphaware.common.policy.inclusion.BaseNodeInclusionPolicy;
 import com.graphaware.common.policy.inclusion.NodeInclusionPolicy;
 import com.graphaware.common.policy.inclusion.all.IncludeAllNodes;
 import com.graphaware.common.policy.inclusion.none.IncludeNoNodes;
@@ -27,8 +28,12 @@ import com.graphaware.test.integration.EmbeddedDatabaseIntegrationTest;
 import org.junit.Test;
 import org.neo4j.graphdb.*;
 
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -124,4 +129,112 @@ public class RandomRecommendationsTest extends EmbeddedDatabaseIntegrationTest {
             tx.success();
         }
     }
+
+    @Test
+    public void shouldSampleDistinctNodesWithLabel() {
+        RecommendationEngine<Node, Node> engine = labelledEngine();
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node vince = getDatabase().findNode(Label.label("Person"), "name", "Vince");
+
+            //2 * limit
+            List<Recommendation<Node>> result = engine.recommend(vince, new SimpleContext<Node, Node>(vince, new SimpleConfig(1))).get(Integer.MAX_VALUE);
+            assertEquals(2, result.size());
+            assertEquals(2, cityNames(result).size());
+
+            result = engine.recommend(vince, new SimpleContext<Node, Node>(vince, new SimpleConfig(10))).get(Integer.MAX_VALUE);
+            assertEquals(new HashSet<>(Arrays.asList("London", "Mumbai", "Bruges")), cityNames(result));
+
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldReplaceNodesRejectedByPolicy() {
+        RecommendationEngine<Node, Node> engine = new RandomRecommendations() {
+
+            @Override
+            protected NodeInclusionPolicy getPolicy() {
+                return new BaseNodeInclusionPolicy() {
+                    @Override
+                    public boolean include(Node node) {
+                        return !"London".equals(node.getProperty("name"));
+                    }
+                };
+            }
+
+            @Override
+            protected Label getLabel() {
+                return Label.label("City");
+            }
+
+            @Override
+            public String name() {
+                return "test";
+            }
+        };
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node vince = getDatabase().findNode(Label.label("Person"), "name", "Vince");
+
+            for (int i = 0; i < 20; i++) {
+                //2 * limit
+                List<Recommendation<Node>> result = engine.recommend(vince, new SimpleContext<Node, Node>(vince, new SimpleConfig(1))).get(Integer.MAX_VALUE);
+                assertEquals(new HashSet<>(Arrays.asList("Mumbai", "Bruges")), cityNames(result));
+            }
+
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldReflectCommittedLabelChanges() {
+        RecommendationEngine<Node, Node> engine = labelledEngine();
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node vince = getDatabase().findNode(Label.label("Person"), "name", "Vince");
+            assertEquals(3, engine.recommend(vince, new SimpleContext<Node, Node>(vince, new SimpleConfig(10))).get(Integer.MAX_VALUE).size());
+            tx.success();
+        }
+
+        getDatabase().execute("MATCH (c:City {name:'London'}) DETACH DELETE c");
+        getDatabase().execute("MATCH (c:City {name:'Mumbai'}) REMOVE c:City");
+        getDatabase().execute("CREATE (:City {name:'Prague'})");
+        getDatabase().execute("MATCH (p:Person {name:'Jim'}) SET p:City");
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node vince = getDatabase().findNode(Label.label("Person"), "name", "Vince");
+            List<Recommendation<Node>> result = engine.recommend(vince, new SimpleContext<Node, Node>(vince, new SimpleConfig(10))).get(Integer.MAX_VALUE);
+            assertEquals(new HashSet<>(Arrays.asList("Bruges", "Prague", "Jim")), cityNames(result));
+            tx.success();
+        }
+    }
+
+    private RecommendationEngine<Node, Node> labelledEngine() {
+        return new RandomRecommendations() {
+
+            @Override
+            protected NodeInclusionPolicy getPolicy() {
+                return IncludeAllNodes.getInstance();
+            }
+
+            @Override
+            protected Label getLabel() {
+                return Label.label("City");
+            }
+
+            @Override
+            public String name() {
+                return "test";
+            }
+        };
+    }
+
+    private Set<String> cityNames(List<Recommendation<Node>> recommendations) {
+        Set<String> result = new HashSet<>();
+        for (Recommendation<Node> recommendation : recommendations) {
+            result.add((String) recommendation.getItem().getProperty("name"));
+        }
+        return result;
+    }
 }
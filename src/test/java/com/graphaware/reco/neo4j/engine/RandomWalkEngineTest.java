@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.engine;
+
+import com.graphaware.reco.generic.config.Config;
+import com.graphaware.reco.generic.config.SimpleConfig;
+import com.graphaware.reco.generic.context.SimpleContext;
+import com.graphaware.reco.generic.result.Recommendation;
+import com.graphaware.test.integration.EmbeddedDatabaseIntegrationTest;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for {@link RandomWalkEngine}.
+ */
+public class RandomWalkEngineTest extends EmbeddedDatabaseIntegrationTest {
+
+    private static final RelationshipType LIKES = RelationshipType.withName("LIKES");
+    private static final Label ITEM = Label.label("Item");
+
+    @Override
+    protected void populateDatabase(GraphDatabaseService database) {
+        database.execute(
+                "CREATE " +
+                        "(u1:User {name:'u1'}), (u2:User {name:'u2'}), (u3:User {name:'u3'})," +
+                        "(u4:User {name:'u4'}), (u5:User {name:'u5'}), (u6:User {name:'u6'}), (u7:User {name:'u7'})," +
+                        "(i1:Item {name:'i1'}), (i2:Item {name:'i2'}), (i3:Item {name:'i3'}), (i4:Item {name:'i4'})," +
+                        "(u1)-[:LIKES]->(i1), (u1)-[:LIKES]->(i2)," +
+                        "(u2)-[:LIKES]->(i1), (u2)-[:LIKES]->(i3)," +
+                        "(u3)-[:LIKES]->(i1), (u3)-[:LIKES]->(i3)," +
+                        "(u4)-[:LIKES]->(i1), (u4)-[:LIKES]->(i3)," +
+                        "(u5)-[:LIKES]->(i1), (u5)-[:LIKES]->(i3)," +
+                        "(u6)-[:LIKES]->(i2), (u6)-[:LIKES]->(i4)," +
+                        "(u7)-[:LIKES]->(i1)");
+    }
+
+    @Test
+    public void shouldRecommendMostVisitedNodes() {
+        RandomWalkEngine engine = new ItemWalk() {
+            @Override
+            protected int requiredStableChecks() {
+                return Integer.MAX_VALUE;
+            }
+        };
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node u1 = getUser("u1");
+            List<Recommendation<Node>> result = engine.recommend(u1, new SimpleContext<Node, Node>(u1, Config.UNLIMITED)).get(Integer.MAX_VALUE);
+
+            assertEquals(4, result.size());
+            for (Recommendation<Node> recommendation : result) {
+                assertTrue(recommendation.getItem().hasLabel(ITEM));
+            }
+
+            assertTrue(score(result, "i3") > score(result, "i4"));
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldReturnNothingForIsolatedNode() {
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node isolated = getDatabase().createNode();
+            assertEquals(0, new ItemWalk().recommend(isolated, new SimpleContext<Node, Node>(isolated, Config.UNLIMITED)).size());
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldStopEarlyOnceTopVisitedNodesStabilize() {
+        RandomWalkEngine engine = new ItemWalk() {
+            @Override
+            protected int maxSteps() {
+                return 1_000_000;
+            }
+
+            @Override
+            protected int stabilityCheckInterval() {
+                return 100;
+            }
+        };
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node u7 = getUser("u7");
+            List<Recommendation<Node>> result = engine.recommend(u7, new SimpleContext<Node, Node>(u7, new SimpleConfig(1))).get(Integer.MAX_VALUE);
+
+            assertEquals(1, result.size());
+            assertTrue(result.get(0).getScore().getTotalScore() < 1000);
+            tx.success();
+        }
+    }
+
+    private float score(List<Recommendation<Node>> recommendations, String name) {
+        for (Recommendation<Node> recommendation : recommendations) {
+            if (name.equals(recommendation.getItem().getProperty("name"))) {
+                return recommendation.getScore().getTotalScore();
+            }
+        }
+        return 0;
+    }
+
+    private Node getUser(String name) {
+        return getDatabase().findNode(Label.label("User"), "name", name);
+    }
+
+    private static class ItemWalk extends RandomWalkEngine {
+
+        private final Random random = new Random(42);
+
+        @Override
+        public String name() {
+            return "walk";
+        }
+
+        @Override
+        protected RelationshipType[] getTypes() {
+            return new RelationshipType[]{LIKES};
+        }
+
+        @Override
+        protected boolean acceptableRecommendation(Node node) {
+            return node.hasLabel(ITEM);
+        }
+
+        @Override
+        protected Random random() {
+            return random;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.engine;
+
+import com.graphaware.reco.generic.config.SimpleConfig;
+import com.graphaware.reco.generic.context.Context;
+import com.graphaware.reco.generic.context.SimpleContext;
+import com.graphaware.reco.generic.result.PartialScore;
+import com.graphaware.reco.generic.result.Recommendation;
+import com.graphaware.test.integration.EmbeddedDatabaseIntegrationTest;
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for {@link StalenessAwarePrecomputedEngine}.
+ */
+public class StalenessAwarePrecomputedEngineTest extends EmbeddedDatabaseIntegrationTest {
+
+    private static final RelationshipType LIKES = RelationshipType.withName("LIKES");
+    private static final RelationshipType SIMILAR = RelationshipType.withName("SIMILAR");
+
+    private final long now = System.currentTimeMillis();
+
+    @Override
+    protected void populateDatabase(GraphDatabaseService database) {
+        database.execute(
+                "CREATE " +
+                        "(m:Person {name:'Michal'})," +
+                        "(i1:Item {name:'i1'})," +
+                        "(i2:Item {name:'i2'})," +
+                        "(i3:Item {name:'i3'})," +
+                        "(i4:Item {name:'i4'})," +
+                        "(i5:Item {name:'i5'})," +
+
+                        "(m)-[:LIKES {createdAt:{old}}]->(i1)," +
+                        "(m)-[:LIKES {createdAt:{recent}}]->(i4)," +
+                        "(i1)-[:SIMILAR]->(i5)," +
+                        "(i4)-[:SIMILAR]->(i2)," +
+                        "(i4)-[:SIMILAR]->(i3)," +
+
+                        "(m)-[:RECOMMEND {precomputed:3}]->(i2)," +
+                        "(m)-[:RECOMMEND {precomputed:2}]->(i3)",
+                paramsOf(now - 10000, now - 1000));
+    }
+
+    private static Map<String, Object> paramsOf(long old, long recent) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("old", old);
+        params.put("recent", recent);
+        return params;
+    }
+
+    @Test
+    public void shouldMergeDeltaFromRecentInteractionsOnly() {
+        stamp(now - 5000);
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            List<Recommendation<Node>> result = recommend(new TestEngine(Long.MAX_VALUE));
+
+            assertEquals(2, result.size());
+
+            assertEquals("i2", result.get(0).getItem().getProperty("name"));
+            assertEquals(4, result.get(0).getScore().getTotalScore(), 0.0001);
+            assertEquals(3, result.get(0).getScore().get("precomputed"), 0.0001);
+            assertEquals(1, result.get(0).getScore().get("fresh"), 0.0001);
+
+            assertEquals("i3", result.get(1).getItem().getProperty("name"));
+            assertEquals(3, result.get(1).getScore().getTotalScore(), 0.0001);
+
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldServePrecomputedOnlyWhenThereAreNoRecentInteractions() {
+        stamp(now - 500);
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            List<Recommendation<Node>> result = recommend(new TestEngine(Long.MAX_VALUE));
+
+            assertEquals(2, result.size());
+            assertEquals(3, result.get(0).getScore().getTotalScore(), 0.0001);
+            assertEquals(2, result.get(1).getScore().getTotalScore(), 0.0001);
+
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldNotServeStaleOrMissingRecommendations() {
+        try (Transaction tx = getDatabase().beginTx()) {
+            assertTrue(recommend(new TestEngine(Long.MAX_VALUE)).isEmpty());
+            tx.success();
+        }
+
+        stamp(now - 5000);
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            assertTrue(recommend(new TestEngine(1000)).isEmpty());
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldStopAtFirstOlderInteractionWhenNewestFirst() {
+        stamp(now - 5000);
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            List<Recommendation<Node>> result = recommend(new TestEngine(Long.MAX_VALUE, true));
+
+            assertEquals(2, result.size());
+            assertEquals(4, result.get(0).getScore().getTotalScore(), 0.0001);
+            tx.success();
+        }
+
+        //created last, but with an old timestamp, so it hides the recent interaction behind it
+        getDatabase().execute("MATCH (m:Person {name:'Michal'}), (i:Item {name:'i5'}) CREATE (m)-[:LIKES {createdAt:{old}}]->(i)", paramsOf(now - 10000, now - 1000));
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            List<Recommendation<Node>> result = recommend(new TestEngine(Long.MAX_VALUE, true));
+
+            assertEquals(3, result.get(0).getScore().getTotalScore(), 0.0001);
+            assertEquals(4, recommend(new TestEngine(Long.MAX_VALUE)).get(0).getScore().getTotalScore(), 0.0001);
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldServePrecomputedRecommendationsOfConfiguredType() {
+        final RelationshipType suggest = RelationshipType.withName("SUGGEST");
+        getDatabase().execute("MATCH (m:Person {name:'Michal'}), (i:Item {name:'i5'}) CREATE (m)-[:SUGGEST {precomputed:5}]->(i)");
+        stamp(suggest, now - 500);
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            List<Recommendation<Node>> result = recommend(new TestEngine(Long.MAX_VALUE) {
+                @Override
+                protected RelationshipType getType() {
+                    return suggest;
+                }
+            });
+
+            assertEquals(1, result.size());
+            assertEquals("i5", result.get(0).getItem().getProperty("name"));
+            assertEquals(5, result.get(0).getScore().getTotalScore(), 0.0001);
+            tx.success();
+        }
+    }
+
+    private void stamp(long computedAt) {
+        stamp(Neo4jPrecomputedEngine.RECOMMEND, computedAt);
+    }
+
+    private void stamp(RelationshipType type, long computedAt) {
+        try (Transaction tx = getDatabase().beginTx()) {
+            michal().setProperty(Neo4jPrecomputedEngine.computedAtProperty(type), computedAt);
+            tx.success();
+        }
+    }
+
+    private List<Recommendation<Node>> recommend(StalenessAwarePrecomputedEngine engine) {
+        Node michal = michal();
+        return engine.recommend(michal, new SimpleContext<Node, Node>(michal, new SimpleConfig(10))).get(Integer.MAX_VALUE);
+    }
+
+    private Node michal() {
+        return getDatabase().findNode(Label.label("Person"), "name", "Michal");
+    }
+
+    private static class TestEngine extends StalenessAwarePrecomputedEngine {
+
+        private final long maxStaleness;
+        private final boolean newestFirst;
+
+        private TestEngine(long maxStaleness) {
+            this(maxStaleness, false);
+        }
+
+        private TestEngine(long maxStaleness, boolean newestFirst) {
+            this.maxStaleness = maxStaleness;
+            this.newestFirst = newestFirst;
+        }
+
+        @Override
+        protected boolean interactionsNewestFirst() {
+            return newestFirst;
+        }
+
+        @Override
+        protected Map<Node, PartialScore> delta(Node input, List<Relationship> interactions, Context<Node, Node> context) {
+            Map<Node, PartialScore> result = new HashMap<>();
+            for (Relationship interaction : interactions) {
+                for (Relationship similar : interaction.getEndNode().getRelationships(SIMILAR, Direction.OUTGOING)) {
+                    result.put(similar.getEndNode(), new PartialScore(1));
+                }
+            }
+            return result;
+        }
+
+        @Override
+        protected RelationshipType[] getInteractionTypes() {
+            return new RelationshipType[]{LIKES};
+        }
+
+        @Override
+        protected long maxStaleness() {
+            return maxStaleness;
+        }
+
+        @Override
+        public String name() {
+            return "fresh";
+        }
+    }
+}
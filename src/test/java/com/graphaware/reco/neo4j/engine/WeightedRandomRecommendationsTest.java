@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.engine;
+
+import com.graphaware.common.policy.inclusion.NodeInclusionPolicy;
+import com.graphaware.common.policy.inclusion.all.IncludeAllNodes;
+import com.graphaware.reco.generic.config.SimpleConfig;
+import com.graphaware.reco.generic.context.SimpleContext;
+import com.graphaware.reco.generic.result.Recommendation;
+import com.graphaware.test.integration.EmbeddedDatabaseIntegrationTest;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for {@link WeightedRandomRecommendations}.
+ */
+public class WeightedRandomRecommendationsTest extends EmbeddedDatabaseIntegrationTest {
+
+    @Override
+    protected void populateDatabase(GraphDatabaseService database) {
+        database.execute(
+                "CREATE " +
+                        "(m:Person {name:'Michal'})," +
+                        "(d:Person {name:'Daniela'})," +
+                        "(v:Person {name:'Vince'})," +
+                        "(a:Person {name:'Adam'})," +
+                        "(l:Person {name:'Luanne'})," +
+
+                        "(lon:City {name:'London', visits:90})," +
+                        "(mum:City {name:'Mumbai', visits:10})," +
+                        "(br:City {name:'Bruges'})," +
+
+                        "(a)-[:LIVES_IN]->(lon)," +
+                        "(d)-[:LIVES_IN]->(lon)," +
+                        "(v)-[:LIVES_IN]->(lon)," +
+                        "(m)-[:LIVES_IN]->(lon)," +
+                        "(l)-[:LIVES_IN]->(mum)");
+    }
+
+    @Test
+    public void shouldNotRecommendNodesWithZeroWeight() {
+        WeightedRandomRecommendations engine = new TestEngine(null, Long.MAX_VALUE).built(getDatabase());
+
+        assertEquals(new HashSet<>(Arrays.asList("London", "Mumbai")), recommend(engine, 10));
+    }
+
+    @Test
+    public void shouldNotCountRecommendationsTowardsDegree() {
+        getDatabase().execute("MATCH (p:Person), (c:City {name:'Bruges'}) CREATE (p)-[:RECOMMEND]->(c)");
+
+        WeightedRandomRecommendations engine = new TestEngine(null, Long.MAX_VALUE).built(getDatabase());
+
+        assertEquals(new HashSet<>(Arrays.asList("London", "Mumbai")), recommend(engine, 10));
+    }
+
+    @Test
+    public void shouldFavourNodesWithHigherWeight() {
+        WeightedRandomRecommendations engine = new TestEngine("visits", Long.MAX_VALUE).built(getDatabase());
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            for (String name : recommend(engine, 1)) {
+                Integer count = counts.get(name);
+                counts.put(name, count == null ? 1 : count + 1);
+            }
+        }
+
+        //limit 1 means 2 recommendations, London is almost always one of them, Mumbai often the other
+        assertTrue(counts.get("London") > 950);
+        assertTrue(counts.get("Mumbai") > 100);
+        assertEquals(null, counts.get("Bruges"));
+    }
+
+    @Test
+    public void shouldRebuildInBackground() throws InterruptedException {
+        WeightedRandomRecommendations engine = new TestEngine(null, 0).built(getDatabase());
+
+        assertEquals(new HashSet<>(Arrays.asList("London", "Mumbai")), recommend(engine, 10));
+
+        getDatabase().execute("MATCH (p:Person {name:'Adam'}), (c:City {name:'Bruges'}) CREATE (p)-[:LIVES_IN]->(c)");
+
+        Set<String> result = recommend(engine, 10);
+        for (int i = 0; i < 100 && !result.contains("Bruges"); i++) {
+            Thread.sleep(50);
+            result = recommend(engine, 10);
+        }
+
+        assertEquals(new HashSet<>(Arrays.asList("London", "Mumbai", "Bruges")), result);
+    }
+
+    @Test
+    public void shouldBuildInBackgroundWhenNotBuiltUpfront() throws InterruptedException {
+        WeightedRandomRecommendations engine = new TestEngine(null, Long.MAX_VALUE);
+
+        Set<String> result = recommend(engine, 10);
+        for (int i = 0; i < 100 && result.isEmpty(); i++) {
+            Thread.sleep(50);
+            result = recommend(engine, 10);
+        }
+
+        assertEquals(new HashSet<>(Arrays.asList("London", "Mumbai")), result);
+    }
+
+    private Set<String> recommend(WeightedRandomRecommendations engine, int limit) {
+        Set<String> result = new HashSet<>();
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node michal = getDatabase().findNode(Label.label("Person"), "name", "Michal");
+            List<Recommendation<Node>> recommendations = engine.recommend(michal, new SimpleContext<Node, Node>(michal, new SimpleConfig(limit))).get(Integer.MAX_VALUE);
+            for (Recommendation<Node> recommendation : recommendations) {
+                result.add((String) recommendation.getItem().getProperty("name"));
+            }
+            tx.success();
+        }
+
+        return result;
+    }
+
+    private static class TestEngine extends WeightedRandomRecommendations {
+
+        private final String weightProperty;
+        private final long rebuildInterval;
+
+        private TestEngine(String weightProperty, long rebuildInterval) {
+            this.weightProperty = weightProperty;
+            this.rebuildInterval = rebuildInterval;
+        }
+
+        private TestEngine built(GraphDatabaseService database) {
+            build(database);
+            return this;
+        }
+
+        @Override
+        protected Label getLabel() {
+            return Label.label("City");
+        }
+
+        @Override
+        protected NodeInclusionPolicy getPolicy() {
+            return IncludeAllNodes.getInstance();
+        }
+
+        @Override
+        protected String weightProperty() {
+            return weightProperty;
+        }
+
+        @Override
+        protected long rebuildInterval() {
+            return rebuildInterval;
+        }
+
+        @Override
+        public String name() {
+            return "weightedRandom";
+        }
+    }
+}
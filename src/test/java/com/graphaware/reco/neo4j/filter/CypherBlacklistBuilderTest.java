@@ -17,7 +17,9 @@
 package com.graphaware.reco.neo4j.filter;
 
 import com.graphaware.reco.generic.config.Config;
+import com.graphaware.reco.generic.config.SimpleConfig;
 import com.graphaware.reco.generic.filter.BlacklistBuilder;
+import com.graphaware.reco.neo4j.cypher.Deadline;
 import com.graphaware.test.integration.DatabaseIntegrationTest;
 import com.graphaware.test.integration.EmbeddedDatabaseIntegrationTest;
 import org.junit.Test;
@@ -73,4 +75,41 @@ public class CypherBlacklistBuilderTest extends EmbeddedDatabaseIntegrationTest
             tx.success();
         }
     }
+
+    @Test
+    public void shouldOnlyTruncateBlacklistWhenDeadlineAwareAndRequestRanOutOfTime() throws InterruptedException {
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node michal = getDatabase().createNode(PERSON);
+            michal.setProperty("name", "Michal");
+            michal.createRelationshipTo(getDatabase().createNode(COMPANY), WORKS_FOR);
+            michal.createRelationshipTo(getDatabase().createNode(COMPANY), WORKS_FOR);
+            tx.success();
+        }
+
+        String query = "MATCH (p:Person)-[:WORKS_FOR]->(c) WHERE id(p)={id} RETURN c AS blacklist";
+        BlacklistBuilder<Node, Node> failClosed = new CypherBlacklistBuilder(query);
+        BlacklistBuilder<Node, Node> deadlineAware = new CypherBlacklistBuilder(query) {
+            @Override
+            protected boolean deadlineAware() {
+                return true;
+            }
+        };
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node michal = getSingle(getDatabase().findNodes(PERSON, "name", "Michal"));
+
+            Long enclosing = Deadline.startRequest();
+            try {
+                Thread.sleep(10);
+
+                assertEquals(2, failClosed.buildBlacklist(michal, new SimpleConfig(10, 1)).size());
+                assertEquals(0, deadlineAware.buildBlacklist(michal, new SimpleConfig(10, 1)).size());
+                assertEquals(2, deadlineAware.buildBlacklist(michal, Config.UNLIMITED).size());
+            } finally {
+                Deadline.endRequest(enclosing);
+            }
+
+            tx.success();
+        }
+    }
 }
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.module;
+
+import com.graphaware.common.policy.inclusion.BaseNodeInclusionPolicy;
+import com.graphaware.reco.generic.config.Config;
+import com.graphaware.reco.generic.context.SimpleContext;
+import com.graphaware.reco.generic.engine.RecommendationEngine;
+import com.graphaware.reco.generic.result.Recommendation;
+import com.graphaware.reco.integration.domain.Relationships;
+import com.graphaware.reco.neo4j.engine.ItemBasedEngine;
+import com.graphaware.reco.neo4j.util.SimilarityMeasure;
+import com.graphaware.test.integration.EmbeddedDatabaseIntegrationTest;
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test for {@link ItemSimilarityJob} and {@link ItemBasedEngine}.
+ */
+public class ItemSimilarityJobTest extends EmbeddedDatabaseIntegrationTest {
+
+    private static final Label SKILL = Label.label("Skill");
+
+    private final ItemSimilarityJob job = new ItemSimilarityJob(Relationships.KNOWS, Direction.OUTGOING)
+            .with(new BaseNodeInclusionPolicy() {
+                @Override
+                public boolean include(Node node) {
+                    return node.hasLabel(SKILL);
+                }
+            })
+            .withParallelism(2)
+            .withRangeSize(1)
+            .withBatchSize(2);
+
+    @Override
+    protected void populateDatabase(GraphDatabaseService database) {
+        database.execute(
+                "CREATE " +
+                        "(m:Person:Male {name:'Michal', age:30})," +
+                        "(v:Person:Male {name:'Vince', age:40})," +
+                        "(l:Person:Female {name:'Luanne', age:25})," +
+                        "(c:Person:Male {name:'Christophe', age:60})," +
+
+                        "(php:Skill {name:'PHP'})," +
+                        "(java:Skill {name:'Java'})," +
+                        "(neo:Skill {name:'Neo4j'})," +
+                        "(cypher:Skill {name:'Cypher'})," +
+                        "(maven:Skill {name:'Maven'})," +
+                        "(git:Skill {name:'Git'})," +
+
+                        "(m)-[:FRIEND_OF]->(l)," +
+                        "(m)-[:FRIEND_OF]->(v)," +
+                        "(m)-[:FRIEND_OF]->(c)," +
+                        "(c)-[:KNOWS {level:3}]->(php)," +
+                        "(c)-[:KNOWS {level:2}]->(neo)," +
+                        "(c)-[:KNOWS {level:3}]->(cypher)," +
+                        "(m)-[:KNOWS {level:1}]->(java)," +
+                        "(m)-[:KNOWS {level:3}]->(neo)," +
+                        "(m)-[:KNOWS {level:2}]->(cypher)," +
+                        "(v)-[:KNOWS {level:2}]->(neo)," +
+                        "(v)-[:KNOWS {level:3}]->(cypher)," +
+                        "(v)-[:KNOWS {level:3}]->(java)," +
+                        "(v)-[:KNOWS {level:1}]->(git)," +
+                        "(l)-[:KNOWS {level:3}]->(neo)");
+    }
+
+    @Test
+    public void shouldCreateTopKSimilarities() {
+        assertEquals(10, job.withTopK(2).run(getDatabase()));
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Map<String, Float> similarToNeo = similarTo("Neo4j");
+            assertEquals(2, similarToNeo.size());
+            assertEquals(3.0f, similarToNeo.get("Cypher"), 0.0001f);
+            assertEquals(2.0f, similarToNeo.get("Java"), 0.0001f);
+
+            assertEquals(0, similarTo("Maven").size());
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldReplaceExistingSimilarities() {
+        job.withTopK(2).run(getDatabase());
+        job.withTopK(2).run(getDatabase());
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            int similarities = 0;
+            for (Relationship relationship : getDatabase().getAllRelationships()) {
+                if (relationship.isType(ItemBasedEngine.SIMILAR)) {
+                    similarities++;
+                }
+            }
+            assertEquals(10, similarities);
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldNormalizeSimilarities() {
+        job.withTopK(1).withMeasure(SimilarityMeasure.JACCARD).run(getDatabase());
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Map<String, Float> similarToNeo = similarTo("Neo4j");
+            assertEquals(1, similarToNeo.size());
+            assertEquals(0.75f, similarToNeo.get("Cypher"), 0.0001f);
+            tx.success();
+        }
+    }
+
+    @Test
+    public void shouldRecommendSimilarItems() {
+        job.run(getDatabase());
+
+        RecommendationEngine<Node, Node> engine = new ItemBasedEngine() {
+            @Override
+            protected RelationshipType getType() {
+                return Relationships.KNOWS;
+            }
+
+            @Override
+            protected Direction getDirection() {
+                return Direction.OUTGOING;
+            }
+
+            @Override
+            public String name() {
+                return "similarSkills";
+            }
+        };
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node luanne = getDatabase().findNode(Label.label("Person"), "name", "Luanne");
+
+            Map<String, Float> scores = new HashMap<>();
+            for (Recommendation<Node> recommendation : engine.recommend(luanne, new SimpleContext<Node, Node>(luanne, Config.UNLIMITED)).get()) {
+                scores.put((String) recommendation.getItem().getProperty("name"), recommendation.getScore().getTotalScore());
+            }
+
+            Map<String, Float> expected = new HashMap<>();
+            expected.put("Cypher", 3.0f);
+            expected.put("Java", 2.0f);
+            expected.put("PHP", 1.0f);
+            expected.put("Git", 1.0f);
+            assertEquals(expected, scores);
+            tx.success();
+        }
+    }
+
+    private Map<String, Float> similarTo(String skill) {
+        Map<String, Float> result = new HashMap<>();
+        for (Relationship similar : getDatabase().findNode(SKILL, "name", skill).getRelationships(ItemBasedEngine.SIMILAR, Direction.OUTGOING)) {
+            result.put((String) similar.getEndNode().getProperty("name"), (Float) similar.getProperty(ItemBasedEngine.WEIGHT));
+        }
+        return result;
+    }
+}
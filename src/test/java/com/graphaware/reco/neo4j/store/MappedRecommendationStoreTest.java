@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.store;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link MappedRecommendationStore}.
+ */
+public class MappedRecommendationStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldStoreAndReplaceRecommendations() throws Exception {
+        MappedRecommendationStore store = MappedRecommendationStore.forDirectory(folder.newFolder(), 1024);
+
+        store.put(3, new long[]{10, 11}, new float[]{2, 1}, 1000);
+        store.put(7, new long[]{12}, new float[]{5}, 1000);
+
+        StoredRecommendations stored = store.get(3);
+        assertEquals(2, stored.size());
+        assertEquals(10, stored.id(0));
+        assertEquals(2, stored.score(0), 0.0001);
+        assertEquals(11, stored.id(1));
+        assertEquals(1, stored.score(1), 0.0001);
+        assertEquals(1000, stored.computedAt());
+
+        store.put(3, new long[]{13}, new float[]{4}, 2000);
+        assertEquals(1, store.get(3).size());
+        assertEquals(13, store.get(3).id(0));
+        assertEquals(2000, store.get(3).computedAt());
+        assertTrue(store.garbage() > 0);
+
+        //views obtained earlier keep returning the old list
+        assertEquals(10, stored.id(0));
+
+        store.remove(7);
+        assertEquals(0, store.get(7).size());
+        assertEquals(-1, store.get(7).computedAt());
+        assertEquals(0, store.get(100000).size());
+
+        store.close();
+    }
+
+    @Test
+    public void shouldSurviveCompactionAndRestart() throws Exception {
+        File directory = folder.newFolder();
+        MappedRecommendationStore store = MappedRecommendationStore.forDirectory(directory, 1024);
+
+        Random random = new Random(42);
+        Map<Long, long[]> expected = new HashMap<>();
+        Map<Long, Long> computedAt = new HashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            long node = random.nextInt(300);
+            long[] ids = new long[random.nextInt(40)];
+            float[] scores = new float[ids.length];
+            for (int j = 0; j < ids.length; j++) {
+                ids[j] = random.nextInt(100000);
+                scores[j] = ids[j] / 2f;
+            }
+            store.put(node, ids, scores, i);
+            expected.put(node, ids);
+            computedAt.put(node, (long) i);
+        }
+
+        assertStored(expected, computedAt, store);
+
+        store.compact();
+        assertStored(expected, computedAt, store);
+
+        store.close();
+        store = MappedRecommendationStore.forDirectory(directory);
+
+        assertStored(expected, computedAt, store);
+        assertEquals(3, directory.list().length);
+
+        store.close();
+    }
+
+    private void assertStored(Map<Long, long[]> expected, Map<Long, Long> computedAt, MappedRecommendationStore store) {
+        for (long node = 0; node < 300; node++) {
+            StoredRecommendations stored = store.get(node);
+            long[] ids = expected.get(node);
+
+            if (ids == null) {
+                assertEquals(0, stored.size());
+                continue;
+            }
+
+            assertEquals(ids.length, stored.size());
+            assertEquals((long) computedAt.get(node), stored.computedAt());
+            for (int i = 0; i < ids.length; i++) {
+                assertEquals(ids[i], stored.id(i));
+                assertEquals(ids[i] / 2f, stored.score(i), 0.0001);
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link AliasTable}.
+ */
+public class AliasTableTest {
+
+    @Test
+    public void shouldSampleProportionallyToWeights() {
+        double[] weights = {1, 0, 3, 6, 10};
+        AliasTable table = new AliasTable(weights);
+        Random random = new Random(42);
+
+        int samples = 200000;
+        int[] counts = new int[weights.length];
+        for (int i = 0; i < samples; i++) {
+            counts[table.sample(random)]++;
+        }
+
+        assertEquals(0, counts[1]);
+        for (int i = 0; i < weights.length; i++) {
+            assertEquals(weights[i] / 20, (double) counts[i] / samples, 0.01);
+        }
+    }
+
+    @Test
+    public void shouldHandleEmptyTables() {
+        assertTrue(new AliasTable(new double[0]).isEmpty());
+        assertTrue(new AliasTable(new double[]{0, 0}).isEmpty());
+        assertEquals(-1, new AliasTable(new double[]{0, 0}).sample(new Random()));
+        assertFalse(new AliasTable(new double[]{0, 1}).isEmpty());
+        assertEquals(1, new AliasTable(new double[]{0, 1}).sample(new Random()));
+    }
+}
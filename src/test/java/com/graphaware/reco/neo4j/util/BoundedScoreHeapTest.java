@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link BoundedScoreHeap}.
+ */
+public class BoundedScoreHeapTest {
+
+    @Test
+    public void shouldRetainEntriesWithHighestScores() {
+        BoundedScoreHeap heap = new BoundedScoreHeap(3);
+
+        assertTrue(heap.offer(1, 5, "a", null));
+        assertTrue(heap.offer(2, 1, "b", null));
+        assertTrue(heap.offer(3, 8, "c", null));
+        assertTrue(heap.isFull());
+        assertTrue(heap.offer(4, 3, "d", null));
+        assertFalse(heap.offer(5, 2, "e", null));
+        assertTrue(heap.offer(6, 7, "f", 42));
+
+        assertEquals(3, heap.size());
+        assertEquals(5, heap.minScore(), 0.0001);
+
+        heap.sortDescending();
+
+        assertEquals(3, heap.id(0));
+        assertEquals(6, heap.id(1));
+        assertEquals(1, heap.id(2));
+        assertEquals(8, heap.score(0), 0.0001);
+        assertEquals("f", heap.item(1));
+        assertEquals(42, heap.data(1));
+    }
+
+    @Test
+    public void zeroCapacityHeapShouldAcceptNothing() {
+        BoundedScoreHeap heap = new BoundedScoreHeap(0);
+
+        assertTrue(heap.isFull());
+        assertFalse(heap.accepts(100));
+        assertFalse(heap.offer(1, 100, null, null));
+        assertEquals(0, heap.size());
+    }
+
+    @Test
+    public void unboundedHeapShouldGrow() {
+        BoundedScoreHeap heap = new BoundedScoreHeap(Integer.MAX_VALUE);
+
+        for (int i = 0; i < 1000; i++) {
+            heap.offer(i, i % 10, null, null);
+        }
+
+        assertEquals(1000, heap.size());
+        heap.sortDescending();
+        assertEquals(9, heap.score(0), 0.0001);
+        assertEquals(0, heap.score(999), 0.0001);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link LongDoubleMap}.
+ */
+public class LongDoubleMapTest {
+
+    @Test
+    public void shouldAccumulateValues() {
+        LongDoubleMap map = new LongDoubleMap(2);
+
+        assertEquals(0, map.add(10, 1.0));
+        assertEquals(1, map.add(20, 2.0));
+        assertEquals(0, map.add(10, 3.0));
+
+        assertEquals(2, map.size());
+        assertEquals(4.0, map.get(10, 0), 0.0001);
+        assertEquals(2.0, map.get(20, 0), 0.0001);
+        assertEquals(-1.0, map.get(30, -1), 0.0001);
+        assertTrue(map.containsKey(20));
+        assertFalse(map.containsKey(30));
+    }
+
+    @Test
+    public void shouldGrowBeyondInitialCapacity() {
+        LongDoubleMap map = new LongDoubleMap(4);
+
+        for (long i = 0; i < 10000; i++) {
+            map.add(i * 31, 1);
+            map.add(i * 31, i);
+        }
+
+        assertEquals(10000, map.size());
+        for (long i = 0; i < 10000; i++) {
+            assertEquals(i + 1, map.get(i * 31, -1), 0.0001);
+            assertEquals(i * 31, map.keyAt(map.indexOf(i * 31)));
+        }
+    }
+
+    @Test
+    public void shouldReturnTopIndicesOrderedByValue() {
+        LongDoubleMap map = new LongDoubleMap();
+        map.put(1, 5);
+        map.put(2, 1);
+        map.put(3, 8);
+        map.put(4, 3);
+        map.put(5, 7);
+
+        assertArrayEquals(new int[]{2, 4, 0}, map.topIndices(3));
+        assertArrayEquals(new int[]{2, 4, 0, 3, 1}, map.topIndices(10));
+        assertEquals(0, map.topIndices(0).length);
+        assertEquals(0, new LongDoubleMap().topIndices(5).length);
+    }
+}
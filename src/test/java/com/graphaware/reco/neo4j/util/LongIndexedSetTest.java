@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.neo4j.util;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit test for {@link LongIndexedSet}.
+ */
+public class LongIndexedSetTest {
+
+    @Test
+    public void shouldAddAndRemoveValues() {
+        LongIndexedSet set = new LongIndexedSet(2);
+
+        assertTrue(set.add(10));
+        assertTrue(set.add(20));
+        assertTrue(set.add(30));
+        assertFalse(set.add(20));
+        assertEquals(3, set.size());
+
+        assertTrue(set.remove(10));
+        assertFalse(set.remove(10));
+        assertEquals(2, set.size());
+        assertFalse(set.contains(10));
+        assertTrue(set.contains(20));
+        assertTrue(set.contains(30));
+
+        //last value moved into the position of the removed one
+        assertEquals(30, set.get(0));
+        assertEquals(20, set.get(1));
+    }
+
+    @Test
+    public void shouldMatchHashSetUnderRandomOperations() {
+        LongIndexedSet set = new LongIndexedSet(4);
+        Set<Long> expected = new HashSet<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 100000; i++) {
+            long value = random.nextInt(2000);
+            if (random.nextBoolean()) {
+                assertEquals(expected.add(value), set.add(value));
+            } else {
+                assertEquals(expected.remove(value), set.remove(value));
+            }
+        }
+
+        assertEquals(expected.size(), set.size());
+        Set<Long> actual = new HashSet<>();
+        for (int i = 0; i < set.size(); i++) {
+            actual.add(set.get(i));
+        }
+        assertEquals(expected, actual);
+        for (long value = 0; value < 2000; value++) {
+            assertEquals(expected.contains(value), set.contains(value));
+        }
+    }
+}
@@ -16,5 +16,112 @@
 
 package com.graphaware.reco.perf;
 
-public class EnginePerfTest {
+import com.graphaware.common.log.LoggerFactory;
+import com.graphaware.reco.generic.config.SimpleConfig;
+import com.graphaware.reco.generic.context.SimpleContext;
+import com.graphaware.reco.generic.engine.RecommendationEngine;
+import com.graphaware.reco.generic.result.PartialScore;
+import com.graphaware.reco.generic.result.Recommendation;
+import com.graphaware.reco.neo4j.engine.CypherEngine;
+import com.graphaware.test.integration.EmbeddedDatabaseIntegrationTest;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.logging.Log;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Allocation benchmark of engines, measuring the number of bytes allocated per row of query results. Decoding rows must
+ * allocate measurably less than reading them as maps.
+ */
+public class EnginePerfTest extends EmbeddedDatabaseIntegrationTest {
+
+    private static final Log LOG = LoggerFactory.getLogger(EnginePerfTest.class);
+
+    private static final int NODES = 100;
+    private static final int ROWS = 10_000;
+    private static final int WARMUP = 20;
+    private static final int RUNS = 50;
+    private static final double MAX_RATIO = 0.95;
+
+    private static final String QUERY = "MATCH (p) WHERE id(p) = {id} " +
+            "UNWIND range(1, " + ROWS + ") AS i " +
+            "MATCH (reco) WHERE id(reco) = i % " + NODES + " " +
+            "RETURN reco, i AS score, i % 7 AS reason";
+
+    @Override
+    protected void populateDatabase(GraphDatabaseService database) {
+        database.execute("UNWIND range(1, " + NODES + ") AS i CREATE (:Item {id: i})");
+    }
+
+    @Test
+    public void measureAllocationOfDecodedRowsAndRowMaps() {
+        RecommendationEngine<Node, Node> decoding = new CypherEngine("decoding", QUERY);
+
+        RecommendationEngine<Node, Node> mapping = new CypherEngine("mapping", QUERY) {
+            @Override
+            protected PartialScore buildScore(Map<String, Object> row) {
+                return super.buildScore(row);
+            }
+        };
+
+        assertEquals(totalScores(mapping), totalScores(decoding));
+
+        double mappingBytes = bytesPerRow(mapping);
+        double decodingBytes = bytesPerRow(decoding);
+
+        LOG.info("Bytes per row with row maps: %s", Math.round(mappingBytes));
+        LOG.info("Bytes per row with row decoder: %s", Math.round(decodingBytes));
+
+        //loose, most of the allocation per row is Cypher's own
+        assertTrue("decoding allocated " + decodingBytes + " bytes per row, mapping " + mappingBytes, decodingBytes <= mappingBytes * MAX_RATIO);
+    }
+
+    private Map<Long, Float> totalScores(RecommendationEngine<Node, Node> engine) {
+        Map<Long, Float> result = new HashMap<>();
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node input = getDatabase().getNodeById(0);
+            SimpleContext<Node, Node> context = new SimpleContext<>(input, new SimpleConfig(Integer.MAX_VALUE));
+
+            for (Recommendation<Node> recommendation : engine.recommend(input, context).get(Integer.MAX_VALUE)) {
+                result.put(recommendation.getItem().getId(), recommendation.getScore().getTotalScore());
+            }
+
+            tx.success();
+        }
+
+        return result;
+    }
+
+    private double bytesPerRow(RecommendationEngine<Node, Node> engine) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            Node input = getDatabase().getNodeById(0);
+            SimpleContext<Node, Node> context = new SimpleContext<>(input, new SimpleConfig(Integer.MAX_VALUE));
+
+            for (int i = 0; i < WARMUP; i++) {
+                engine.recommend(input, context);
+            }
+
+            long before = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < RUNS; i++) {
+                engine.recommend(input, context);
+            }
+            long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+            tx.success();
+
+            return (double) allocated / RUNS / ROWS;
+        }
+    }
 }
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2013-2020 GraphAware
+ *
+ * This file is part of the GraphAware Framework.
+ *
+ * GraphAware Framework is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.reco.perf;
+
+import com.graphaware.reco.generic.config.Config;
+import com.graphaware.reco.generic.context.SimpleContext;
+import com.graphaware.reco.generic.engine.RecommendationEngine;
+import com.graphaware.reco.generic.result.Recommendation;
+import com.graphaware.reco.neo4j.engine.CollaborativeEngine;
+import com.graphaware.reco.neo4j.engine.PathPatternEngine;
+import com.graphaware.reco.neo4j.engine.PathStep;
+import com.graphaware.test.integration.EmbeddedDatabaseIntegrationTest;
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Benchmark of {@link PathPatternEngine} against the path-enumerating {@link CollaborativeEngine} expressing the same
+ * pattern, on a generated graph of users liking items.
+ */
+public class PathPatternEnginePerfTest extends EmbeddedDatabaseIntegrationTest {
+
+    private static final RelationshipType LIKES = RelationshipType.withName("LIKES");
+    private static final Label USER = Label.label("User");
+
+    private static final int USERS = 500;
+    private static final int ITEMS = 200;
+    private static final int LIKES_PER_USER = 20;
+    private static final int INPUTS = 50;
+    private static final int WARMUP = 3;
+    private static final int RUNS = 5;
+
+    @Override
+    protected void populateDatabase(GraphDatabaseService database) {
+        database.execute("UNWIND range(1, " + ITEMS + ") AS i CREATE (:Item {id: i})");
+        database.execute("UNWIND range(1, " + USERS + ") AS u CREATE (user:User {id: u}) " +
+                "WITH user, u UNWIND range(1, " + LIKES_PER_USER + ") AS l " +
+                "MATCH (item:Item {id: (u * 31 + l * l * 17) % " + ITEMS + " + 1}) " +
+                "MERGE (user)-[:LIKES]->(item)");
+    }
+
+    @Test
+    public void pathPatternEngineShouldMatchEnumeration() {
+        RecommendationEngine<Node, Node> enumerating = new CollaborativeEngine() {
+            @Override
+            protected RelationshipType getType() {
+                return LIKES;
+            }
+
+            @Override
+            protected Direction getDirection() {
+                return Direction.OUTGOING;
+            }
+
+            @Override
+            protected int scoreNode(Node recommendation, Node throughNode, Node similarNode, Relationship r1, Relationship r2, Relationship r3) {
+                return 1;
+            }
+
+            @Override
+            public String name() {
+                return "enumerating";
+            }
+        };
+
+        RecommendationEngine<Node, Node> pattern = new PathPatternEngine() {
+            @Override
+            protected List<PathStep> steps() {
+                return Arrays.asList(
+                        new PathStep(LIKES, Direction.OUTGOING),
+                        new PathStep(LIKES, Direction.INCOMING),
+                        new PathStep(LIKES, Direction.OUTGOING));
+            }
+
+            @Override
+            public String name() {
+                return "pattern";
+            }
+        };
+
+        try (Transaction tx = getDatabase().beginTx()) {
+            for (int i = 0; i < INPUTS; i++) {
+                Node input = getDatabase().findNode(USER, "id", i + 1);
+                assertEquals(totalScores(enumerating, input), totalScores(pattern, input));
+            }
+            tx.success();
+        }
+
+        long enumeratingMicros = microsPerInput(enumerating);
+        long patternMicros = microsPerInput(pattern);
+
+        System.out.println("Enumerating engine: " + enumeratingMicros + " us per input");
+        System.out.println("Path pattern engine: " + patternMicros + " us per input");
+    }
+
+    private long microsPerInput(RecommendationEngine<Node, Node> engine) {
+        try (Transaction tx = getDatabase().beginTx()) {
+            for (int i = 0; i < WARMUP; i++) {
+                recommendForAll(engine);
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < RUNS; i++) {
+                recommendForAll(engine);
+            }
+            long elapsed = System.nanoTime() - start;
+
+            tx.success();
+
+            return elapsed / 1000 / RUNS / INPUTS;
+        }
+    }
+
+    private void recommendForAll(RecommendationEngine<Node, Node> engine) {
+        for (int i = 0; i < INPUTS; i++) {
+            Node input = getDatabase().findNode(USER, "id", i + 1);
+            engine.recommend(input, new SimpleContext<Node, Node>(input, Config.UNLIMITED));
+        }
+    }
+
+    private Map<Long, Float> totalScores(RecommendationEngine<Node, Node> engine, Node input) {
+        Map<Long, Float> result = new HashMap<>();
+        for (Recommendation<Node> recommendation : engine.recommend(input, new SimpleContext<Node, Node>(input, Config.UNLIMITED)).get()) {
+            result.put(recommendation.getItem().getId(), recommendation.getScore().getTotalScore());
+        }
+        return result;
+    }
+}